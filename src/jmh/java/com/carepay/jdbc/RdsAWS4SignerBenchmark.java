@@ -0,0 +1,31 @@
+package com.carepay.jdbc;
+
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
+import com.carepay.aws.auth.Credentials;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RdsAWS4SignerBenchmark {
+    private RdsAWS4Signer signer;
+
+    @Setup
+    public void setUp() {
+        final Credentials credentials = new Credentials("AKIDEXAMPLE", "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY", "SeSsIoNtOkEn");
+        signer = new RdsAWS4Signer(() -> credentials, () -> "eu-west-1", Clock.systemUTC());
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return signer.generateToken("mydb.cluster-xxxxxxxxxx.eu-west-1.rds.amazonaws.com", 3306, "iam_user");
+    }
+}
@@ -0,0 +1,54 @@
+package com.carepay.jdbc.hikari;
+
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
+import com.carepay.aws.auth.Credentials;
+import com.carepay.jdbc.RdsAWS4Signer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RdsIamHikariDataSourceBenchmark {
+    private RdsIamHikariDataSource dataSource;
+
+    @Setup
+    public void setUp() {
+        final Credentials credentials = new Credentials("AKIDEXAMPLE", "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY", "SeSsIoNtOkEn");
+        dataSource = new RdsIamHikariDataSource(new RdsAWS4Signer(() -> credentials, () -> "eu-west-1", Clock.systemUTC()));
+        dataSource.setJdbcUrl("jdbc:mysql://mydb.cluster-xxxxxxxxxx.eu-west-1.rds.amazonaws.com/dbname");
+        dataSource.setUsername("iam_user");
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String getPassword1() {
+        return dataSource.getPassword();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String getPassword8() {
+        return dataSource.getPassword();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public String getPassword64() {
+        return dataSource.getPassword();
+    }
+}
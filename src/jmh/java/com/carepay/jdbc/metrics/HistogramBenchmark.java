@@ -0,0 +1,39 @@
+package com.carepay.jdbc.metrics;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Cost of recording a connection acquisition time, which is done for every borrowed connection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HistogramBenchmark {
+    private final Histogram histogram = new Histogram();
+
+    @Benchmark
+    @Threads(1)
+    public void record1() {
+        histogram.record(ThreadLocalRandom.current().nextLong(1_000_000L));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void record8() {
+        histogram.record(ThreadLocalRandom.current().nextLong(1_000_000L));
+    }
+
+    @Benchmark
+    public Histogram.Snapshot snapshot() {
+        return histogram.snapshot();
+    }
+}
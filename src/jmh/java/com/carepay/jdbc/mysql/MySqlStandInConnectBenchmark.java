@@ -0,0 +1,105 @@
+package com.carepay.jdbc.mysql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+
+import com.carepay.aws.auth.Credentials;
+import com.carepay.jdbc.RdsAWS4Signer;
+import com.carepay.jdbc.RdsIamConstants;
+import com.carepay.jdbc.hikari.RdsIamHikariDataSource;
+import com.carepay.jdbc.tomcat.RdsIamTomcatDataSource;
+import com.carepay.jdbc.util.RefreshScheduler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Opens a new IAM connection per operation through the Hikari and Tomcat datasources, against the
+ * local {@link MySqlStandIn}: token lookup, TCP connect, TLS handshake and the clear password
+ * exchange. The pools keep no idle connections, so every borrow connects.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MySqlStandInConnectBenchmark {
+    private static final String DRIVER = "com.mysql.cj.jdbc.Driver";
+
+    @Param({"hikari", "tomcat"})
+    public String pool;
+
+    private MySqlStandIn server;
+    private DataSource dataSource;
+
+    @Setup
+    public void setUp() throws Exception {
+        server = new MySqlStandIn();
+        final Credentials credentials = new Credentials("AKIDEXAMPLE", "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY", "SeSsIoNtOkEn");
+        final RdsAWS4Signer signer = new RdsAWS4Signer(() -> credentials, () -> "eu-west-1", Clock.systemUTC());
+        if ("hikari".equals(pool)) {
+            final RdsIamHikariDataSource hikari = new RdsIamHikariDataSource(signer);
+            hikari.setDriverClassName(DRIVER);
+            hikari.setJdbcUrl(server.getJdbcUrl("mysql"));
+            hikari.setUsername("iamuser");
+            hikari.setMinimumIdle(0);
+            hikari.setMaximumPoolSize(64);
+            hikari.addDataSourceProperty("socketFactory", RdsIamSocketFactory.class.getName());
+            hikari.addDataSourceProperty(RdsIamConstants.TRUST_CERTIFICATE_KEY_STORE_URL, MySqlStandIn.TRUST_STORE_URL);
+            dataSource = hikari;
+        } else {
+            final RdsIamTomcatDataSource tomcat = new RdsIamTomcatDataSource(signer, RefreshScheduler.getInstance());
+            tomcat.setDriverClassName(DRIVER);
+            tomcat.setUrl(server.getJdbcUrl("mysql"));
+            tomcat.setUsername("iamuser");
+            tomcat.setMinIdle(0);
+            tomcat.setMaxIdle(0);
+            tomcat.setMaxActive(64);
+            tomcat.setTimeBetweenEvictionRunsMillis(0);
+            tomcat.setConnectionProperties("socketFactory=" + RdsIamSocketFactory.class.getName() + ";"
+                    + RdsIamConstants.TRUST_CERTIFICATE_KEY_STORE_URL + "=" + MySqlStandIn.TRUST_STORE_URL);
+            dataSource = tomcat;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (dataSource instanceof RdsIamHikariDataSource) {
+            ((RdsIamHikariDataSource) dataSource).close();
+        } else {
+            ((RdsIamTomcatDataSource) dataSource).close();
+        }
+        server.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean connect1() throws SQLException {
+        return connect();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean connect8() throws SQLException {
+        return connect();
+    }
+
+    private boolean connect() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            final boolean closed = connection.isClosed();
+            if (dataSource instanceof RdsIamHikariDataSource) {
+                // close the physical connection instead of returning it to the pool
+                ((RdsIamHikariDataSource) dataSource).evictConnection(connection);
+            }
+            return closed;
+        }
+    }
+}
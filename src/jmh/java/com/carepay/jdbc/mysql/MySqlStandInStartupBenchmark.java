@@ -0,0 +1,93 @@
+package com.carepay.jdbc.mysql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
+import com.carepay.aws.auth.Credentials;
+import com.carepay.jdbc.RdsAWS4Signer;
+import com.carepay.jdbc.RdsIamConstants;
+import com.carepay.jdbc.hikari.RdsIamHikariDataSource;
+import com.carepay.jdbc.tomcat.RdsIamTomcatDataSource;
+import com.carepay.jdbc.util.RefreshScheduler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cold start of a datasource: loading its classes (and those of the pool and driver),
+ * creating it and opening the first connection to the local {@link MySqlStandIn}, including the
+ * security provider registration, the CA bundle and the first TLS handshake. Every fork is a new JVM
+ * which measures a single first connection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(10)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class MySqlStandInStartupBenchmark {
+    private static final String DRIVER = "com.mysql.cj.jdbc.Driver";
+
+    @Param({"hikari", "tomcat"})
+    public String pool;
+
+    private MySqlStandIn server;
+    private AutoCloseable dataSource;
+
+    @Setup
+    public void setUp() throws Exception {
+        server = new MySqlStandIn();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (dataSource != null) {
+            dataSource.close();
+        }
+        server.close();
+    }
+
+    @Benchmark
+    public boolean firstConnection() throws SQLException {
+        final Credentials credentials = new Credentials("AKIDEXAMPLE", "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY", "SeSsIoNtOkEn");
+        final RdsAWS4Signer signer = new RdsAWS4Signer(() -> credentials, () -> "eu-west-1", Clock.systemUTC());
+        if ("hikari".equals(pool)) {
+            final RdsIamHikariDataSource hikari = new RdsIamHikariDataSource(signer);
+            dataSource = hikari;
+            hikari.setDriverClassName(DRIVER);
+            hikari.setJdbcUrl(server.getJdbcUrl("mysql"));
+            hikari.setUsername("iamuser");
+            hikari.setMinimumIdle(0);
+            hikari.addDataSourceProperty("socketFactory", RdsIamSocketFactory.class.getName());
+            hikari.addDataSourceProperty(RdsIamConstants.TRUST_CERTIFICATE_KEY_STORE_URL, MySqlStandIn.TRUST_STORE_URL);
+            return isOpen(hikari.getConnection());
+        }
+        final RdsIamTomcatDataSource tomcat = new RdsIamTomcatDataSource(signer, RefreshScheduler.getInstance());
+        dataSource = tomcat::close;
+        tomcat.setDriverClassName(DRIVER);
+        tomcat.setUrl(server.getJdbcUrl("mysql"));
+        tomcat.setUsername("iamuser");
+        tomcat.setInitialSize(0);
+        tomcat.setMinIdle(0);
+        tomcat.setConnectionProperties("socketFactory=" + RdsIamSocketFactory.class.getName() + ";"
+                + RdsIamConstants.TRUST_CERTIFICATE_KEY_STORE_URL + "=" + MySqlStandIn.TRUST_STORE_URL);
+        return isOpen(tomcat.getConnection());
+    }
+
+    private static boolean isOpen(final Connection connection) throws SQLException {
+        try (Connection c = connection) {
+            return !c.isClosed();
+        }
+    }
+}
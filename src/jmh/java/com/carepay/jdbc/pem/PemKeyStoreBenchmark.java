@@ -0,0 +1,64 @@
+package com.carepay.jdbc.pem;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import static com.carepay.jdbc.RdsIamConstants.CA_BUNDLE_PATH;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PemKeyStoreBenchmark {
+    private byte[] bundle;
+    private PemKeyStore keyStore;
+    private Certificate lastCertificate;
+
+    @Setup
+    public void setUp() throws IOException, CertificateException {
+        try (InputStream in = getClass().getResourceAsStream(CA_BUNDLE_PATH);
+             ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            final byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            bundle = out.toByteArray();
+        }
+        keyStore = new PemKeyStore();
+        keyStore.engineLoad(new ByteArrayInputStream(bundle), null);
+        final List<String> aliases = Collections.list(keyStore.engineAliases());
+        lastCertificate = keyStore.engineGetCertificate(aliases.get(aliases.size() - 1));
+    }
+
+    @Benchmark
+    public PemKeyStore engineLoad() throws IOException, CertificateException {
+        final PemKeyStore pemKeyStore = new PemKeyStore();
+        pemKeyStore.engineLoad(new ByteArrayInputStream(bundle), null);
+        return pemKeyStore;
+    }
+
+    @Benchmark
+    public String engineGetCertificateAlias() {
+        return keyStore.engineGetCertificateAlias(lastCertificate);
+    }
+
+    @Benchmark
+    public void register() {
+        PemKeyStoreProvider.register();
+    }
+}
@@ -0,0 +1,56 @@
+package com.carepay.jdbc.ssl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import com.carepay.jdbc.pem.PemKeyStoreProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import static com.carepay.jdbc.RdsIamConstants.CA_BUNDLE_PATH;
+import static com.carepay.jdbc.RdsIamConstants.CA_BUNDLE_URL;
+import static com.carepay.jdbc.RdsIamConstants.PEM;
+
+/**
+ * Compares the per-connection SSLContext setup done by the drivers with the shared context.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SslContextCacheBenchmark {
+    private SslContextCache cache;
+
+    @Setup
+    public void setUp() {
+        PemKeyStoreProvider.register();
+        cache = SslContextCache.getInstance();
+    }
+
+    @Benchmark
+    public SSLContext newContext() throws GeneralSecurityException, IOException {
+        final KeyStore keyStore = KeyStore.getInstance(PEM);
+        try (InputStream is = getClass().getResourceAsStream(CA_BUNDLE_PATH)) {
+            keyStore.load(is, null);
+        }
+        final TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(keyStore);
+        final SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, tmf.getTrustManagers(), null);
+        return context;
+    }
+
+    @Benchmark
+    public SSLContext cachedContext() throws IOException {
+        return cache.getContext(CA_BUNDLE_URL);
+    }
+}
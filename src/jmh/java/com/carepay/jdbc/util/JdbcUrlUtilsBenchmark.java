@@ -0,0 +1,31 @@
+package com.carepay.jdbc.util;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JdbcUrlUtilsBenchmark {
+    private final String jdbcUrl = "jdbc:mysql://mydb.cluster-xxxxxxxxxx.eu-west-1.rds.amazonaws.com:3306/dbname?zeroDateTimeBehavior=convertToNull";
+
+    private final String multiHostUrl = "jdbc:mysql://mydb.cluster-xxxxxxxxxx.eu-west-1.rds.amazonaws.com,mydb.cluster-ro-xxxxxxxxxx.eu-west-1.rds.amazonaws.com:3306/dbname";
+
+    @Benchmark
+    public URL extractJdbcURL() {
+        return JdbcUrlUtils.extractJdbcURL(jdbcUrl);
+    }
+
+    @Benchmark
+    public List<HostAndPort> extractHosts() {
+        return JdbcUrlUtils.extractHosts(multiHostUrl);
+    }
+}
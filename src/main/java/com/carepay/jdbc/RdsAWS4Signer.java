@@ -1,22 +1,108 @@
 package com.carepay.jdbc;
 
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.time.Clock;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 
 import com.carepay.aws.auth.AWS4Signer;
+import com.carepay.aws.auth.Credentials;
 import com.carepay.aws.auth.CredentialsProvider;
 import com.carepay.aws.auth.RegionProvider;
 import com.carepay.aws.util.SHA256;
-import com.carepay.jdbc.util.DBHttpURLConnection;
-
-import static com.carepay.jdbc.util.JdbcUrlUtils.createURL;
+import com.carepay.jdbc.auth.CredentialsCache;
+import com.carepay.jdbc.util.JdbcUrlUtils;
 
+/**
+ * Creates pre-signed RDS IAM tokens. The canonical request and the query string are written directly
+ * into a pooled buffer, and the derived signing key is cached per region until the date or
+ * credentials change. The region is taken from the RDS hostname, the region provider is only used
+ * for other hostnames.
+ */
 public class RdsAWS4Signer extends AWS4Signer {
+    private static final Clock SYSTEM_CLOCK = Clock.systemUTC();
+    private static final String SERVICE = "rds-db";
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    private static final String HMAC_SHA256 = "HmacSHA256";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final char[] HEX_UPPER = "0123456789ABCDEF".toCharArray();
+    /**
+     * Bounded pool rather than a ThreadLocal, so virtual threads (one per connection) don't each
+     * allocate and keep their own buffers. A signer which finds the pool empty uses new buffers.
+     */
+    private static final BlockingQueue<Buffers> BUFFERS = new ArrayBlockingQueue<>(Math.max(2, Runtime.getRuntime().availableProcessors()));
+    private static final int MAX_REGIONS = 32;
+
+    private final CredentialsProvider credentialsProvider;
+    private final RegionProvider regionProvider;
+    private final Clock clock;
+    private final boolean systemClock;
+    private final ConcurrentMap<String, SigningKey> signingKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Uses the credentials and region of the default provider chains, from the shared credentials cache.
+     */
     public RdsAWS4Signer() {
-        super("rds-db");
+        this(CredentialsCache.getInstance().getCredentialsProvider(null), CredentialsCache.getInstance().getRegionProvider(), SYSTEM_CLOCK);
     }
 
     public RdsAWS4Signer(CredentialsProvider credentialsProvider, RegionProvider regionProvider, Clock clock) {
-        super("rds-db", credentialsProvider, regionProvider, clock);
+        super(SERVICE, credentialsProvider, regionProvider, clock);
+        this.credentialsProvider = credentialsProvider;
+        this.regionProvider = regionProvider;
+        this.clock = clock;
+        this.systemClock = SYSTEM_CLOCK.equals(clock); // Clock.systemUTC() is a new instance on Java 8
+    }
+
+    /**
+     * @return the credentials used to sign tokens
+     */
+    public Credentials getCredentials() {
+        return credentialsProvider.getCredentials();
+    }
+
+    /**
+     * @return the region used to sign tokens
+     */
+    public String getRegion() {
+        return regionProvider.getRegion();
+    }
+
+    /**
+     * Gets the region of the database. A token is only valid when it is signed for the region of the
+     * database, so the region in an RDS hostname takes precedence over the region provider.
+     *
+     * @param host database hostname (dbname.xxxx.eu-west-1.rds.amazonaws.com)
+     * @return the region in the hostname, or the region of the region provider for other hostnames
+     * (e.g. a custom DNS name)
+     */
+    public String getRegion(final String host) {
+        final String region = JdbcUrlUtils.extractRegion(host);
+        return region != null ? region : regionProvider.getRegion();
+    }
+
+    /**
+     * @return the clock used to timestamp tokens
+     */
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * @return the current time of the clock in epoch milliseconds, without allocating an Instant for
+     * the system clock
+     */
+    public long currentTimeMillis() {
+        return systemClock ? System.currentTimeMillis() : clock.instant().toEpochMilli();
     }
 
     /**
@@ -29,6 +115,13 @@ public String generateToken(final String host, final int port, final String user
         return generateToken(host, port, username, 900);
     }
 
+    /**
+     * @return true when the clock is the system clock in UTC
+     */
+    boolean isSystemClock() {
+        return systemClock;
+    }
+
     /**
      * @param host     database hostname (dbname.xxxx.eu-west-1.rds.amazonaws.com)
      * @param port     database port (MySQL uses 3306)
@@ -36,6 +129,221 @@ public String generateToken(final String host, final int port, final String user
      * @return the DB token
      */
     public String generateToken(final String host, final int port, final String username, int expireInSeconds) {
-        return new SignRequest(new DBHttpURLConnection(createURL("https", host, port, "/?Action=connect&DBUser=" + username))).signQuery(SHA256.EMPTY_STRING_SHA256, expireInSeconds).toString().substring(8);
+        final Credentials credentials = credentialsProvider.getCredentials();
+        final String region = getRegion(host);
+        Buffers buffers = BUFFERS.poll();
+        if (buffers == null) {
+            buffers = new Buffers();
+        }
+        try {
+            return generateToken(buffers, credentials, region, host, port, username, expireInSeconds);
+        } finally {
+            BUFFERS.offer(buffers); // dropped when the pool is full
+        }
+    }
+
+    private String generateToken(final Buffers buffers, final Credentials credentials, final String region, final String host,
+                                 final int port, final String username, final int expireInSeconds) {
+        final StringBuilder sb = buffers.sb;
+        buffers.setTime(currentTimeMillis());
+
+        // canonical request
+        sb.setLength(0);
+        sb.append("GET\n/\n");
+        final int queryStart = sb.length();
+        appendQuery(sb, buffers, credentials, region, username, expireInSeconds);
+        final int queryEnd = sb.length();
+        sb.append("\nhost:").append(host).append(':').append(port).append("\n\nhost\n").append(SHA256.EMPTY_STRING_SHA256);
+        final byte[] canonicalRequestHash = buffers.sha256(sb, 0, sb.length());
+
+        // string to sign, appended after the canonical request so the query string can be reused
+        final int stringToSignStart = sb.length();
+        sb.append(ALGORITHM).append('\n').append(buffers.amzDate).append('\n');
+        appendScope(sb, buffers, region, '/');
+        sb.append('\n');
+        appendHex(sb, canonicalRequestHash);
+        final byte[] signature = buffers.hmac(getSigningKey(buffers, credentials, region), sb, stringToSignStart, sb.length());
+
+        sb.setLength(stringToSignStart);
+        sb.append(host).append(':').append(port).append("/?").append(sb, queryStart, queryEnd).append("&X-Amz-Signature=");
+        appendHex(sb, signature);
+        return sb.substring(stringToSignStart);
+    }
+
+    private static void appendQuery(final StringBuilder sb, final Buffers buffers, final Credentials credentials, final String region, final String username, final int expireInSeconds) {
+        sb.append("Action=connect&DBUser=");
+        appendEncoded(sb, String.valueOf(username));
+        sb.append("&X-Amz-Algorithm=").append(ALGORITHM).append("&X-Amz-Credential=");
+        appendEncoded(sb, credentials.getAccessKeyId());
+        sb.append("%2F");
+        appendScope(sb, buffers, region, "%2F");
+        sb.append("&X-Amz-Date=").append(buffers.amzDate).append("&X-Amz-Expires=").append(expireInSeconds);
+        if (credentials.getToken() != null) {
+            sb.append("&X-Amz-Security-Token=");
+            appendEncoded(sb, credentials.getToken());
+        }
+        sb.append("&X-Amz-SignedHeaders=host");
+    }
+
+    private static void appendScope(final StringBuilder sb, final Buffers buffers, final String region, final Object separator) {
+        sb.append(buffers.amzDate, 0, 8).append(separator).append(region).append(separator).append(SERVICE).append(separator).append("aws4_request");
+    }
+
+    /**
+     * URI-encodes the value as specified by SigV4: everything except unreserved characters is encoded.
+     */
+    private static void appendEncoded(final StringBuilder sb, final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '-' || c == '_' || c == '.' || c == '~') {
+                sb.append(c);
+            } else if (c < 0x80) {
+                appendPercent(sb, c);
+            } else {
+                final int end = Character.isHighSurrogate(c) && i + 1 < value.length() ? i + 2 : i + 1;
+                for (final byte b : value.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+                    appendPercent(sb, b & 0xff);
+                }
+                i = end - 1;
+            }
+        }
+    }
+
+    private static void appendPercent(final StringBuilder sb, final int b) {
+        sb.append('%').append(HEX_UPPER[b >> 4]).append(HEX_UPPER[b & 0xf]);
+    }
+
+    private static void appendHex(final StringBuilder sb, final byte[] bytes) {
+        for (final byte b : bytes) {
+            sb.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+        }
+    }
+
+    /**
+     * Gets the derived signing key of the region. The HMAC chain is only calculated when the date or
+     * credentials have changed.
+     */
+    private SecretKeySpec getSigningKey(final Buffers buffers, final Credentials credentials, final String region) {
+        final SigningKey current = signingKeys.get(region);
+        if (current != null && current.matches(buffers.amzDate, region, credentials)) {
+            return current.key;
+        }
+        if (current == null && signingKeys.size() >= MAX_REGIONS) {
+            signingKeys.clear(); // there are fewer regions than this, so this should not happen
+        }
+        final String date = new String(buffers.amzDate, 0, 8);
+        byte[] key = buffers.hmac(("AWS4" + credentials.getSecretAccessKey()).getBytes(StandardCharsets.UTF_8), date);
+        key = buffers.hmac(key, region);
+        key = buffers.hmac(key, SERVICE);
+        key = buffers.hmac(key, "aws4_request");
+        final SigningKey derived = new SigningKey(date, region, credentials.getAccessKeyId(), credentials.getSecretAccessKey(), new SecretKeySpec(key, HMAC_SHA256));
+        signingKeys.put(region, derived);
+        return derived.key;
+    }
+
+    private static final class SigningKey {
+        private final String date;
+        private final String region;
+        private final String accessKeyId;
+        private final String secretAccessKey;
+        private final SecretKeySpec key;
+
+        SigningKey(final String date, final String region, final String accessKeyId, final String secretAccessKey, final SecretKeySpec key) {
+            this.date = date;
+            this.region = region;
+            this.accessKeyId = accessKeyId;
+            this.secretAccessKey = secretAccessKey;
+            this.key = key;
+        }
+
+        boolean matches(final char[] amzDate, final String region, final Credentials credentials) {
+            for (int i = 0; i < 8; i++) {
+                if (date.charAt(i) != amzDate[i]) {
+                    return false;
+                }
+            }
+            return this.region.equals(region)
+                    && accessKeyId.equals(credentials.getAccessKeyId())
+                    && secretAccessKey.equals(credentials.getSecretAccessKey());
+        }
+    }
+
+    /**
+     * Buffers and crypto instances, reused for every token signed with them.
+     */
+    private static final class Buffers {
+        private final StringBuilder sb = new StringBuilder(1024);
+        private final char[] amzDate = new char[16]; // yyyyMMdd'T'HHmmss'Z'
+        private final MessageDigest sha256;
+        private final Mac mac;
+        private byte[] bytes = new byte[1024];
+        private long epochDay = Long.MIN_VALUE;
+
+        Buffers() {
+            try {
+                sha256 = MessageDigest.getInstance("SHA-256");
+                mac = Mac.getInstance(HMAC_SHA256);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+
+        void setTime(final long epochMillis) {
+            final long epochSecond = Math.floorDiv(epochMillis, 1000L);
+            final long day = Math.floorDiv(epochSecond, 86400L);
+            if (day != epochDay) {
+                final LocalDate date = LocalDate.ofEpochDay(day);
+                write(date.getYear(), 0, 4);
+                write(date.getMonthValue(), 4, 2);
+                write(date.getDayOfMonth(), 6, 2);
+                amzDate[8] = 'T';
+                amzDate[15] = 'Z';
+                epochDay = day;
+            }
+            final int secondOfDay = (int) Math.floorMod(epochSecond, 86400L);
+            write(secondOfDay / 3600, 9, 2);
+            write(secondOfDay / 60 % 60, 11, 2);
+            write(secondOfDay % 60, 13, 2);
+        }
+
+        private void write(int value, final int offset, final int length) {
+            for (int i = offset + length - 1; i >= offset; i--) {
+                amzDate[i] = (char) ('0' + value % 10);
+                value /= 10;
+            }
+        }
+
+        /**
+         * Copies the (ASCII) characters into the byte buffer.
+         */
+        private int toBytes(final CharSequence cs, final int start, final int end) {
+            final int length = end - start;
+            if (bytes.length < length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length, bytes.length * 2));
+            }
+            for (int i = 0; i < length; i++) {
+                bytes[i] = (byte) cs.charAt(start + i);
+            }
+            return length;
+        }
+
+        byte[] sha256(final CharSequence cs, final int start, final int end) {
+            sha256.update(bytes, 0, toBytes(cs, start, end));
+            return sha256.digest();
+        }
+
+        byte[] hmac(final SecretKeySpec key, final CharSequence cs, final int start, final int end) {
+            try {
+                mac.init(key);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+            mac.update(bytes, 0, toBytes(cs, start, end));
+            return mac.doFinal();
+        }
+
+        byte[] hmac(final byte[] key, final String data) {
+            return hmac(new SecretKeySpec(key, HMAC_SHA256), data, 0, data.length());
+        }
     }
 }
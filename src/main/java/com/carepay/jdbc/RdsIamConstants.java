@@ -13,6 +13,12 @@ public final class RdsIamConstants {
     public static final String TRUST_CERTIFICATE_KEY_STORE_URL = "trustCertificateKeyStoreUrl";
     public static final String TRUST_CERTIFICATE_KEY_STORE_TYPE = "trustCertificateKeyStoreType";
     public static final String PEM = "PEM";
+    public static final String SOCKET_FACTORY = "socketFactory";
+    public static final String RDS_IAM_SOCKET_FACTORY = "com.carepay.jdbc.mysql.RdsIamSocketFactory";
+    public static final String AUTHENTICATION_PLUGINS = "authenticationPlugins";
+    public static final String RDS_IAM_PASSWORD_PLUGIN = "com.carepay.jdbc.mysql.RdsIamPasswordPlugin";
+    public static final String CREDENTIAL_TYPE = "credentialType";
+    public static final String AWS4RDS = "AWS4RDS";
 
     protected RdsIamConstants() {
         // not implemented
@@ -0,0 +1,54 @@
+package com.carepay.jdbc.aurora;
+
+import java.util.Objects;
+
+import com.carepay.jdbc.util.HostAndPort;
+
+/**
+ * Instance of an Aurora cluster, as found in the cluster topology.
+ */
+public final class AuroraInstance {
+    private final String id;
+    private final HostAndPort hostAndPort;
+    private final boolean writer;
+
+    public AuroraInstance(final String id, final HostAndPort hostAndPort, final boolean writer) {
+        this.id = id;
+        this.hostAndPort = hostAndPort;
+        this.writer = writer;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public HostAndPort getHostAndPort() {
+        return hostAndPort;
+    }
+
+    public boolean isWriter() {
+        return writer;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AuroraInstance)) {
+            return false;
+        }
+        final AuroraInstance other = (AuroraInstance) o;
+        return writer == other.writer && id.equals(other.id) && hostAndPort.equals(other.hostAndPort);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, hostAndPort, writer);
+    }
+
+    @Override
+    public String toString() {
+        return id + " (" + hostAndPort + (writer ? ", writer)" : ", reader)");
+    }
+}
@@ -0,0 +1,264 @@
+package com.carepay.jdbc.aurora;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+import com.carepay.jdbc.util.RefreshScheduler;
+
+/**
+ * DataSource which sends read-only work to the readers of an Aurora cluster. The topology of the
+ * cluster is queried through the writer datasource (the cluster endpoint) on a background schedule,
+ * and every reader gets its own pool, with its own IAM token, from the pool factory.
+ * <p>
+ * Connections are borrowed when they are first used: when <code>setReadOnly(true)</code> was called
+ * before that, the connection is borrowed from the reader with the fewest active connections,
+ * otherwise (or when there are no readers) from the writer.
+ */
+public class AuroraRoutingDataSource implements DataSource, AutoCloseable {
+    private static final long DEFAULT_REFRESH_MILLIS = TimeUnit.SECONDS.toMillis(30L);
+
+    private final DataSource writer;
+    private final TopologyQuery topologyQuery;
+    private final InstancePoolFactory poolFactory;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicInteger next = new AtomicInteger();
+    private final Map<AuroraInstance, InstancePool> pools = new HashMap<>(); // guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile List<InstancePool> readers = Collections.emptyList();
+    private volatile List<AuroraInstance> topology = Collections.emptyList();
+    private volatile long refreshMillis = DEFAULT_REFRESH_MILLIS;
+    private volatile boolean closed;
+    private ScheduledFuture<?> refreshFuture; // guarded by lock
+
+    /**
+     * @param writer        the datasource of the cluster endpoint
+     * @param topologyQuery queries the instances of the cluster
+     * @param poolFactory   creates the pools of the readers
+     */
+    public AuroraRoutingDataSource(final DataSource writer, final TopologyQuery topologyQuery, final InstancePoolFactory poolFactory) {
+        this(writer, topologyQuery, poolFactory, RefreshScheduler.getInstance());
+    }
+
+    public AuroraRoutingDataSource(final DataSource writer, final TopologyQuery topologyQuery, final InstancePoolFactory poolFactory,
+                                   final ScheduledExecutorService scheduledExecutorService) {
+        this.writer = writer;
+        this.topologyQuery = topologyQuery;
+        this.poolFactory = poolFactory;
+        this.scheduledExecutorService = scheduledExecutorService;
+    }
+
+    public long getRefreshMillis() {
+        return refreshMillis;
+    }
+
+    /**
+     * @param refreshMillis the interval of the topology query, must be set before the first connection
+     */
+    public void setRefreshMillis(final long refreshMillis) {
+        this.refreshMillis = refreshMillis;
+    }
+
+    /**
+     * @return the instances found by the last topology query
+     */
+    public List<AuroraInstance> getTopology() {
+        return topology;
+    }
+
+    /**
+     * Gets a connection, which is borrowed from a reader or the writer when it is first used.
+     */
+    @Override
+    public Connection getConnection() {
+        if (!started.get() && started.compareAndSet(false, true)) {
+            startRefresh();
+        }
+        return LazyConnection.create(this::route);
+    }
+
+    /**
+     * Schedules the topology refresh under the lock, so a concurrent {@link #close()} either cancels it
+     * or prevents it from being scheduled.
+     */
+    private void startRefresh() {
+        lock.lock();
+        try {
+            if (!closed) {
+                refreshFuture = scheduledExecutorService.scheduleWithFixedDelay(this::refreshInBackground, 0L, refreshMillis, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Connection getConnection(final String username, final String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Username and password are configured in the pools");
+    }
+
+    /**
+     * @return a connection to the reader with the fewest active connections, or to the writer when
+     * there are no (reachable) readers
+     * @throws SQLException when the writer can't be reached either
+     */
+    public Connection getReaderConnection() throws SQLException {
+        return route(true);
+    }
+
+    private Connection route(final boolean readOnly) throws SQLException {
+        if (readOnly) {
+            final InstancePool reader = getLeastLoadedReader();
+            if (reader != null) {
+                try {
+                    return reader.getDataSource().getConnection();
+                } catch (SQLException e) {
+                    // reader is not reachable (anymore), fall back to the writer
+                }
+            }
+        }
+        return writer.getConnection();
+    }
+
+    /**
+     * Starts at a rotating offset, so readers with the same load are used in turn.
+     */
+    private InstancePool getLeastLoadedReader() {
+        final List<InstancePool> list = readers;
+        if (list.isEmpty()) {
+            return null;
+        }
+        final int offset = Math.floorMod(next.getAndIncrement(), list.size());
+        InstancePool leastLoaded = null;
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < list.size(); i++) {
+            final InstancePool pool = list.get((offset + i) % list.size());
+            final int active = pool.getActiveConnections();
+            if (active < min) {
+                min = active;
+                leastLoaded = pool;
+            }
+        }
+        return leastLoaded;
+    }
+
+    private void refreshInBackground() {
+        try {
+            refreshTopology();
+        } catch (SQLException | RuntimeException e) {
+            // keep the previous topology and retry on the next run
+        }
+    }
+
+    /**
+     * Queries the topology. Creates pools for new readers and closes the pools of instances which are
+     * gone, or which are promoted to writer. A reader whose pool can't be created is left out until the
+     * next refresh, the other readers are still used.
+     *
+     * @throws SQLException when the topology query fails
+     */
+    public void refreshTopology() throws SQLException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            final List<AuroraInstance> instances;
+            try (Connection connection = writer.getConnection()) {
+                instances = topologyQuery.getInstances(connection);
+            }
+            final List<InstancePool> list = new ArrayList<>();
+            for (AuroraInstance instance : instances) {
+                if (!instance.isWriter()) {
+                    try {
+                        list.add(pools.computeIfAbsent(instance, poolFactory::create));
+                    } catch (RuntimeException e) {
+                        // retry on the next refresh
+                    }
+                }
+            }
+            final Iterator<Map.Entry<AuroraInstance, InstancePool>> it = pools.entrySet().iterator();
+            while (it.hasNext()) {
+                final Map.Entry<AuroraInstance, InstancePool> entry = it.next();
+                if (!list.contains(entry.getValue())) {
+                    it.remove();
+                    entry.getValue().close();
+                }
+            }
+            readers = Collections.unmodifiableList(list);
+            topology = Collections.unmodifiableList(new ArrayList<>(instances));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the pools of the readers. The writer datasource is not closed.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            if (refreshFuture != null) {
+                refreshFuture.cancel(false);
+            }
+            readers = Collections.emptyList();
+            pools.values().forEach(InstancePool::close);
+            pools.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return writer.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(final PrintWriter out) throws SQLException {
+        writer.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(final int seconds) throws SQLException {
+        writer.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return writer.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return writer.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(final Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : writer.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || writer.isWrapperFor(iface);
+    }
+}
@@ -0,0 +1,87 @@
+package com.carepay.jdbc.aurora;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.carepay.jdbc.util.HostAndPort;
+
+/**
+ * Reads the topology of an Aurora MySQL cluster from <code>information_schema.replica_host_status</code>.
+ * The writer is the instance with session id <code>MASTER_SESSION_ID</code>. The hostname of an
+ * instance is derived from the cluster endpoint: <code>mydb.cluster-xxxx.eu-west-1.rds.amazonaws.com</code>
+ * becomes <code>instance-id.xxxx.eu-west-1.rds.amazonaws.com</code>. The readers of the cluster are
+ * recognized by <code>@@innodb_read_only</code>.
+ */
+public class AuroraTopologyQuery implements TopologyQuery {
+    public static final String DEFAULT_SQL = "SELECT SERVER_ID, SESSION_ID FROM information_schema.replica_host_status"
+            + " WHERE LAST_UPDATE_TIMESTAMP > NOW() - INTERVAL 5 MINUTE";
+    private static final String READ_ONLY_SQL = "SELECT @@innodb_read_only";
+    private static final String WRITER_SESSION_ID = "MASTER_SESSION_ID";
+    private static final String[] CLUSTER_PREFIXES = {"cluster-ro-", "cluster-custom-", "cluster-"};
+
+    private final String sql;
+    private final String domain;
+    private final int port;
+
+    /**
+     * @param clusterEndpoint the cluster (or any instance) endpoint
+     */
+    public AuroraTopologyQuery(final HostAndPort clusterEndpoint) {
+        this(DEFAULT_SQL, clusterEndpoint);
+    }
+
+    /**
+     * @param sql             query returning the instance id and session id, e.g. to query a test database
+     * @param clusterEndpoint the cluster (or any instance) endpoint
+     */
+    public AuroraTopologyQuery(final String sql, final HostAndPort clusterEndpoint) {
+        this.sql = sql;
+        this.domain = getInstanceDomain(clusterEndpoint.getHost());
+        this.port = clusterEndpoint.getPort();
+    }
+
+    /**
+     * @param host the cluster or instance endpoint
+     * @return the domain of the instance endpoints, e.g. <code>xxxx.eu-west-1.rds.amazonaws.com</code>
+     */
+    static String getInstanceDomain(final String host) {
+        final int dot = host.indexOf('.');
+        if (dot < 0) {
+            return null; // e.g. localhost, instances are reached using their id
+        }
+        final String domain = host.substring(dot + 1);
+        for (String prefix : CLUSTER_PREFIXES) {
+            if (domain.startsWith(prefix)) {
+                return domain.substring(prefix.length());
+            }
+        }
+        return domain;
+    }
+
+    @Override
+    public List<AuroraInstance> getInstances(final Connection connection) throws SQLException {
+        final List<AuroraInstance> instances = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                final String id = rs.getString(1);
+                final String host = domain != null ? id + "." + domain : id;
+                instances.add(new AuroraInstance(id, new HostAndPort(host, port), WRITER_SESSION_ID.equals(rs.getString(2))));
+            }
+        }
+        return instances;
+    }
+
+    @Override
+    public boolean isReadOnly(final Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(READ_ONLY_SQL)) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.carepay.jdbc.aurora;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+import com.carepay.jdbc.RdsAWS4Signer;
+import com.carepay.jdbc.metrics.TokenListener;
+import com.carepay.jdbc.token.TokenCache;
+import com.carepay.jdbc.token.TokenPolicy;
+import com.carepay.jdbc.util.HostAndPort;
+import com.carepay.jdbc.util.JdbcUrlUtils;
+
+/**
+ * DataSource which connects to the writer of an Aurora cluster by its instance hostname, so a writer
+ * failover does not wait for the DNS of the cluster endpoint to change. The topology is cached and
+ * refreshed in the background. When connecting fails with a connection error, the topology is queried
+ * through the other instances and the connection is retried on the new writer. When the writer turned
+ * out to be read-only (the old writer which came back as a reader), the topology is queried through
+ * that connection instead. Tokens are signed for every instance when the topology is refreshed, so the
+ * retry does not wait for signing.
+ * <p>
+ * Used by the Hikari and Tomcat datasources in failover mode, as the datasource of the pool. The
+ * username and password passed by the pool are ignored.
+ */
+public class FailoverDataSource implements DataSource {
+    private static final long REFRESH_MILLIS = TimeUnit.SECONDS.toMillis(30L);
+    private static final String CONNECTION_ERROR_PREFIX = "08";
+    private static final int ER_OPTION_PREVENTS_STATEMENT = 1290; // --read-only
+    private static final int ER_READ_ONLY_MODE = 1836;
+
+    private final Driver driver;
+    private final String url;
+    private final Properties properties;
+    private final String username;
+    private final RdsAWS4Signer signer;
+    private final TokenCache tokenCache;
+    private final TokenListener listener;
+    private final TopologyQuery topologyQuery;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final HostAndPort clusterEndpoint;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final ReentrantLock topologyLock = new ReentrantLock(); // not synchronized, the topology query blocks on I/O
+    private volatile HostAndPort writer;
+    private volatile List<AuroraInstance> topology = Collections.emptyList();
+    private volatile ScheduledFuture<?> refreshFuture;
+    private volatile TokenPolicy tokenPolicy = TokenPolicy.DEFAULT;
+
+    /**
+     * @param driver                   the JDBC driver
+     * @param url                      the JDBC URL of the cluster endpoint
+     * @param properties               the connection properties, copied on every connect
+     * @param username                 the database username
+     * @param signer                   signs the tokens
+     * @param tokenCache               the token cache
+     * @param listener                 receives the token metrics
+     * @param topologyQuery            queries the instances of the cluster
+     * @param scheduledExecutorService runs the topology refresh
+     */
+    public FailoverDataSource(final Driver driver, final String url, final Properties properties, final String username,
+                              final RdsAWS4Signer signer, final TokenCache tokenCache, final TokenListener listener,
+                              final TopologyQuery topologyQuery, final ScheduledExecutorService scheduledExecutorService) {
+        this.driver = driver;
+        this.url = url;
+        this.properties = properties;
+        this.username = username;
+        this.signer = signer;
+        this.tokenCache = tokenCache;
+        this.listener = listener;
+        this.topologyQuery = topologyQuery;
+        this.scheduledExecutorService = scheduledExecutorService;
+        this.clusterEndpoint = JdbcUrlUtils.extractHosts(url).get(0);
+        this.writer = clusterEndpoint;
+    }
+
+    /**
+     * Loads the driver by class name, or finds the driver for the URL.
+     *
+     * @param driverClassName the driver class name, may be null
+     * @param url             the JDBC URL
+     * @return the driver
+     * @throws SQLException when the driver can't be loaded
+     */
+    public static Driver loadDriver(final String driverClassName, final String url) throws SQLException {
+        if (driverClassName == null) {
+            return DriverManager.getDriver(url);
+        }
+        try {
+            return (Driver) Class.forName(driverClassName, true, Thread.currentThread().getContextClassLoader())
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new SQLException("Failed to load driver " + driverClassName, "08001", e);
+        }
+    }
+
+    /**
+     * @return the host the writer is reached on: the cluster endpoint until the topology is known
+     */
+    public HostAndPort getWriter() {
+        return writer;
+    }
+
+    public TokenPolicy getTokenPolicy() {
+        return tokenPolicy;
+    }
+
+    /**
+     * @param tokenPolicy the lifetime and renewal deadline of the tokens
+     */
+    public void setTokenPolicy(final TokenPolicy tokenPolicy) {
+        this.tokenPolicy = tokenPolicy;
+    }
+
+    /**
+     * @return the instances found by the last topology query
+     */
+    public List<AuroraInstance> getTopology() {
+        return topology;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!started.get() && started.compareAndSet(false, true)) {
+            refreshFuture = scheduledExecutorService.scheduleWithFixedDelay(this::refreshInBackground, 0L, REFRESH_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        final HostAndPort target = writer;
+        final Connection connection;
+        try {
+            connection = connect(target);
+        } catch (SQLException e) {
+            if (!isConnectionError(e)) {
+                throw e;
+            }
+            final HostAndPort newWriter = detectWriter(target);
+            if (newWriter == null || newWriter.equals(target)) {
+                throw e;
+            }
+            return connect(newWriter);
+        }
+        return checkWriter(target, connection);
+    }
+
+    /**
+     * Returns the connection when the target is writable. Otherwise the connection is closed and the
+     * connection is retried on the new writer.
+     *
+     * @param target     the host which was connected to as writer
+     * @param connection the connection to the target
+     * @return the connection to the writer
+     * @throws SQLException when the target is read-only and no other writer is known
+     */
+    private Connection checkWriter(final HostAndPort target, final Connection connection) throws SQLException {
+        boolean writable = false;
+        final HostAndPort newWriter;
+        try {
+            writable = !topologyQuery.isReadOnly(connection);
+            if (writable) {
+                return connection;
+            }
+            newWriter = switchWriter(target, connection);
+        } finally {
+            if (!writable) {
+                connection.close();
+            }
+        }
+        if (newWriter.equals(target)) {
+            throw new SQLException("Writer " + target.getHost() + " is read-only", "HY000", ER_READ_ONLY_MODE);
+        }
+        return connect(newWriter);
+    }
+
+    /**
+     * The pool passes the configured username and password, these are ignored: the password is the
+     * token of the host which is connected to.
+     */
+    @Override
+    public Connection getConnection(final String user, final String password) throws SQLException {
+        return getConnection();
+    }
+
+    /**
+     * @param e the exception
+     * @return true when the exception is caused by an unreachable host, or by a writer which became
+     * read-only
+     */
+    static boolean isConnectionError(final SQLException e) {
+        return (e.getSQLState() != null && e.getSQLState().startsWith(CONNECTION_ERROR_PREFIX))
+                || e.getErrorCode() == ER_OPTION_PREVENTS_STATEMENT
+                || e.getErrorCode() == ER_READ_ONLY_MODE;
+    }
+
+    private Connection connect(final HostAndPort host) throws SQLException {
+        final Properties info = new Properties();
+        info.putAll(properties);
+        info.setProperty("user", username);
+        info.setProperty("password", tokenCache.getToken(signer, host.getHost(), host.getPort(), username, listener, tokenPolicy));
+        final Connection connection = driver.connect(JdbcUrlUtils.replaceHosts(url, host), info);
+        if (connection == null) {
+            throw new SQLException("Driver does not accept " + url, "08001");
+        }
+        return connection;
+    }
+
+    /**
+     * Queries the topology through the first reachable instance, other than the failed host.
+     *
+     * @param failed the host which could not be reached
+     * @return the writer, or null when no instance could be reached
+     */
+    HostAndPort detectWriter(final HostAndPort failed) {
+        topologyLock.lock();
+        try {
+            if (!failed.equals(writer)) {
+                return writer; // detected by another thread
+            }
+            final List<HostAndPort> candidates = new ArrayList<>();
+            for (AuroraInstance instance : topology) {
+                if (!instance.getHostAndPort().equals(failed)) {
+                    candidates.add(instance.getHostAndPort());
+                }
+            }
+            if (!failed.equals(clusterEndpoint)) {
+                candidates.add(clusterEndpoint);
+            }
+            for (HostAndPort candidate : candidates) {
+                try {
+                    refreshTopology(candidate);
+                    return writer;
+                } catch (SQLException | RuntimeException e) {
+                    // try the next instance
+                }
+            }
+            return null;
+        } finally {
+            topologyLock.unlock();
+        }
+    }
+
+    /**
+     * Queries the topology through the connection to a read-only host.
+     *
+     * @param readOnly   the host which turned out to be read-only
+     * @param connection the connection to that host
+     * @return the writer
+     * @throws SQLException when the topology query fails
+     */
+    private HostAndPort switchWriter(final HostAndPort readOnly, final Connection connection) throws SQLException {
+        topologyLock.lock();
+        try {
+            if (readOnly.equals(writer)) {
+                updateTopology(topologyQuery.getInstances(connection));
+            }
+            return writer;
+        } finally {
+            topologyLock.unlock();
+        }
+    }
+
+    /**
+     * Queries the topology through the current writer and switches to the new writer when it changed.
+     *
+     * @throws SQLException when the topology query fails
+     */
+    public void refreshTopology() throws SQLException {
+        refreshTopology(writer);
+    }
+
+    private void refreshTopology(final HostAndPort host) throws SQLException {
+        topologyLock.lock();
+        try {
+            final List<AuroraInstance> instances;
+            try (Connection connection = connect(host)) {
+                instances = topologyQuery.getInstances(connection);
+            }
+            updateTopology(instances);
+        } finally {
+            topologyLock.unlock();
+        }
+    }
+
+    private void updateTopology(final List<AuroraInstance> instances) {
+        for (AuroraInstance instance : instances) {
+            final HostAndPort hostAndPort = instance.getHostAndPort();
+            try {
+                tokenCache.get(signer, hostAndPort.getHost(), hostAndPort.getPort(), username, listener, tokenPolicy);
+            } catch (RuntimeException e) {
+                // failure is recorded in the token metrics, signed on demand
+            }
+            if (instance.isWriter()) {
+                writer = hostAndPort;
+            }
+        }
+        topology = Collections.unmodifiableList(new ArrayList<>(instances));
+    }
+
+    private void refreshInBackground() {
+        try {
+            refreshTopology();
+        } catch (SQLException e) {
+            if (isConnectionError(e)) {
+                detectWriter(writer);
+            }
+        } catch (RuntimeException e) {
+            // keep the previous topology and retry on the next run
+        }
+    }
+
+    /**
+     * Stops the topology refresh.
+     */
+    public void close() {
+        final ScheduledFuture<?> future = refreshFuture;
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(final PrintWriter out) {
+        // not supported
+    }
+
+    @Override
+    public void setLoginTimeout(final int seconds) {
+        // use the connectTimeout of the driver
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return driver.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(final Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(final Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
@@ -0,0 +1,21 @@
+package com.carepay.jdbc.aurora;
+
+import javax.sql.DataSource;
+
+/**
+ * Connection pool for a single instance of a cluster.
+ */
+public interface InstancePool extends AutoCloseable {
+    /**
+     * @return the pooled datasource
+     */
+    DataSource getDataSource();
+
+    /**
+     * @return the number of connections in use, used to select the least loaded reader
+     */
+    int getActiveConnections();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,13 @@
+package com.carepay.jdbc.aurora;
+
+/**
+ * Creates a connection pool for an instance of a cluster.
+ */
+@FunctionalInterface
+public interface InstancePoolFactory {
+    /**
+     * @param instance the instance
+     * @return a new pool which connects to the instance
+     */
+    InstancePool create(AuroraInstance instance);
+}
@@ -0,0 +1,103 @@
+package com.carepay.jdbc.aurora;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Connection which only borrows the physical connection when it is first used, so the read-only flag
+ * set before that can select the pool. Read-only and auto-commit are applied to the physical
+ * connection when it is borrowed.
+ */
+final class LazyConnection implements InvocationHandler {
+    private final Router router;
+    private boolean readOnly;
+    private boolean autoCommit = true;
+    private boolean closed;
+    private Connection target;
+
+    /**
+     * Selects the connection for a read-only or read-write connection.
+     */
+    @FunctionalInterface
+    interface Router {
+        Connection getConnection(boolean readOnly) throws SQLException;
+    }
+
+    private LazyConnection(final Router router) {
+        this.router = router;
+    }
+
+    static Connection create(final Router router) {
+        return (Connection) Proxy.newProxyInstance(LazyConnection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new LazyConnection(router));
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "LazyConnection[" + (target != null ? target : readOnly ? "read-only" : "read-write") + "]";
+            default:
+                break;
+        }
+        if (target == null) {
+            if (method.getName().equals("close")) {
+                closed = true;
+                return null;
+            }
+            if (method.getName().equals("isClosed")) {
+                return closed;
+            }
+            if (closed) {
+                throw new SQLException("Connection is closed", "08003");
+            }
+            if (method.getName().equals("setReadOnly")) {
+                readOnly = (Boolean) args[0];
+                return null;
+            }
+            if (method.getName().equals("isReadOnly")) {
+                return readOnly;
+            }
+            if (method.getName().equals("setAutoCommit")) {
+                autoCommit = (Boolean) args[0];
+                return null;
+            }
+            if (method.getName().equals("getAutoCommit")) {
+                return autoCommit;
+            }
+            if ((method.getName().equals("commit") || method.getName().equals("rollback")) && method.getParameterCount() == 0) {
+                return null; // nothing to commit or roll back yet
+            }
+            target = borrow();
+        }
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private Connection borrow() throws SQLException {
+        final Connection connection = router.getConnection(readOnly);
+        try {
+            if (readOnly) {
+                connection.setReadOnly(true);
+            }
+            if (connection.getAutoCommit() != autoCommit) {
+                connection.setAutoCommit(autoCommit);
+            }
+            return connection;
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.carepay.jdbc.aurora;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Queries the instances of a cluster.
+ */
+@FunctionalInterface
+public interface TopologyQuery {
+    /**
+     * @param connection connection to any instance of the cluster
+     * @return the instances of the cluster
+     * @throws SQLException when the query fails
+     */
+    List<AuroraInstance> getInstances(Connection connection) throws SQLException;
+
+    /**
+     * @param connection connection to the instance which is expected to be the writer
+     * @return true when the instance is read-only, e.g. the old writer after a failover
+     * @throws SQLException when the query fails
+     */
+    default boolean isReadOnly(final Connection connection) throws SQLException {
+        return false;
+    }
+}
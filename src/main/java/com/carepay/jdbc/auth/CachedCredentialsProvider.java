@@ -0,0 +1,153 @@
+package com.carepay.jdbc.auth;
+
+import java.time.Clock;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.carepay.aws.auth.Credentials;
+import com.carepay.aws.auth.CredentialsProvider;
+import com.carepay.jdbc.util.CircuitBreaker;
+
+/**
+ * Caches the credentials of another provider. The credentials are renewed in the background before
+ * they expire, so only the very first lookup waits for the provider (e.g. the profile file or the
+ * instance metadata). Concurrent lookups without credentials share a single fetch.
+ * <p>
+ * The credentials do not include their expiry, so they are renewed after 5 minutes, which is well
+ * within the validity of temporary credentials, and are only used for 15 minutes when renewing fails.
+ * <p>
+ * A failing provider is not called again until a backoff has elapsed (see {@link CircuitBreaker}),
+ * lookups without credentials fail immediately in the meantime.
+ */
+public class CachedCredentialsProvider implements CredentialsProvider {
+    private static final long REFRESH_MILLIS = TimeUnit.MINUTES.toMillis(5L);
+    private static final long EXPIRE_MILLIS = TimeUnit.MINUTES.toMillis(15L);
+
+    private final CredentialsProvider delegate;
+    private final Executor executor;
+    private final Clock clock;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+    private final ReentrantLock fetchLock = new ReentrantLock(); // not synchronized, the provider may block on I/O
+    private volatile Entry entry;
+
+    public CachedCredentialsProvider(final CredentialsProvider delegate, final Executor executor, final Clock clock) {
+        this.delegate = delegate;
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    /**
+     * Gets the cached credentials. Starts a background refresh when they are due for renewal, and
+     * fetches them when there are no (unexpired) credentials yet.
+     *
+     * @return the credentials
+     */
+    @Override
+    public Credentials getCredentials() {
+        final Entry current = entry;
+        final long now = clock.millis();
+        if (current == null || now >= current.expiresAt) {
+            return fetch(current);
+        }
+        if (now >= current.refreshAt) {
+            refreshInBackground();
+        }
+        return current.credentials;
+    }
+
+    /**
+     * Fetches the credentials in the background, e.g. when the application starts, so the first
+     * connection does not wait for them.
+     */
+    public void prefetch() {
+        if (entry == null) {
+            refreshInBackground();
+        }
+    }
+
+    private void refreshInBackground() {
+        if (refreshing.compareAndSet(false, true)) {
+            if (!circuitBreaker.tryAcquire(clock.millis())) {
+                refreshing.set(false);
+                return;
+            }
+            executor.execute(() -> {
+                try {
+                    load();
+                } catch (RuntimeException e) {
+                    // keep the current credentials until they expire, retry after the backoff
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Single-flight fetch: only the first caller fetches, the others wait for its result.
+     */
+    private Credentials fetch(final Entry expired) {
+        fetchLock.lock();
+        try {
+            final Entry current = entry;
+            if (current != expired && current != null && clock.millis() < current.expiresAt) {
+                return current.credentials; // fetched by another thread
+            }
+            circuitBreaker.acquire(clock.millis());
+            return load().credentials;
+        } finally {
+            fetchLock.unlock();
+        }
+    }
+
+    private Entry load() {
+        fetchLock.lock();
+        try {
+            final long now = clock.millis();
+            final Entry loaded;
+            try {
+                loaded = new Entry(delegate.getCredentials(), now + REFRESH_MILLIS, now + EXPIRE_MILLIS);
+            } catch (RuntimeException e) {
+                circuitBreaker.onFailure(now, e);
+                throw e;
+            }
+            circuitBreaker.onSuccess();
+            if (loaded.credentials != null && loaded.credentials.isPresent()) {
+                entry = loaded; // missing credentials are not cached, e.g. while the instance role is attached
+            }
+            return loaded;
+        } finally {
+            fetchLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the cached credentials.
+     */
+    public void clear() {
+        entry = null;
+        circuitBreaker.onSuccess();
+    }
+
+    /**
+     * @return the breaker which guards the provider
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    private static final class Entry {
+        private final Credentials credentials;
+        private final long refreshAt;
+        private final long expiresAt;
+
+        Entry(final Credentials credentials, final long refreshAt, final long expiresAt) {
+            this.credentials = credentials;
+            this.refreshAt = refreshAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.carepay.jdbc.auth;
+
+import java.time.Clock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import com.carepay.aws.auth.CredentialsProvider;
+import com.carepay.aws.auth.RegionProvider;
+import com.carepay.aws.region.DefaultRegionProviderChain;
+import com.carepay.jdbc.util.RefreshScheduler;
+
+/**
+ * JVM-wide cache of AWS credentials per profile, shared by all datasources and driver plugins. The
+ * drivers create a plugin per connection, so without this cache the provider chain (environment,
+ * profile file, instance metadata) would be queried for every connection.
+ */
+public class CredentialsCache {
+    private static final String DEFAULT_CHAIN = "";
+    private static final CredentialsCache INSTANCE = new CredentialsCache(
+            profile -> new ProfileCredentialsProvider(DEFAULT_CHAIN.equals(profile) ? null : profile),
+            new DefaultRegionProviderChain(), RefreshScheduler.getInstance(), Clock.systemUTC());
+
+    private final Function<String, CredentialsProvider> providerFactory;
+    private final RegionProvider regionProvider;
+    private final Executor executor;
+    private final Clock clock;
+    private final ConcurrentMap<String, CachedCredentialsProvider> providers = new ConcurrentHashMap<>();
+    private volatile String region;
+
+    /**
+     * @param providerFactory creates the provider for a profile, or for the default chain (empty profile)
+     * @param regionProvider  provides the region
+     * @param executor        runs the background refresh
+     * @param clock           the clock
+     */
+    public CredentialsCache(final Function<String, CredentialsProvider> providerFactory, final RegionProvider regionProvider,
+                            final Executor executor, final Clock clock) {
+        this.providerFactory = providerFactory;
+        this.regionProvider = regionProvider;
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    /**
+     * @return the shared credentials cache
+     */
+    public static CredentialsCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the cached provider for the profile. The credentials are fetched in the background when the
+     * provider is created.
+     *
+     * @param profile the profile name, or null for the default provider chain
+     * @return the cached provider
+     */
+    public CredentialsProvider getCredentialsProvider(final String profile) {
+        final String key = profile != null ? profile : DEFAULT_CHAIN;
+        CachedCredentialsProvider provider = providers.get(key);
+        if (provider == null) {
+            provider = providers.computeIfAbsent(key, k -> new CachedCredentialsProvider(providerFactory.apply(k), executor, clock));
+            provider.prefetch();
+        }
+        return provider;
+    }
+
+    /**
+     * @return provider of the region, which is resolved once
+     */
+    public RegionProvider getRegionProvider() {
+        return this::getRegion;
+    }
+
+    private String getRegion() {
+        String current = region;
+        if (current == null) {
+            current = regionProvider.getRegion();
+            region = current;
+        }
+        return current;
+    }
+
+    /**
+     * Removes all cached credentials and the region.
+     */
+    public void clear() {
+        providers.clear();
+        region = null;
+    }
+}
@@ -0,0 +1,65 @@
+package com.carepay.jdbc.auth;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import com.carepay.aws.auth.Credentials;
+import com.carepay.aws.auth.CredentialsProvider;
+import com.carepay.aws.auth.DefaultCredentialsProviderChain;
+
+/**
+ * Resolves the credentials of a named profile through the provider chain of carepool-aws, so a
+ * profile supports everything the chain does (<code>~/.aws/config</code>, roles, credential
+ * processes), just like the <code>aws.profile</code> system property. Unlike that property, the
+ * profile only applies to the connections which use it: the property is set while the chain
+ * resolves the credentials of this profile, and restored afterwards.
+ */
+public class ProfileCredentialsProvider implements CredentialsProvider {
+    static final String AWS_PROFILE = "aws.profile";
+
+    /**
+     * Serializes the resolutions which read <code>aws.profile</code>, including the default chain
+     */
+    private static final ReentrantLock LOCK = new ReentrantLock();
+
+    private final String profile;
+    private final Supplier<CredentialsProvider> chainFactory;
+
+    /**
+     * @param profile the profile name, or null for the default chain
+     */
+    public ProfileCredentialsProvider(final String profile) {
+        this(profile, DefaultCredentialsProviderChain::new);
+    }
+
+    ProfileCredentialsProvider(final String profile, final Supplier<CredentialsProvider> chainFactory) {
+        this.profile = profile;
+        this.chainFactory = chainFactory;
+    }
+
+    /**
+     * @return the credentials of the profile
+     */
+    @Override
+    public Credentials getCredentials() {
+        LOCK.lock();
+        try {
+            if (profile == null) {
+                return chainFactory.get().getCredentials();
+            }
+            final String previous = System.getProperty(AWS_PROFILE);
+            System.setProperty(AWS_PROFILE, profile);
+            try {
+                return chainFactory.get().getCredentials();
+            } finally {
+                if (previous != null) {
+                    System.setProperty(AWS_PROFILE, previous);
+                } else {
+                    System.clearProperty(AWS_PROFILE);
+                }
+            }
+        } finally {
+            LOCK.unlock();
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.carepay.jdbc.driver;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.carepay.aws.auth.CredentialsProvider;
+import com.carepay.jdbc.RdsAWS4Signer;
+import com.carepay.jdbc.auth.CredentialsCache;
+import com.carepay.jdbc.limit.ConnectionRateLimiter;
+import com.carepay.jdbc.metrics.TokenMetrics;
+import com.carepay.jdbc.pem.PemKeyStoreProvider;
+import com.carepay.jdbc.token.Token;
+import com.carepay.jdbc.token.TokenCache;
+import com.carepay.jdbc.token.TokenPolicy;
+import com.carepay.jdbc.util.HostAndPort;
+import com.carepay.jdbc.util.JdbcUrlUtils;
+import com.carepay.jdbc.util.RefreshScheduler;
+
+import static com.carepay.jdbc.RdsIamConstants.CA_BUNDLE_URL;
+import static com.carepay.jdbc.RdsIamConstants.PEM;
+import static com.carepay.jdbc.RdsIamConstants.RDS_IAM_SOCKET_FACTORY;
+import static com.carepay.jdbc.RdsIamConstants.REQUIRE_SSL;
+import static com.carepay.jdbc.RdsIamConstants.SOCKET_FACTORY;
+import static com.carepay.jdbc.RdsIamConstants.SSL_MODE;
+import static com.carepay.jdbc.RdsIamConstants.TRUST_CERTIFICATE_KEY_STORE_TYPE;
+import static com.carepay.jdbc.RdsIamConstants.TRUST_CERTIFICATE_KEY_STORE_URL;
+import static com.carepay.jdbc.RdsIamConstants.USE_SSL;
+import static com.carepay.jdbc.RdsIamConstants.VERIFY_CA;
+import static com.carepay.jdbc.RdsIamConstants.VERIFY_SERVER_CERTIFICATE;
+
+/**
+ * JDBC driver for URLs like <code>jdbc:rds-iam:mysql://...</code> and <code>jdbc:rds-iam:mariadb://...</code>.
+ * The IAM token is taken from the shared token cache and passed as password, together with the TLS
+ * settings for the RDS CA bundle, to the driver for the URL without the <code>rds-iam:</code> prefix.
+ * The token is renewed in the background, so any connection pool (or no pool at all) connects
+ * without waiting for signing.
+ */
+public class RdsIamDriver implements Driver {
+    public static final String URL_PREFIX = "jdbc:rds-iam:";
+
+    private static final String JDBC_PREFIX = "jdbc:";
+    private static final String MARIADB_PREFIX = "jdbc:mariadb:";
+    private static final String METRICS_NAME = "driver";
+    private static final String USER = "user";
+    private static final String PASSWORD = "password";
+    private static final String AWS_PROFILE = "awsProfile";
+    private static final long RETRY_MILLIS = TimeUnit.SECONDS.toMillis(30L);
+    private static final long MIN_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(1L);
+    /**
+     * a token which is not used to connect for this long is no longer renewed
+     */
+    private static final long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(30L);
+    /**
+     * the maximum number of tokens renewed in the background, more are signed on connect
+     */
+    private static final int MAX_REFRESHED_TOKENS = 256;
+    /**
+     * properties of this driver, which are not passed to the database driver
+     */
+    private static final String[] DRIVER_PROPERTIES = {AWS_PROFILE,
+            TokenPolicy.TOKEN_LIFETIME_SECONDS, TokenPolicy.TOKEN_REFRESH_LEAD_SECONDS, TokenPolicy.TOKEN_REFRESH_JITTER_SECONDS,
+            TokenPolicy.TOKEN_STALE_WHILE_REVALIDATE,
+            ConnectionRateLimiter.CONNECTION_RATE_LIMIT, ConnectionRateLimiter.CONNECTION_RATE_BURST, ConnectionRateLimiter.CONNECTION_RATE_TIMEOUT_MILLIS};
+
+    private static final RdsIamDriver INSTANCE = new RdsIamDriver();
+
+    static {
+        try {
+            DriverManager.registerDriver(INSTANCE);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    private final RdsAWS4Signer signer;
+    private final TokenCache tokenCache;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final TokenMetrics tokenMetrics;
+    // the driver is loaded by DriverManager in every application, so the defaults are created on first connect
+    private final boolean defaults;
+    private final ConcurrentMap<String, RdsAWS4Signer> profileSigners = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Refresh> refreshes = new ConcurrentHashMap<>();
+
+    /**
+     * Uses the shared credentials, token cache and refresh scheduler.
+     */
+    public RdsIamDriver() {
+        this.signer = null;
+        this.tokenCache = null;
+        this.scheduledExecutorService = null;
+        this.tokenMetrics = null;
+        this.defaults = true;
+    }
+
+    public RdsIamDriver(final RdsAWS4Signer signer, final TokenCache tokenCache, final ScheduledExecutorService scheduledExecutorService) {
+        this.signer = signer;
+        this.tokenCache = tokenCache;
+        this.scheduledExecutorService = scheduledExecutorService;
+        this.tokenMetrics = new TokenMetrics();
+        this.defaults = false;
+    }
+
+    /**
+     * @return the token metrics of this driver
+     */
+    public TokenMetrics getTokenMetrics() {
+        return defaults ? Defaults.TOKEN_METRICS : tokenMetrics;
+    }
+
+    @Override
+    public boolean acceptsURL(final String url) {
+        return url != null && url.startsWith(URL_PREFIX);
+    }
+
+    /**
+     * Connects using the driver for the URL without the <code>rds-iam:</code> prefix. The user is taken
+     * from the <code>user</code> property or URL parameter, the optional <code>awsProfile</code> selects
+     * the AWS profile, and <code>tokenLifetimeSeconds</code>, <code>tokenRefreshLeadSeconds</code>,
+     * <code>tokenRefreshJitterSeconds</code> and <code>tokenStaleWhileRevalidate</code> control the token
+     * renewal. TLS settings which are already
+     * set are not overridden.
+     */
+    @Override
+    public Connection connect(final String url, final Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        PemKeyStoreProvider.register();
+        final String targetUrl = getTargetUrl(url);
+        final Properties properties = new Properties();
+        if (info != null) {
+            properties.putAll(info);
+        }
+        final String username = getProperty(properties, targetUrl, USER);
+        if (username == null) {
+            throw new SQLException("No user specified for " + url);
+        }
+        final HostAndPort hostAndPort = JdbcUrlUtils.extractHosts(targetUrl).get(0);
+        final String profile = getProperty(properties, targetUrl, AWS_PROFILE);
+        final RdsAWS4Signer profileSigner = getSigner(profile);
+        final TokenPolicy tokenPolicy;
+        final ConnectionRateLimiter limiter;
+        final long limiterTimeoutMillis;
+        try {
+            limiter = ConnectionRateLimiter.forEndpoint(hostAndPort,
+                    getProperty(properties, targetUrl, ConnectionRateLimiter.CONNECTION_RATE_LIMIT),
+                    getProperty(properties, targetUrl, ConnectionRateLimiter.CONNECTION_RATE_BURST));
+            limiterTimeoutMillis = ConnectionRateLimiter.parseTimeout(getProperty(properties, targetUrl, ConnectionRateLimiter.CONNECTION_RATE_TIMEOUT_MILLIS));
+            tokenPolicy = TokenPolicy.of(
+                    getProperty(properties, targetUrl, TokenPolicy.TOKEN_LIFETIME_SECONDS),
+                    getProperty(properties, targetUrl, TokenPolicy.TOKEN_REFRESH_LEAD_SECONDS),
+                    getProperty(properties, targetUrl, TokenPolicy.TOKEN_REFRESH_JITTER_SECONDS))
+                    .withStaleWhileRevalidate(getProperty(properties, targetUrl, TokenPolicy.TOKEN_STALE_WHILE_REVALIDATE));
+        } catch (RuntimeException e) {
+            throw new SQLException("Invalid configuration for " + hostAndPort + ": " + e.getMessage(), e);
+        }
+        if (limiter != null) {
+            limiter.acquire(limiterTimeoutMillis, TimeUnit.MILLISECONDS); // before signing, a rejected connection needs no token
+        }
+        final Token token;
+        try {
+            token = getTokenCache().get(profileSigner, hostAndPort.getHost(), hostAndPort.getPort(), username, getTokenMetrics(), tokenPolicy);
+            properties.setProperty(PASSWORD, token.getValue());
+        } catch (RuntimeException e) {
+            throw new SQLException("Unable to create IAM token for " + hostAndPort + ": " + e.getMessage(), e);
+        }
+        properties.setProperty(USER, username);
+        for (String name : DRIVER_PROPERTIES) {
+            properties.remove(name);
+        }
+        final Driver driver = getDriver(targetUrl);
+        addTlsProperties(targetUrl, properties, driver);
+        scheduleRefresh(profileSigner, hostAndPort, username, profile, tokenPolicy, token);
+        return driver.connect(targetUrl, properties);
+    }
+
+    private RdsAWS4Signer getSigner(final String profile) {
+        final RdsAWS4Signer defaultSigner = defaults ? Defaults.SIGNER : signer;
+        if (profile == null) {
+            return defaultSigner;
+        }
+        return profileSigners.computeIfAbsent(profile, p -> {
+            final CredentialsProvider credentialsProvider = CredentialsCache.getInstance().getCredentialsProvider(p);
+            return new RdsAWS4Signer(credentialsProvider, CredentialsCache.getInstance().getRegionProvider(), defaultSigner.getClock());
+        });
+    }
+
+    private TokenCache getTokenCache() {
+        return defaults ? TokenCache.getInstance() : tokenCache;
+    }
+
+    /**
+     * Renews the token at its renewal deadline, once for every host, port, user, profile and token
+     * policy. The renewal stops when the token has not been used to connect for a while.
+     */
+    private void scheduleRefresh(final RdsAWS4Signer tokenSigner, final HostAndPort hostAndPort, final String username, final String profile,
+                                 final TokenPolicy tokenPolicy, final Token token) {
+        final String key = hostAndPort + "/" + username + "/" + profile + "/" + tokenPolicy;
+        final Refresh existing = refreshes.get(key);
+        if (existing != null) {
+            existing.lastUsed = tokenSigner.currentTimeMillis();
+        } else if (refreshes.size() < MAX_REFRESHED_TOKENS) {
+            final Refresh refresh = new Refresh(key, tokenSigner, hostAndPort, username, tokenPolicy, token);
+            if (refreshes.putIfAbsent(key, refresh) == null) {
+                refresh.schedule(refresh.getDelayMillis());
+            }
+        }
+    }
+
+    /**
+     * @return the number of tokens which are renewed in the background
+     */
+    int getRefreshCount() {
+        return refreshes.size();
+    }
+
+    private static void addTlsProperties(final String targetUrl, final Properties properties, final Driver driver) {
+        if (targetUrl.startsWith(MARIADB_PREFIX)) {
+            properties.putIfAbsent("useSsl", "true");
+            properties.putIfAbsent("serverSslCert", CA_BUNDLE_URL);
+        } else {
+            properties.putIfAbsent(USE_SSL, "true");     // for MySQL 5.x and before
+            properties.putIfAbsent(REQUIRE_SSL, "true"); // for MySQL 5.x and before
+            properties.putIfAbsent(VERIFY_SERVER_CERTIFICATE, "true");
+            properties.putIfAbsent(SSL_MODE, VERIFY_CA);       // for MySQL 8.x and higher
+            properties.putIfAbsent(TRUST_CERTIFICATE_KEY_STORE_URL, CA_BUNDLE_URL);
+            properties.putIfAbsent(TRUST_CERTIFICATE_KEY_STORE_TYPE, PEM);
+            if (JdbcUrlUtils.isConnectorJ(driver.getClass().getName(), targetUrl)) {
+                properties.putIfAbsent(SOCKET_FACTORY, RDS_IAM_SOCKET_FACTORY);
+            }
+        }
+    }
+
+    /**
+     * Gets a property, or the URL parameter when the property is not set.
+     */
+    private static String getProperty(final Properties properties, final String url, final String name) {
+        final String value = properties.getProperty(name);
+        return value != null ? value : JdbcUrlUtils.extractParameter(url, name);
+    }
+
+    static String getTargetUrl(final String url) {
+        return JDBC_PREFIX + url.substring(URL_PREFIX.length());
+    }
+
+    /**
+     * Finds the driver which accepts the URL without the <code>rds-iam:</code> prefix.
+     *
+     * @param targetUrl the URL of the database
+     * @return the registered driver
+     * @throws SQLException when no driver accepts the URL
+     */
+    protected Driver getDriver(final String targetUrl) throws SQLException {
+        return DriverManager.getDriver(targetUrl);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(final String url, final Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return new DriverPropertyInfo[0];
+        }
+        final String targetUrl = getTargetUrl(url);
+        return getDriver(targetUrl).getPropertyInfo(targetUrl, info);
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    /**
+     * Renews one token and schedules the next run at the renewal deadline of the renewed token, so a
+     * short-lived token does not expire between two runs.
+     */
+    private final class Refresh implements Runnable {
+        private final String key;
+        private final RdsAWS4Signer tokenSigner;
+        private final HostAndPort hostAndPort;
+        private final String username;
+        private final TokenPolicy tokenPolicy;
+        private volatile Token token;
+        private volatile long lastUsed;
+
+        Refresh(final String key, final RdsAWS4Signer tokenSigner, final HostAndPort hostAndPort, final String username,
+                final TokenPolicy tokenPolicy, final Token token) {
+            this.key = key;
+            this.tokenSigner = tokenSigner;
+            this.hostAndPort = hostAndPort;
+            this.username = username;
+            this.tokenPolicy = tokenPolicy;
+            this.token = token;
+            this.lastUsed = tokenSigner.currentTimeMillis();
+        }
+
+        @Override
+        public void run() {
+            if (tokenSigner.currentTimeMillis() - lastUsed > IDLE_MILLIS) {
+                refreshes.remove(key, this); // signed on the next connect
+                return;
+            }
+            long delayMillis;
+            try {
+                token = getTokenCache().get(tokenSigner, hostAndPort.getHost(), hostAndPort.getPort(), username, getTokenMetrics(), tokenPolicy);
+                delayMillis = getDelayMillis();
+            } catch (RuntimeException e) {
+                // failure is recorded in the token metrics, connect signs on demand
+                delayMillis = getRetryMillis();
+            }
+            schedule(delayMillis);
+        }
+
+        void schedule(final long delayMillis) {
+            final ScheduledExecutorService executor = defaults ? RefreshScheduler.getInstance() : scheduledExecutorService;
+            executor.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * A stale token (stale-while-revalidate) is being renewed in the background, so it is checked
+         * again after the retry delay.
+         */
+        long getDelayMillis() {
+            final long now = tokenSigner.currentTimeMillis();
+            return token.isFresh(now) ? Math.max(token.getRefreshAt() - now, 0L) : getRetryMillis();
+        }
+
+        /**
+         * @return the retry delay, shortened so a short-lived token is retried before it expires
+         */
+        private long getRetryMillis() {
+            final long now = tokenSigner.currentTimeMillis();
+            if (!token.isValid(now)) {
+                return RETRY_MILLIS;
+            }
+            return Math.max(MIN_RETRY_MILLIS, Math.min(RETRY_MILLIS, (token.getExpiresAt() - now) / 2L));
+        }
+    }
+
+    private static class Defaults {
+        private static final RdsAWS4Signer SIGNER = new RdsAWS4Signer();
+        private static final TokenMetrics TOKEN_METRICS = TokenMetrics.getShared(METRICS_NAME);
+    }
+}
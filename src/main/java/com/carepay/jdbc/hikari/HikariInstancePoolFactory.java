@@ -0,0 +1,59 @@
+package com.carepay.jdbc.hikari;
+
+import javax.sql.DataSource;
+
+import com.carepay.jdbc.aurora.AuroraInstance;
+import com.carepay.jdbc.aurora.InstancePool;
+import com.carepay.jdbc.aurora.InstancePoolFactory;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+/**
+ * Creates a Hikari pool per Aurora instance, with the configuration of the cluster datasource. The
+ * token of the instance is signed when the pool is created, without waiting for the connection rate
+ * limit.
+ */
+public class HikariInstancePoolFactory implements InstancePoolFactory {
+    private final RdsIamHikariDataSource template;
+
+    /**
+     * @param template the datasource of the cluster endpoint
+     */
+    public HikariInstancePoolFactory(final RdsIamHikariDataSource template) {
+        this.template = template;
+    }
+
+    @Override
+    public InstancePool create(final AuroraInstance instance) {
+        final RdsIamHikariDataSource dataSource = template.createInstanceDataSource(instance.getId(), instance.getHostAndPort());
+        try {
+            dataSource.presignToken();
+        } catch (RuntimeException e) {
+            // the token is signed when the pool connects
+        }
+        return new HikariInstancePool(dataSource);
+    }
+
+    private static class HikariInstancePool implements InstancePool {
+        private final RdsIamHikariDataSource dataSource;
+
+        HikariInstancePool(final RdsIamHikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Override
+        public DataSource getDataSource() {
+            return dataSource;
+        }
+
+        @Override
+        public int getActiveConnections() {
+            final HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+            return pool != null ? pool.getActiveConnections() : 0;
+        }
+
+        @Override
+        public void close() {
+            dataSource.close();
+        }
+    }
+}
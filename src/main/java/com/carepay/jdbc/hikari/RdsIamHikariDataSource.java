@@ -1,48 +1,118 @@
 package com.carepay.jdbc.hikari;
 
-import java.net.URL;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
 import java.time.Clock;
-import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.carepay.jdbc.RdsAWS4Signer;
+import com.carepay.jdbc.aurora.AuroraTopologyQuery;
+import com.carepay.jdbc.aurora.FailoverDataSource;
+import com.carepay.jdbc.aurora.TopologyQuery;
+import com.carepay.jdbc.limit.ConnectionRateLimiter;
+import com.carepay.jdbc.metrics.TokenMetrics;
 import com.carepay.jdbc.pem.PemKeyStoreProvider;
+import com.carepay.jdbc.token.Token;
+import com.carepay.jdbc.token.TokenCache;
+import com.carepay.jdbc.token.TokenPolicy;
+import com.carepay.jdbc.util.HostAndPort;
 import com.carepay.jdbc.util.JdbcUrlUtils;
+import com.carepay.jdbc.util.PasswordPlugins;
+import com.carepay.jdbc.util.RefreshScheduler;
+import com.carepay.jdbc.util.WarmUp;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
 
 import static com.carepay.jdbc.RdsIamConstants.CA_BUNDLE_URL;
 import static com.carepay.jdbc.RdsIamConstants.PEM;
+import static com.carepay.jdbc.RdsIamConstants.RDS_IAM_SOCKET_FACTORY;
 import static com.carepay.jdbc.RdsIamConstants.REQUIRE_SSL;
+import static com.carepay.jdbc.RdsIamConstants.SOCKET_FACTORY;
 import static com.carepay.jdbc.RdsIamConstants.SSL_MODE;
 import static com.carepay.jdbc.RdsIamConstants.TRUST_CERTIFICATE_KEY_STORE_TYPE;
 import static com.carepay.jdbc.RdsIamConstants.TRUST_CERTIFICATE_KEY_STORE_URL;
 import static com.carepay.jdbc.RdsIamConstants.USE_SSL;
 import static com.carepay.jdbc.RdsIamConstants.VERIFY_CA;
 import static com.carepay.jdbc.RdsIamConstants.VERIFY_SERVER_CERTIFICATE;
-import static java.time.ZoneOffset.UTC;
 
 /**
- * DataSource based on Hikari connection pool that supports IAM authentication to RDS
+ * DataSource based on Hikari connection pool that supports IAM authentication to RDS. By default the
+ * token is fetched when Hikari creates a new connection. When background token refresh is enabled, a
+ * scheduled task renews the token ahead of expiry and pushes it into the running pool, so creating a
+ * connection never waits for signing.
  */
 public class RdsIamHikariDataSource extends HikariDataSource {
 
-    static {
-        PemKeyStoreProvider.register();
-    }
+    private static final long RETRY_MILLIS = TimeUnit.SECONDS.toMillis(30L);
+    private static final long MIN_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(1L);
+    private static final int DEFAULT_WARM_UP_PARALLELISM = 4;
+    private static final int DEFAULT_POOL_SIZE = 10;
 
     private final RdsAWS4Signer signer;
-    private final Clock clock;
+    private final TokenCache tokenCache;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final AtomicBoolean refreshStarted = new AtomicBoolean();
+    private final AtomicBoolean metricsRegistered = new AtomicBoolean();
+    private final AtomicBoolean warmUpStarted = new AtomicBoolean();
+    private final ReentrantLock startLock = new ReentrantLock();
+    private final CompletableFuture<Void> readiness = new CompletableFuture<>();
+    private final TokenMetrics tokenMetrics = new TokenMetrics();
+    private volatile boolean backgroundTokenRefresh;
+    private volatile boolean warmUp;
+    private volatile int warmUpParallelism = DEFAULT_WARM_UP_PARALLELISM;
+    private volatile Token pushedToken;
+    private volatile boolean failover;
+    private volatile FailoverDataSource failoverDataSource;
+    private volatile TopologyQuery topologyQuery;
+    private volatile Integer tokenLifetimeSeconds;
+    private volatile Integer tokenRefreshLeadSeconds;
+    private volatile Integer tokenRefreshJitterSeconds;
+    private volatile boolean tokenStaleWhileRevalidate;
+    private volatile TokenPolicy tokenPolicy;
+    private volatile double connectionRateLimit;
+    private volatile int connectionRateBurst;
+    private volatile ScheduledFuture<?> refreshFuture;
+    private volatile ScheduledFuture<?> secondaryFuture;
     protected String host;
     protected int port;
-    private LocalDateTime expiryDate;
-    private String authToken;
+    protected List<HostAndPort> hosts;
 
     public RdsIamHikariDataSource() {
-        this(new RdsAWS4Signer(), Clock.systemUTC());
+        this(new RdsAWS4Signer());
     }
 
+    /**
+     * @param signer the signer used to create tokens, its clock determines when tokens are renewed
+     */
+    public RdsIamHikariDataSource(final RdsAWS4Signer signer) {
+        this(signer, TokenCache.getInstance());
+    }
+
+    /**
+     * @param signer the signer used to create tokens
+     * @param clock  ignored, tokens are renewed based on the clock of the signer
+     * @deprecated the clock is ignored, use {@link #RdsIamHikariDataSource(RdsAWS4Signer)}
+     */
+    @Deprecated
     public RdsIamHikariDataSource(final RdsAWS4Signer signer, final Clock clock) {
+        this(signer);
+    }
+
+    public RdsIamHikariDataSource(final RdsAWS4Signer signer, final TokenCache tokenCache) {
+        this(signer, tokenCache, RefreshScheduler.getInstance());
+    }
+
+    public RdsIamHikariDataSource(final RdsAWS4Signer signer, final TokenCache tokenCache, final ScheduledExecutorService scheduledExecutorService) {
         this.signer = signer;
-        this.clock = clock;
+        this.tokenCache = tokenCache;
+        this.scheduledExecutorService = scheduledExecutorService;
         addDataSourceProperty(USE_SSL, "true");     // for MySQL 5.x and before
         addDataSourceProperty(REQUIRE_SSL, "true"); // for MySQL 5.x and before
         addDataSourceProperty(VERIFY_SERVER_CERTIFICATE, "true");
@@ -51,32 +121,524 @@ public RdsIamHikariDataSource(final RdsAWS4Signer signer, final Clock clock) {
         addDataSourceProperty(TRUST_CERTIFICATE_KEY_STORE_TYPE, PEM);
     }
 
+    /**
+     * Extracts the hosts from the JDBC URL. The token for the first host is used as password. When the
+     * URL contains more hosts (failover, replication or Aurora), their tokens are signed up front and
+     * renewed in the background, so the password plugin of a driver that fails over finds them in the
+     * shared token cache.
+     */
     protected void extractHostFromUrl() {
-        final URL uri = JdbcUrlUtils.extractJdbcURL(getJdbcUrl());
-        this.host = uri.getHost();
-        this.port = uri.getPort();
+        final List<HostAndPort> list = JdbcUrlUtils.extractHosts(getJdbcUrl());
+        this.hosts = list;
+        this.port = list.get(0).getPort();
+        this.host = list.get(0).getHost();
+        if (list.size() > 1) {
+            scheduledExecutorService.execute(this::refreshSecondaryHosts);
+        }
+    }
+
+    /**
+     * Renews the tokens of the other hosts and schedules the next run at the first renewal deadline.
+     */
+    private void refreshSecondaryHosts() {
+        final long delayMillis = presignSecondaryHosts(Long.MAX_VALUE);
+        if (!isClosed()) {
+            secondaryFuture = scheduledExecutorService.schedule(this::refreshSecondaryHosts, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Signs the tokens for all hosts except the first one.
+     */
+    protected void presignSecondaryHosts() {
+        presignSecondaryHosts(Long.MAX_VALUE);
+    }
+
+    /**
+     * @return the delay until the first of these tokens is due for renewal, at most the given delay
+     */
+    private long presignSecondaryHosts(final long delayMillis) {
+        long delay = delayMillis;
+        for (HostAndPort hostAndPort : hosts.subList(1, hosts.size())) {
+            try {
+                final Token token = tokenCache.get(signer, hostAndPort.getHost(), hostAndPort.getPort(), getUsername(), tokenMetrics, getTokenPolicy());
+                delay = Math.min(delay, getDelayMillis(token));
+            } catch (RuntimeException e) {
+                // failure is recorded in the token metrics, the password plugin signs on demand meanwhile
+                delay = Math.min(delay, RETRY_MILLIS);
+            }
+        }
+        return delay;
+    }
+
+    public boolean isBackgroundTokenRefresh() {
+        return backgroundTokenRefresh;
+    }
+
+    /**
+     * Enables renewing the token in the background. Must be set before the pool is started.
+     *
+     * @param backgroundTokenRefresh true to renew the token using a scheduled task
+     */
+    public void setBackgroundTokenRefresh(final boolean backgroundTokenRefresh) {
+        this.backgroundTokenRefresh = backgroundTokenRefresh;
+    }
+
+    public Integer getTokenLifetimeSeconds() {
+        return tokenLifetimeSeconds;
+    }
+
+    /**
+     * @param tokenLifetimeSeconds the validity of the token (<code>X-Amz-Expires</code>), at most 900 seconds
+     */
+    public void setTokenLifetimeSeconds(final Integer tokenLifetimeSeconds) {
+        this.tokenLifetimeSeconds = tokenLifetimeSeconds;
+        this.tokenPolicy = null;
+    }
+
+    public Integer getTokenRefreshLeadSeconds() {
+        return tokenRefreshLeadSeconds;
+    }
+
+    /**
+     * @param tokenRefreshLeadSeconds the token is renewed this many seconds before it expires, by default after
+     *                                two thirds of its lifetime
+     */
+    public void setTokenRefreshLeadSeconds(final Integer tokenRefreshLeadSeconds) {
+        this.tokenRefreshLeadSeconds = tokenRefreshLeadSeconds;
+        this.tokenPolicy = null;
+    }
+
+    public Integer getTokenRefreshJitterSeconds() {
+        return tokenRefreshJitterSeconds;
+    }
+
+    /**
+     * @param tokenRefreshJitterSeconds the token is renewed up to this many seconds earlier, at random, to spread
+     *                                  the renewals of applications which were started at the same time
+     */
+    public void setTokenRefreshJitterSeconds(final Integer tokenRefreshJitterSeconds) {
+        this.tokenRefreshJitterSeconds = tokenRefreshJitterSeconds;
+        this.tokenPolicy = null;
+    }
+
+    public boolean isTokenStaleWhileRevalidate() {
+        return tokenStaleWhileRevalidate;
+    }
+
+    /**
+     * @param tokenStaleWhileRevalidate serve a token which is due for renewal until it expires, while it is renewed
+     *                                  in the background, so new connections don't wait for the credentials
+     */
+    public void setTokenStaleWhileRevalidate(final boolean tokenStaleWhileRevalidate) {
+        this.tokenStaleWhileRevalidate = tokenStaleWhileRevalidate;
+        this.tokenPolicy = null;
+    }
+
+    /**
+     * @return the token lifetime and renewal deadline of this datasource
+     * @throws IllegalArgumentException when the lead time and jitter exceed the lifetime
+     */
+    public TokenPolicy getTokenPolicy() {
+        TokenPolicy policy = tokenPolicy;
+        if (policy == null) {
+            policy = TokenPolicy.of(tokenLifetimeSeconds, tokenRefreshLeadSeconds, tokenRefreshJitterSeconds)
+                    .withStaleWhileRevalidate(tokenStaleWhileRevalidate);
+            tokenPolicy = policy;
+        }
+        return policy;
+    }
+
+    public double getConnectionRateLimit() {
+        return connectionRateLimit;
+    }
+
+    /**
+     * Limits the rate of new connections to the endpoint, shared by all datasources in the JVM with the
+     * same limit. Connections which exceed the rate wait for their turn, up to <code>connectionTimeout</code>.
+     *
+     * @param connectionRateLimit the maximum number of new connections per second, 0 for no limit
+     */
+    public void setConnectionRateLimit(final double connectionRateLimit) {
+        this.connectionRateLimit = connectionRateLimit;
+    }
+
+    public int getConnectionRateBurst() {
+        return connectionRateBurst;
+    }
+
+    /**
+     * @param connectionRateBurst the number of connections opened at once before the rate limit applies,
+     *                            0 for one second worth of connections
+     */
+    public void setConnectionRateBurst(final int connectionRateBurst) {
+        this.connectionRateBurst = connectionRateBurst;
+    }
+
+    /**
+     * @return the connection rate limiter of the endpoint, or null when the rate is not limited
+     */
+    public ConnectionRateLimiter getConnectionRateLimiter() {
+        if (connectionRateLimit <= 0.0) {
+            return null;
+        }
+        if (host == null) {
+            extractHostFromUrl();
+        }
+        return ConnectionRateLimiter.forEndpoint(hosts.get(0), connectionRateLimit, connectionRateBurst);
+    }
+
+    public boolean isFailover() {
+        return failover;
+    }
+
+    /**
+     * Enables failover mode for Aurora: connections are made to the writer instance by its hostname,
+     * and a writer failover is detected from connection errors, without waiting for the DNS of the
+     * cluster endpoint. Must be set before the pool is started.
+     *
+     * @param failover true to connect using a {@link FailoverDataSource}
+     */
+    public void setFailover(final boolean failover) {
+        this.failover = failover;
+    }
+
+    public TopologyQuery getTopologyQuery() {
+        return topologyQuery;
+    }
+
+    /**
+     * @param topologyQuery the topology query used in failover mode, defaults to {@link AuroraTopologyQuery}
+     */
+    public void setTopologyQuery(final TopologyQuery topologyQuery) {
+        this.topologyQuery = topologyQuery;
+    }
+
+    /**
+     * @return the failover datasource, or null when failover mode is disabled or the pool is not started
+     */
+    public FailoverDataSource getFailoverDataSource() {
+        return failoverDataSource;
+    }
+
+    private void startFailover() throws SQLException {
+        startLock.lock();
+        try {
+            if (failoverDataSource == null) {
+                if (host == null) {
+                    extractHostFromUrl();
+                }
+                final FailoverDataSource dataSource = new FailoverDataSource(FailoverDataSource.loadDriver(getDriverClassName(), getJdbcUrl()),
+                        getJdbcUrl(), getDataSourceProperties(), getUsername(), signer, tokenCache, tokenMetrics,
+                        topologyQuery != null ? topologyQuery : new AuroraTopologyQuery(hosts.get(0)), scheduledExecutorService);
+                dataSource.setTokenPolicy(getTokenPolicy());
+                setDataSource(dataSource);
+                failoverDataSource = dataSource;
+            }
+        } finally {
+            startLock.unlock();
+        }
+    }
+
+    public boolean isWarmUp() {
+        return warmUp;
+    }
+
+    /**
+     * Enables warm-up: when the pool is started, the token is pre-signed and <code>minimumIdle</code>
+     * connections are borrowed in parallel. Hikari opens new connections on a single thread, so
+     * connections are still created one after the other, but the readiness signal only completes once
+     * all of them are open.
+     *
+     * @param warmUp true to warm up the pool
+     */
+    public void setWarmUp(final boolean warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    public int getWarmUpParallelism() {
+        return warmUpParallelism;
+    }
+
+    /**
+     * @param warmUpParallelism the maximum number of connections borrowed at the same time during warm-up
+     */
+    public void setWarmUpParallelism(final int warmUpParallelism) {
+        this.warmUpParallelism = warmUpParallelism;
+    }
+
+    /**
+     * Readiness signal, e.g. for a health check. Starts the pool and the warm-up when they were not
+     * started yet.
+     *
+     * @return completes when the warm-up has finished, or immediately when warm-up is disabled
+     */
+    public CompletableFuture<Void> getReadiness() {
+        if (!warmUp) {
+            return CompletableFuture.completedFuture(null);
+        }
+        startWarmUp();
+        return readiness;
+    }
+
+    private void startWarmUp() {
+        if (warmUpStarted.compareAndSet(false, true)) {
+            WarmUp.openConnections(this::fetchToken, this::getConnection, getWarmUpSize(), warmUpParallelism)
+                    .whenComplete((r, e) -> WarmUp.complete(readiness, e));
+        }
+    }
+
+    /**
+     * @return minimumIdle, which defaults to maximumPoolSize (which defaults to 10) before the pool is started
+     */
+    private int getWarmUpSize() {
+        if (getMinimumIdle() >= 0) {
+            return getMinimumIdle();
+        }
+        return getMaximumPoolSize() > 0 ? getMaximumPoolSize() : DEFAULT_POOL_SIZE;
+    }
+
+    /**
+     * @return the token metrics of this datasource
+     */
+    public TokenMetrics getTokenMetrics() {
+        return tokenMetrics;
+    }
+
+    /**
+     * Starts failover mode, the warm-up and the background token refresh (when enabled) before the pool is started. When
+     * <code>registerMbeans</code> is enabled, the token metrics are registered once the pool has a name.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        PemKeyStoreProvider.register();
+        if (!isRunning()) {
+            addSocketFactory();
+            addPasswordPlugin();
+        }
+        if (failover && failoverDataSource == null) {
+            startFailover();
+        }
+        if (warmUp) {
+            startWarmUp();
+        }
+        if (backgroundTokenRefresh && refreshStarted.compareAndSet(false, true)) {
+            pushToken();
+            scheduleRefresh(getDelayMillis(pushedToken));
+        }
+        try {
+            return isRunning() ? super.getConnection() : startPool();
+        } finally {
+            registerMetrics();
+        }
+    }
+
+    /**
+     * With Connector/J, performs the TLS handshake with the shared SSLContext, so new connections
+     * resume the TLS session. Added when the pool starts, as the driver is not known before.
+     */
+    private void addSocketFactory() {
+        if (JdbcUrlUtils.isConnectorJ(getDriverClassName(), getJdbcUrl())) {
+            getDataSourceProperties().putIfAbsent(SOCKET_FACTORY, RDS_IAM_SOCKET_FACTORY);
+        }
+    }
+
+    /**
+     * Hikari starts the pool, and opens the first connection, inside a <code>synchronized</code> block.
+     * Concurrent first callers wait on a lock instead, so at most one virtual thread pins its carrier
+     * while the pool is started. Installs the {@link TokenMetricsTrackerFactory}, unless a Dropwizard
+     * metric registry is used (which can't be combined with a tracker factory).
+     */
+    private Connection startPool() throws SQLException {
+        startLock.lock();
+        try {
+            if (!isRunning()) {
+                if (getMetricRegistry() == null) {
+                    super.setMetricsTrackerFactory(withTokenMetrics(getMetricsTrackerFactory()));
+                }
+                return super.getConnection();
+            }
+        } finally {
+            startLock.unlock();
+        }
+        return super.getConnection();
+    }
+
+    /**
+     * Wraps the factory, so the connection creation and acquisition times are recorded in the token
+     * metrics as well.
+     *
+     * @param metricsTrackerFactory the factory for the metrics tracker, e.g. Micrometer
+     */
+    @Override
+    public void setMetricsTrackerFactory(final MetricsTrackerFactory metricsTrackerFactory) {
+        super.setMetricsTrackerFactory(withTokenMetrics(metricsTrackerFactory));
+    }
+
+    private MetricsTrackerFactory withTokenMetrics(final MetricsTrackerFactory factory) {
+        if (factory instanceof TokenMetricsTrackerFactory) {
+            final TokenMetricsTrackerFactory tokenFactory = (TokenMetricsTrackerFactory) factory;
+            if (tokenFactory.getTokenMetrics() == tokenMetrics) {
+                return factory;
+            }
+            return new TokenMetricsTrackerFactory(tokenMetrics, tokenFactory.getDelegate()); // copied from another datasource
+        }
+        return new TokenMetricsTrackerFactory(tokenMetrics, factory);
+    }
+
+    private void registerMetrics() {
+        if (isRegisterMbeans() && getPoolName() != null && !metricsRegistered.get() && metricsRegistered.compareAndSet(false, true)) {
+            tokenMetrics.register(getPoolName());
+        }
     }
 
     /**
-     * Gets the IAM token. Creates a new token when the token is expired.
+     * With more than one host in the URL, installs the password plugin of the driver, which takes the token
+     * of the host it connects to. Not needed in failover mode, which connects to a single host.
+     */
+    private void addPasswordPlugin() {
+        if (!failover) {
+            PasswordPlugins.addForMultiHost(getDriverClassName(), getJdbcUrl(), getDataSourceProperties(), getTokenPolicy());
+        }
+    }
+
+    /**
+     * Gets the IAM token. With background refresh the token which was last pushed into the pool is
+     * returned while it is valid, otherwise the token is taken from the shared token cache. In failover mode the
+     * failover datasource signs the token of the instance it connects to, so the configured password is returned.
+     * Hikari calls this for every new connection, so this waits for the connection rate limit (when set).
      *
      * @return the IAM RDS token.
      */
     @Override
     public String getPassword() {
-        refreshToken();
-        return this.authToken;
+        final ConnectionRateLimiter limiter = getConnectionRateLimiter();
+        if (limiter != null) {
+            try {
+                limiter.acquire(getConnectionTimeout(), TimeUnit.MILLISECONDS);
+            } catch (SQLTransientConnectionException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+        final Token pushed = pushedToken;
+        if ((failoverDataSource != null && getDataSource() == failoverDataSource)
+                || (pushed != null && pushed.isValid(signer.currentTimeMillis()))) {
+            return super.getPassword();
+        }
+        return fetchToken();
     }
 
-    private void refreshToken() {
-        final LocalDateTime now = LocalDateTime.ofInstant(clock.instant(), UTC);
-        if (this.expiryDate == null || expiryDate.isBefore(now)) {
-            if (host == null) {
-                extractHostFromUrl();
-            }
-            this.authToken = signer.generateToken(host, port, getUsername());
-            this.expiryDate = now.plusMinutes(10L); // Token expires after 15 min, so renew after 10 min
+    private String fetchToken() {
+        return fetch().getValue();
+    }
+
+    private Token fetch() {
+        if (host == null) {
+            extractHostFromUrl();
+        }
+        return tokenCache.get(signer, host, port, getUsername(), tokenMetrics, getTokenPolicy());
+    }
+
+    /**
+     * Signs the token into the token cache ahead of the first connection. Unlike {@link #getPassword()},
+     * this does not wait for the connection rate limit.
+     */
+    public void presignToken() {
+        fetch();
+    }
+
+    /**
+     * Pushes the current token into the (running) pool.
+     */
+    protected void pushToken() {
+        final Token token = fetch();
+        getHikariConfigMXBean().setPassword(token.getValue());
+        pushedToken = token;
+    }
+
+    private void scheduleRefresh(final long delayMillis) {
+        if (!isClosed()) {
+            refreshFuture = scheduledExecutorService.schedule(this::refreshInBackground, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Pushes the renewed token into the pool and schedules the next run at its renewal deadline, so the
+     * token in the pool never expires, however short its lifetime.
+     */
+    private void refreshInBackground() {
+        long delayMillis;
+        try {
+            pushToken();
+            delayMillis = getDelayMillis(pushedToken);
+        } catch (RuntimeException e) {
+            // keep the previous token, which may still be valid, and retry
+            delayMillis = getRetryMillis(pushedToken);
+        }
+        scheduleRefresh(delayMillis);
+    }
+
+    /**
+     * A stale token (stale-while-revalidate) is being renewed in the background, so it is checked
+     * again after the retry delay.
+     */
+    private long getDelayMillis(final Token token) {
+        final long now = signer.currentTimeMillis();
+        return token.isFresh(now) ? Math.max(token.getRefreshAt() - now, 0L) : getRetryMillis(token);
+    }
+
+    /**
+     * @return the retry delay, shortened so a short-lived token is retried before it expires
+     */
+    private long getRetryMillis(final Token token) {
+        final long now = signer.currentTimeMillis();
+        if (token == null || !token.isValid(now)) {
+            return RETRY_MILLIS; // getPassword() signs on demand meanwhile
+        }
+        return Math.max(MIN_RETRY_MILLIS, Math.min(RETRY_MILLIS, (token.getExpiresAt() - now) / 2L));
+    }
+
+    /**
+     * Creates a datasource with the same configuration, which connects to a single instance of the
+     * cluster, e.g. an Aurora reader.
+     *
+     * @param name         the name of the instance, which is appended to the pool name
+     * @param instanceHost the host and port of the instance
+     * @return the new datasource, which has its own pool and token
+     */
+    public RdsIamHikariDataSource createInstanceDataSource(final String name, final HostAndPort instanceHost) {
+        final RdsIamHikariDataSource dataSource = new RdsIamHikariDataSource(signer, tokenCache, scheduledExecutorService);
+        copyStateTo(dataSource);
+        if (failoverDataSource != null && getDataSource() == failoverDataSource) {
+            dataSource.setDataSource(null); // the instance is connected to directly
+        }
+        dataSource.setJdbcUrl(JdbcUrlUtils.replaceHosts(getJdbcUrl(), instanceHost));
+        dataSource.setPoolName(getPoolName() != null ? getPoolName() + "-" + name : null);
+        dataSource.setBackgroundTokenRefresh(backgroundTokenRefresh);
+        dataSource.setTokenLifetimeSeconds(tokenLifetimeSeconds);
+        dataSource.setTokenRefreshLeadSeconds(tokenRefreshLeadSeconds);
+        dataSource.setTokenRefreshJitterSeconds(tokenRefreshJitterSeconds);
+        dataSource.setTokenStaleWhileRevalidate(tokenStaleWhileRevalidate);
+        dataSource.setConnectionRateLimit(connectionRateLimit);
+        dataSource.setConnectionRateBurst(connectionRateBurst);
+        dataSource.setWarmUp(warmUp);
+        dataSource.setWarmUpParallelism(warmUpParallelism);
+        return dataSource;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if (refreshFuture != null) {
+            refreshFuture.cancel(false);
+        }
+        if (secondaryFuture != null) {
+            secondaryFuture.cancel(false);
+        }
+        if (failoverDataSource != null) {
+            failoverDataSource.close();
         }
+        tokenMetrics.unregister();
     }
 }
 
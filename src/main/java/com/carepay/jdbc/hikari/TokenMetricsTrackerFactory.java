@@ -0,0 +1,76 @@
+package com.carepay.jdbc.hikari;
+
+import com.carepay.jdbc.metrics.TokenMetrics;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+/**
+ * Hikari metrics tracker which records connection creation and acquisition times and timeouts in the
+ * {@link TokenMetrics} of the datasource, and forwards all events to an (optional) other tracker,
+ * such as the Micrometer or Prometheus tracker. {@link RdsIamHikariDataSource} installs it when the
+ * pool is started, and wraps the factory passed to <code>setMetricsTrackerFactory</code>.
+ */
+public class TokenMetricsTrackerFactory implements MetricsTrackerFactory {
+    private final TokenMetrics tokenMetrics;
+    private final MetricsTrackerFactory delegate;
+
+    public TokenMetricsTrackerFactory(final TokenMetrics tokenMetrics) {
+        this(tokenMetrics, null);
+    }
+
+    /**
+     * @param tokenMetrics the metrics of the datasource
+     * @param delegate     the factory to forward events to, or null
+     */
+    public TokenMetricsTrackerFactory(final TokenMetrics tokenMetrics, final MetricsTrackerFactory delegate) {
+        this.tokenMetrics = tokenMetrics;
+        this.delegate = delegate;
+    }
+
+    public TokenMetrics getTokenMetrics() {
+        return tokenMetrics;
+    }
+
+    /**
+     * @return the factory events are forwarded to, or null
+     */
+    public MetricsTrackerFactory getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public IMetricsTracker create(final String poolName, final PoolStats poolStats) {
+        final IMetricsTracker tracker = delegate != null ? delegate.create(poolName, poolStats) : new IMetricsTracker() {
+        };
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionCreatedMillis(final long connectionCreatedMillis) {
+                tokenMetrics.onConnectionCreated(connectionCreatedMillis);
+                tracker.recordConnectionCreatedMillis(connectionCreatedMillis);
+            }
+
+            @Override
+            public void recordConnectionAcquiredNanos(final long elapsedAcquiredNanos) {
+                tokenMetrics.onConnectionAcquired(elapsedAcquiredNanos);
+                tracker.recordConnectionAcquiredNanos(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(final long elapsedBorrowedMillis) {
+                tracker.recordConnectionUsageMillis(elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                tokenMetrics.onConnectionTimeout();
+                tracker.recordConnectionTimeout();
+            }
+
+            @Override
+            public void close() {
+                tracker.close();
+            }
+        };
+    }
+}
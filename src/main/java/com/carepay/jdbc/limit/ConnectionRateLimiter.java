@@ -0,0 +1,238 @@
+package com.carepay.jdbc.limit;
+
+import java.lang.management.ManagementFactory;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.carepay.jdbc.metrics.Histogram;
+import com.carepay.jdbc.util.HostAndPort;
+
+/**
+ * Token bucket which limits the rate of new connections to a database endpoint. Up to
+ * <code>burst</code> connections are admitted at once, after that one connection every
+ * <code>1 / permitsPerSecond</code> seconds. Callers which exceed the rate are not rejected, but
+ * reserve the next free slot and wait for it, so they are admitted in the order they arrived. A
+ * caller is only rejected when its slot is beyond its deadline.
+ * <p>
+ * The limiters are shared JVM-wide per endpoint, and registered as MBean
+ * <code>com.carepay.jdbc:type=ConnectionRateLimiter,name="host:port"</code>.
+ */
+public class ConnectionRateLimiter implements ConnectionRateLimiterMXBean {
+    public static final String CONNECTION_RATE_LIMIT = "connectionRateLimit";
+    public static final String CONNECTION_RATE_BURST = "connectionRateBurst";
+    public static final String CONNECTION_RATE_TIMEOUT_MILLIS = "connectionRateTimeoutMillis";
+    public static final long DEFAULT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30L);
+
+    private static final String OBJECT_NAME = "com.carepay.jdbc:type=ConnectionRateLimiter,name=";
+    private static final ConcurrentMap<HostAndPort, ConnectionRateLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+    private final double permitsPerSecond;
+    private final int burst;
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final LongSupplier nanoTime;
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final LongAccumulator maxQueueDepth = new LongAccumulator(Math::max, 0L);
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final Histogram waitTime = new Histogram();
+    /**
+     * theoretical arrival time of the next connection, see the Generic Cell Rate Algorithm
+     */
+    private final AtomicLong nextSlot;
+
+    /**
+     * @param permitsPerSecond the sustained rate of new connections
+     * @param burst            the number of connections admitted at once
+     */
+    public ConnectionRateLimiter(final double permitsPerSecond, final int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    ConnectionRateLimiter(final double permitsPerSecond, final int burst, final LongSupplier nanoTime) {
+        if (!(permitsPerSecond > 0.0) || burst < 1) {
+            throw new IllegalArgumentException(CONNECTION_RATE_LIMIT + " and " + CONNECTION_RATE_BURST + " must be positive: "
+                    + permitsPerSecond + ", " + burst);
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.intervalNanos = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1L) / permitsPerSecond));
+        this.burstNanos = (burst - 1) * intervalNanos;
+        this.nanoTime = nanoTime;
+        this.nextSlot = new AtomicLong(nanoTime.getAsLong());
+    }
+
+    /**
+     * Gets the shared limiter for an endpoint. All pools and drivers connecting to the endpoint share
+     * its limit, so they must use the same setting.
+     *
+     * @param endpoint         the host and port of the database
+     * @param permitsPerSecond the sustained rate of new connections
+     * @param burst            the number of connections admitted at once, or 0 for one second worth of connections
+     * @return the limiter
+     * @throws IllegalArgumentException when the endpoint is limited with another setting already
+     */
+    public static ConnectionRateLimiter forEndpoint(final HostAndPort endpoint, final double permitsPerSecond, final int burst) {
+        final int b = burst > 0 ? burst : Math.max(1, (int) Math.ceil(permitsPerSecond));
+        ConnectionRateLimiter limiter = LIMITERS.get(endpoint);
+        if (limiter == null) {
+            limiter = LIMITERS.computeIfAbsent(endpoint, k -> {
+                final ConnectionRateLimiter l = new ConnectionRateLimiter(permitsPerSecond, b);
+                l.register(endpoint.toString());
+                return l;
+            });
+        }
+        if (limiter.permitsPerSecond != permitsPerSecond || limiter.burst != b) {
+            throw new IllegalArgumentException(endpoint + " is limited to " + limiter.permitsPerSecond + "/s with "
+                    + CONNECTION_RATE_BURST + " " + limiter.burst + " already, not " + permitsPerSecond + "/s with " + b);
+        }
+        return limiter;
+    }
+
+    /**
+     * Gets the shared limiter for an endpoint from (optional) configuration properties, e.g. JDBC URL
+     * parameters.
+     *
+     * @param endpoint         the host and port of the database
+     * @param permitsPerSecond the value of <code>connectionRateLimit</code>, or null
+     * @param burst            the value of <code>connectionRateBurst</code>, or null
+     * @return the limiter, or null when the rate is not limited
+     * @throws IllegalArgumentException when a value is not a number
+     */
+    public static ConnectionRateLimiter forEndpoint(final HostAndPort endpoint, final String permitsPerSecond, final String burst) {
+        if (permitsPerSecond == null) {
+            return null;
+        }
+        try {
+            final double rate = Double.parseDouble(permitsPerSecond.trim());
+            return rate > 0.0 ? forEndpoint(endpoint, rate, burst != null ? Integer.parseInt(burst.trim()) : 0) : null;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + CONNECTION_RATE_LIMIT + " or " + CONNECTION_RATE_BURST + ": "
+                    + permitsPerSecond + ", " + burst, e);
+        }
+    }
+
+    /**
+     * Parses <code>connectionRateTimeoutMillis</code>.
+     *
+     * @param timeoutMillis the value, or null for the default of 30 seconds
+     * @return the timeout in milliseconds
+     */
+    public static long parseTimeout(final String timeoutMillis) {
+        try {
+            return timeoutMillis != null ? Long.parseLong(timeoutMillis.trim()) : DEFAULT_TIMEOUT_MILLIS;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + CONNECTION_RATE_TIMEOUT_MILLIS + ": " + timeoutMillis, e);
+        }
+    }
+
+    private void register(final String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME + ObjectName.quote(name)));
+        } catch (JMException | SecurityException e) {
+            //NOSONAR a limiter with the same name is registered already, the limiter still works
+        }
+    }
+
+    /**
+     * Waits until a new connection may be opened.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @throws SQLTransientConnectionException when the connection can't be admitted before the timeout,
+     *                                         or the thread is interrupted
+     */
+    public void acquire(final long timeout, final TimeUnit unit) throws SQLTransientConnectionException {
+        final long waitNanos = reserve(unit.toNanos(timeout));
+        if (waitNanos < 0L) {
+            rejected.increment();
+            throw new SQLTransientConnectionException("Connection rate limit of " + permitsPerSecond
+                    + "/s exceeded, not admitted within " + unit.toMillis(timeout) + "ms", "08001");
+        }
+        admitted.increment();
+        waitTime.record(TimeUnit.NANOSECONDS.toMillis(waitNanos));
+        if (waitNanos > 0L) {
+            maxQueueDepth.accumulate(queueDepth.incrementAndGet());
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLTransientConnectionException("Interrupted while waiting for the connection rate limit", "08001", e);
+            } finally {
+                queueDepth.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Reserves the next free slot. Lock-free, so callers (e.g. virtual threads) never block here.
+     *
+     * @param timeoutNanos the maximum time to wait
+     * @return the time to wait for the slot, or -1 when the slot is beyond the timeout (nothing is reserved)
+     */
+    long reserve(final long timeoutNanos) {
+        final long now = nanoTime.getAsLong();
+        while (true) {
+            final long slot = nextSlot.get();
+            final long waitNanos = Math.max(0L, slot - burstNanos - now);
+            if (waitNanos > timeoutNanos) {
+                return -1L;
+            }
+            if (nextSlot.compareAndSet(slot, Math.max(slot, now) + intervalNanos)) {
+                return waitNanos;
+            }
+        }
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    @Override
+    public long getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    @Override
+    public long getAdmittedCount() {
+        return admitted.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public double getWaitTimeMeanMillis() {
+        return waitTime.getMean();
+    }
+
+    @Override
+    public long getWaitTimeP99Millis() {
+        return waitTime.getPercentile(99.0);
+    }
+
+    @Override
+    public long getWaitTimeMaxMillis() {
+        return waitTime.getMax();
+    }
+}
@@ -0,0 +1,20 @@
+package com.carepay.jdbc.limit;
+
+/**
+ * JMX view of the connection rate limiter of a database endpoint.
+ */
+public interface ConnectionRateLimiterMXBean {
+    int getQueueDepth();
+
+    long getMaxQueueDepth();
+
+    long getAdmittedCount();
+
+    long getRejectedCount();
+
+    double getWaitTimeMeanMillis();
+
+    long getWaitTimeP99Millis();
+
+    long getWaitTimeMaxMillis();
+}
@@ -1,33 +1,31 @@
 package com.carepay.jdbc.mariadb;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.io.StringWriter;
-import java.net.HttpURLConnection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
 import java.time.Clock;
-import java.time.LocalDateTime;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import com.carepay.aws.auth.Credentials;
 import com.carepay.aws.auth.CredentialsProvider;
-import com.carepay.aws.auth.DefaultCredentialsProviderChain;
 import com.carepay.aws.auth.RegionProvider;
 import com.carepay.aws.net.URLOpener;
-import com.carepay.aws.region.DefaultRegionProviderChain;
 import com.carepay.jdbc.RdsAWS4Signer;
+import com.carepay.jdbc.auth.CredentialsCache;
+import com.carepay.jdbc.limit.ConnectionRateLimiter;
+import com.carepay.jdbc.metrics.TokenMetrics;
+import com.carepay.jdbc.pem.CertificateBundleCache;
 import com.carepay.jdbc.pem.PemKeyStoreProvider;
+import com.carepay.jdbc.token.TokenCache;
+import com.carepay.jdbc.token.TokenPolicy;
+import com.carepay.jdbc.util.HostAndPort;
 import org.mariadb.jdbc.HostAddress;
 import org.mariadb.jdbc.credential.Credential;
 import org.mariadb.jdbc.credential.CredentialPlugin;
 import org.mariadb.jdbc.util.Options;
 
 import static com.carepay.jdbc.RdsIamConstants.BUNDLE_DOWNLOAD_URL;
-import static com.carepay.jdbc.RdsIamConstants.CA_BUNDLE_URL;
-import static java.nio.charset.StandardCharsets.UTF_8;
-import static java.time.ZoneOffset.UTC;
 
 /**
  * MariaDB Credential Plugin which supports Amazon IAM authentication. Multiple credentials
@@ -35,21 +33,19 @@
  */
 public class AmazonRdsIamCredentialPlugin implements CredentialPlugin {
     private static final Pattern URL_PATTERN = Pattern.compile("^https?://.*");
-
-    static {
-        PemKeyStoreProvider.register();
-    }
+    private static final String METRICS_NAME = "mariadb";
 
     private final CredentialsProvider credentialsProvider;
     private final RegionProvider regionProvider;
     private final Clock clock;
     private final URLOpener opener;
+    private final TokenCache tokenCache;
+    private final TokenMetrics tokenMetrics;
 
     private RdsAWS4Signer signer;
-    private LocalDateTime expiryDate;
+    private TokenPolicy tokenPolicy = TokenPolicy.DEFAULT;
     private HostAddress hostAddress;
     private String username;
-    private Credential authToken;
 
     @Override
     public String type() {
@@ -67,7 +63,7 @@ public boolean mustUseSsl() {
     }
 
     public AmazonRdsIamCredentialPlugin() {
-        this(new DefaultCredentialsProviderChain(), new DefaultRegionProviderChain(), Clock.systemUTC(), new URLOpener.Default());
+        this(CredentialsCache.getInstance().getCredentialsProvider(null), CredentialsCache.getInstance().getRegionProvider(), Clock.systemUTC(), new URLOpener.Default());
     }
 
     public AmazonRdsIamCredentialPlugin(final CredentialsProvider credentialsProvider, final RegionProvider regionProvider, final Clock clock, final URLOpener opener) {
@@ -75,45 +71,52 @@ public AmazonRdsIamCredentialPlugin(final CredentialsProvider credentialsProvide
         this.credentialsProvider = credentialsProvider;
         this.regionProvider = regionProvider;
         this.opener = opener;
-        PemKeyStoreProvider.register();
+        this.tokenCache = TokenCache.getInstance();
+        this.tokenMetrics = TokenMetrics.getShared(METRICS_NAME);
     }
 
+    /**
+     * Configures the plugin for a new connection. The driver initializes the plugin once per connection,
+     * before it opens the socket, so this waits for the connection rate limit of the endpoint, when
+     * <code>connectionRateLimit</code> is set.
+     *
+     * @throws SQLTransientConnectionException when no slot is free within <code>connectionRateTimeoutMillis</code>
+     */
     @Override
-    public CredentialPlugin initialize(final Options options, final String username, final HostAddress hostAddress) {
+    public CredentialPlugin initialize(final Options options, final String username, final HostAddress hostAddress) throws SQLException {
+        PemKeyStoreProvider.register();
         this.hostAddress = hostAddress;
         this.username = username;
         configureServerSslCert(options);
-        final Properties nonMappedOptions = options.nonMappedOptions;
-        if (nonMappedOptions.containsKey("awsProfile")) {
-            System.setProperty("aws.profile", nonMappedOptions.getProperty("awsProfile"));
+        if (options.tlsSocketType == null) {
+            options.tlsSocketType = RdsIamTlsSocketPlugin.TYPE;
         }
+        final Properties nonMappedOptions = options.nonMappedOptions;
         this.signer = new RdsAWS4Signer(getCredentialsProvider(nonMappedOptions), getRegionProvider(nonMappedOptions), this.clock);
+        this.tokenPolicy = TokenPolicy.of(
+                nonMappedOptions.getProperty(TokenPolicy.TOKEN_LIFETIME_SECONDS),
+                nonMappedOptions.getProperty(TokenPolicy.TOKEN_REFRESH_LEAD_SECONDS),
+                nonMappedOptions.getProperty(TokenPolicy.TOKEN_REFRESH_JITTER_SECONDS))
+                .withStaleWhileRevalidate(nonMappedOptions.getProperty(TokenPolicy.TOKEN_STALE_WHILE_REVALIDATE));
+        final ConnectionRateLimiter limiter = ConnectionRateLimiter.forEndpoint(new HostAndPort(hostAddress.host, hostAddress.port),
+                nonMappedOptions.getProperty(ConnectionRateLimiter.CONNECTION_RATE_LIMIT),
+                nonMappedOptions.getProperty(ConnectionRateLimiter.CONNECTION_RATE_BURST));
+        if (limiter != null) {
+            limiter.acquire(ConnectionRateLimiter.parseTimeout(nonMappedOptions.getProperty(ConnectionRateLimiter.CONNECTION_RATE_TIMEOUT_MILLIS)),
+                    TimeUnit.MILLISECONDS);
+        }
         return this;
     }
 
+    /**
+     * Uses the CA bundle from the shared bundle cache, which downloads the RDS bundle in the
+     * background. A custom bundle URL is downloaded on first use.
+     */
     private void configureServerSslCert(final Options options) {
-        try {
-            if (options.serverSslCert == null) {
-                options.serverSslCert = downloadCertBundle(BUNDLE_DOWNLOAD_URL);
-            } else if (URL_PATTERN.matcher(options.serverSslCert).matches()) {
-                options.serverSslCert = downloadCertBundle(options.serverSslCert);
-            }
-        } catch (IOException e) {
-            options.serverSslCert = CA_BUNDLE_URL;
-        }
-    }
-
-    private String downloadCertBundle(final String url) throws IOException {
-        final HttpURLConnection uc = opener.open(URLOpener.create(url));
-        try (final BufferedReader in = new BufferedReader(new InputStreamReader(uc.getInputStream(), UTF_8));
-             final StringWriter sw = new StringWriter();
-             final PrintWriter pw = new PrintWriter(sw)) {
-            String line;
-            while ((line = in.readLine()) != null) {
-                pw.println(line);
-            }
-            pw.flush();
-            return sw.toString();
+        if (options.serverSslCert == null) {
+            options.serverSslCert = CertificateBundleCache.getInstance().getBundle(BUNDLE_DOWNLOAD_URL, opener);
+        } else if (URL_PATTERN.matcher(options.serverSslCert).matches()) {
+            options.serverSslCert = CertificateBundleCache.getInstance().getBundle(options.serverSslCert, opener);
         }
     }
 
@@ -124,16 +127,20 @@ private RegionProvider getRegionProvider(final Properties properties) {
 
     private CredentialsProvider getCredentialsProvider(final Properties properties) {
         final Credentials propertyCredentials = new Credentials(properties.getProperty("awsAccessKeyId"), properties.getProperty("awsSecretKey"), properties.getProperty("awsSessionToken"));
-        return propertyCredentials.isPresent() ? () -> propertyCredentials : this.credentialsProvider;
+        if (propertyCredentials.isPresent()) {
+            return () -> propertyCredentials;
+        }
+        final String profile = properties.getProperty("awsProfile");
+        return profile != null ? CredentialsCache.getInstance().getCredentialsProvider(profile) : this.credentialsProvider;
     }
 
+    /**
+     * Gets the IAM token from the shared token cache. Creates a new token when the token is expired.
+     *
+     * @return the credential containing the IAM RDS token.
+     */
     @Override
     public Credential get() {
-        final LocalDateTime now = LocalDateTime.ofInstant(clock.instant(), UTC);
-        if (this.expiryDate == null || expiryDate.isBefore(now)) {
-            this.authToken = new Credential(this.username, signer.generateToken(hostAddress.host, hostAddress.port, username));
-            this.expiryDate = now.plusMinutes(10L); // Token expires after 15 min, so renew after 10 min
-        }
-        return authToken;
+        return new Credential(this.username, tokenCache.getToken(signer, hostAddress.host, hostAddress.port, username, tokenMetrics, tokenPolicy));
     }
 }
@@ -0,0 +1,74 @@
+package com.carepay.jdbc.mariadb;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.sql.SQLException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import com.carepay.jdbc.ssl.SslContextCache;
+import org.mariadb.jdbc.internal.protocol.tls.DefaultTlsSocketPlugin;
+import org.mariadb.jdbc.util.Options;
+
+/**
+ * MariaDB TLS socket plugin which uses the shared SSLContext from the {@link SslContextCache},
+ * instead of building a KeyStore, TrustManagerFactory and SSLContext for every connection.
+ * Reconnects to the same host and port resume the cached TLS session. Hostname verification is
+ * inherited from the default plugin. When the server certificate is trusted blindly or a client
+ * keystore is configured, the default plugin is used.
+ */
+public class RdsIamTlsSocketPlugin extends DefaultTlsSocketPlugin {
+    public static final String TYPE = "AWS4RDS";
+
+    private final SslContextCache sslContextCache;
+
+    public RdsIamTlsSocketPlugin() {
+        this(SslContextCache.getInstance());
+    }
+
+    public RdsIamTlsSocketPlugin(final SslContextCache sslContextCache) {
+        this.sslContextCache = sslContextCache;
+    }
+
+    @Override
+    public String name() {
+        return "Amazon RDS IAM TLS plugin";
+    }
+
+    @Override
+    public String type() {
+        return TYPE;
+    }
+
+    @Override
+    public SSLSocketFactory getSocketFactory(final Options options) throws SQLException {
+        if (options.trustServerCertificate || options.keyStore != null) {
+            return super.getSocketFactory(options);
+        }
+        try {
+            return sslContextCache.getContext(options.serverSslCert).getSocketFactory();
+        } catch (IOException | RuntimeException e) {
+            throw new SQLException("Unable to create SSLContext from serverSslCert: " + e.getMessage(), "08000", e);
+        }
+    }
+
+    /**
+     * Uses the host the driver connected to (the host of the URL) instead of the IP address, so TLS
+     * sessions are cached per endpoint and SNI is sent to the server. The host is taken from the
+     * address of the socket, without a reverse DNS lookup.
+     */
+    @Override
+    public SSLSocket createSocket(final Socket socket, final SSLSocketFactory sslSocketFactory) throws IOException {
+        return (SSLSocket) sslSocketFactory.createSocket(socket, getHost(socket), socket.getPort(), true);
+    }
+
+    /**
+     * @return the host name or IP address as passed to the socket
+     */
+    static String getHost(final Socket socket) {
+        final SocketAddress address = socket.getRemoteSocketAddress();
+        return address instanceof InetSocketAddress ? ((InetSocketAddress) address).getHostString() : socket.getInetAddress().getHostAddress();
+    }
+}
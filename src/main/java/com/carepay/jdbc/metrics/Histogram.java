@@ -0,0 +1,180 @@
+package com.carepay.jdbc.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram with logarithmic buckets. Values below 8 are counted exactly, larger values
+ * are counted in 8 buckets per power of two, so percentiles are accurate to within 12.5%. Recording
+ * does not allocate, so it can stay enabled on hot paths.
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = index(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    static int index(final long value) {
+        if (value < SUB_BUCKETS) {
+            return value > 0 ? (int) value : 0;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    static long upperBound(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        final long upper = ((long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1)) + 1) << shift) - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+
+    /**
+     * @param value the value to record, negative values are counted as 0
+     */
+    public void record(final long value) {
+        final long v = Math.max(value, 0L);
+        counts.incrementAndGet(index(v));
+        count.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        final long n = count.sum();
+        return n == 0 ? 0.0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound of the bucket containing the percentile, or 0 when nothing was recorded
+     */
+    public long getPercentile(final double percentile) {
+        final long total = count.sum();
+        if (total == 0) {
+            return 0L;
+        }
+        final long rank = rank(total, percentile);
+        long seen = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Reads the counts once and computes the common percentiles from them, so they are consistent
+     * with each other.
+     *
+     * @return the current distribution
+     */
+    public Snapshot snapshot() {
+        final long[] buckets = new long[BUCKETS];
+        long total = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = counts.get(i);
+            total += buckets[i];
+        }
+        final long maximum = max.get();
+        if (total == 0) {
+            return new Snapshot(0L, 0.0, 0L, 0L, 0L, 0L, maximum);
+        }
+        return new Snapshot(total, (double) sum.sum() / total,
+                percentile(buckets, total, 50.0, maximum),
+                percentile(buckets, total, 90.0, maximum),
+                percentile(buckets, total, 99.0, maximum),
+                percentile(buckets, total, 99.9, maximum),
+                maximum);
+    }
+
+    private static long percentile(final long[] buckets, final long total, final double percentile, final long maximum) {
+        final long rank = rank(total, percentile);
+        long seen = 0L;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), maximum);
+            }
+        }
+        return maximum;
+    }
+
+    private static long rank(final long total, final double percentile) {
+        return Math.max(1L, (long) Math.ceil(total * percentile / 100.0));
+    }
+
+    /**
+     * Percentiles of a histogram at a point in time, in the unit of the recorded values.
+     */
+    public static final class Snapshot {
+        private final long count;
+        private final double mean;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        Snapshot(final long count, final double mean, final long p50, final long p90, final long p99, final long p999, final long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getP999() {
+            return p999;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", mean=" + mean + ", p50=" + p50 + ", p90=" + p90 + ", p99=" + p99 + ", p999=" + p999 + ", max=" + max;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.carepay.jdbc.metrics;
+
+/**
+ * Receives events about fetching and signing IAM tokens. All methods have an empty default, so an
+ * implementation only overrides the events it is interested in. Implementations are called on the
+ * connection path and must be fast and thread-safe.
+ * <p>
+ * Besides the per-datasource {@link TokenMetrics}, listeners can be registered JVM-wide using the
+ * {@link java.util.ServiceLoader} file <code>META-INF/services/com.carepay.jdbc.metrics.TokenListener</code>.
+ */
+public interface TokenListener {
+    /**
+     * Listener which ignores all events.
+     */
+    TokenListener NONE = new TokenListener() {
+    };
+
+    /**
+     * @param nanos time taken to resolve the AWS credentials
+     */
+    default void onCredentialsResolved(long nanos) {
+    }
+
+    /**
+     * @param nanos time taken to sign a new token
+     */
+    default void onSigned(long nanos) {
+    }
+
+    /**
+     * A valid token was served from the cache.
+     */
+    default void onCacheHit() {
+    }
+
+    /**
+     * No usable token was cached, so the caller signed a new token or waited for one.
+     */
+    default void onCacheMiss() {
+    }
+
+    /**
+     * A token was renewed.
+     *
+     * @param lagMillis time between the moment the previous token was due for renewal and the renewal
+     */
+    default void onRefreshed(long lagMillis) {
+    }
+
+    /**
+     * A token which is due for renewal was served, because it is renewed in the background
+     * (stale-while-revalidate) or because renewing it failed.
+     *
+     * @param overdueMillis time since the token was due for renewal
+     */
+    default void onStale(long overdueMillis) {
+    }
+
+    /**
+     * Resolving credentials, signing or refreshing a token failed.
+     *
+     * @param cause the failure
+     */
+    default void onFailure(Throwable cause) {
+    }
+}
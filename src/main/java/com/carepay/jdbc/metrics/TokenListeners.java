@@ -0,0 +1,105 @@
+package com.carepay.jdbc.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Combines token listeners. The JVM-wide listeners are loaded once using the {@link ServiceLoader}.
+ */
+public final class TokenListeners {
+    private static final List<TokenListener> GLOBAL = load();
+
+    private TokenListeners() {
+        // not implemented
+    }
+
+    private static List<TokenListener> load() {
+        final List<TokenListener> listeners = new ArrayList<>();
+        try {
+            ServiceLoader.load(TokenListener.class, TokenListeners.class.getClassLoader()).forEach(listeners::add);
+        } catch (RuntimeException | LinkageError e) {
+            //NOSONAR a broken listener must not break the connection path
+        }
+        return listeners;
+    }
+
+    /**
+     * @param listener the listener of the datasource or driver plugin
+     * @return the listener combined with the JVM-wide listeners
+     */
+    public static TokenListener withGlobal(final TokenListener listener) {
+        if (GLOBAL.isEmpty()) {
+            return listener;
+        }
+        final List<TokenListener> listeners = new ArrayList<>(GLOBAL);
+        if (listener != TokenListener.NONE) {
+            listeners.add(listener);
+        }
+        return of(listeners);
+    }
+
+    /**
+     * @param listeners the listeners to notify
+     * @return a listener which notifies all listeners in order
+     */
+    public static TokenListener of(final List<TokenListener> listeners) {
+        if (listeners.isEmpty()) {
+            return TokenListener.NONE;
+        }
+        if (listeners.size() == 1) {
+            return listeners.get(0);
+        }
+        final TokenListener[] all = listeners.toArray(new TokenListener[0]);
+        return new TokenListener() {
+            @Override
+            public void onCredentialsResolved(final long nanos) {
+                for (TokenListener l : all) {
+                    l.onCredentialsResolved(nanos);
+                }
+            }
+
+            @Override
+            public void onSigned(final long nanos) {
+                for (TokenListener l : all) {
+                    l.onSigned(nanos);
+                }
+            }
+
+            @Override
+            public void onCacheHit() {
+                for (TokenListener l : all) {
+                    l.onCacheHit();
+                }
+            }
+
+            @Override
+            public void onCacheMiss() {
+                for (TokenListener l : all) {
+                    l.onCacheMiss();
+                }
+            }
+
+            @Override
+            public void onRefreshed(final long lagMillis) {
+                for (TokenListener l : all) {
+                    l.onRefreshed(lagMillis);
+                }
+            }
+
+            @Override
+            public void onStale(final long overdueMillis) {
+                for (TokenListener l : all) {
+                    l.onStale(overdueMillis);
+                }
+            }
+
+            @Override
+            public void onFailure(final Throwable cause) {
+                for (TokenListener l : all) {
+                    l.onFailure(cause);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,326 @@
+package com.carepay.jdbc.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms for the tokens of a single datasource or driver plugin. Can be
+ * registered as MBean <code>com.carepay.jdbc:type=TokenMetrics,name="..."</code>.
+ */
+public class TokenMetrics implements TokenListener, TokenMetricsMXBean {
+    private static final String OBJECT_NAME = "com.carepay.jdbc:type=TokenMetrics,name=";
+    private static final ConcurrentMap<String, TokenMetrics> SHARED = new ConcurrentHashMap<>();
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final Histogram signTime = new Histogram();
+    private final Histogram credentialsTime = new Histogram();
+    private final Histogram refreshLag = new Histogram();
+    private final Histogram connectTime = new Histogram();
+    private final Histogram acquireTime = new Histogram();
+    private final LongAdder connectionTimeouts = new LongAdder();
+    private final Histogram staleOverdue = new Histogram();
+    private volatile boolean servingStaleToken;
+    private volatile String lastFailure;
+    private ObjectName objectName;
+
+    /**
+     * Gets the JVM-wide metrics for a name, used by the driver plugins which have no datasource. The
+     * metrics are registered as MBean when first used.
+     *
+     * @param name the name of the plugin
+     * @return the shared metrics
+     */
+    public static TokenMetrics getShared(final String name) {
+        final TokenMetrics metrics = SHARED.get(name);
+        return metrics != null ? metrics : SHARED.computeIfAbsent(name, n -> {
+            final TokenMetrics m = new TokenMetrics();
+            m.register(n);
+            return m;
+        });
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server. Registration failures (e.g. duplicate names)
+     * are ignored, metrics are still collected.
+     *
+     * @param name the name of the datasource
+     * @return true when registered
+     */
+    public synchronized boolean register(final String name) {
+        try {
+            final ObjectName on = new ObjectName(OBJECT_NAME + ObjectName.quote(name));
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(on)) {
+                return false;
+            }
+            server.registerMBean(this, on);
+            objectName = on;
+            return true;
+        } catch (JMException | SecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Removes the MBean, when registered.
+     */
+    public synchronized void unregister() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException | SecurityException e) {
+                //NOSONAR already removed
+            }
+            objectName = null;
+        }
+    }
+
+    @Override
+    public void onCredentialsResolved(final long nanos) {
+        credentialsTime.record(nanos);
+    }
+
+    @Override
+    public void onSigned(final long nanos) {
+        signTime.record(nanos);
+    }
+
+    @Override
+    public void onCacheHit() {
+        cacheHits.increment();
+    }
+
+    @Override
+    public void onCacheMiss() {
+        cacheMisses.increment();
+        servingStaleToken = false;
+    }
+
+    @Override
+    public void onRefreshed(final long lagMillis) {
+        refreshLag.record(lagMillis);
+        servingStaleToken = false;
+    }
+
+    @Override
+    public void onStale(final long overdueMillis) {
+        staleOverdue.record(overdueMillis);
+        servingStaleToken = true;
+    }
+
+    @Override
+    public void onFailure(final Throwable cause) {
+        failures.increment();
+        lastFailure = String.valueOf(cause);
+    }
+
+    /**
+     * @param millis time taken by the pool to create a connection, including fetching the token
+     */
+    public void onConnectionCreated(final long millis) {
+        connectTime.record(millis);
+    }
+
+    /**
+     * @param nanos time a caller of <code>getConnection()</code> waited for a connection, including
+     *              creating one when the pool had no idle connection
+     */
+    public void onConnectionAcquired(final long nanos) {
+        acquireTime.record(nanos);
+    }
+
+    /**
+     * The pool timed out while waiting for a connection.
+     */
+    public void onConnectionTimeout() {
+        connectionTimeouts.increment();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public long getSignCount() {
+        return signTime.getCount();
+    }
+
+    @Override
+    public double getSignTimeMeanMicros() {
+        return signTime.getMean() / 1000.0;
+    }
+
+    @Override
+    public long getSignTimeP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(signTime.getPercentile(99.0));
+    }
+
+    @Override
+    public long getSignTimeMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(signTime.getMax());
+    }
+
+    @Override
+    public double getCredentialsTimeMeanMicros() {
+        return credentialsTime.getMean() / 1000.0;
+    }
+
+    @Override
+    public long getCredentialsTimeP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(credentialsTime.getPercentile(99.0));
+    }
+
+    @Override
+    public long getCredentialsTimeMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(credentialsTime.getMax());
+    }
+
+    @Override
+    public long getRefreshCount() {
+        return refreshLag.getCount();
+    }
+
+    @Override
+    public double getRefreshLagMeanMillis() {
+        return refreshLag.getMean();
+    }
+
+    @Override
+    public long getRefreshLagMaxMillis() {
+        return refreshLag.getMax();
+    }
+
+    @Override
+    public long getStaleCount() {
+        return staleOverdue.getCount();
+    }
+
+    @Override
+    public long getStaleOverdueMaxMillis() {
+        return staleOverdue.getMax();
+    }
+
+    @Override
+    public boolean isServingStaleToken() {
+        return servingStaleToken;
+    }
+
+    @Override
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    @Override
+    public String getLastFailure() {
+        return lastFailure;
+    }
+
+    @Override
+    public long getConnectCount() {
+        return connectTime.getCount();
+    }
+
+    @Override
+    public double getConnectTimeMeanMillis() {
+        return connectTime.getMean();
+    }
+
+    @Override
+    public long getConnectTimeP50Millis() {
+        return connectTime.getPercentile(50.0);
+    }
+
+    @Override
+    public long getConnectTimeP99Millis() {
+        return connectTime.getPercentile(99.0);
+    }
+
+    @Override
+    public long getConnectTimeP999Millis() {
+        return connectTime.getPercentile(99.9);
+    }
+
+    @Override
+    public long getConnectTimeMaxMillis() {
+        return connectTime.getMax();
+    }
+
+    @Override
+    public long getAcquireCount() {
+        return acquireTime.getCount();
+    }
+
+    @Override
+    public double getAcquireTimeMeanMicros() {
+        return acquireTime.getMean() / 1000.0;
+    }
+
+    @Override
+    public long getAcquireTimeP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(acquireTime.getPercentile(50.0));
+    }
+
+    @Override
+    public long getAcquireTimeP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(acquireTime.getPercentile(99.0));
+    }
+
+    @Override
+    public long getAcquireTimeP999Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(acquireTime.getPercentile(99.9));
+    }
+
+    @Override
+    public long getAcquireTimeMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(acquireTime.getMax());
+    }
+
+    @Override
+    public long getConnectionTimeouts() {
+        return connectionTimeouts.sum();
+    }
+
+    public Histogram getSignTime() {
+        return signTime;
+    }
+
+    public Histogram getCredentialsTime() {
+        return credentialsTime;
+    }
+
+    public Histogram getRefreshLag() {
+        return refreshLag;
+    }
+
+    public Histogram getStaleOverdue() {
+        return staleOverdue;
+    }
+
+    /**
+     * @return the time taken to create a physical connection (token, TLS and authentication), in milliseconds
+     */
+    public Histogram getConnectTime() {
+        return connectTime;
+    }
+
+    /**
+     * @return the time callers waited in <code>getConnection()</code>, in nanoseconds
+     */
+    public Histogram getAcquireTime() {
+        return acquireTime;
+    }
+}
@@ -0,0 +1,75 @@
+package com.carepay.jdbc.metrics;
+
+/**
+ * JMX view of the token metrics of a datasource or driver plugin.
+ */
+public interface TokenMetricsMXBean {
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    long getSignCount();
+
+    double getSignTimeMeanMicros();
+
+    long getSignTimeP99Micros();
+
+    long getSignTimeMaxMicros();
+
+    double getCredentialsTimeMeanMicros();
+
+    long getCredentialsTimeP99Micros();
+
+    long getCredentialsTimeMaxMicros();
+
+    long getRefreshCount();
+
+    double getRefreshLagMeanMillis();
+
+    long getRefreshLagMaxMillis();
+
+    long getStaleCount();
+
+    long getStaleOverdueMaxMillis();
+
+    /**
+     * @return true when the last token served was due for renewal and not renewed yet
+     */
+    boolean isServingStaleToken();
+
+    long getFailureCount();
+
+    String getLastFailure();
+
+    /**
+     * @return the number of physical connections created by the pool
+     */
+    long getConnectCount();
+
+    double getConnectTimeMeanMillis();
+
+    long getConnectTimeP50Millis();
+
+    long getConnectTimeP99Millis();
+
+    long getConnectTimeP999Millis();
+
+    long getConnectTimeMaxMillis();
+
+    /**
+     * @return the number of connections borrowed from the pool
+     */
+    long getAcquireCount();
+
+    double getAcquireTimeMeanMicros();
+
+    long getAcquireTimeP50Micros();
+
+    long getAcquireTimeP99Micros();
+
+    long getAcquireTimeP999Micros();
+
+    long getAcquireTimeMaxMicros();
+
+    long getConnectionTimeouts();
+}
@@ -1,15 +1,16 @@
 package com.carepay.jdbc.mysql;
 
 import java.time.Clock;
-import java.time.LocalDateTime;
 import java.util.List;
 
 import com.carepay.aws.auth.CredentialsProvider;
-import com.carepay.aws.auth.DefaultCredentialsProviderChain;
 import com.carepay.aws.auth.RegionProvider;
-import com.carepay.aws.region.DefaultRegionProviderChain;
 import com.carepay.jdbc.RdsAWS4Signer;
+import com.carepay.jdbc.auth.CredentialsCache;
+import com.carepay.jdbc.metrics.TokenMetrics;
 import com.carepay.jdbc.pem.PemKeyStoreProvider;
+import com.carepay.jdbc.token.TokenCache;
+import com.carepay.jdbc.token.TokenPolicy;
 import com.mysql.cj.callback.MysqlCallbackHandler;
 import com.mysql.cj.conf.EnumProperty;
 import com.mysql.cj.conf.PropertyDefinitions;
@@ -18,39 +19,39 @@
 import com.mysql.cj.conf.RuntimeProperty;
 import com.mysql.cj.protocol.AuthenticationPlugin;
 import com.mysql.cj.protocol.Protocol;
+import com.mysql.cj.protocol.SocketConnection;
 import com.mysql.cj.protocol.a.NativeConstants.IntegerDataType;
 import com.mysql.cj.protocol.a.NativePacketPayload;
 import com.mysql.cj.util.StringUtils;
 
-import static java.time.ZoneOffset.UTC;
-
 /**
  * MySQL Clear Password Authentication Plugin. Supported from Connector/J v8.0.10 and newer.
  */
 public class RdsIamPasswordPlugin implements AuthenticationPlugin<NativePacketPayload> {
-    static {
-        PemKeyStoreProvider.register();
-    }
-
     /**
      * replaces the built-in clear-text plugin
      */
     private static final String PLUGIN_NAME = "mysql_clear_password";
 
+    private static final String METRICS_NAME = "mysql";
+
     private Protocol<NativePacketPayload> protocol;
 
+    private final RegionProvider regionProvider;
     private final Clock clock;
-
-    private final RdsAWS4Signer signer;
-    private LocalDateTime expiryDate;
+    private final TokenCache tokenCache;
+    private RdsAWS4Signer signer;
+    private TokenPolicy tokenPolicy = TokenPolicy.DEFAULT;
+    private boolean connectionSlotAcquired;
+    private final TokenMetrics tokenMetrics;
     protected String username;
-    private String password;
 
     /**
-     * Default constructor, uses AWS provider-chain by default
+     * Default constructor, uses AWS provider-chain by default. The credentials and region are shared
+     * by all connections through the credentials cache.
      */
     public RdsIamPasswordPlugin() {
-        this(new DefaultCredentialsProviderChain(), new DefaultRegionProviderChain(), Clock.systemUTC());
+        this(CredentialsCache.getInstance().getCredentialsProvider(null), CredentialsCache.getInstance().getRegionProvider(), Clock.systemUTC());
     }
 
     /**
@@ -64,8 +65,11 @@ public RdsIamPasswordPlugin(
             final CredentialsProvider credentialsProvider,
             final RegionProvider regionProvider,
             final Clock clock) {
+        this.signer = new RdsAWS4Signer(credentialsProvider, regionProvider, clock);
+        this.regionProvider = regionProvider;
         this.clock = clock;
-        this.signer = new RdsAWS4Signer(credentialsProvider, regionProvider, this.clock);
+        this.tokenCache = TokenCache.getInstance();
+        this.tokenMetrics = TokenMetrics.getShared(METRICS_NAME);
     }
 
     public void init(Protocol<NativePacketPayload> protocol) {
@@ -74,6 +78,7 @@ public void init(Protocol<NativePacketPayload> protocol) {
 
     @Override
     public void init(Protocol<NativePacketPayload> prot, MysqlCallbackHandler cbh) {
+        PemKeyStoreProvider.register();
         this.protocol = prot;
         final PropertySet propertySet = this.protocol.getPropertySet();
         propertySet.getBooleanProperty(PropertyKey.useSSL).setValue(true);
@@ -84,10 +89,25 @@ public void init(Protocol<NativePacketPayload> prot, MysqlCallbackHandler cbh) {
                 .getStringProperty(PropertyKey.trustCertificateKeyStoreUrl)
                 .setValue("classpath:/rds-combined-ca-bundle.pem");
         propertySet.getStringProperty(PropertyKey.trustCertificateKeyStoreType).setValue("PEM");
-        final RuntimeProperty<String> awsProfileProperty = propertySet.getStringProperty("awsProfile");
-        if (awsProfileProperty != null && awsProfileProperty.getValue() != null) {
-            System.setProperty("aws.profile", awsProfileProperty.getValue());
+        final String awsProfile = getStringProperty(propertySet, "awsProfile");
+        if (awsProfile != null) {
+            final CredentialsProvider profileCredentials = CredentialsCache.getInstance().getCredentialsProvider(awsProfile);
+            this.signer = new RdsAWS4Signer(profileCredentials, regionProvider, clock);
         }
+        this.tokenPolicy = TokenPolicy.of(
+                getStringProperty(propertySet, TokenPolicy.TOKEN_LIFETIME_SECONDS),
+                getStringProperty(propertySet, TokenPolicy.TOKEN_REFRESH_LEAD_SECONDS),
+                getStringProperty(propertySet, TokenPolicy.TOKEN_REFRESH_JITTER_SECONDS))
+                .withStaleWhileRevalidate(getStringProperty(propertySet, TokenPolicy.TOKEN_STALE_WHILE_REVALIDATE));
+        this.connectionSlotAcquired = false;
+    }
+
+    /**
+     * @return the value of a custom connection property, or null when not set
+     */
+    static String getStringProperty(final PropertySet propertySet, final String name) {
+        final RuntimeProperty<String> property = propertySet.getStringProperty(name);
+        return property != null ? property.getValue() : null;
     }
 
     public void destroy() {
@@ -123,22 +143,21 @@ public boolean nextAuthenticationStep(
     }
 
     /**
-     * Gets the IAM token. Creates a new token when the token is expired.
+     * Gets the IAM token from the shared token cache. Creates a new token when the token is expired.
+     * The {@link RdsIamSocketFactory} waits for the connection rate limit before it opens the socket.
+     * Without that socket factory, the plugin waits for it instead, once per connection (also when the
+     * server switches the authentication method).
      *
      * @return the IAM RDS token.
      */
     public String getPassword() {
-        refreshToken();
-        return this.password;
-    }
-
-    protected void refreshToken() {
-        final LocalDateTime now = LocalDateTime.ofInstant(clock.instant(), UTC);
-        if (this.expiryDate == null || expiryDate.isBefore(now)) {
-            final String host = this.protocol.getSocketConnection().getHost();
-            final int port = this.protocol.getSocketConnection().getPort();
-            this.password = signer.generateToken(host, port, username);
-            this.expiryDate = now.plusMinutes(10L); // Token expires after 15 min, so refresh after 10 min
+        final SocketConnection socketConnection = this.protocol.getSocketConnection();
+        final String host = socketConnection.getHost();
+        final int port = socketConnection.getPort();
+        if (!connectionSlotAcquired && !(socketConnection.getSocketFactory() instanceof RdsIamSocketFactory)) {
+            RdsIamSocketFactory.acquireConnectionSlot(this.protocol.getPropertySet(), host, port);
         }
+        connectionSlotAcquired = true;
+        return tokenCache.getToken(signer, host, port, username, tokenMetrics, tokenPolicy);
     }
 }
@@ -0,0 +1,124 @@
+package com.carepay.jdbc.mysql;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+
+import com.carepay.jdbc.limit.ConnectionRateLimiter;
+import com.carepay.jdbc.ssl.SslContextCache;
+import com.carepay.jdbc.util.HostAndPort;
+import com.mysql.cj.conf.PropertyDefinitions.SslMode;
+import com.mysql.cj.conf.PropertyKey;
+import com.mysql.cj.conf.PropertySet;
+import com.mysql.cj.exceptions.CJException;
+import com.mysql.cj.protocol.ServerSession;
+import com.mysql.cj.protocol.SocketConnection;
+import com.mysql.cj.protocol.StandardSocketFactory;
+import com.mysql.cj.util.StringUtils;
+
+import static com.carepay.jdbc.RdsIamConstants.PEM;
+
+/**
+ * Connector/J socket factory which performs the TLS handshake using the shared SSLContext from the
+ * {@link SslContextCache}, instead of building a KeyStore, TrustManagerFactory and SSLContext for
+ * every connection. Reconnects to the same host and port resume the cached TLS session.
+ * <p>
+ * Only applies to a PEM trust store (the RDS CA bundle by default) with <code>sslMode=VERIFY_CA</code>
+ * or <code>VERIFY_IDENTITY</code>: the server certificate is verified against the trust store, and
+ * with <code>VERIFY_IDENTITY</code> the hostname is verified as well. Other trust store types (JKS,
+ * PKCS12), other SSL modes and client certificate keystores use the default Connector/J handshake.
+ * <p>
+ * When <code>connectionRateLimit</code> is set, the socket factory waits for the connection rate limit
+ * of the endpoint before it opens the socket, so waiting connections hold no socket and the server's
+ * authentication timeout does not run while they wait.
+ */
+public class RdsIamSocketFactory extends StandardSocketFactory {
+    private static final List<String> TLS_PROTOCOLS = Arrays.asList("TLSv1.3", "TLSv1.2");
+
+    private final SslContextCache sslContextCache;
+
+    public RdsIamSocketFactory() {
+        this(SslContextCache.getInstance());
+    }
+
+    public RdsIamSocketFactory(final SslContextCache sslContextCache) {
+        this.sslContextCache = sslContextCache;
+    }
+
+    @Override
+    public <T extends Closeable> T connect(final String hostname, final int portNumber, final PropertySet propertySet,
+                                           final int loginTimeout) throws IOException {
+        acquireConnectionSlot(propertySet, hostname, portNumber);
+        return super.connect(hostname, portNumber, propertySet, loginTimeout);
+    }
+
+    /**
+     * Waits for the connection rate limit of the endpoint, when <code>connectionRateLimit</code> is set.
+     *
+     * @throws CJException when no slot is free within <code>connectionRateTimeoutMillis</code>
+     */
+    static void acquireConnectionSlot(final PropertySet propertySet, final String host, final int port) {
+        final ConnectionRateLimiter limiter = ConnectionRateLimiter.forEndpoint(new HostAndPort(host, port),
+                RdsIamPasswordPlugin.getStringProperty(propertySet, ConnectionRateLimiter.CONNECTION_RATE_LIMIT),
+                RdsIamPasswordPlugin.getStringProperty(propertySet, ConnectionRateLimiter.CONNECTION_RATE_BURST));
+        if (limiter != null) {
+            try {
+                limiter.acquire(ConnectionRateLimiter.parseTimeout(RdsIamPasswordPlugin.getStringProperty(propertySet,
+                        ConnectionRateLimiter.CONNECTION_RATE_TIMEOUT_MILLIS)), TimeUnit.MILLISECONDS);
+            } catch (SQLTransientConnectionException e) {
+                throw new CJException(e.getMessage(), e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends Closeable> T performTlsHandshake(final SocketConnection socketConnection, final ServerSession serverSession) throws IOException {
+        final PropertySet propertySet = socketConnection.getPropertySet();
+        if (!isSharedContextSupported(propertySet)) {
+            return super.performTlsHandshake(socketConnection, serverSession);
+        }
+        final String trustStoreUrl = propertySet.getStringProperty(PropertyKey.trustCertificateKeyStoreUrl).getValue();
+        final SSLSocket socket = (SSLSocket) sslContextCache.getContext(trustStoreUrl).getSocketFactory()
+                .createSocket(this.rawSocket, socketConnection.getHost(), socketConnection.getPort(), true);
+        socket.setEnabledProtocols(getProtocols(propertySet, socket.getSupportedProtocols()));
+        final String cipherSuites = propertySet.getStringProperty(PropertyKey.enabledSSLCipherSuites).getValue();
+        if (!StringUtils.isNullOrEmpty(cipherSuites)) {
+            socket.setEnabledCipherSuites(cipherSuites.split("\\s*,\\s*"));
+        }
+        if (propertySet.getEnumProperty(PropertyKey.sslMode).getValue() == SslMode.VERIFY_IDENTITY) {
+            final SSLParameters parameters = socket.getSSLParameters();
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+            socket.setSSLParameters(parameters);
+        }
+        socket.startHandshake();
+        this.sslSocket = socket;
+        return (T) socket;
+    }
+
+    /**
+     * @return true when the server certificate is verified against a PEM trust store, without a client
+     * certificate
+     */
+    private static boolean isSharedContextSupported(final PropertySet propertySet) {
+        final SslMode sslMode = propertySet.<SslMode>getEnumProperty(PropertyKey.sslMode).getValue();
+        return (sslMode == SslMode.VERIFY_CA || sslMode == SslMode.VERIFY_IDENTITY)
+                && PEM.equalsIgnoreCase(propertySet.getStringProperty(PropertyKey.trustCertificateKeyStoreType).getValue())
+                && !StringUtils.isNullOrEmpty(propertySet.getStringProperty(PropertyKey.trustCertificateKeyStoreUrl).getValue())
+                && StringUtils.isNullOrEmpty(propertySet.getStringProperty(PropertyKey.clientCertificateKeyStoreUrl).getValue());
+    }
+
+    private static String[] getProtocols(final PropertySet propertySet, final String[] supportedProtocols) {
+        final String enabledProtocols = propertySet.getStringProperty(PropertyKey.enabledTLSProtocols).getValue();
+        final List<String> configured = StringUtils.isNullOrEmpty(enabledProtocols) ? TLS_PROTOCOLS : Arrays.asList(enabledProtocols.split("\\s*,\\s*"));
+        final List<String> protocols = new ArrayList<>(configured);
+        protocols.retainAll(Arrays.asList(supportedProtocols));
+        return protocols.toArray(new String[0]);
+    }
+}
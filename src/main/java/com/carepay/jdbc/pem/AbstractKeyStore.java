@@ -7,41 +7,47 @@
 import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
-import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Map;
 
 public abstract class AbstractKeyStore extends KeyStoreSpi {
     private static final String UNSUPPORTED_OPERATION = "Unsupported operation";
-    protected final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    /**
+     * Immutable map of entries, replaced as a whole when the keystore is loaded.
+     */
+    protected volatile Map<String, Entry> entries = Collections.emptyMap();
 
-    protected Optional<Entry> getEntry(final String alias) {
-        return Optional.ofNullable(entries.get(alias));
+    protected Entry getEntry(final String alias) {
+        return entries.get(alias);
     }
 
     @Override
     public Key engineGetKey(final String alias, final char[] password) {
-        return getEntry(alias).map(Entry::getKey).orElse(null);
+        final Entry entry = getEntry(alias);
+        return entry != null ? entry.getKey() : null;
     }
 
     @Override
     public boolean engineIsKeyEntry(final String alias) {
-        return getEntry(alias).map(Entry::isKey).orElse(false);
+        final Entry entry = getEntry(alias);
+        return entry != null && entry.isKey();
     }
 
     @Override
     public Certificate[] engineGetCertificateChain(final String alias) {
-        return getEntry(alias).map(Entry::getCertificateChain).map(l -> l.toArray(new Certificate[]{})).orElse(null);
+        final Entry entry = getEntry(alias);
+        return entry != null ? entry.getCertificateChain().toArray(new Certificate[0]) : null;
     }
 
     @Override
     public Certificate engineGetCertificate(final String alias) {
-        return getEntry(alias).map(Entry::getCertificate).orElse(null);
+        final Entry entry = getEntry(alias);
+        return entry != null ? entry.getCertificate() : null;
     }
 
     @Override
     public Date engineGetCreationDate(final String alias) {
-        return getEntry(alias).map(Entry::getCertificate).map(this::getCreationDate).orElse(null);
+        final Certificate certificate = engineGetCertificate(alias);
+        return certificate != null ? getCreationDate(certificate) : null;
     }
 
     protected abstract Date getCreationDate(Certificate certificate);
@@ -63,7 +69,8 @@ public int engineSize() {
 
     @Override
     public boolean engineIsCertificateEntry(final String alias) {
-        return getEntry(alias).map(Entry::isCertificate).orElse(false);
+        final Entry entry = getEntry(alias);
+        return entry != null && entry.isCertificate();
     }
 
     @Override
@@ -0,0 +1,320 @@
+package com.carepay.jdbc.pem;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.time.Clock;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.carepay.aws.net.URLOpener;
+import com.carepay.jdbc.util.RefreshScheduler;
+
+import static com.carepay.jdbc.RdsIamConstants.BUNDLE_DOWNLOAD_URL;
+import static com.carepay.jdbc.RdsIamConstants.CA_BUNDLE_PATH;
+
+/**
+ * JVM-wide cache of downloaded CA bundles. A bundle is downloaded once and kept in memory and in a
+ * local disk cache. It is revalidated in the background using ETag / If-Modified-Since. Until the
+ * first download of the RDS bundle completes, the disk cache or the RDS bundle from the classpath is
+ * served. Other bundles (e.g. of a custom CA) are downloaded on first use when they are not on disk.
+ * <p>
+ * The bundles are trust anchors, so the disk cache is kept in a directory of the current user
+ * (<code>~/.cache/carepool-aws-jdbc</code>), created with owner-only permissions. Cached files are
+ * only used when they are owned by the current user, not writable by others and contain certificates.
+ */
+public class CertificateBundleCache {
+    private static final String CERTIFICATE_MARKER = "-----BEGIN CERTIFICATE-----";
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+    private static final String CHECKED_AT = "checkedAt";
+    private static final long REVALIDATE_MILLIS = TimeUnit.HOURS.toMillis(24L);
+    private static final long RETRY_MILLIS = TimeUnit.MINUTES.toMillis(5L);
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+
+    private static final CertificateBundleCache INSTANCE = new CertificateBundleCache(
+            Paths.get(System.getProperty("user.home"), ".cache", "carepool-aws-jdbc"),
+            RefreshScheduler.getInstance(),
+            Clock.systemUTC());
+
+    private final Path cacheDir;
+    private final Executor executor;
+    private final Clock clock;
+    private final ConcurrentMap<String, Bundle> bundles = new ConcurrentHashMap<>();
+
+    public CertificateBundleCache(final Path cacheDir, final Executor executor, final Clock clock) {
+        this.cacheDir = cacheDir;
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    /**
+     * @return the shared bundle cache
+     */
+    public static CertificateBundleCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the PEM contents of the CA bundle. Only blocks on the network the first time a bundle other
+     * than the RDS bundle is used, and it is not in the disk cache: the RDS bundle is served from the
+     * classpath until it is downloaded.
+     *
+     * @param url    the download URL of the bundle
+     * @param opener used to open the HTTP connection
+     * @return the PEM encoded certificates
+     * @throws IllegalStateException when the bundle can't be downloaded on first use
+     */
+    public String getBundle(final String url, final URLOpener opener) {
+        final Bundle bundle = getOrLoad(url, opener);
+        if (clock.millis() >= bundle.revalidateAt && bundle.revalidating.compareAndSet(false, true)) {
+            executor.execute(() -> revalidate(bundle, opener));
+        }
+        return bundle.content;
+    }
+
+    private Bundle getOrLoad(final String url, final URLOpener opener) {
+        final Bundle bundle = bundles.get(url);
+        if (bundle != null) {
+            return bundle;
+        }
+        // not computeIfAbsent, which holds a lock of the map while the files are read
+        final Bundle loaded = loadBundle(url, opener);
+        final Bundle existing = bundles.putIfAbsent(url, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    private Bundle loadBundle(final String url, final URLOpener opener) {
+        final Bundle bundle = new Bundle(url);
+        final Path pemFile = pemFile(url);
+        final Path propertiesFile = propertiesFile(url);
+        try (Reader reader = Files.newBufferedReader(propertiesFile, StandardCharsets.UTF_8)) {
+            if (!isTrusted(cacheDir) || !isTrusted(pemFile) || !isTrusted(propertiesFile)) {
+                throw new IOException("Untrusted disk cache " + cacheDir);
+            }
+            final Properties properties = new Properties();
+            properties.load(reader);
+            final String content = new String(Files.readAllBytes(pemFile), StandardCharsets.UTF_8);
+            if (!containsCertificates(content)) {
+                throw new IOException("No certificates found in " + pemFile);
+            }
+            bundle.content = content;
+            bundle.etag = properties.getProperty(ETAG);
+            bundle.lastModified = properties.getProperty(LAST_MODIFIED);
+            bundle.revalidateAt = Long.parseLong(properties.getProperty(CHECKED_AT, "0")) + REVALIDATE_MILLIS;
+        } catch (IOException | RuntimeException e) {
+            // not cached yet, or not trusted
+            if (BUNDLE_DOWNLOAD_URL.equals(url)) {
+                bundle.content = ClasspathBundle.CONTENT;
+            } else {
+                download(bundle, opener); // the classpath bundle has the wrong trust anchors
+            }
+        }
+        return bundle;
+    }
+
+    private void download(final Bundle bundle, final URLOpener opener) {
+        try {
+            fetch(bundle, opener);
+            if (bundle.content == null) {
+                throw new IOException("No content");
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalStateException("Unable to download CA bundle " + bundle.url + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void revalidate(final Bundle bundle, final URLOpener opener) {
+        try {
+            fetch(bundle, opener);
+        } catch (IOException | RuntimeException e) {
+            bundle.revalidateAt = clock.millis() + RETRY_MILLIS; // keep serving the current bundle
+        } finally {
+            bundle.revalidating.set(false);
+        }
+    }
+
+    private void fetch(final Bundle bundle, final URLOpener opener) throws IOException {
+        final HttpURLConnection uc = opener.open(URLOpener.create(bundle.url));
+        if (bundle.etag != null) {
+            uc.setRequestProperty("If-None-Match", bundle.etag);
+        }
+        if (bundle.lastModified != null) {
+            uc.setRequestProperty("If-Modified-Since", bundle.lastModified);
+        }
+        final int responseCode = uc.getResponseCode();
+        if (responseCode == HttpURLConnection.HTTP_OK) {
+            final String content = read(uc.getInputStream());
+            if (!containsCertificates(content)) {
+                throw new IOException("No certificates found in " + bundle.url);
+            }
+            bundle.content = content;
+            bundle.etag = uc.getHeaderField("ETag");
+            bundle.lastModified = uc.getHeaderField("Last-Modified");
+        } else if (responseCode != HttpURLConnection.HTTP_NOT_MODIFIED) {
+            throw new IOException("Unexpected response " + responseCode + " from " + bundle.url);
+        }
+        final long now = clock.millis();
+        bundle.revalidateAt = now + REVALIDATE_MILLIS;
+        store(bundle, now);
+    }
+
+    private void store(final Bundle bundle, final long checkedAt) {
+        try {
+            createCacheDir();
+            final Properties properties = new Properties();
+            if (bundle.etag != null) {
+                properties.setProperty(ETAG, bundle.etag);
+            }
+            if (bundle.lastModified != null) {
+                properties.setProperty(LAST_MODIFIED, bundle.lastModified);
+            }
+            properties.setProperty(CHECKED_AT, Long.toString(checkedAt));
+            final StringWriter sw = new StringWriter();
+            properties.store(sw, bundle.url);
+            write(pemFile(bundle.url), bundle.content);
+            write(propertiesFile(bundle.url), sw.toString());
+        } catch (IOException e) {
+            // disk cache is optional
+        }
+    }
+
+    private void createCacheDir() throws IOException {
+        if (!Files.isDirectory(cacheDir)) {
+            if (isPosix()) {
+                Files.createDirectories(cacheDir, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+            } else {
+                Files.createDirectories(cacheDir);
+            }
+        }
+        if (!isTrusted(cacheDir)) {
+            throw new IOException("Untrusted disk cache " + cacheDir); // don't write into a directory of someone else
+        }
+    }
+
+    /**
+     * @return true when the file is owned by the current user, and (on POSIX file systems) is not
+     * writable by the group or others
+     */
+    private boolean isTrusted(final Path path) throws IOException {
+        final UserPrincipal user = path.getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!user.equals(Files.getOwner(path, LinkOption.NOFOLLOW_LINKS))) {
+            return false;
+        }
+        if (isPosix()) {
+            final Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS);
+            return !permissions.contains(PosixFilePermission.GROUP_WRITE) && !permissions.contains(PosixFilePermission.OTHERS_WRITE);
+        }
+        return true;
+    }
+
+    private boolean isPosix() {
+        return cacheDir.getFileSystem().supportedFileAttributeViews().contains("posix");
+    }
+
+    /**
+     * @return true when the content parses into at least one X.509 certificate
+     */
+    static boolean containsCertificates(final String content) {
+        if (!content.contains(CERTIFICATE_MARKER)) {
+            return false;
+        }
+        try {
+            return !CertificateFactory.getInstance("X.509")
+                    .generateCertificates(new ByteArrayInputStream(content.getBytes(StandardCharsets.US_ASCII))).isEmpty();
+        } catch (CertificateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes to a temporary file first, so other processes never see a partially written file.
+     */
+    private void write(final Path file, final String content) throws IOException {
+        final Path tempFile = Files.createTempFile(cacheDir, "bundle", ".tmp");
+        Files.write(tempFile, content.getBytes(StandardCharsets.UTF_8));
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path pemFile(final String url) {
+        return cacheDir.resolve(fileName(url) + ".pem");
+    }
+
+    private Path propertiesFile(final String url) {
+        return cacheDir.resolve(fileName(url) + ".properties");
+    }
+
+    private static String fileName(final String url) {
+        try {
+            final StringBuilder sb = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8))) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    static String read(final InputStream stream) throws IOException {
+        try (InputStream in = stream; ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            final byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static class Bundle {
+        private final String url;
+        private final AtomicBoolean revalidating = new AtomicBoolean();
+        private volatile String content;
+        private volatile String etag;
+        private volatile String lastModified;
+        private volatile long revalidateAt;
+
+        Bundle(final String url) {
+            this.url = url;
+        }
+    }
+
+    /**
+     * Lazily loaded copy of the CA bundle shipped on the classpath.
+     */
+    private static class ClasspathBundle {
+        private static final String CONTENT = load();
+
+        private static String load() {
+            try {
+                return read(CertificateBundleCache.class.getResourceAsStream(CA_BUNDLE_PATH));
+            } catch (IOException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.carepay.jdbc.pem;
+
+import java.io.ByteArrayInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable set of entries parsed from a PEM bundle, with a reverse index from certificate to alias.
+ * Parsed bundles are shared JVM-wide, keyed by the SHA-256 digest of the bundle contents, so the
+ * same bundle is only decoded once.
+ */
+final class PemEntries {
+    private static final ConcurrentMap<String, PemEntries> CACHE = new ConcurrentHashMap<>();
+
+    private final Map<String, Entry> entries;
+    private final Map<Certificate, String> aliases;
+
+    private PemEntries(final Map<String, Entry> entries) {
+        this.entries = Collections.unmodifiableMap(entries);
+        final Map<Certificate, String> index = new HashMap<>();
+        entries.forEach((alias, entry) -> index.putIfAbsent(entry.getCertificate(), alias));
+        this.aliases = Collections.unmodifiableMap(index);
+    }
+
+    /**
+     * @param bundle the PEM encoded certificates
+     * @return the (shared) parsed entries
+     */
+    static PemEntries load(final byte[] bundle) throws CertificateException {
+        final String digest = digest(bundle);
+        final PemEntries cached = CACHE.get(digest);
+        if (cached != null) {
+            return cached;
+        }
+        final PemEntries parsed = parse(bundle);
+        final PemEntries existing = CACHE.putIfAbsent(digest, parsed);
+        return existing != null ? existing : parsed;
+    }
+
+    private static PemEntries parse(final byte[] bundle) throws CertificateException {
+        final Map<String, Entry> entries = new LinkedHashMap<>();
+        for (final Certificate c : CertificateFactory.getInstance("X.509").generateCertificates(new ByteArrayInputStream(bundle))) {
+            entries.put("pem" + ((X509Certificate) c).getSerialNumber(), new Entry(null, Collections.singletonList(c)));
+        }
+        return new PemEntries(entries);
+    }
+
+    private static String digest(final byte[] bundle) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(bundle));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    Map<String, Entry> getEntries() {
+        return entries;
+    }
+
+    String getAlias(final Certificate certificate) {
+        return certificate != null ? aliases.get(certificate) : null;
+    }
+}
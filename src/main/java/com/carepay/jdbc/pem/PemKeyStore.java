@@ -1,41 +1,37 @@
 package com.carepay.jdbc.pem;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
-import java.util.Collection;
-import java.util.Collections;
 import java.util.Date;
-import java.util.Map;
-import java.util.Objects;
-import java.util.function.Predicate;
 
 /**
- * KeyStore, which supports reading .PEM files. Only loads entries once to improve performance.
+ * KeyStore, which supports reading .PEM files. Only loads entries once to improve performance: the
+ * parsed entries are shared between all keystores loaded from the same bundle.
  */
 public class PemKeyStore extends AbstractKeyStore {
+    private volatile PemEntries pemEntries;
 
     @Override
-    public void engineLoad(final InputStream stream, final char[] password) throws CertificateException {
+    public void engineLoad(final InputStream stream, final char[] password) throws IOException, CertificateException {
         if (stream != null && entries.isEmpty()) {
-            loadCertificates(stream);
+            final PemEntries loaded = PemEntries.load(readAll(stream));
+            this.pemEntries = loaded;
+            this.entries = loaded.getEntries();
         }
     }
 
-    private void loadCertificates(final InputStream stream) throws CertificateException {
-        for (final Certificate c : getCertificates(stream)) {
-            putEntry(c);
+    private static byte[] readAll(final InputStream stream) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int n;
+        while ((n = stream.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
         }
-    }
-
-    private Collection<? extends Certificate> getCertificates(final InputStream stream) throws CertificateException {
-        return CertificateFactory.getInstance("X.509").generateCertificates(stream);
-    }
-
-    private void putEntry(final Certificate c) {
-        entries.put("pem" + ((X509Certificate) c).getSerialNumber(), new Entry(null, Collections.singletonList(c)));
+        return out.toByteArray();
     }
 
     @Override
@@ -45,14 +41,7 @@ protected Date getCreationDate(final Certificate certificate) {
 
     @Override
     public String engineGetCertificateAlias(final Certificate cert) {
-        return entries.entrySet().stream()
-                .filter(entryPredicate(cert))
-                .findFirst()
-                .map(Map.Entry::getKey)
-                .orElse(null);
-    }
-
-    private Predicate<Map.Entry<String, Entry>> entryPredicate(final Certificate cert) {
-        return e -> e.getValue() != null && Objects.equals(cert, e.getValue().getCertificate());
+        final PemEntries loaded = this.pemEntries;
+        return loaded != null ? loaded.getAlias(cert) : null;
     }
 }
@@ -10,6 +10,7 @@
 import java.security.Provider;
 import java.security.Security;
 import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static com.carepay.jdbc.RdsIamConstants.CA_BUNDLE_PATH;
 import static com.carepay.jdbc.RdsIamConstants.CLASSPATH_PROTOCOL;
@@ -19,9 +20,12 @@
  */
 public class PemKeyStoreProvider extends Provider {
     private static final long serialVersionUID = 1L;
+    private static final String NAME = "PEM";
+    private static final ReentrantLock REGISTER_LOCK = new ReentrantLock();
+    private static volatile boolean registered;
 
     public PemKeyStoreProvider() {
-        super("PEM", 1, "Provides PEM based KeyStore impl"); // NOSONAR
+        super(NAME, 1, "Provides PEM based KeyStore impl"); // NOSONAR
         setup();
     }
 
@@ -64,10 +68,29 @@ private URL getUrl(URL url) throws IOException {
         }
     }
 
+    /**
+     * Installs the provider, and the <code>classpath:</code> URL handler, once per JVM. Called on the
+     * connect paths instead of when the datasource and plugin classes are loaded, so starting the
+     * application doesn't touch the security providers; after the first call it only reads a flag.
+     */
     public static void register() {
-        if (Security.addProvider(new PemKeyStoreProvider()) < 0) {
-            return; // return when already installed
+        if (!registered) {
+            registerOnce();
+        }
+    }
+
+    private static void registerOnce() {
+        REGISTER_LOCK.lock();
+        try {
+            if (!registered) {
+                // skip the URL handler when the provider was installed by someone else, as before
+                if (Security.getProvider(NAME) == null && Security.addProvider(new PemKeyStoreProvider()) >= 0) {
+                    ensureClasspathURLSupported();
+                }
+                registered = true;
+            }
+        } finally {
+            REGISTER_LOCK.unlock();
         }
-        ensureClasspathURLSupported();
     }
 }
@@ -0,0 +1,190 @@
+package com.carepay.jdbc.ssl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import com.carepay.jdbc.pem.CertificateBundleCache;
+import com.carepay.jdbc.pem.PemKeyStoreProvider;
+
+import static com.carepay.jdbc.RdsIamConstants.CA_BUNDLE_PATH;
+import static com.carepay.jdbc.RdsIamConstants.CLASSPATH_PROTOCOL;
+import static com.carepay.jdbc.RdsIamConstants.PEM;
+
+/**
+ * JVM-wide cache of SSLContexts which trust a PEM CA bundle. Building the KeyStore,
+ * TrustManagerFactory and SSLContext is done once per bundle instead of once per connection. As
+ * every connection to the same bundle shares the context, the client session cache of the context
+ * is shared as well, which allows reconnects to the same endpoint to resume the TLS session.
+ */
+public class SslContextCache {
+    private static final String CERTIFICATE_MARKER = "-----BEGIN CERTIFICATE-----";
+    private static final String FILE_PREFIX = "file:";
+    private static final int SESSION_CACHE_SIZE = 1024;
+    private static final int SESSION_TIMEOUT_SECONDS = (int) TimeUnit.HOURS.toSeconds(8L);
+
+    private static final SslContextCache INSTANCE = new SslContextCache();
+
+    private final ConcurrentMap<String, SSLContext> contexts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Path, FileContext> fileContexts = new ConcurrentHashMap<>();
+    private volatile SSLContext defaultContext;
+
+    /**
+     * @return the shared SSLContext cache
+     */
+    public static SslContextCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the context which trusts the RDS CA bundle from the classpath
+     */
+    public SSLContext getDefault() {
+        SSLContext context = defaultContext;
+        if (context == null) {
+            try (InputStream is = SslContextCache.class.getResourceAsStream(CA_BUNDLE_PATH)) {
+                context = get(readAll(is));
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to read " + CA_BUNDLE_PATH, e);
+            }
+            defaultContext = context;
+        }
+        return context;
+    }
+
+    /**
+     * Gets the context for a certificate location, using the same notation as the MariaDB
+     * <code>serverSslCert</code> and the Connector/J <code>trustCertificateKeyStoreUrl</code> options.
+     *
+     * @param location the inline PEM certificates, a <code>classpath:</code> or <code>file:</code> URL, or a
+     *                 file path. When <code>null</code>, the RDS CA bundle from the classpath is used.
+     * @return the shared context
+     */
+    public SSLContext getContext(final String location) throws IOException {
+        if (location == null || location.isEmpty()) {
+            return getDefault();
+        }
+        if (location.startsWith(CERTIFICATE_MARKER)) {
+            return get(location.getBytes(StandardCharsets.US_ASCII));
+        }
+        if (location.startsWith(CLASSPATH_PROTOCOL + ":")) {
+            final String resource = location.substring(CLASSPATH_PROTOCOL.length() + 1);
+            if (CA_BUNDLE_PATH.equals(resource)) {
+                return getDefault();
+            }
+            try (InputStream is = SslContextCache.class.getResourceAsStream(resource)) {
+                return get(readAll(is));
+            }
+        }
+        return getContext(Paths.get(location.startsWith(FILE_PREFIX) ? location.substring(FILE_PREFIX.length()) : location));
+    }
+
+    /**
+     * Gets the context for a PEM file. The file is only read again when it was modified, so bundles
+     * which are replaced by the {@link CertificateBundleCache} are picked up.
+     *
+     * @param path the PEM file
+     * @return the shared context
+     */
+    public SSLContext getContext(final Path path) throws IOException {
+        final long lastModified = Files.getLastModifiedTime(path).toMillis();
+        final long size = Files.size(path);
+        final FileContext cached = fileContexts.get(path);
+        if (cached != null && cached.lastModified == lastModified && cached.size == size) {
+            return cached.context;
+        }
+        final SSLContext context = get(Files.readAllBytes(path));
+        fileContexts.put(path, new FileContext(lastModified, size, context));
+        return context;
+    }
+
+    /**
+     * @param bundle the PEM encoded CA certificates
+     * @return the shared context, keyed by the SHA-256 digest of the bundle
+     */
+    public SSLContext get(final byte[] bundle) {
+        final String digest = digest(bundle);
+        final SSLContext cached = contexts.get(digest);
+        if (cached != null) {
+            return cached;
+        }
+        final SSLContext created = createContext(bundle);
+        final SSLContext existing = contexts.putIfAbsent(digest, created);
+        return existing != null ? existing : created;
+    }
+
+    /**
+     * Removes all cached contexts, and with it all cached TLS sessions.
+     */
+    public void clear() {
+        contexts.clear();
+        fileContexts.clear();
+        defaultContext = null;
+    }
+
+    private static SSLContext createContext(final byte[] bundle) {
+        PemKeyStoreProvider.register();
+        try {
+            final KeyStore keyStore = KeyStore.getInstance(PEM);
+            keyStore.load(new ByteArrayInputStream(bundle), null);
+            final TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            tmf.init(keyStore);
+            final SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, tmf.getTrustManagers(), null);
+            final SSLSessionContext sessionContext = context.getClientSessionContext();
+            sessionContext.setSessionCacheSize(SESSION_CACHE_SIZE);
+            sessionContext.setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+            return context;
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException("Unable to create SSLContext: " + e.getMessage(), e);
+        }
+    }
+
+    private static byte[] readAll(final InputStream in) throws IOException {
+        if (in == null) {
+            throw new IOException("Resource not found");
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static String digest(final byte[] bundle) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(bundle));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    private static class FileContext {
+        private final long lastModified;
+        private final long size;
+        private final SSLContext context;
+
+        FileContext(final long lastModified, final long size, final SSLContext context) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.context = context;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.carepay.jdbc.token;
+
+/**
+ * Immutable IAM token with its deadlines, all expressed in epoch milliseconds.
+ */
+public final class Token {
+    private final String value;
+    private final long signedAt;
+    private final long refreshAt;
+    private final long expiresAt;
+
+    public Token(final String value, final long signedAt, final long refreshAt, final long expiresAt) {
+        this.value = value;
+        this.signedAt = signedAt;
+        this.refreshAt = refreshAt;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public long getSignedAt() {
+        return signedAt;
+    }
+
+    public long getRefreshAt() {
+        return refreshAt;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * A token signed 'in the future' is not fresh, this happens when the clock is adjusted.
+     *
+     * @param now current time in epoch milliseconds
+     * @return true if the token does not need to be renewed yet
+     */
+    public boolean isFresh(final long now) {
+        return now >= signedAt && now < refreshAt;
+    }
+
+    /**
+     * @param now current time in epoch milliseconds
+     * @return true if the token can still be used to connect
+     */
+    public boolean isValid(final long now) {
+        return now >= signedAt && now < expiresAt;
+    }
+}
@@ -0,0 +1,214 @@
+package com.carepay.jdbc.token;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import com.carepay.aws.auth.Credentials;
+import com.carepay.jdbc.RdsAWS4Signer;
+import com.carepay.jdbc.metrics.TokenListener;
+import com.carepay.jdbc.metrics.TokenListeners;
+import com.carepay.jdbc.util.RefreshScheduler;
+
+/**
+ * JVM-wide cache of IAM tokens. All datasources and driver plugins share this cache, so a token is
+ * signed only once per validity window for every host, port, user, region and set of credentials.
+ * <p>
+ * With a stale-while-revalidate {@link TokenPolicy} the latest token of a host, port and user is served
+ * until it expires without resolving the credentials, and it is renewed (credentials included) in the
+ * background, so a slow or failing credential source doesn't hold up callers.
+ */
+public class TokenCache {
+    private static final TokenCache INSTANCE = new TokenCache();
+
+    private final ConcurrentMap<TokenKey, TokenHolder> holders = new ConcurrentHashMap<>();
+    /**
+     * latest key per host, port, user, region and policy (without credentials), for stale-while-revalidate
+     */
+    private final ConcurrentMap<TokenKey, TokenKey> latestKeys = new ConcurrentHashMap<>();
+    private final Executor executor;
+
+    /**
+     * Renews stale-while-revalidate tokens on the shared refresh scheduler.
+     */
+    public TokenCache() {
+        this(null);
+    }
+
+    /**
+     * @param executor renews stale-while-revalidate tokens, or null for the shared refresh scheduler
+     */
+    public TokenCache(final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return the shared token cache
+     */
+    public static TokenCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the IAM token for the host, port and user. Creates a new token when there is no token yet,
+     * or when the cached token is due for renewal.
+     *
+     * @param signer   the signer used to create the token
+     * @param host     database hostname (dbname.xxxx.eu-west-1.rds.amazonaws.com)
+     * @param port     database port (MySQL uses 3306)
+     * @param username database username
+     * @return the IAM RDS token.
+     */
+    public String getToken(final RdsAWS4Signer signer, final String host, final int port, final String username) {
+        return get(signer, host, port, username, TokenListener.NONE).getValue();
+    }
+
+    /**
+     * Same as {@link #getToken(RdsAWS4Signer, String, int, String)}, but reports to the listener.
+     */
+    public String getToken(final RdsAWS4Signer signer, final String host, final int port, final String username, final TokenListener listener) {
+        return get(signer, host, port, username, listener).getValue();
+    }
+
+    /**
+     * Same as {@link #getToken(RdsAWS4Signer, String, int, String)}, but includes the deadlines of the
+     * token.
+     */
+    public Token get(final RdsAWS4Signer signer, final String host, final int port, final String username) {
+        return get(signer, host, port, username, TokenListener.NONE);
+    }
+
+    /**
+     * Same as {@link #getToken(RdsAWS4Signer, String, int, String, TokenListener)}, but uses the lifetime
+     * and renewal deadline of the policy.
+     */
+    public String getToken(final RdsAWS4Signer signer, final String host, final int port, final String username, final TokenListener listener,
+                           final TokenPolicy policy) {
+        return get(signer, host, port, username, listener, policy).getValue();
+    }
+
+    /**
+     * Same as {@link #get(RdsAWS4Signer, String, int, String)}, but reports the credential and signing
+     * times, cache hits and misses, refreshes and failures to the listener (and the JVM-wide listeners).
+     */
+    public Token get(final RdsAWS4Signer signer, final String host, final int port, final String username, final TokenListener listener) {
+        return get(signer, host, port, username, listener, TokenPolicy.DEFAULT);
+    }
+
+    /**
+     * Same as {@link #get(RdsAWS4Signer, String, int, String, TokenListener)}, but uses the lifetime and
+     * renewal deadline of the policy.
+     */
+    public Token get(final RdsAWS4Signer signer, final String host, final int port, final String username, final TokenListener listener,
+                     final TokenPolicy policy) {
+        final TokenListener l = TokenListeners.withGlobal(listener);
+        final String region = signer.getRegion(host);
+        final long now = signer.currentTimeMillis();
+        if (policy.isStaleWhileRevalidate()) {
+            final Token latest = getLatest(signer, now, host, port, username, region, policy, l);
+            if (latest != null) {
+                return latest;
+            }
+        }
+        final Credentials credentials = resolveCredentials(signer, l);
+        final TokenKey key = new TokenKey(host, port, username, region, credentials.getAccessKeyId(), policy);
+        TokenHolder holder = holders.get(key);
+        if (holder == null) {
+            evictExpired(now);
+            holder = holders.computeIfAbsent(key, k -> new TokenHolder());
+        }
+        if (policy.isStaleWhileRevalidate()) {
+            latestKeys.put(new TokenKey(host, port, username, region, null, policy), key);
+        }
+        final Token previous = holder.peek();
+        final TokenHolder h = holder;
+        final Supplier<Token> sign = () -> sign(signer, now, host, port, username, policy, h.peek(), l);
+        final Token token = policy.isStaleWhileRevalidate() ? holder.get(now, sign, getExecutor()) : holder.get(now, sign);
+        report(token, previous, now, l);
+        return token;
+    }
+
+    /**
+     * Stale-while-revalidate: serves the latest valid token of the host, port and user without resolving
+     * the credentials, which may be slow (e.g. when the instance metadata is queried). When the token is
+     * due for renewal, the credentials are resolved and the token is signed in the background.
+     *
+     * @return the latest valid token signed with any credentials, or null
+     */
+    private Token getLatest(final RdsAWS4Signer signer, final long now, final String host, final int port, final String username,
+                            final String region, final TokenPolicy policy, final TokenListener l) {
+        final TokenKey key = latestKeys.get(new TokenKey(host, port, username, region, null, policy));
+        final TokenHolder holder = key != null ? holders.get(key) : null;
+        final Token latest = holder != null ? holder.peek() : null;
+        if (latest == null || !latest.isValid(now)) {
+            return null;
+        }
+        final Supplier<Token> renew = () -> {
+            resolveCredentials(signer, l);
+            return sign(signer, now, host, port, username, policy, latest, l);
+        };
+        final Token token = holder.get(now, renew, getExecutor());
+        report(token, latest, now, l);
+        return token;
+    }
+
+    private static void report(final Token token, final Token previous, final long now, final TokenListener l) {
+        if (token == previous) {
+            l.onCacheHit();
+            if (!token.isFresh(now)) {
+                l.onStale(Math.max(0L, now - token.getRefreshAt()));
+            }
+        } else {
+            l.onCacheMiss();
+        }
+    }
+
+    private Executor getExecutor() {
+        return executor != null ? executor : RefreshScheduler.getInstance();
+    }
+
+    private static Credentials resolveCredentials(final RdsAWS4Signer signer, final TokenListener listener) {
+        final long start = System.nanoTime();
+        try {
+            final Credentials credentials = signer.getCredentials();
+            listener.onCredentialsResolved(System.nanoTime() - start);
+            return credentials;
+        } catch (RuntimeException e) {
+            listener.onFailure(e);
+            throw e;
+        }
+    }
+
+    private static Token sign(final RdsAWS4Signer signer, final long now, final String host, final int port, final String username,
+                              final TokenPolicy policy, final Token previous, final TokenListener listener) {
+        final long start = System.nanoTime();
+        try {
+            final Token token = policy.createToken(signer.generateToken(host, port, username, policy.getLifetimeSeconds()), now);
+            listener.onSigned(System.nanoTime() - start);
+            if (previous != null) {
+                listener.onRefreshed(Math.max(0L, now - previous.getRefreshAt()));
+            }
+            return token;
+        } catch (RuntimeException e) {
+            listener.onFailure(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Removes all tokens from the cache.
+     */
+    public void clear() {
+        holders.clear();
+        latestKeys.clear();
+    }
+
+    private void evictExpired(final long now) {
+        holders.values().removeIf(h -> {
+            final Token token = h.peek();
+            return token != null && !token.isValid(now);
+        });
+        latestKeys.values().removeIf(k -> !holders.containsKey(k));
+    }
+}
@@ -0,0 +1,146 @@
+package com.carepay.jdbc.token;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import com.carepay.jdbc.util.CircuitBreaker;
+
+/**
+ * Holds the current token for a single {@link TokenKey}. Reading a fresh token is a single volatile
+ * read. When the token is due for renewal, exactly one thread signs a new token, while the other
+ * threads keep using the previous token for as long as it is valid. Threads only wait when there is
+ * no valid token at all.
+ * <p>
+ * In stale-while-revalidate mode even the thread which notices that the token is due for renewal
+ * does not wait: the token is signed on an executor. Failed renewals are retried after a backoff.
+ */
+public class TokenHolder {
+    private final AtomicReference<Token> token = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<Token>> inFlight = new AtomicReference<>();
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * @param now    current time in epoch milliseconds
+     * @param signer creates a new token
+     * @return a valid token
+     */
+    public Token get(final long now, final Supplier<Token> signer) {
+        final Token current = token.get();
+        if (current != null && current.isFresh(now)) {
+            return current;
+        }
+        final CompletableFuture<Token> pending = inFlight.get();
+        if (pending != null) {
+            return current != null && current.isValid(now) ? current : join(pending);
+        }
+        final CompletableFuture<Token> future = new CompletableFuture<>();
+        if (!inFlight.compareAndSet(null, future)) {
+            return get(now, signer); // another thread started signing
+        }
+        try {
+            final Token latest = token.get();
+            final Token result = latest != null && latest.isFresh(now) ? latest : signer.get();
+            token.set(result);
+            future.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.compareAndSet(future, null);
+        }
+    }
+
+    /**
+     * Stale-while-revalidate: returns the current token as long as it is valid, and signs a new token on
+     * the executor when it is due for renewal. Only waits when there is no valid token. While renewing
+     * fails, the signer is not called until the backoff has elapsed, and callers without a valid token
+     * fail immediately.
+     *
+     * @param now      current time in epoch milliseconds
+     * @param signer   creates a new token
+     * @param executor signs the token in the background
+     * @return a valid token
+     * @throws IllegalStateException when there is no valid token and renewing failed recently
+     */
+    public Token get(final long now, final Supplier<Token> signer, final Executor executor) {
+        final Token current = token.get();
+        if (current != null && current.isFresh(now)) {
+            return current;
+        }
+        if (current != null && current.isValid(now)) {
+            refreshInBackground(now, signer, executor);
+            return current;
+        }
+        if (inFlight.get() == null) {
+            circuitBreaker.acquire(now);
+        }
+        return get(now, guard(now, signer));
+    }
+
+    private void refreshInBackground(final long now, final Supplier<Token> signer, final Executor executor) {
+        if (inFlight.get() != null || !circuitBreaker.tryAcquire(now)) {
+            return;
+        }
+        final CompletableFuture<Token> future = new CompletableFuture<>();
+        if (!inFlight.compareAndSet(null, future)) {
+            return;
+        }
+        final Supplier<Token> guarded = guard(now, signer);
+        try {
+            executor.execute(() -> {
+                try {
+                    final Token result = guarded.get();
+                    token.set(result);
+                    future.complete(result);
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    inFlight.compareAndSet(future, null);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.compareAndSet(future, null);
+            future.completeExceptionally(e);
+        }
+    }
+
+    private Supplier<Token> guard(final long now, final Supplier<Token> signer) {
+        return () -> {
+            try {
+                final Token result = signer.get();
+                circuitBreaker.onSuccess();
+                return result;
+            } catch (RuntimeException e) {
+                circuitBreaker.onFailure(now, e);
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * @return the breaker which guards the renewals in stale-while-revalidate mode
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @return the current token, or null when no token was signed yet
+     */
+    public Token peek() {
+        return token.get();
+    }
+
+    private static Token join(final CompletableFuture<Token> pending) {
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.carepay.jdbc.token;
+
+import java.util.Objects;
+
+/**
+ * Identifies an IAM token. A token is only valid for a single host, port and user, and is bound to
+ * the region and the credentials that were used to sign it. Tokens with a different lifetime or
+ * renewal policy are kept apart.
+ */
+public final class TokenKey {
+    private final String host;
+    private final int port;
+    private final String username;
+    private final String region;
+    private final String accessKeyId;
+    private final TokenPolicy policy;
+
+    public TokenKey(final String host, final int port, final String username, final String region, final String accessKeyId) {
+        this(host, port, username, region, accessKeyId, TokenPolicy.DEFAULT);
+    }
+
+    public TokenKey(final String host, final int port, final String username, final String region, final String accessKeyId, final TokenPolicy policy) {
+        this.host = host;
+        this.port = port;
+        this.username = username;
+        this.region = region;
+        this.accessKeyId = accessKeyId;
+        this.policy = policy;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public String getAccessKeyId() {
+        return accessKeyId;
+    }
+
+    public TokenPolicy getPolicy() {
+        return policy;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TokenKey)) {
+            return false;
+        }
+        final TokenKey other = (TokenKey) o;
+        return port == other.port
+                && Objects.equals(host, other.host)
+                && Objects.equals(username, other.username)
+                && Objects.equals(region, other.region)
+                && Objects.equals(accessKeyId, other.accessKeyId)
+                && Objects.equals(policy, other.policy);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(host, port, username, region, accessKeyId, policy);
+    }
+
+    @Override
+    public String toString() {
+        return username + "@" + host + ":" + port + " (" + region + ")";
+    }
+}
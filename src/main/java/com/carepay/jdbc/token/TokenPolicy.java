@@ -0,0 +1,229 @@
+package com.carepay.jdbc.token;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lifetime and renewal deadline of IAM tokens. The deadlines are taken from the <code>X-Amz-Date</code>
+ * and <code>X-Amz-Expires</code> of the signed token: a token is renewed <code>refreshLead</code>
+ * seconds before it expires, minus a random jitter. The jitter spreads the renewals of many
+ * applications which were started at the same time.
+ * <p>
+ * With <code>staleWhileRevalidate</code> a token which is due for renewal is still served until it
+ * expires, while it is renewed in the background. Connections then never wait for the credentials or
+ * signing, unless there is no valid token at all.
+ */
+public final class TokenPolicy {
+    /**
+     * RDS accepts tokens for at most 15 minutes
+     */
+    public static final int MAX_LIFETIME_SECONDS = 900;
+    public static final int DEFAULT_REFRESH_LEAD_SECONDS = 300;
+    public static final String TOKEN_LIFETIME_SECONDS = "tokenLifetimeSeconds";
+    public static final String TOKEN_REFRESH_LEAD_SECONDS = "tokenRefreshLeadSeconds";
+    public static final String TOKEN_REFRESH_JITTER_SECONDS = "tokenRefreshJitterSeconds";
+    public static final String TOKEN_STALE_WHILE_REVALIDATE = "tokenStaleWhileRevalidate";
+    public static final TokenPolicy DEFAULT = new TokenPolicy(MAX_LIFETIME_SECONDS, DEFAULT_REFRESH_LEAD_SECONDS, 0);
+
+    private static final String AMZ_DATE = "X-Amz-Date=";
+    private static final String AMZ_EXPIRES = "X-Amz-Expires=";
+
+    private final int lifetimeSeconds;
+    private final int refreshLeadSeconds;
+    private final int refreshJitterSeconds;
+    private final boolean staleWhileRevalidate;
+
+    /**
+     * @param lifetimeSeconds      validity of the token, at most 900 seconds
+     * @param refreshLeadSeconds   the token is renewed this many seconds before it expires
+     * @param refreshJitterSeconds the token is renewed up to this many seconds earlier, at random
+     * @throws IllegalArgumentException when the token would be renewed before it is signed
+     */
+    public TokenPolicy(final int lifetimeSeconds, final int refreshLeadSeconds, final int refreshJitterSeconds) {
+        this(lifetimeSeconds, refreshLeadSeconds, refreshJitterSeconds, false);
+    }
+
+    /**
+     * @param lifetimeSeconds      validity of the token, at most 900 seconds
+     * @param refreshLeadSeconds   the token is renewed this many seconds before it expires
+     * @param refreshJitterSeconds the token is renewed up to this many seconds earlier, at random
+     * @param staleWhileRevalidate serve the token until it expires while it is renewed in the background
+     * @throws IllegalArgumentException when the token would be renewed before it is signed
+     */
+    public TokenPolicy(final int lifetimeSeconds, final int refreshLeadSeconds, final int refreshJitterSeconds,
+                       final boolean staleWhileRevalidate) {
+        if (lifetimeSeconds <= 0 || lifetimeSeconds > MAX_LIFETIME_SECONDS) {
+            throw new IllegalArgumentException(TOKEN_LIFETIME_SECONDS + " must be between 1 and " + MAX_LIFETIME_SECONDS + ": " + lifetimeSeconds);
+        }
+        if (refreshLeadSeconds < 0 || refreshJitterSeconds < 0 || refreshLeadSeconds + refreshJitterSeconds >= lifetimeSeconds) {
+            throw new IllegalArgumentException(TOKEN_REFRESH_LEAD_SECONDS + " (" + refreshLeadSeconds + ") plus " + TOKEN_REFRESH_JITTER_SECONDS
+                    + " (" + refreshJitterSeconds + ") must be less than " + TOKEN_LIFETIME_SECONDS + " (" + lifetimeSeconds + ")");
+        }
+        this.lifetimeSeconds = lifetimeSeconds;
+        this.refreshLeadSeconds = refreshLeadSeconds;
+        this.refreshJitterSeconds = refreshJitterSeconds;
+        this.staleWhileRevalidate = staleWhileRevalidate;
+    }
+
+    /**
+     * Creates a policy from (optional) configuration properties, e.g. JDBC URL parameters.
+     *
+     * @param lifetimeSeconds      the lifetime, or null for the default
+     * @param refreshLeadSeconds   the lead time, or null for the default
+     * @param refreshJitterSeconds the jitter, or null for no jitter
+     * @return the policy
+     * @throws IllegalArgumentException when a value is not a number, or the combination is invalid
+     */
+    public static TokenPolicy of(final String lifetimeSeconds, final String refreshLeadSeconds, final String refreshJitterSeconds) {
+        return of(parse(TOKEN_LIFETIME_SECONDS, lifetimeSeconds), parse(TOKEN_REFRESH_LEAD_SECONDS, refreshLeadSeconds),
+                parse(TOKEN_REFRESH_JITTER_SECONDS, refreshJitterSeconds));
+    }
+
+    /**
+     * Creates a policy from (optional) datasource settings. When only the lifetime is set, the token
+     * is renewed after two thirds of its lifetime, like the default policy.
+     *
+     * @param lifetimeSeconds      the lifetime, or null for the default
+     * @param refreshLeadSeconds   the lead time, or null for the default
+     * @param refreshJitterSeconds the jitter, or null for no jitter
+     * @return the policy
+     * @throws IllegalArgumentException when the combination is invalid
+     */
+    public static TokenPolicy of(final Integer lifetimeSeconds, final Integer refreshLeadSeconds, final Integer refreshJitterSeconds) {
+        if (lifetimeSeconds == null && refreshLeadSeconds == null && refreshJitterSeconds == null) {
+            return DEFAULT;
+        }
+        final int lifetime = lifetimeSeconds != null ? lifetimeSeconds : MAX_LIFETIME_SECONDS;
+        final int lead = refreshLeadSeconds != null ? refreshLeadSeconds : lifetime * DEFAULT_REFRESH_LEAD_SECONDS / MAX_LIFETIME_SECONDS;
+        return new TokenPolicy(lifetime, lead, refreshJitterSeconds != null ? refreshJitterSeconds : 0);
+    }
+
+    /**
+     * @param staleWhileRevalidate serve the token until it expires while it is renewed in the background
+     * @return a policy with the same deadlines
+     */
+    public TokenPolicy withStaleWhileRevalidate(final boolean staleWhileRevalidate) {
+        return staleWhileRevalidate == this.staleWhileRevalidate ? this
+                : new TokenPolicy(lifetimeSeconds, refreshLeadSeconds, refreshJitterSeconds, staleWhileRevalidate);
+    }
+
+    /**
+     * @param staleWhileRevalidate the value of <code>tokenStaleWhileRevalidate</code>, or null
+     * @return a policy with the same deadlines
+     */
+    public TokenPolicy withStaleWhileRevalidate(final String staleWhileRevalidate) {
+        return withStaleWhileRevalidate(Boolean.parseBoolean(staleWhileRevalidate != null ? staleWhileRevalidate.trim() : null));
+    }
+
+    private static Integer parse(final String name, final String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " is not a number: " + value, e);
+        }
+    }
+
+    public int getLifetimeSeconds() {
+        return lifetimeSeconds;
+    }
+
+    public int getRefreshLeadSeconds() {
+        return refreshLeadSeconds;
+    }
+
+    public int getRefreshJitterSeconds() {
+        return refreshJitterSeconds;
+    }
+
+    public boolean isStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+
+    /**
+     * Computes the deadlines of a signed token from its <code>X-Amz-Date</code> and
+     * <code>X-Amz-Expires</code>. The jitter is drawn for every token.
+     *
+     * @param value the signed token
+     * @param now   current time in epoch milliseconds, used when the token has no date
+     * @return the token with its deadlines
+     */
+    public Token createToken(final String value, final long now) {
+        final long signedAt = parseDate(value, now);
+        final long expiresAt = signedAt + TimeUnit.SECONDS.toMillis(parseExpires(value, lifetimeSeconds));
+        long refreshAt = expiresAt - TimeUnit.SECONDS.toMillis(refreshLeadSeconds);
+        if (refreshJitterSeconds > 0) {
+            refreshAt -= ThreadLocalRandom.current().nextLong(TimeUnit.SECONDS.toMillis(refreshJitterSeconds) + 1L);
+        }
+        return new Token(value, signedAt, Math.max(refreshAt, signedAt), expiresAt);
+    }
+
+    /**
+     * Parses the signing time, formatted as <code>yyyyMMdd'T'HHmmss'Z'</code>.
+     */
+    private static long parseDate(final String value, final long defaultValue) {
+        final int start = value.indexOf(AMZ_DATE);
+        if (start < 0 || value.length() < start + AMZ_DATE.length() + 16) {
+            return defaultValue;
+        }
+        final int i = start + AMZ_DATE.length();
+        try {
+            return LocalDateTime.of(
+                    Integer.parseInt(value.substring(i, i + 4)),
+                    Integer.parseInt(value.substring(i + 4, i + 6)),
+                    Integer.parseInt(value.substring(i + 6, i + 8)),
+                    Integer.parseInt(value.substring(i + 9, i + 11)),
+                    Integer.parseInt(value.substring(i + 11, i + 13)),
+                    Integer.parseInt(value.substring(i + 13, i + 15)))
+                    .toEpochSecond(ZoneOffset.UTC) * 1000L;
+        } catch (RuntimeException e) {
+            return defaultValue;
+        }
+    }
+
+    private static int parseExpires(final String value, final int defaultValue) {
+        final int start = value.indexOf(AMZ_EXPIRES);
+        if (start < 0) {
+            return defaultValue;
+        }
+        final int i = start + AMZ_EXPIRES.length();
+        int end = value.indexOf('&', i);
+        if (end < 0) {
+            end = value.length();
+        }
+        try {
+            return Integer.parseInt(value.substring(i, end));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final TokenPolicy that = (TokenPolicy) o;
+        return lifetimeSeconds == that.lifetimeSeconds && refreshLeadSeconds == that.refreshLeadSeconds
+                && refreshJitterSeconds == that.refreshJitterSeconds && staleWhileRevalidate == that.staleWhileRevalidate;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(lifetimeSeconds, refreshLeadSeconds, refreshJitterSeconds, staleWhileRevalidate);
+    }
+
+    @Override
+    public String toString() {
+        return lifetimeSeconds + "s lifetime, " + refreshLeadSeconds + "s lead, " + refreshJitterSeconds + "s jitter"
+                + (staleWhileRevalidate ? ", stale-while-revalidate" : "");
+    }
+}
@@ -1,25 +1,33 @@
 package com.carepay.jdbc.tomcat;
 
 import java.lang.reflect.Field;
-import java.net.URL;
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.carepay.jdbc.RdsAWS4Signer;
+import com.carepay.jdbc.limit.ConnectionRateLimiter;
+import com.carepay.jdbc.metrics.TokenMetrics;
+import com.carepay.jdbc.token.Token;
+import com.carepay.jdbc.token.TokenCache;
+import com.carepay.jdbc.token.TokenPolicy;
+import com.carepay.jdbc.util.HostAndPort;
 import com.carepay.jdbc.util.JdbcUrlUtils;
 import org.apache.tomcat.jdbc.pool.ConnectionPool;
 import org.apache.tomcat.jdbc.pool.PoolConfiguration;
-import org.apache.tomcat.jdbc.pool.PoolUtilities;
+import org.apache.tomcat.jdbc.pool.PoolExhaustedException;
 import org.apache.tomcat.jdbc.pool.PooledConnection;
 
 import static com.carepay.jdbc.RdsIamConstants.CA_BUNDLE_URL;
 import static com.carepay.jdbc.RdsIamConstants.PEM;
+import static com.carepay.jdbc.RdsIamConstants.RDS_IAM_SOCKET_FACTORY;
 import static com.carepay.jdbc.RdsIamConstants.REQUIRE_SSL;
+import static com.carepay.jdbc.RdsIamConstants.SOCKET_FACTORY;
 import static com.carepay.jdbc.RdsIamConstants.SSL_MODE;
 import static com.carepay.jdbc.RdsIamConstants.TRUST_CERTIFICATE_KEY_STORE_TYPE;
 import static com.carepay.jdbc.RdsIamConstants.TRUST_CERTIFICATE_KEY_STORE_URL;
@@ -28,34 +36,84 @@
 import static com.carepay.jdbc.RdsIamConstants.VERIFY_SERVER_CERTIFICATE;
 
 /**
- * Extends the default pool. This implementation will generate a new IAM token every 10 min.
+ * Extends the default pool. Every connection takes the current IAM token when it (re)connects. The
+ * token is renewed in the background when it is due for renewal, so connecting never waits for
+ * signing. When the pool connects through a datasource (e.g. the {@link com.carepay.jdbc.aurora.FailoverDataSource}),
+ * the datasource signs the tokens and the pool signs none.
  */
 public class RdsIamAuthConnectionPool extends ConnectionPool {
+    private static final long RETRY_MILLIS = TimeUnit.SECONDS.toMillis(30L);
+    /**
+     * the private size counter of the default pool, which {@link #create(boolean)} increments
+     */
+    private static final Field SIZE = getSizeField();
 
     private final RdsAWS4Signer tokenGenerator;
+    private final TokenCache tokenCache = TokenCache.getInstance();
+    private final TokenMetrics tokenMetrics;
+    private final boolean signing;
     private final ScheduledExecutorService scheduledExectorService;
+    private final TokenPolicy tokenPolicy;
+    private final ConnectionRateLimiter connectionRateLimiter;
     private String host;
     private int port;
-    private ScheduledFuture<?> backgroundFuture;
+    private List<HostAndPort> hosts;
+    private volatile boolean closed;
+    private volatile ScheduledFuture<?> backgroundFuture;
 
     public RdsIamAuthConnectionPool(final RdsAWS4Signer tokenGenerator,
                                     final PoolConfiguration prop,
                                     final ScheduledExecutorService scheduledExecutorService) throws SQLException {
+        this(tokenGenerator, prop, scheduledExecutorService, TokenPolicy.DEFAULT);
+    }
+
+    public RdsIamAuthConnectionPool(final RdsAWS4Signer tokenGenerator,
+                                    final PoolConfiguration prop,
+                                    final ScheduledExecutorService scheduledExecutorService,
+                                    final TokenPolicy tokenPolicy) throws SQLException {
+        this(tokenGenerator, prop, scheduledExecutorService, tokenPolicy, null);
+    }
+
+    /**
+     * @param connectionRateLimiter limits the rate of new connections, or null
+     */
+    public RdsIamAuthConnectionPool(final RdsAWS4Signer tokenGenerator,
+                                    final PoolConfiguration prop,
+                                    final ScheduledExecutorService scheduledExecutorService,
+                                    final TokenPolicy tokenPolicy,
+                                    final ConnectionRateLimiter connectionRateLimiter) throws SQLException {
+        this(tokenGenerator, prop, scheduledExecutorService, tokenPolicy, connectionRateLimiter, new TokenMetrics());
+    }
+
+    /**
+     * @param tokenMetrics the token and connection metrics, e.g. shared with the datasource of the pool
+     */
+    public RdsIamAuthConnectionPool(final RdsAWS4Signer tokenGenerator,
+                                    final PoolConfiguration prop,
+                                    final ScheduledExecutorService scheduledExecutorService,
+                                    final TokenPolicy tokenPolicy,
+                                    final ConnectionRateLimiter connectionRateLimiter,
+                                    final TokenMetrics tokenMetrics) throws SQLException {
         super(prop);
         this.tokenGenerator = tokenGenerator;
         this.scheduledExectorService = scheduledExecutorService;
-        BlockingQueue<PooledConnection> busyConnections = getPrivateConnectionListField("busy");
-        BlockingQueue<PooledConnection> idleConnections = getPrivateConnectionListField("idle");
-        Consumer<PooledConnection> consumer = pc -> pc.getAttributes().remove(PoolUtilities.PROP_PASSWORD);
-
-        this.backgroundFuture = scheduledExectorService.scheduleWithFixedDelay(
-                () -> {
-                    updatePassword(prop);
-                    idleConnections.forEach(consumer);
-                    busyConnections.forEach(consumer);
-                },
-                0, 10, TimeUnit.MINUTES
-        );
+        this.tokenPolicy = tokenPolicy;
+        this.connectionRateLimiter = connectionRateLimiter;
+        this.tokenMetrics = tokenMetrics;
+        this.signing = prop.getDataSource() == null;
+        if (prop.isJmxEnabled()) {
+            tokenMetrics.register(prop.getName());
+        }
+        if (signing) {
+            scheduleRefresh(0L);
+        }
+    }
+
+    /**
+     * @return the token metrics of this pool
+     */
+    public TokenMetrics getTokenMetrics() {
+        return tokenMetrics;
     }
 
     /**
@@ -65,45 +123,144 @@ public RdsIamAuthConnectionPool(final RdsAWS4Signer tokenGenerator,
      */
     @Override
     protected void init(final PoolConfiguration prop) throws SQLException {
-        final URL uri = JdbcUrlUtils.extractJdbcURL(prop.getUrl());
-        host = uri.getHost();
-        port = uri.getPort();
+        hosts = JdbcUrlUtils.extractHosts(prop.getUrl());
+        host = hosts.get(0).getHost();
+        port = hosts.get(0).getPort();
 
         final Properties props = prop.getDbProperties();
-        props.setProperty(USE_SSL, "true");      // for MySQL 5.x and before
-        props.setProperty(REQUIRE_SSL, "true");  // for MySQL 5.x and before
-        props.setProperty(VERIFY_SERVER_CERTIFICATE, "true");
-        props.setProperty(SSL_MODE, VERIFY_CA); // for MySQL 8.x and higher
-        props.setProperty(TRUST_CERTIFICATE_KEY_STORE_URL, CA_BUNDLE_URL);
-        props.setProperty(TRUST_CERTIFICATE_KEY_STORE_TYPE, PEM);
+        props.putIfAbsent(USE_SSL, "true");      // for MySQL 5.x and before
+        props.putIfAbsent(REQUIRE_SSL, "true");  // for MySQL 5.x and before
+        props.putIfAbsent(VERIFY_SERVER_CERTIFICATE, "true");
+        props.putIfAbsent(SSL_MODE, VERIFY_CA); // for MySQL 8.x and higher
+        props.putIfAbsent(TRUST_CERTIFICATE_KEY_STORE_URL, CA_BUNDLE_URL);
+        props.putIfAbsent(TRUST_CERTIFICATE_KEY_STORE_TYPE, PEM);
+        if (JdbcUrlUtils.isConnectorJ(prop.getDriverClassName(), prop.getUrl())) {
+            props.putIfAbsent(SOCKET_FACTORY, RDS_IAM_SOCKET_FACTORY); // shared SSLContext and TLS session resumption
+        }
 
         prop.setInitialSize(0);
         super.init(prop);
     }
 
-    @SuppressWarnings("unchecked")
-    private BlockingQueue<PooledConnection> getPrivateConnectionListField(final String fieldName) {
+    /**
+     * Borrows a connection, recording the time waited in the token metrics.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        final long start = System.nanoTime();
         try {
-            final Field queueField = ConnectionPool.class.getDeclaredField(fieldName);
-            queueField.setAccessible(true); //NOSONAR
-            return (BlockingQueue<PooledConnection>) queueField.get(this);
-        } catch (NoSuchFieldException | IllegalAccessException e) {
-            throw new IllegalStateException(e.getMessage(), e);
+            return super.getConnection();
+        } catch (PoolExhaustedException e) {
+            tokenMetrics.onConnectionTimeout();
+            throw e;
+        } finally {
+            tokenMetrics.onConnectionAcquired(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Connection getConnection(final String username, final String password) throws SQLException {
+        final long start = System.nanoTime();
+        try {
+            return super.getConnection(username, password);
+        } catch (PoolExhaustedException e) {
+            tokenMetrics.onConnectionTimeout();
+            throw e;
+        } finally {
+            tokenMetrics.onConnectionAcquired(System.nanoTime() - start);
+        }
+    }
+
+    private static Field getSizeField() {
+        try {
+            final Field field = ConnectionPool.class.getDeclaredField("size");
+            if (field.getType() != AtomicInteger.class) {
+                throw new NoSuchFieldException("size is a " + field.getType().getName());
+            }
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException | RuntimeException e) {
+            throw new IllegalStateException("Unsupported tomcat-jdbc version, the pool size counter is not accessible: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Creates a connection which takes the current token when it (re)connects. With
+     * <code>incrementCounter</code> (when a released connection is replaced for a waiting thread), the
+     * size of the pool is incremented here, like the default implementation does. When borrowing, the
+     * pool has incremented the size already.
+     */
+    @Override
+    protected PooledConnection create(final boolean incrementCounter) {
+        if (incrementCounter) {
+            try {
+                ((AtomicInteger) SIZE.get(this)).incrementAndGet();
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+        return new RdsIamPooledConnection(getPoolProperties(), this, signing ? this::getToken : null, connectionRateLimiter, tokenMetrics);
+    }
+
+    /**
+     * @return the current token from the shared token cache
+     */
+    protected String getToken() {
+        return tokenCache.getToken(tokenGenerator, host, port, getPoolProperties().getUsername(), tokenMetrics, tokenPolicy);
+    }
+
+    private void scheduleRefresh(final long delayMillis) {
+        if (!closed) {
+            backgroundFuture = scheduledExectorService.schedule(this::refresh, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Renews the token when it is due, updates the password in the pool and schedules the next run at
+     * the renewal deadline of the token. When the URL contains more hosts (failover, replication or
+     * Aurora), their tokens are renewed as well, so the password plugin of a driver that fails over
+     * finds them in the shared token cache.
+     */
+    private void refresh() {
+        long delayMillis = RETRY_MILLIS;
+        try {
+            final PoolConfiguration poolConfiguration = getPoolProperties();
+            final Token token = tokenCache.get(tokenGenerator, host, port, poolConfiguration.getUsername(), tokenMetrics, tokenPolicy);
+            poolConfiguration.setPassword(token.getValue());
+            delayMillis = getDelayMillis(token);
+        } catch (RuntimeException e) {
+            // failure is recorded in the token metrics, keep the previous token and retry
+        }
+        for (HostAndPort hostAndPort : hosts.subList(1, hosts.size())) {
+            try {
+                final Token token = tokenCache.get(tokenGenerator, hostAndPort.getHost(), hostAndPort.getPort(), getPoolProperties().getUsername(), tokenMetrics, tokenPolicy);
+                delayMillis = Math.min(delayMillis, getDelayMillis(token));
+            } catch (RuntimeException e) {
+                // the password plugin signs on demand meanwhile
+                delayMillis = Math.min(delayMillis, RETRY_MILLIS);
+            }
         }
+        scheduleRefresh(delayMillis);
     }
 
     /**
-     * Updates the password in the pool by generating a new token
+     * A stale token (stale-while-revalidate) is already being renewed in the background, and its
+     * renewal deadline has passed. Check again after the retry delay instead of right away, so a
+     * failing credential source doesn't keep the shared scheduler busy.
      */
-    private void updatePassword(final PoolConfiguration poolConfiguration) {
-        poolConfiguration.setPassword(tokenGenerator.generateToken(host, port, poolConfiguration.getUsername()));
+    private long getDelayMillis(final Token token) {
+        final long now = tokenGenerator.currentTimeMillis();
+        return token.isFresh(now) ? Math.max(token.getRefreshAt() - now, 0L) : RETRY_MILLIS;
     }
 
     @Override
     protected void close(final boolean force) {
+        closed = true;
         super.close(force);
-        if (backgroundFuture != null) {
-            backgroundFuture.cancel(force);
+        final ScheduledFuture<?> future = backgroundFuture;
+        if (future != null) {
+            future.cancel(force);
         }
+        tokenMetrics.unregister();
     }
 }
@@ -0,0 +1,70 @@
+package com.carepay.jdbc.tomcat;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.carepay.jdbc.limit.ConnectionRateLimiter;
+import com.carepay.jdbc.metrics.TokenMetrics;
+
+import org.apache.tomcat.jdbc.pool.ConnectionPool;
+import org.apache.tomcat.jdbc.pool.PoolConfiguration;
+import org.apache.tomcat.jdbc.pool.PoolUtilities;
+import org.apache.tomcat.jdbc.pool.PooledConnection;
+
+/**
+ * Pooled connection which takes the current IAM token every time it (re)connects, instead of the
+ * password which was stored in its attributes when it was first connected.
+ */
+public class RdsIamPooledConnection extends PooledConnection {
+    private final Supplier<String> tokenSupplier;
+    private final ConnectionRateLimiter connectionRateLimiter;
+    private final TokenMetrics tokenMetrics;
+
+    public RdsIamPooledConnection(final PoolConfiguration prop, final ConnectionPool parent, final Supplier<String> tokenSupplier) {
+        this(prop, parent, tokenSupplier, null);
+    }
+
+    /**
+     * @param connectionRateLimiter limits the rate of new connections, or null
+     */
+    public RdsIamPooledConnection(final PoolConfiguration prop, final ConnectionPool parent, final Supplier<String> tokenSupplier,
+                                  final ConnectionRateLimiter connectionRateLimiter) {
+        this(prop, parent, tokenSupplier, connectionRateLimiter, null);
+    }
+
+    /**
+     * @param tokenMetrics records the connection creation times, or null
+     */
+    public RdsIamPooledConnection(final PoolConfiguration prop, final ConnectionPool parent, final Supplier<String> tokenSupplier,
+                                  final ConnectionRateLimiter connectionRateLimiter, final TokenMetrics tokenMetrics) {
+        super(prop, parent);
+        this.tokenSupplier = tokenSupplier;
+        this.connectionRateLimiter = connectionRateLimiter;
+        this.tokenMetrics = tokenMetrics;
+    }
+
+    /**
+     * Waits for the connection rate limit (up to <code>maxWait</code>) and sets the current token before
+     * connecting, unless there is no token supplier (the datasource of the pool signs the token).
+     * Connections which were borrowed using an alternate username keep the password they were borrowed
+     * with. The time taken to get the token and connect is recorded as connection
+     * creation time.
+     */
+    @Override
+    public void connect() throws SQLException {
+        if (connectionRateLimiter != null) {
+            final int maxWait = poolProperties.getMaxWait();
+            connectionRateLimiter.acquire(maxWait > 0 ? maxWait : ConnectionRateLimiter.DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        final long start = System.nanoTime();
+        final Object user = getAttributes().get(PoolUtilities.PROP_USER);
+        if (tokenSupplier != null && (user == null || user.equals(poolProperties.getUsername()))) {
+            getAttributes().put(PoolUtilities.PROP_PASSWORD, tokenSupplier.get());
+        }
+        super.connect();
+        if (tokenMetrics != null) {
+            tokenMetrics.onConnectionCreated(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+}
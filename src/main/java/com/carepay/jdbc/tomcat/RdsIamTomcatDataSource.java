@@ -1,35 +1,67 @@
 package com.carepay.jdbc.tomcat;
 
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationTargetException;
 import java.sql.SQLException;
-import java.util.concurrent.Executors;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.carepay.jdbc.RdsAWS4Signer;
+import com.carepay.jdbc.aurora.AuroraTopologyQuery;
+import com.carepay.jdbc.aurora.FailoverDataSource;
+import com.carepay.jdbc.aurora.TopologyQuery;
+import com.carepay.jdbc.limit.ConnectionRateLimiter;
+import com.carepay.jdbc.metrics.TokenMetrics;
 import com.carepay.jdbc.pem.PemKeyStoreProvider;
-import com.carepay.jdbc.util.DaemonThreadFactory;
+import com.carepay.jdbc.token.TokenCache;
+import com.carepay.jdbc.token.TokenPolicy;
+import com.carepay.jdbc.util.HostAndPort;
+import com.carepay.jdbc.util.JdbcUrlUtils;
+import com.carepay.jdbc.util.PasswordPlugins;
+import com.carepay.jdbc.util.RefreshScheduler;
+import com.carepay.jdbc.util.WarmUp;
 import org.apache.tomcat.jdbc.pool.ConnectionPool;
 import org.apache.tomcat.jdbc.pool.PoolConfiguration;
+import org.apache.tomcat.jdbc.pool.PoolProperties;
 
 /**
  * DataSource based on Tomcat connection pool that supports IAM authentication to RDS
  */
 public class RdsIamTomcatDataSource extends org.apache.tomcat.jdbc.pool.DataSource {
 
-    static {
-        PemKeyStoreProvider.register();
-    }
+    private static final int DEFAULT_WARM_UP_PARALLELISM = 4;
+    private static final Set<String> INSTANCE_PROPERTIES = new HashSet<>(Arrays.asList("name", "url", "password", "dataSource", "dbProperties"));
 
     private final ScheduledExecutorService scheduledExectorService;
     private final RdsAWS4Signer tokenGenerator;
+    private volatile boolean warmUp;
+    private volatile int warmUpParallelism = DEFAULT_WARM_UP_PARALLELISM;
+    private volatile boolean failover;
+    private volatile FailoverDataSource failoverDataSource;
+    private volatile TopologyQuery topologyQuery;
+    private volatile Integer tokenLifetimeSeconds;
+    private volatile Integer tokenRefreshLeadSeconds;
+    private volatile Integer tokenRefreshJitterSeconds;
+    private volatile boolean tokenStaleWhileRevalidate;
+    private volatile double connectionRateLimit;
+    private volatile int connectionRateBurst;
+    private final CompletableFuture<Void> readiness = new CompletableFuture<>();
+    private final ReentrantLock poolLock = new ReentrantLock();
 
     public RdsIamTomcatDataSource() {
-        this(new RdsAWS4Signer(), Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory()));
+        this(new RdsAWS4Signer(), RefreshScheduler.getInstance());
     }
 
     public RdsIamTomcatDataSource(final RdsAWS4Signer tokenGenerator, final ScheduledExecutorService scheduledExecutorService) {
         this.tokenGenerator = tokenGenerator;
         this.scheduledExectorService = scheduledExecutorService;
-        PemKeyStoreProvider.register();
     }
 
     public RdsIamTomcatDataSource(final RdsAWS4Signer tokenGenerator,
@@ -40,6 +72,158 @@ public RdsIamTomcatDataSource(final RdsAWS4Signer tokenGenerator,
         this.scheduledExectorService = scheduledExecutorService;
     }
 
+    public boolean isFailover() {
+        return failover;
+    }
+
+    /**
+     * Enables failover mode for Aurora: connections are made to the writer instance by its hostname,
+     * and a writer failover is detected from connection errors, without waiting for the DNS of the
+     * cluster endpoint. Must be set before the pool is created.
+     *
+     * @param failover true to connect using a {@link FailoverDataSource}
+     */
+    public void setFailover(final boolean failover) {
+        this.failover = failover;
+    }
+
+    public TopologyQuery getTopologyQuery() {
+        return topologyQuery;
+    }
+
+    /**
+     * @param topologyQuery the topology query used in failover mode, defaults to {@link AuroraTopologyQuery}
+     */
+    public void setTopologyQuery(final TopologyQuery topologyQuery) {
+        this.topologyQuery = topologyQuery;
+    }
+
+    /**
+     * @return the failover datasource, or null when failover mode is disabled or the pool is not created
+     */
+    public FailoverDataSource getFailoverDataSource() {
+        return failoverDataSource;
+    }
+
+    public Integer getTokenLifetimeSeconds() {
+        return tokenLifetimeSeconds;
+    }
+
+    /**
+     * @param tokenLifetimeSeconds the validity of the token (<code>X-Amz-Expires</code>), at most 900 seconds
+     */
+    public void setTokenLifetimeSeconds(final Integer tokenLifetimeSeconds) {
+        this.tokenLifetimeSeconds = tokenLifetimeSeconds;
+    }
+
+    public Integer getTokenRefreshLeadSeconds() {
+        return tokenRefreshLeadSeconds;
+    }
+
+    /**
+     * @param tokenRefreshLeadSeconds the token is renewed this many seconds before it expires, by default after
+     *                                two thirds of its lifetime
+     */
+    public void setTokenRefreshLeadSeconds(final Integer tokenRefreshLeadSeconds) {
+        this.tokenRefreshLeadSeconds = tokenRefreshLeadSeconds;
+    }
+
+    public Integer getTokenRefreshJitterSeconds() {
+        return tokenRefreshJitterSeconds;
+    }
+
+    /**
+     * @param tokenRefreshJitterSeconds the token is renewed up to this many seconds earlier, at random, to spread
+     *                                  the renewals of applications which were started at the same time
+     */
+    public void setTokenRefreshJitterSeconds(final Integer tokenRefreshJitterSeconds) {
+        this.tokenRefreshJitterSeconds = tokenRefreshJitterSeconds;
+    }
+
+    public boolean isTokenStaleWhileRevalidate() {
+        return tokenStaleWhileRevalidate;
+    }
+
+    /**
+     * @param tokenStaleWhileRevalidate serve a token which is due for renewal until it expires, while it is renewed
+     *                                  in the background, so new connections don't wait for the credentials
+     */
+    public void setTokenStaleWhileRevalidate(final boolean tokenStaleWhileRevalidate) {
+        this.tokenStaleWhileRevalidate = tokenStaleWhileRevalidate;
+    }
+
+    public double getConnectionRateLimit() {
+        return connectionRateLimit;
+    }
+
+    /**
+     * Limits the rate of new connections to the endpoint, shared by all datasources in the JVM with the
+     * same limit. Connections which exceed the rate wait for their turn, up to <code>maxWait</code>.
+     * Must be set before the pool is created.
+     *
+     * @param connectionRateLimit the maximum number of new connections per second, 0 for no limit
+     */
+    public void setConnectionRateLimit(final double connectionRateLimit) {
+        this.connectionRateLimit = connectionRateLimit;
+    }
+
+    public int getConnectionRateBurst() {
+        return connectionRateBurst;
+    }
+
+    /**
+     * @param connectionRateBurst the number of connections opened at once before the rate limit applies,
+     *                            0 for one second worth of connections
+     */
+    public void setConnectionRateBurst(final int connectionRateBurst) {
+        this.connectionRateBurst = connectionRateBurst;
+    }
+
+    public boolean isWarmUp() {
+        return warmUp;
+    }
+
+    /**
+     * Enables warm-up: when the pool is created, the token is pre-signed and <code>minIdle</code>
+     * connections are opened in parallel.
+     *
+     * @param warmUp true to warm up the pool
+     */
+    public void setWarmUp(final boolean warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    public int getWarmUpParallelism() {
+        return warmUpParallelism;
+    }
+
+    /**
+     * @param warmUpParallelism the maximum number of connections opened at the same time during warm-up
+     */
+    public void setWarmUpParallelism(final int warmUpParallelism) {
+        this.warmUpParallelism = warmUpParallelism;
+    }
+
+    /**
+     * Readiness signal, e.g. for a health check. Creates the pool (which starts the warm-up) when it
+     * was not created yet.
+     *
+     * @return completes when the warm-up has finished, or immediately when warm-up is disabled
+     */
+    public CompletableFuture<Void> getReadiness() {
+        if (!warmUp) {
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            createPool();
+        } catch (SQLException e) {
+            final CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return readiness;
+    }
+
     /**
      * Creates a new Connection Pool once. Overridden so we can change the underlying pool.
      *
@@ -51,13 +235,98 @@ public ConnectionPool createPool() throws SQLException {
     }
 
     /**
-     * Creates a new RDS IAM backed pool.
+     * Creates a new RDS IAM backed pool. Guarded by a lock instead of <code>synchronized</code>, so
+     * virtual threads waiting for the pool (and the token) don't pin their carrier thread.
+     */
+    protected ConnectionPool createPoolImpl() throws SQLException {
+        poolLock.lock();
+        try {
+            return pool != null ? pool : createIamPool();
+        } finally {
+            poolLock.unlock();
+        }
+    }
+
+    private ConnectionPool createIamPool() throws SQLException {
+        PemKeyStoreProvider.register();
+        final TokenPolicy tokenPolicy = TokenPolicy.of(tokenLifetimeSeconds, tokenRefreshLeadSeconds, tokenRefreshJitterSeconds)
+                .withStaleWhileRevalidate(tokenStaleWhileRevalidate);
+        final ConnectionRateLimiter limiter = connectionRateLimit > 0.0
+                ? ConnectionRateLimiter.forEndpoint(JdbcUrlUtils.extractHosts(poolProperties.getUrl()).get(0), connectionRateLimit, connectionRateBurst)
+                : null;
+        if (!failover) {
+            // the hosts of a multi-host URL need a token each, the pool passes a single password
+            PasswordPlugins.addForMultiHost(poolProperties.getDriverClassName(), poolProperties.getUrl(), poolProperties.getDbProperties(), tokenPolicy);
+        }
+        final TokenMetrics tokenMetrics = new TokenMetrics();
+        if (failover) {
+            // set before the pool is created, so the pool leaves signing to the failover datasource
+            final String url = poolProperties.getUrl();
+            failoverDataSource = new FailoverDataSource(FailoverDataSource.loadDriver(poolProperties.getDriverClassName(), url),
+                    url, poolProperties.getDbProperties(), poolProperties.getUsername(), tokenGenerator, TokenCache.getInstance(),
+                    tokenMetrics, topologyQuery != null ? topologyQuery : new AuroraTopologyQuery(JdbcUrlUtils.extractHosts(url).get(0)), scheduledExectorService);
+            failoverDataSource.setTokenPolicy(tokenPolicy);
+            poolProperties.setDataSource(failoverDataSource);
+        }
+        final RdsIamAuthConnectionPool iamPool = new RdsIamAuthConnectionPool(tokenGenerator, poolProperties, scheduledExectorService, tokenPolicy, limiter, tokenMetrics);
+        pool = iamPool;
+        if (warmUp) {
+            final Runnable prepare = failover ? () -> { } : iamPool::getToken; // the failover datasource signs on connect
+            WarmUp.openConnections(prepare, iamPool::getConnection, poolProperties.getMinIdle(), warmUpParallelism)
+                    .whenComplete((r, e) -> WarmUp.complete(readiness, e));
+        }
+        return iamPool;
+    }
+
+    /**
+     * @return the token and connection metrics of the pool, or null when the pool is not created yet
      */
-    protected synchronized ConnectionPool createPoolImpl() throws SQLException {
-        if (pool == null) {
-            pool = new RdsIamAuthConnectionPool(tokenGenerator, poolProperties, scheduledExectorService);
+    public TokenMetrics getTokenMetrics() {
+        final ConnectionPool current = pool;
+        return current instanceof RdsIamAuthConnectionPool ? ((RdsIamAuthConnectionPool) current).getTokenMetrics() : null;
+    }
+
+    @Override
+    public void close(final boolean all) {
+        super.close(all);
+        if (failoverDataSource != null) {
+            failoverDataSource.close();
         }
-        return pool;
     }
 
+    /**
+     * Creates a datasource with the same configuration, which connects to a single instance of the
+     * cluster, e.g. an Aurora reader.
+     *
+     * @param name         the name of the instance, which is appended to the pool name
+     * @param instanceHost the host and port of the instance
+     * @return the new datasource, which has its own pool and token
+     */
+    public RdsIamTomcatDataSource createInstanceDataSource(final String name, final HostAndPort instanceHost) {
+        final PoolProperties properties = new PoolProperties();
+        try {
+            for (PropertyDescriptor pd : Introspector.getBeanInfo(PoolConfiguration.class).getPropertyDescriptors()) {
+                if (pd.getReadMethod() != null && pd.getWriteMethod() != null && !INSTANCE_PROPERTIES.contains(pd.getName())) {
+                    pd.getWriteMethod().invoke(properties, pd.getReadMethod().invoke(poolProperties));
+                }
+            }
+        } catch (IntrospectionException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        final Properties dbProperties = new Properties();
+        dbProperties.putAll(poolProperties.getDbProperties());
+        properties.setDbProperties(dbProperties);
+        properties.setName(poolProperties.getName() + "-" + name);
+        properties.setUrl(JdbcUrlUtils.replaceHosts(poolProperties.getUrl(), instanceHost));
+        final RdsIamTomcatDataSource dataSource = new RdsIamTomcatDataSource(tokenGenerator, scheduledExectorService, properties);
+        dataSource.setWarmUp(warmUp);
+        dataSource.setWarmUpParallelism(warmUpParallelism);
+        dataSource.setTokenLifetimeSeconds(tokenLifetimeSeconds);
+        dataSource.setTokenRefreshLeadSeconds(tokenRefreshLeadSeconds);
+        dataSource.setTokenRefreshJitterSeconds(tokenRefreshJitterSeconds);
+        dataSource.setTokenStaleWhileRevalidate(tokenStaleWhileRevalidate);
+        dataSource.setConnectionRateLimit(connectionRateLimit);
+        dataSource.setConnectionRateBurst(connectionRateBurst);
+        return dataSource;
+    }
 }
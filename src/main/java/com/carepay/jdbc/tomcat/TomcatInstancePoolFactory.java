@@ -0,0 +1,57 @@
+package com.carepay.jdbc.tomcat;
+
+import java.sql.SQLException;
+import javax.sql.DataSource;
+
+import com.carepay.jdbc.aurora.AuroraInstance;
+import com.carepay.jdbc.aurora.InstancePool;
+import com.carepay.jdbc.aurora.InstancePoolFactory;
+
+/**
+ * Creates a Tomcat pool per Aurora instance, with the configuration of the cluster datasource. The
+ * token of the instance is signed in the background when the pool is created.
+ */
+public class TomcatInstancePoolFactory implements InstancePoolFactory {
+    private final RdsIamTomcatDataSource template;
+
+    /**
+     * @param template the datasource of the cluster endpoint
+     */
+    public TomcatInstancePoolFactory(final RdsIamTomcatDataSource template) {
+        this.template = template;
+    }
+
+    @Override
+    public InstancePool create(final AuroraInstance instance) {
+        final RdsIamTomcatDataSource dataSource = template.createInstanceDataSource(instance.getId(), instance.getHostAndPort());
+        try {
+            dataSource.createPool();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        return new TomcatInstancePool(dataSource);
+    }
+
+    private static class TomcatInstancePool implements InstancePool {
+        private final RdsIamTomcatDataSource dataSource;
+
+        TomcatInstancePool(final RdsIamTomcatDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Override
+        public DataSource getDataSource() {
+            return dataSource;
+        }
+
+        @Override
+        public int getActiveConnections() {
+            return dataSource.getActive();
+        }
+
+        @Override
+        public void close() {
+            dataSource.close();
+        }
+    }
+}
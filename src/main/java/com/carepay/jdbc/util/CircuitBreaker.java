@@ -0,0 +1,114 @@
+package com.carepay.jdbc.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops calling a failing dependency (e.g. the instance metadata) for a while. After a failure the
+ * breaker opens for an exponentially growing backoff, starting at one second and capped at one
+ * minute. When the backoff has elapsed a single caller is let through to try again, the others are
+ * still rejected until that attempt succeeds or fails.
+ * <p>
+ * All times are in epoch milliseconds and passed in by the caller, so the breaker uses the same
+ * clock as its owner.
+ */
+public class CircuitBreaker {
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(1L);
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(1L);
+
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private int failures;
+    private long retryAt;
+    private RuntimeException lastFailure;
+
+    public CircuitBreaker() {
+        this(DEFAULT_INITIAL_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS);
+    }
+
+    /**
+     * @param initialBackoffMillis time the breaker stays open after the first failure
+     * @param maxBackoffMillis     maximum time the breaker stays open
+     */
+    public CircuitBreaker(final long initialBackoffMillis, final long maxBackoffMillis) {
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Checks if the dependency may be called. When the backoff has elapsed, only the first caller is
+     * allowed (half-open), until it reports its result.
+     *
+     * @param now current time in epoch milliseconds
+     * @return true when the dependency may be called
+     */
+    public synchronized boolean tryAcquire(final long now) {
+        if (failures == 0) {
+            return true;
+        }
+        if (now < retryAt) {
+            return false;
+        }
+        retryAt = now + backoff();
+        return true;
+    }
+
+    /**
+     * Same as {@link #tryAcquire(long)}, but throws when the breaker is open.
+     *
+     * @param now current time in epoch milliseconds
+     * @throws IllegalStateException when the breaker is open, caused by the last failure
+     */
+    public void acquire(final long now) {
+        if (!tryAcquire(now)) {
+            final RuntimeException cause = getLastFailure();
+            throw new IllegalStateException("Not retried for " + (getRetryAt() - now) + "ms after " + getFailureCount()
+                    + " failure(s): " + (cause != null ? cause.getMessage() : null), cause);
+        }
+    }
+
+    /**
+     * Closes the breaker.
+     */
+    public synchronized void onSuccess() {
+        failures = 0;
+        retryAt = 0L;
+        lastFailure = null;
+    }
+
+    /**
+     * Opens the breaker, for twice as long as after the previous failure.
+     *
+     * @param now   current time in epoch milliseconds
+     * @param cause the failure
+     */
+    public synchronized void onFailure(final long now, final RuntimeException cause) {
+        failures++;
+        retryAt = now + backoff();
+        lastFailure = cause;
+    }
+
+    private long backoff() {
+        final int doublings = Math.min(failures - 1, 30);
+        return Math.min(maxBackoffMillis, initialBackoffMillis << doublings);
+    }
+
+    /**
+     * @param now current time in epoch milliseconds
+     * @return true when callers are rejected
+     */
+    public synchronized boolean isOpen(final long now) {
+        return failures > 0 && now < retryAt;
+    }
+
+    public synchronized int getFailureCount() {
+        return failures;
+    }
+
+    public synchronized long getRetryAt() {
+        return retryAt;
+    }
+
+    public synchronized RuntimeException getLastFailure() {
+        return lastFailure;
+    }
+}
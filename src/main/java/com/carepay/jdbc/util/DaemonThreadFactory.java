@@ -1,11 +1,26 @@
 package com.carepay.jdbc.util;
 
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DaemonThreadFactory implements ThreadFactory {
+    private final String namePrefix;
+    private final AtomicInteger count = new AtomicInteger();
+
+    public DaemonThreadFactory() {
+        this(null);
+    }
+
+    /**
+     * @param namePrefix prefix for the thread names, or null to use the default names
+     */
+    public DaemonThreadFactory(final String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+
     @Override
     public Thread newThread(Runnable r) {
-        final Thread thread = new Thread();
+        final Thread thread = namePrefix != null ? new Thread(r, namePrefix + count.incrementAndGet()) : new Thread(r);
         thread.setDaemon(true);
         return thread;
     }
@@ -0,0 +1,47 @@
+package com.carepay.jdbc.util;
+
+import java.util.Objects;
+
+/**
+ * Host and port of a database server, as found in a JDBC URL. IPv6 literals are kept without
+ * brackets.
+ */
+public final class HostAndPort {
+    private final String host;
+    private final int port;
+
+    public HostAndPort(final String host, final int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof HostAndPort)) {
+            return false;
+        }
+        final HostAndPort other = (HostAndPort) o;
+        return port == other.port && host.equals(other.host);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(host, port);
+    }
+
+    @Override
+    public String toString() {
+        return host.indexOf(':') >= 0 ? "[" + host + "]:" + port : host + ":" + port;
+    }
+}
@@ -1,27 +1,290 @@
 package com.carepay.jdbc.util;
 
+import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.net.URLDecoder;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public final class JdbcUrlUtils {
 
-    private static final Pattern JDBC_PATTERN = Pattern.compile("jdbc:[\\w:]+(?://|@)([\\w.-]+)(:\\d+)?.*");
+    private static final String JDBC_PREFIX = "jdbc:";
     private static final int DEFAULT_PORT = 3306;
+    private static final int MAX_CACHED_URLS = 256;
+    private static final String CONNECTOR_J_PACKAGE = "com.mysql.";
+    private static final String[] RDS_DOMAINS = {".rds.amazonaws.com", ".rds.amazonaws.com.cn"};
+    private static final ConcurrentMap<String, List<HostAndPort>> HOSTS = new ConcurrentHashMap<>();
 
     protected JdbcUrlUtils() {
         /* Utility class */
     }
 
+    /**
+     * @param url the JDBC URL
+     * @return the URL of the first (primary) host in the JDBC URL
+     */
     public static URL extractJdbcURL(final String url) {
-        final Matcher matcher = JDBC_PATTERN.matcher(url);
-        if (!matcher.matches()) {
+        final HostAndPort primary = extractHosts(url).get(0);
+        return createURL("http", primary.getHost(), primary.getPort(), "");
+    }
+
+    /**
+     * Gets all hosts from a JDBC URL, e.g. <code>jdbc:mysql://writer,reader:3307/db</code>,
+     * <code>jdbc:mariadb:aurora://...</code>, <code>jdbc:mysql:replication://...</code>,
+     * <code>jdbc:mysql://[::1]:3306/db</code> or <code>jdbc:mysql://address=(host=writer)(port=3306)/db</code>.
+     * The result is cached per URL.
+     *
+     * @param url the JDBC URL
+     * @return the hosts in the order of the URL, the primary host first
+     * @throws IllegalArgumentException when the URL does not contain a host
+     */
+    public static List<HostAndPort> extractHosts(final String url) {
+        final List<HostAndPort> hosts = HOSTS.get(url);
+        if (hosts != null) {
+            return hosts;
+        }
+        if (HOSTS.size() >= MAX_CACHED_URLS) {
+            HOSTS.clear(); // there are only a few URLs per application, so this should not happen
+        }
+        final List<HostAndPort> parsed = parseHosts(url);
+        HOSTS.putIfAbsent(url, parsed);
+        return parsed;
+    }
+
+    private static List<HostAndPort> parseHosts(final String url) {
+        final int start = startOfHosts(url);
+        final List<HostAndPort> hosts = new ArrayList<>();
+        for (String entry : splitHosts(url.substring(start, endOfAuthority(url, start)))) {
+            hosts.add(parseHost(url, entry.trim()));
+        }
+        return Collections.unmodifiableList(hosts);
+    }
+
+    /**
+     * Replaces all hosts in a JDBC URL with a single host, keeping the sub-protocol, database and
+     * parameters, e.g. to connect to a single instance of an Aurora cluster.
+     *
+     * @param url  the JDBC URL
+     * @param host the new host
+     * @return the JDBC URL for the host
+     */
+    public static String replaceHosts(final String url, final HostAndPort host) {
+        final int start = startOfHosts(url);
+        return url.substring(0, start) + host + url.substring(endOfAuthority(url, start));
+    }
+
+    private static int startOfHosts(final String url) {
+        if (url == null || !url.startsWith(JDBC_PREFIX)) {
+            throw new IllegalArgumentException(url);
+        }
+        // skip the sub-protocol, e.g. "mysql:", "mysql:aurora:" or "oracle:thin:"
+        int start = JDBC_PREFIX.length();
+        while (start < url.length() && (Character.isLetterOrDigit(url.charAt(start)) || url.charAt(start) == ':' || url.charAt(start) == '_')) {
+            start++;
+        }
+        if (url.startsWith("//", start)) {
+            start += 2;
+        } else if (url.startsWith("@", start)) {
+            start++;
+        } else {
             throw new IllegalArgumentException(url);
         }
-        final String host = matcher.group(1);
-        final String str = matcher.group(2);
-        return createJdbcURL(host, str);
+        final int end = endOfAuthority(url, start);
+        final int userInfo = url.lastIndexOf('@', end - 1);
+        if (userInfo >= start && url.indexOf('(', start) < 0) {
+            start = userInfo + 1; // user:password@host
+        }
+        return start;
+    }
+
+    private static int endOfAuthority(final String url, final int start) {
+        int depth = 0;
+        for (int i = start; i < url.length(); i++) {
+            final char c = url.charAt(i);
+            if (c == '(' || c == '[') {
+                depth++;
+            } else if (c == ')' || c == ']') {
+                depth--;
+            } else if (depth == 0 && (c == '/' || c == '?' || c == ';')) {
+                return i;
+            }
+        }
+        return url.length();
+    }
+
+    private static List<String> splitHosts(final String authority) {
+        final List<String> entries = new ArrayList<>();
+        int depth = 0;
+        int from = 0;
+        for (int i = 0; i < authority.length(); i++) {
+            final char c = authority.charAt(i);
+            if (c == '(' || c == '[') {
+                depth++;
+            } else if (c == ')' || c == ']') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                entries.add(authority.substring(from, i));
+                from = i + 1;
+            }
+        }
+        entries.add(authority.substring(from));
+        return entries;
+    }
+
+    private static HostAndPort parseHost(final String url, final String entry) {
+        if (entry.startsWith("address=") || entry.startsWith("(")) {
+            return parseKeyValueHost(url, entry);
+        }
+        final String host;
+        String portStr = null;
+        if (entry.startsWith("[")) {
+            final int close = entry.indexOf(']');
+            if (close < 0) {
+                throw new IllegalArgumentException(url);
+            }
+            host = entry.substring(1, close);
+            if (close + 1 < entry.length()) {
+                if (entry.charAt(close + 1) != ':') {
+                    throw new IllegalArgumentException(url);
+                }
+                portStr = entry.substring(close + 2);
+            }
+        } else {
+            final int colon = entry.indexOf(':');
+            if (colon >= 0 && colon == entry.lastIndexOf(':')) {
+                host = entry.substring(0, colon);
+                portStr = entry.substring(colon + 1);
+            } else {
+                host = entry; // no port, or an IPv6 literal without brackets
+            }
+        }
+        return createHost(url, host, portStr);
+    }
+
+    /**
+     * Parses <code>address=(host=xxx)(port=3306)</code> and <code>(host=xxx,port=3306)</code>.
+     */
+    private static HostAndPort parseKeyValueHost(final String url, final String entry) {
+        String host = null;
+        String portStr = null;
+        for (String pair : entry.replace("address=", "").split("[(),]")) {
+            final int eq = pair.indexOf('=');
+            if (eq > 0) {
+                final String key = pair.substring(0, eq).trim();
+                if ("host".equalsIgnoreCase(key)) {
+                    host = pair.substring(eq + 1).trim();
+                } else if ("port".equalsIgnoreCase(key)) {
+                    portStr = pair.substring(eq + 1).trim();
+                }
+            }
+        }
+        return createHost(url, host, portStr);
+    }
+
+    private static HostAndPort createHost(final String url, final String host, final String portStr) {
+        if (host == null || host.isEmpty()) {
+            throw new IllegalArgumentException(url);
+        }
+        if (portStr == null || portStr.isEmpty()) {
+            return new HostAndPort(host, DEFAULT_PORT);
+        }
+        try {
+            return new HostAndPort(host, Integer.parseInt(portStr));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(url, e);
+        }
+    }
+
+    /**
+     * Gets a parameter from the query part of a JDBC URL, e.g. <code>user</code> from
+     * <code>jdbc:mysql://host/db?user=iamuser&amp;useSSL=true</code>.
+     *
+     * @param url  the JDBC URL
+     * @param name the name of the parameter
+     * @return the URL-decoded value, or null when the URL does not contain the parameter
+     */
+    public static String extractParameter(final String url, final String name) {
+        final int query = url.indexOf('?');
+        if (query < 0) {
+            return null;
+        }
+        for (String parameter : url.substring(query + 1).split("&")) {
+            final int eq = parameter.indexOf('=');
+            if (eq > 0 && parameter.regionMatches(0, name, 0, eq) && eq == name.length()) {
+                try {
+                    return URLDecoder.decode(parameter.substring(eq + 1), "UTF-8");
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether connections are opened by MySQL Connector/J, which supports the
+     * <code>socketFactory</code> property. The MariaDB driver accepts <code>jdbc:mysql:</code> URLs
+     * too, so when no driver class is configured the driver that the DriverManager selects is checked.
+     *
+     * @param driverClassName the configured driver class, or null
+     * @param url             the JDBC URL, or null
+     * @return true when the driver is Connector/J
+     */
+    public static boolean isConnectorJ(final String driverClassName, final String url) {
+        if (driverClassName != null) {
+            return driverClassName.startsWith(CONNECTOR_J_PACKAGE);
+        }
+        if (url == null) {
+            return false;
+        }
+        try {
+            return DriverManager.getDriver(url).getClass().getName().startsWith(CONNECTOR_J_PACKAGE);
+        } catch (SQLException e) {
+            return false; // no driver for the URL
+        }
+    }
+
+    /**
+     * Gets the region from an RDS hostname, e.g. <code>eu-west-1</code> from
+     * <code>mydb.cluster-xxxx.eu-west-1.rds.amazonaws.com</code>.
+     *
+     * @param host the hostname
+     * @return the region, or null when the host is not an RDS endpoint (e.g. a custom DNS name)
+     */
+    public static String extractRegion(final String host) {
+        if (host == null) {
+            return null;
+        }
+        for (String domain : RDS_DOMAINS) {
+            if (host.regionMatches(true, host.length() - domain.length(), domain, 0, domain.length())) {
+                final int end = host.length() - domain.length();
+                final String region = host.substring(host.lastIndexOf('.', end - 1) + 1, end).toLowerCase();
+                return isRegion(region) ? region : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true for names like <code>eu-west-1</code> or <code>us-gov-west-1</code>
+     */
+    private static boolean isRegion(final String name) {
+        if (name.indexOf('-') <= 0 || !Character.isDigit(name.charAt(name.length() - 1))) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '-')) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public static URL createJdbcURL(String host, String portStr) {
@@ -0,0 +1,84 @@
+package com.carepay.jdbc.util;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import com.carepay.jdbc.token.TokenPolicy;
+
+import static com.carepay.jdbc.RdsIamConstants.AUTHENTICATION_PLUGINS;
+import static com.carepay.jdbc.RdsIamConstants.AWS4RDS;
+import static com.carepay.jdbc.RdsIamConstants.CREDENTIAL_TYPE;
+import static com.carepay.jdbc.RdsIamConstants.RDS_IAM_PASSWORD_PLUGIN;
+
+/**
+ * Installs the password plugin of the driver for JDBC URLs with more than one host (failover,
+ * replication or Aurora). A pool passes a single password, the token of the first host, which the
+ * other hosts reject. The plugin takes the token of the host the driver connects to from the shared
+ * token cache.
+ */
+public final class PasswordPlugins {
+    private static final String MARIADB_PACKAGE = "org.mariadb.";
+    private static final String MARIADB_PREFIX = "jdbc:mariadb:";
+
+    private PasswordPlugins() {
+        /* Utility class */
+    }
+
+    /**
+     * Adds the password plugin when the URL contains more than one host, with the token policy of the
+     * pool so the plugin finds the tokens the pool signed up front.
+     *
+     * @param driverClassName the configured driver class, or null
+     * @param url             the JDBC URL
+     * @param properties      the connection properties
+     * @param tokenPolicy     the token policy of the pool
+     * @return true when the plugin was added
+     * @throws IllegalArgumentException when the URL contains more hosts and the driver has no password plugin
+     */
+    public static boolean addForMultiHost(final String driverClassName, final String url, final Properties properties,
+                                          final TokenPolicy tokenPolicy) {
+        if (JdbcUrlUtils.extractHosts(url).size() < 2) {
+            return false;
+        }
+        if (JdbcUrlUtils.isConnectorJ(driverClassName, url)) {
+            final String plugins = properties.getProperty(AUTHENTICATION_PLUGINS);
+            if (plugins == null || plugins.trim().isEmpty()) {
+                properties.setProperty(AUTHENTICATION_PLUGINS, RDS_IAM_PASSWORD_PLUGIN);
+            } else if (!plugins.contains(RDS_IAM_PASSWORD_PLUGIN)) {
+                properties.setProperty(AUTHENTICATION_PLUGINS, plugins + "," + RDS_IAM_PASSWORD_PLUGIN);
+            }
+        } else if (isMariaDb(driverClassName, url)) {
+            properties.putIfAbsent(CREDENTIAL_TYPE, AWS4RDS);
+        } else {
+            throw new IllegalArgumentException("The hosts of " + url + " need a token each, which requires the password plugin"
+                    + " of MySQL Connector/J or the MariaDB driver");
+        }
+        if (!tokenPolicy.equals(TokenPolicy.DEFAULT)) {
+            properties.putIfAbsent(TokenPolicy.TOKEN_LIFETIME_SECONDS, Integer.toString(tokenPolicy.getLifetimeSeconds()));
+            properties.putIfAbsent(TokenPolicy.TOKEN_REFRESH_LEAD_SECONDS, Integer.toString(tokenPolicy.getRefreshLeadSeconds()));
+            properties.putIfAbsent(TokenPolicy.TOKEN_REFRESH_JITTER_SECONDS, Integer.toString(tokenPolicy.getRefreshJitterSeconds()));
+            properties.putIfAbsent(TokenPolicy.TOKEN_STALE_WHILE_REVALIDATE, Boolean.toString(tokenPolicy.isStaleWhileRevalidate()));
+        }
+        return true;
+    }
+
+    /**
+     * @param driverClassName the configured driver class, or null
+     * @param url             the JDBC URL
+     * @return true when connections are opened by the MariaDB driver
+     */
+    static boolean isMariaDb(final String driverClassName, final String url) {
+        if (driverClassName != null) {
+            return driverClassName.startsWith(MARIADB_PACKAGE);
+        }
+        if (url.startsWith(MARIADB_PREFIX)) {
+            return true;
+        }
+        try {
+            return DriverManager.getDriver(url).getClass().getName().startsWith(MARIADB_PACKAGE);
+        } catch (SQLException e) {
+            return false; // no driver for the URL
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.carepay.jdbc.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM-wide scheduler for token refreshes and CA bundle downloads, shared by all datasources and
+ * plugins. The worker threads are bounded, only started when the first task is scheduled and stop
+ * again when idle. On Java 21 and newer the workers are virtual threads, so blocking credential
+ * lookups and signing do not hold on to platform threads. The shared instance must not be shut down.
+ */
+public class RefreshScheduler extends ScheduledThreadPoolExecutor {
+    static final int WORKER_THREADS = 2;
+    private static final String THREAD_NAME_PREFIX = "rds-iam-refresh-";
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    RefreshScheduler(final ThreadFactory threadFactory) {
+        super(WORKER_THREADS, threadFactory);
+        setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        allowCoreThreadTimeOut(true);
+        setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * @return the shared scheduler, created when first used
+     */
+    public static RefreshScheduler getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Uses <code>Thread.ofVirtual()</code> when available. Looked up reflectively, as the library is
+     * compiled for Java 8.
+     *
+     * @return the factory for virtual threads, or a factory for daemon platform threads
+     */
+    static ThreadFactory createThreadFactory() {
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            final Method name = builderClass.getMethod("name", String.class, long.class);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(name.invoke(builder, THREAD_NAME_PREFIX, 1L));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return new DaemonThreadFactory(THREAD_NAME_PREFIX);
+        }
+    }
+
+    private static class Holder {
+        private static final RefreshScheduler INSTANCE = new RefreshScheduler(createThreadFactory());
+    }
+}
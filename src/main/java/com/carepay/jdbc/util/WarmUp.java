@@ -0,0 +1,82 @@
+package com.carepay.jdbc.util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens pool connections in parallel at startup, so the first requests after a deploy do not pay for
+ * credential lookup, signing, TLS and authentication.
+ */
+public final class WarmUp {
+    private static final String THREAD_NAME_PREFIX = "rds-iam-warmup-";
+
+    private WarmUp() {
+        // not implemented
+    }
+
+    /**
+     * Runs the preparation (e.g. pre-signing the token), then borrows <code>count</code> connections in
+     * parallel and returns them to the pool once all of them are open.
+     *
+     * @param prepare     runs first, on the warm-up executor
+     * @param opener      borrows a connection from the pool
+     * @param count       the number of connections to open
+     * @param parallelism the maximum number of connections opened at the same time
+     * @return completes when all connections are open, or exceptionally when one failed
+     */
+    public static CompletableFuture<Void> openConnections(final Runnable prepare, final Callable<Connection> opener,
+                                                          final int count, final int parallelism) {
+        final int threads = Math.max(1, Math.min(count, parallelism));
+        final ExecutorService executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new DaemonThreadFactory(THREAD_NAME_PREFIX));
+        final CompletableFuture<Void> ready = CompletableFuture.runAsync(prepare, executor).thenCompose(v -> {
+            final List<CompletableFuture<Connection>> connections = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                connections.add(CompletableFuture.supplyAsync(() -> open(opener), executor));
+            }
+            return CompletableFuture.allOf(connections.toArray(new CompletableFuture<?>[0]))
+                    .whenComplete((r, e) -> connections.forEach(c -> c.thenAccept(WarmUp::close)));
+        });
+        ready.whenComplete((r, e) -> executor.shutdown());
+        return ready;
+    }
+
+    /**
+     * Completes the readiness signal with the outcome of the warm-up.
+     *
+     * @param readiness the readiness signal
+     * @param failure   the warm-up failure, or null
+     */
+    public static void complete(final CompletableFuture<Void> readiness, final Throwable failure) {
+        if (failure == null) {
+            readiness.complete(null);
+        } else {
+            readiness.completeExceptionally(failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+        }
+    }
+
+    private static Connection open(final Callable<Connection> opener) {
+        try {
+            return opener.call();
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static void close(final Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // returning the connection to the pool failed, nothing to warm up
+        }
+    }
+}
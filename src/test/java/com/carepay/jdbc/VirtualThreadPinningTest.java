@@ -0,0 +1,136 @@
+package com.carepay.jdbc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.sql.DataSource;
+
+import com.carepay.aws.auth.Credentials;
+import com.carepay.jdbc.auth.CachedCredentialsProvider;
+import com.carepay.jdbc.hikari.RdsIamHikariDataSource;
+import com.carepay.jdbc.token.TokenCache;
+import com.carepay.jdbc.tomcat.RdsIamTomcatDataSource;
+import com.carepay.jdbc.util.RefreshScheduler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Opens connections from thousands of virtual threads while the credentials are slow to resolve (as
+ * when the instance metadata is queried). Run with <code>-Djdk.tracePinnedThreads=short</code> (set by
+ * the Gradle build), which reports every virtual thread that blocks while holding a monitor: none of
+ * these may be in our code. Only runs on Java 21 and newer.
+ */
+class VirtualThreadPinningTest {
+    private static final int THREADS = 2000;
+    private static final long CREDENTIALS_DELAY_MILLIS = 200L;
+
+    private RdsAWS4Signer signer;
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(featureVersion() >= 21);
+        TokenCache.getInstance().clear();
+        final CachedCredentialsProvider credentialsProvider = new CachedCredentialsProvider(() -> {
+            sleep(CREDENTIALS_DELAY_MILLIS);
+            return new Credentials("IAMKEYINSTANCE", "asdfqwertypolly", "ZYX12345");
+        }, RefreshScheduler.getInstance(), Clock.systemUTC());
+        signer = new RdsAWS4Signer(credentialsProvider, () -> "eu-west-1", Clock.systemUTC());
+    }
+
+    @Test
+    void tomcatDataSource() throws Exception {
+        final RdsIamTomcatDataSource dataSource = new RdsIamTomcatDataSource(signer, RefreshScheduler.getInstance());
+        try {
+            dataSource.setDriverClassName(H2Driver.class.getName());
+            dataSource.setUrl("jdbc:mysql://pinning.random.eu-west-1.rds.amazonaws.com/database");
+            dataSource.setUsername("iamuser");
+            dataSource.setMaxActive(50);
+            dataSource.setMaxWait(60_000);
+            assertThat(openConnections(dataSource)).isEmpty();
+        } finally {
+            dataSource.close();
+        }
+    }
+
+    @Test
+    void hikariDataSource() throws Exception {
+        try (RdsIamHikariDataSource dataSource = new RdsIamHikariDataSource(signer)) {
+            dataSource.setDriverClassName(H2Driver.class.getName());
+            dataSource.setJdbcUrl("jdbc:mysql://pinning.random.eu-west-1.rds.amazonaws.com/database");
+            dataSource.setUsername("iamuser");
+            dataSource.setMaximumPoolSize(50);
+            dataSource.setConnectionTimeout(60_000L);
+            assertThat(openConnections(dataSource)).isEmpty();
+        }
+    }
+
+    /**
+     * @return the frames of our code which held a monitor while a virtual thread was pinned
+     */
+    private static List<String> openConnections(final DataSource dataSource) throws Exception {
+        final PrintStream out = System.out;
+        final ByteArrayOutputStream traces = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(traces, true, "UTF-8"));
+        final ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        try {
+            final List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                tasks.add(() -> query(dataSource));
+            }
+            final List<Future<Integer>> results = executor.invokeAll(tasks, 60L, TimeUnit.SECONDS);
+            for (Future<Integer> result : results) {
+                assertThat(result.get()).isEqualTo(1); // cancelled when the burst did not finish in time
+            }
+        } finally {
+            executor.shutdownNow();
+            System.setOut(out);
+        }
+        return Arrays.stream(new String(traces.toByteArray(), StandardCharsets.UTF_8).split("\\R"))
+                .filter(line -> line.contains("com.carepay.") && line.contains("<== monitors"))
+                .collect(Collectors.toList());
+    }
+
+    private static int query(final DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT 1")) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() throws ReflectiveOperationException {
+        return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int featureVersion() {
+        final String version = System.getProperty("java.specification.version");
+        return version.startsWith("1.") ? Integer.parseInt(version.substring(2)) : Integer.parseInt(version);
+    }
+}
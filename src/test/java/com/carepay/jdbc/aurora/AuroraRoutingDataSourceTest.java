@@ -0,0 +1,227 @@
+package com.carepay.jdbc.aurora;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.sql.DataSource;
+
+import com.carepay.jdbc.util.HostAndPort;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class AuroraRoutingDataSourceTest {
+    private static final String TOPOLOGY_SQL = "SELECT server_id, session_id FROM replica_host_status";
+
+    private JdbcDataSource writer;
+    private Connection keepAlive;
+    private ScheduledExecutorService scheduledExecutorService;
+    private Map<String, TestPool> pools;
+    private AuroraRoutingDataSource dataSource;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        writer = h2("writer");
+        keepAlive = writer.getConnection();
+        execute("CREATE TABLE replica_host_status (server_id VARCHAR(64), session_id VARCHAR(64))");
+        execute("INSERT INTO replica_host_status VALUES ('writer', 'MASTER_SESSION_ID'), ('reader1', 'abc'), ('reader2', 'def')");
+        scheduledExecutorService = mock(ScheduledExecutorService.class);
+        pools = new ConcurrentHashMap<>();
+        final TopologyQuery topologyQuery = new AuroraTopologyQuery(TOPOLOGY_SQL, new HostAndPort("mydb.cluster-abc123.eu-west-1.rds.amazonaws.com", 3306));
+        dataSource = new AuroraRoutingDataSource(writer, topologyQuery, instance -> {
+            final TestPool pool = new TestPool(instance);
+            pools.put(instance.getId(), pool);
+            return pool;
+        }, scheduledExecutorService);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        dataSource.close();
+        execute("DROP ALL OBJECTS");
+        keepAlive.close();
+    }
+
+    private static JdbcDataSource h2(final String name) {
+        final JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:" + name);
+        return h2;
+    }
+
+    private void execute(final String sql) throws SQLException {
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static String url(final Connection connection) throws SQLException {
+        return connection.getMetaData().getURL();
+    }
+
+    @Test
+    void refreshTopology() throws SQLException {
+        dataSource.refreshTopology();
+        assertThat(dataSource.getTopology()).containsExactly(
+                new AuroraInstance("writer", new HostAndPort("writer.abc123.eu-west-1.rds.amazonaws.com", 3306), true),
+                new AuroraInstance("reader1", new HostAndPort("reader1.abc123.eu-west-1.rds.amazonaws.com", 3306), false),
+                new AuroraInstance("reader2", new HostAndPort("reader2.abc123.eu-west-1.rds.amazonaws.com", 3306), false));
+        assertThat(pools).containsOnlyKeys("reader1", "reader2");
+    }
+
+    @Test
+    void failingReaderIsRetriedOnNextRefresh() throws SQLException {
+        final AtomicBoolean failing = new AtomicBoolean(true);
+        dataSource.close();
+        dataSource = new AuroraRoutingDataSource(writer, new AuroraTopologyQuery(TOPOLOGY_SQL, new HostAndPort("mydb.cluster-abc123.eu-west-1.rds.amazonaws.com", 3306)), instance -> {
+            if ("reader1".equals(instance.getId()) && failing.get()) {
+                throw new IllegalStateException("Unable to create the pool of reader1");
+            }
+            final TestPool pool = new TestPool(instance);
+            pools.put(instance.getId(), pool);
+            return pool;
+        }, scheduledExecutorService);
+        dataSource.refreshTopology();
+        assertThat(pools).containsOnlyKeys("reader2");
+        assertThat(dataSource.getTopology()).hasSize(3);
+        failing.set(false);
+        dataSource.refreshTopology();
+        assertThat(pools).containsOnlyKeys("reader1", "reader2");
+    }
+
+    @Test
+    void readOnlyUsesLeastLoadedReader() throws SQLException {
+        dataSource.refreshTopology();
+        pools.get("reader1").active = 5;
+        pools.get("reader2").active = 1;
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setReadOnly(true);
+            assertThat(url(connection)).isEqualTo("jdbc:h2:mem:reader2");
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            assertThat(url(connection)).isEqualTo("jdbc:h2:mem:writer");
+        }
+        assertThat(url(dataSource.getReaderConnection())).isEqualTo("jdbc:h2:mem:reader2");
+    }
+
+    @Test
+    void readOnlyUsesWriterWithoutReaders() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setReadOnly(true);
+            connection.setAutoCommit(false);
+            assertThat(url(connection)).isEqualTo("jdbc:h2:mem:writer");
+            assertThat(connection.getAutoCommit()).isFalse();
+        }
+    }
+
+    @Test
+    void unusedConnectionIsNotBorrowed() throws SQLException {
+        dataSource.refreshTopology();
+        final Connection connection = dataSource.getConnection();
+        connection.setReadOnly(true);
+        assertThat(connection.isReadOnly()).isTrue();
+        connection.commit();
+        connection.close();
+        assertThat(connection.isClosed()).isTrue();
+        assertThat(pools.values()).allMatch(p -> p.borrowed == 0);
+        assertThatThrownBy(connection::createStatement).isInstanceOf(SQLException.class);
+    }
+
+    @Test
+    void removedReaderIsClosed() throws SQLException {
+        dataSource.refreshTopology();
+        final TestPool reader1 = pools.get("reader1");
+        execute("DELETE FROM replica_host_status WHERE server_id = 'reader1'");
+        dataSource.refreshTopology();
+        assertThat(reader1.closed).isTrue();
+        assertThat(pools.get("reader2").closed).isFalse();
+        assertThat(dataSource.getTopology()).hasSize(2);
+    }
+
+    @Test
+    void promotedReaderIsClosed() throws SQLException {
+        dataSource.refreshTopology();
+        final TestPool reader1 = pools.get("reader1");
+        execute("UPDATE replica_host_status SET session_id = 'abc' WHERE server_id = 'writer'");
+        execute("UPDATE replica_host_status SET session_id = 'MASTER_SESSION_ID' WHERE server_id = 'reader1'");
+        dataSource.refreshTopology();
+        assertThat(reader1.closed).isTrue();
+        assertThat(pools).containsOnlyKeys("writer", "reader1", "reader2");
+        assertThat(pools.get("writer").closed).isFalse();
+    }
+
+    @Test
+    void getConnectionStartsRefresh() {
+        dataSource.setRefreshMillis(1000L);
+        dataSource.getConnection();
+        dataSource.getConnection();
+        verify(scheduledExecutorService).scheduleWithFixedDelay(any(Runnable.class), eq(0L), eq(1000L), eq(TimeUnit.MILLISECONDS));
+        assertThat(dataSource.getRefreshMillis()).isEqualTo(1000L);
+    }
+
+    @Test
+    void closedDataSourceDoesNotStartRefresh() {
+        dataSource.close();
+        dataSource.getConnection();
+        verifyNoInteractions(scheduledExecutorService);
+    }
+
+    @Test
+    void closeClosesReaders() throws SQLException {
+        dataSource.refreshTopology();
+        dataSource.close();
+        assertThat(pools.values()).allMatch(p -> p.closed);
+        dataSource.refreshTopology();
+        assertThat(pools).hasSize(2);
+    }
+
+    @Test
+    void delegatesToWriter() throws SQLException {
+        dataSource.setLoginTimeout(5);
+        assertThat(dataSource.getLoginTimeout()).isEqualTo(5);
+        assertThat(dataSource.unwrap(AuroraRoutingDataSource.class)).isSameAs(dataSource);
+        assertThat(dataSource.unwrap(JdbcDataSource.class)).isSameAs(writer);
+        assertThat(dataSource.isWrapperFor(DataSource.class)).isTrue();
+        assertThatThrownBy(() -> dataSource.getConnection("user", "password")).isInstanceOf(SQLException.class);
+    }
+
+    private static class TestPool implements InstancePool {
+        private final JdbcDataSource dataSource;
+        private volatile int active;
+        private volatile int borrowed;
+        private volatile boolean closed;
+
+        TestPool(final AuroraInstance instance) {
+            dataSource = h2(instance.getId());
+        }
+
+        @Override
+        public DataSource getDataSource() {
+            borrowed++;
+            return dataSource;
+        }
+
+        @Override
+        public int getActiveConnections() {
+            return active;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.carepay.jdbc.aurora;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.logging.Logger;
+
+import com.carepay.jdbc.util.HostAndPort;
+import com.carepay.jdbc.util.JdbcUrlUtils;
+
+/**
+ * Local stand-in for an Aurora cluster with three instances. The driver resolves the instance
+ * hostnames and the cluster endpoint, which keeps pointing to the old writer after a failover (like a
+ * DNS record which is not updated yet). Connections go to an in-memory H2 database per instance, the
+ * instances other than the writer are read-only.
+ */
+public class AuroraStandIn implements Driver {
+    public static final String CLUSTER_HOST = "mydb.cluster-abc123.eu-west-1.rds.amazonaws.com";
+    public static final String CLUSTER_URL = "jdbc:mysql://" + CLUSTER_HOST + "/database";
+    private static final String DOMAIN = ".abc123.eu-west-1.rds.amazonaws.com";
+    private static final String H2_URL = "jdbc:h2:mem:aurora-";
+    private static final List<String> INSTANCES = Arrays.asList("instance-1", "instance-2", "instance-3");
+
+    private static final Set<String> DOWN = new CopyOnWriteArraySet<>();
+    private static final List<String> CONNECTED = new CopyOnWriteArrayList<>();
+    private static final List<String> PASSWORDS = new CopyOnWriteArrayList<>();
+    private static volatile String writer;
+    private static volatile String dnsWriter;
+
+    /**
+     * Starts with instance-1 as writer.
+     */
+    public static void reset() {
+        DOWN.clear();
+        CONNECTED.clear();
+        PASSWORDS.clear();
+        writer = INSTANCES.get(0);
+        dnsWriter = writer;
+    }
+
+    /**
+     * Promotes an instance to writer. The cluster endpoint keeps pointing to the old writer.
+     *
+     * @param newWriter     the new writer
+     * @param oldWriterDown true when the old writer can't be reached
+     */
+    public static void failover(final String newWriter, final boolean oldWriterDown) {
+        if (oldWriterDown) {
+            DOWN.add(writer);
+        }
+        writer = newWriter;
+    }
+
+    public static String host(final String instance) {
+        return instance + DOMAIN;
+    }
+
+    /**
+     * @return the hosts connected to, in order
+     */
+    public static List<String> getConnected() {
+        return CONNECTED;
+    }
+
+    /**
+     * @return the passwords used, in order
+     */
+    public static List<String> getPasswords() {
+        return PASSWORDS;
+    }
+
+    public static TopologyQuery topologyQuery() {
+        return new TopologyQuery() {
+            @Override
+            public List<AuroraInstance> getInstances(final Connection connection) {
+                final List<AuroraInstance> instances = new ArrayList<>();
+                for (String instance : INSTANCES) {
+                    instances.add(new AuroraInstance(instance, new HostAndPort(host(instance), 3306), instance.equals(writer)));
+                }
+                return instances;
+            }
+
+            @Override
+            public boolean isReadOnly(final Connection connection) throws SQLException {
+                return !connection.getMetaData().getURL().equals(H2_URL + writer);
+            }
+        };
+    }
+
+    @Override
+    public Connection connect(final String url, final Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        final String host = JdbcUrlUtils.extractHosts(url).get(0).getHost();
+        final String instance = CLUSTER_HOST.equals(host) ? dnsWriter : host.substring(0, host.indexOf('.'));
+        if (DOWN.contains(instance)) {
+            throw new SQLException("Communications link failure", "08S01");
+        }
+        CONNECTED.add(host);
+        PASSWORDS.add(info.getProperty("password"));
+        return new org.h2.Driver().connect(H2_URL + instance, new Properties());
+    }
+
+    @Override
+    public boolean acceptsURL(final String url) {
+        return url.startsWith("jdbc:mysql:");
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(final String url, final Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+}
@@ -0,0 +1,45 @@
+package com.carepay.jdbc.aurora;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import com.carepay.jdbc.util.HostAndPort;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AuroraTopologyQueryTest {
+
+    @Test
+    void getInstanceDomain() {
+        assertThat(AuroraTopologyQuery.getInstanceDomain("mydb.cluster-abc123.eu-west-1.rds.amazonaws.com")).isEqualTo("abc123.eu-west-1.rds.amazonaws.com");
+        assertThat(AuroraTopologyQuery.getInstanceDomain("mydb.cluster-ro-abc123.eu-west-1.rds.amazonaws.com")).isEqualTo("abc123.eu-west-1.rds.amazonaws.com");
+        assertThat(AuroraTopologyQuery.getInstanceDomain("mydb.cluster-custom-abc123.eu-west-1.rds.amazonaws.com")).isEqualTo("abc123.eu-west-1.rds.amazonaws.com");
+        assertThat(AuroraTopologyQuery.getInstanceDomain("instance-1.abc123.eu-west-1.rds.amazonaws.com")).isEqualTo("abc123.eu-west-1.rds.amazonaws.com");
+        assertThat(AuroraTopologyQuery.getInstanceDomain("localhost")).isNull();
+    }
+
+    @Test
+    void defaultQuery() {
+        assertThat(new AuroraTopologyQuery(new HostAndPort("mydb.cluster-abc123.eu-west-1.rds.amazonaws.com", 3306))).isNotNull();
+        assertThat(AuroraTopologyQuery.DEFAULT_SQL).contains("information_schema.replica_host_status");
+    }
+
+    @Test
+    void isReadOnly() throws SQLException {
+        final Connection connection = mock(Connection.class);
+        final Statement statement = mock(Statement.class);
+        final ResultSet rs = mock(ResultSet.class);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery("SELECT @@innodb_read_only")).thenReturn(rs);
+        when(rs.next()).thenReturn(true);
+        when(rs.getBoolean(1)).thenReturn(true, false);
+        final AuroraTopologyQuery query = new AuroraTopologyQuery(new HostAndPort("mydb.cluster-abc123.eu-west-1.rds.amazonaws.com", 3306));
+        assertThat(query.isReadOnly(connection)).isTrue();
+        assertThat(query.isReadOnly(connection)).isFalse();
+    }
+}
@@ -0,0 +1,144 @@
+package com.carepay.jdbc.aurora;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Properties;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.carepay.aws.auth.Credentials;
+import com.carepay.jdbc.RdsAWS4Signer;
+import com.carepay.jdbc.metrics.TokenMetrics;
+import com.carepay.jdbc.token.TokenCache;
+import com.carepay.jdbc.util.HostAndPort;
+import org.h2.Driver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FailoverDataSourceTest {
+    private ScheduledExecutorService scheduledExecutorService;
+    private TokenMetrics tokenMetrics;
+    private FailoverDataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        AuroraStandIn.reset();
+        final Clock clock = mock(Clock.class);
+        when(clock.instant()).thenReturn(Instant.parse("2018-09-19T16:02:42.00Z"));
+        final RdsAWS4Signer signer = new RdsAWS4Signer(() -> new Credentials("IAMKEYINSTANCE", "asdfqwertypolly", "ZYX12345"), () -> "eu-west-1", clock);
+        scheduledExecutorService = mock(ScheduledExecutorService.class);
+        tokenMetrics = new TokenMetrics();
+        dataSource = new FailoverDataSource(new AuroraStandIn(), AuroraStandIn.CLUSTER_URL, new Properties(), "iamuser",
+                signer, new TokenCache(), tokenMetrics, AuroraStandIn.topologyQuery(), scheduledExecutorService);
+    }
+
+    private static HostAndPort writer(final String instance) {
+        return new HostAndPort(AuroraStandIn.host(instance), 3306);
+    }
+
+    @Test
+    void usesClusterEndpointUntilTopologyIsKnown() throws SQLException {
+        try (Connection c = dataSource.getConnection("ignored", "ignored")) {
+            assertThat(AuroraStandIn.getConnected()).containsExactly(AuroraStandIn.CLUSTER_HOST);
+            assertThat(AuroraStandIn.getPasswords().get(0)).startsWith(AuroraStandIn.CLUSTER_HOST + ":3306/");
+        }
+        dataSource.refreshTopology();
+        assertThat(dataSource.getWriter()).isEqualTo(writer("instance-1"));
+        assertThat(dataSource.getTopology()).hasSize(3);
+        try (Connection c = dataSource.getConnection()) {
+            assertThat(AuroraStandIn.getConnected()).endsWith(AuroraStandIn.host("instance-1"));
+        }
+    }
+
+    @Test
+    void failoverIsDetectedFromConnectionError() throws SQLException {
+        dataSource.refreshTopology();
+        final long signCount = tokenMetrics.getSignCount();
+        assertThat(signCount).isEqualTo(4L); // cluster endpoint and three instances
+
+        AuroraStandIn.failover("instance-2", true);
+        try (Connection c = dataSource.getConnection()) {
+            assertThat(dataSource.getWriter()).isEqualTo(writer("instance-2"));
+            assertThat(AuroraStandIn.getConnected()).endsWith(AuroraStandIn.host("instance-2"));
+            assertThat(AuroraStandIn.getPasswords().get(AuroraStandIn.getPasswords().size() - 1))
+                    .startsWith(AuroraStandIn.host("instance-2") + ":3306/");
+        }
+        assertThat(tokenMetrics.getSignCount()).isEqualTo(signCount); // tokens were pre-signed
+    }
+
+    @Test
+    void failoverIsDetectedFromReadOnlyWriter() throws SQLException {
+        dataSource.refreshTopology();
+        AuroraStandIn.failover("instance-2", false); // old writer is a reader now
+        try (Connection c = dataSource.getConnection()) {
+            assertThat(dataSource.getWriter()).isEqualTo(writer("instance-2"));
+            assertThat(AuroraStandIn.getConnected()).endsWith(AuroraStandIn.host("instance-1"), AuroraStandIn.host("instance-2"));
+        }
+    }
+
+    @Test
+    void readOnlyClusterEndpointSwitchesToWriter() throws SQLException {
+        AuroraStandIn.failover("instance-3", false); // DNS of the cluster endpoint still points to instance-1
+        try (Connection c = dataSource.getConnection()) {
+            assertThat(dataSource.getWriter()).isEqualTo(writer("instance-3"));
+            assertThat(AuroraStandIn.getConnected()).containsExactly(AuroraStandIn.CLUSTER_HOST, AuroraStandIn.host("instance-3"));
+        }
+    }
+
+    @Test
+    void connectionErrorWithoutTopologyIsThrown() {
+        AuroraStandIn.failover("instance-2", true);
+        assertThatThrownBy(dataSource::getConnection).isInstanceOf(SQLException.class).hasMessageContaining("Communications link failure");
+    }
+
+    @Test
+    void backgroundRefreshSwitchesWriter() throws SQLException {
+        final ArgumentCaptor<Runnable> refresh = ArgumentCaptor.forClass(Runnable.class);
+        dataSource.getConnection().close();
+        verify(scheduledExecutorService).scheduleWithFixedDelay(refresh.capture(), eq(0L), anyLong(), eq(TimeUnit.MILLISECONDS));
+        refresh.getValue().run();
+        assertThat(dataSource.getWriter()).isEqualTo(writer("instance-1"));
+
+        AuroraStandIn.failover("instance-3", false); // old writer is a reader now
+        refresh.getValue().run();
+        assertThat(dataSource.getWriter()).isEqualTo(writer("instance-3"));
+
+        AuroraStandIn.failover("instance-2", true);
+        refresh.getValue().run();
+        assertThat(dataSource.getWriter()).isEqualTo(writer("instance-2"));
+        dataSource.close();
+    }
+
+    @Test
+    void isConnectionError() {
+        assertThat(FailoverDataSource.isConnectionError(new SQLException("Communications link failure", "08S01"))).isTrue();
+        assertThat(FailoverDataSource.isConnectionError(new SQLException("read-only", "HY000", 1290))).isTrue();
+        assertThat(FailoverDataSource.isConnectionError(new SQLException("Access denied", "28000", 1045))).isFalse();
+        assertThat(FailoverDataSource.isConnectionError(new SQLException("unknown"))).isFalse();
+    }
+
+    @Test
+    void loadDriver() throws SQLException {
+        assertThat(FailoverDataSource.loadDriver(AuroraStandIn.class.getName(), AuroraStandIn.CLUSTER_URL)).isInstanceOf(AuroraStandIn.class);
+        assertThat(FailoverDataSource.loadDriver(null, "jdbc:h2:mem:test")).isInstanceOf(Driver.class);
+        assertThatThrownBy(() -> FailoverDataSource.loadDriver("com.example.Missing", AuroraStandIn.CLUSTER_URL)).isInstanceOf(SQLException.class);
+    }
+
+    @Test
+    void unwrap() throws SQLException {
+        assertThat(dataSource.unwrap(FailoverDataSource.class)).isSameAs(dataSource);
+        assertThat(dataSource.isWrapperFor(Connection.class)).isFalse();
+        assertThatThrownBy(() -> dataSource.unwrap(Connection.class)).isInstanceOf(SQLException.class);
+    }
+}
@@ -0,0 +1,163 @@
+package com.carepay.jdbc.auth;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.carepay.aws.auth.Credentials;
+import com.carepay.aws.auth.CredentialsProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CachedCredentialsProviderTest {
+    private Clock clock;
+    private List<Runnable> tasks;
+    private AtomicInteger fetches;
+    private CachedCredentialsProvider provider;
+
+    @BeforeEach
+    void setUp() {
+        clock = mock(Clock.class);
+        when(clock.millis()).thenReturn(0L);
+        tasks = new ArrayList<>();
+        fetches = new AtomicInteger();
+        provider = new CachedCredentialsProvider(() -> new Credentials("KEY" + fetches.incrementAndGet(), "SECRET", null), tasks::add, clock);
+    }
+
+    @Test
+    void credentialsAreCached() {
+        final Credentials credentials = provider.getCredentials();
+        assertThat(provider.getCredentials()).isSameAs(credentials);
+        assertThat(fetches).hasValue(1);
+        assertThat(tasks).isEmpty();
+    }
+
+    @Test
+    void refreshesInBackgroundBeforeExpiry() {
+        final Credentials credentials = provider.getCredentials();
+        when(clock.millis()).thenReturn(TimeUnit.MINUTES.toMillis(6L));
+        assertThat(provider.getCredentials()).isSameAs(credentials);
+        assertThat(provider.getCredentials()).isSameAs(credentials);
+        assertThat(tasks).hasSize(1); // only one refresh
+        tasks.get(0).run();
+        assertThat(provider.getCredentials().getAccessKeyId()).isEqualTo("KEY2");
+    }
+
+    @Test
+    void fetchesWhenExpired() {
+        provider.getCredentials();
+        when(clock.millis()).thenReturn(TimeUnit.MINUTES.toMillis(16L));
+        assertThat(provider.getCredentials().getAccessKeyId()).isEqualTo("KEY2");
+        assertThat(tasks).isEmpty();
+    }
+
+    @Test
+    void failedRefreshKeepsCredentials() {
+        final AtomicInteger calls = new AtomicInteger();
+        final CachedCredentialsProvider failing = new CachedCredentialsProvider(() -> {
+            if (calls.incrementAndGet() > 1) {
+                throw new IllegalStateException("metadata not available");
+            }
+            return new Credentials("KEY", "SECRET", null);
+        }, tasks::add, clock);
+        final Credentials credentials = failing.getCredentials();
+        when(clock.millis()).thenReturn(TimeUnit.MINUTES.toMillis(6L));
+        failing.getCredentials();
+        tasks.get(0).run();
+        assertThat(failing.getCredentials()).isSameAs(credentials);
+        assertThat(tasks).hasSize(1); // not retried during the backoff
+        when(clock.millis()).thenReturn(TimeUnit.MINUTES.toMillis(6L) + 1000L);
+        assertThat(failing.getCredentials()).isSameAs(credentials);
+        assertThat(tasks).hasSize(2); // retried
+        when(clock.millis()).thenReturn(TimeUnit.MINUTES.toMillis(16L));
+        assertThatThrownBy(failing::getCredentials).hasMessage("metadata not available");
+    }
+
+    @Test
+    void failingProviderIsNotHammered() {
+        final AtomicInteger calls = new AtomicInteger();
+        final CachedCredentialsProvider failing = new CachedCredentialsProvider(() -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("metadata not available");
+        }, tasks::add, clock);
+        assertThatThrownBy(failing::getCredentials).hasMessage("metadata not available");
+        for (int i = 0; i < 10; i++) {
+            assertThatThrownBy(failing::getCredentials)
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("metadata not available")
+                    .hasMessageStartingWith("Not retried");
+        }
+        assertThat(calls).hasValue(1);
+        when(clock.millis()).thenReturn(1000L);
+        assertThatThrownBy(failing::getCredentials).hasMessage("metadata not available");
+        assertThat(calls).hasValue(2);
+        assertThat(failing.getCircuitBreaker().getRetryAt()).isEqualTo(3000L); // backoff doubled
+        when(clock.millis()).thenReturn(3000L);
+        failing.clear();
+        assertThatThrownBy(failing::getCredentials).hasMessage("metadata not available");
+        assertThat(calls).hasValue(3);
+    }
+
+    @Test
+    void missingCredentialsAreNotCached() {
+        final CredentialsProvider delegate = mock(CredentialsProvider.class);
+        when(delegate.getCredentials()).thenReturn(new Credentials(null, null, null), new Credentials("KEY", "SECRET", null));
+        final CachedCredentialsProvider missing = new CachedCredentialsProvider(delegate, tasks::add, clock);
+        assertThat(missing.getCredentials().isPresent()).isFalse();
+        assertThat(missing.getCredentials().getAccessKeyId()).isEqualTo("KEY");
+    }
+
+    @Test
+    void prefetch() {
+        provider.prefetch();
+        assertThat(tasks).hasSize(1);
+        tasks.get(0).run();
+        provider.prefetch();
+        assertThat(tasks).hasSize(1);
+        assertThat(provider.getCredentials().getAccessKeyId()).isEqualTo("KEY1");
+        provider.clear();
+        assertThat(provider.getCredentials().getAccessKeyId()).isEqualTo("KEY2");
+    }
+
+    @Test
+    void concurrentLookupsShareFetch() throws Exception {
+        final CountDownLatch fetching = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CachedCredentialsProvider slow = new CachedCredentialsProvider(() -> {
+            fetches.incrementAndGet();
+            fetching.countDown();
+            try {
+                release.await(5L, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new Credentials("KEY", "SECRET", null);
+        }, tasks::add, clock);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Credentials>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(slow::getCredentials));
+            }
+            assertThat(fetching.await(5L, TimeUnit.SECONDS)).isTrue();
+            release.countDown();
+            for (Future<Credentials> result : results) {
+                assertThat(result.get(5L, TimeUnit.SECONDS).getAccessKeyId()).isEqualTo("KEY");
+            }
+            assertThat(fetches).hasValue(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.carepay.jdbc.auth;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.carepay.aws.auth.Credentials;
+import com.carepay.aws.auth.CredentialsProvider;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CredentialsCacheTest {
+
+    @Test
+    void providerPerProfile() {
+        final List<String> created = new ArrayList<>();
+        final List<Runnable> tasks = new ArrayList<>();
+        final CredentialsCache cache = new CredentialsCache(profile -> {
+            created.add(profile);
+            return () -> new Credentials(profile + "KEY", "SECRET", null);
+        }, () -> "eu-west-1", tasks::add, Clock.systemUTC());
+        final CredentialsProvider defaultChain = cache.getCredentialsProvider(null);
+        assertThat(cache.getCredentialsProvider(null)).isSameAs(defaultChain);
+        final CredentialsProvider reporting = cache.getCredentialsProvider("reporting");
+        assertThat(reporting).isNotSameAs(defaultChain);
+        assertThat(created).containsExactly("", "reporting");
+        assertThat(tasks).hasSize(2); // prefetched in the background
+        tasks.forEach(Runnable::run);
+        assertThat(reporting.getCredentials().getAccessKeyId()).isEqualTo("reportingKEY");
+        cache.clear();
+        assertThat(cache.getCredentialsProvider("reporting")).isNotSameAs(reporting);
+    }
+
+    @Test
+    void regionIsResolvedOnce() {
+        final AtomicInteger lookups = new AtomicInteger();
+        final CredentialsCache cache = new CredentialsCache(profile -> null, () -> {
+            lookups.incrementAndGet();
+            return "eu-west-1";
+        }, Runnable::run, Clock.systemUTC());
+        assertThat(cache.getRegionProvider().getRegion()).isEqualTo("eu-west-1");
+        assertThat(cache.getRegionProvider().getRegion()).isEqualTo("eu-west-1");
+        assertThat(lookups).hasValue(1);
+        assertThat(CredentialsCache.getInstance()).isSameAs(CredentialsCache.getInstance());
+    }
+}
@@ -0,0 +1,44 @@
+package com.carepay.jdbc.auth;
+
+import com.carepay.aws.auth.Credentials;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ProfileCredentialsProviderTest {
+    @AfterEach
+    void tearDown() {
+        System.clearProperty(ProfileCredentialsProvider.AWS_PROFILE);
+    }
+
+    private static Credentials profileCredentials() {
+        return new Credentials(System.getProperty(ProfileCredentialsProvider.AWS_PROFILE, "DEFAULTKEY"), "secret", null);
+    }
+
+    @Test
+    void resolvesProfileThroughChain() {
+        final Credentials credentials = new ProfileCredentialsProvider("reporting", () -> ProfileCredentialsProviderTest::profileCredentials).getCredentials();
+        assertThat(credentials.getAccessKeyId()).isEqualTo("reporting");
+        assertThat(System.getProperty(ProfileCredentialsProvider.AWS_PROFILE)).isNull();
+    }
+
+    @Test
+    void restoresSystemProperty() {
+        System.setProperty(ProfileCredentialsProvider.AWS_PROFILE, "global");
+        assertThat(new ProfileCredentialsProvider("reporting", () -> ProfileCredentialsProviderTest::profileCredentials)
+                .getCredentials().getAccessKeyId()).isEqualTo("reporting");
+        assertThat(new ProfileCredentialsProvider(null, () -> ProfileCredentialsProviderTest::profileCredentials)
+                .getCredentials().getAccessKeyId()).isEqualTo("global");
+        assertThatThrownBy(() -> new ProfileCredentialsProvider("missing", () -> () -> {
+            throw new IllegalStateException("No credentials for profile missing");
+        }).getCredentials()).isInstanceOf(IllegalStateException.class);
+        assertThat(System.getProperty(ProfileCredentialsProvider.AWS_PROFILE)).isEqualTo("global");
+    }
+
+    @Test
+    void defaultChain() {
+        assertThat(new ProfileCredentialsProvider(null).getCredentials()).isNotNull();
+    }
+}
@@ -0,0 +1,212 @@
+package com.carepay.jdbc.driver;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Properties;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.carepay.aws.auth.Credentials;
+import com.carepay.jdbc.H2Driver;
+import com.carepay.jdbc.RdsAWS4Signer;
+import com.carepay.jdbc.token.TokenCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RdsIamDriverTest {
+    private static final String URL = "jdbc:rds-iam:mysql://mydb.random.eu-west-1.rds.amazonaws.com:3306/database";
+
+    private Driver delegate;
+    private ScheduledExecutorService scheduledExecutorService;
+    private Clock clock;
+    private RdsIamDriver driver;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(Driver.class);
+        scheduledExecutorService = mock(ScheduledExecutorService.class);
+        clock = mock(Clock.class);
+        when(clock.instant()).thenReturn(Instant.parse("2018-09-19T16:02:42.00Z"));
+        final RdsAWS4Signer signer = new RdsAWS4Signer(() -> new Credentials("IAMKEYINSTANCE", "asdfqwertypolly", "ZYX12345"), () -> "eu-west-1", clock);
+        driver = new RdsIamDriver(signer, new TokenCache(), scheduledExecutorService) {
+            @Override
+            protected Driver getDriver(final String targetUrl) {
+                return delegate;
+            }
+        };
+    }
+
+    @Test
+    void acceptsURL() {
+        assertThat(driver.acceptsURL(URL)).isTrue();
+        assertThat(driver.acceptsURL("jdbc:rds-iam:mariadb://mydb/database")).isTrue();
+        assertThat(driver.acceptsURL("jdbc:mysql://mydb/database")).isFalse();
+        assertThat(driver.acceptsURL(null)).isFalse();
+    }
+
+    @Test
+    void connectInjectsTokenAndTls() throws SQLException {
+        final Properties info = new Properties();
+        info.setProperty("user", "iamuser");
+        info.setProperty("sslMode", "VERIFY_IDENTITY");
+        driver.connect(URL, info);
+        final ArgumentCaptor<Properties> properties = ArgumentCaptor.forClass(Properties.class);
+        verify(delegate).connect(eq("jdbc:mysql://mydb.random.eu-west-1.rds.amazonaws.com:3306/database"), properties.capture());
+        assertThat(properties.getValue().getProperty("password"))
+                .startsWith("mydb.random.eu-west-1.rds.amazonaws.com:3306/?Action=connect&DBUser=iamuser&");
+        assertThat(properties.getValue())
+                .containsEntry("useSSL", "true")
+                .containsEntry("sslMode", "VERIFY_IDENTITY")
+                .containsEntry("trustCertificateKeyStoreUrl", "classpath:/rds-combined-ca-bundle.pem")
+                .containsEntry("trustCertificateKeyStoreType", "PEM")
+                .doesNotContainKey("socketFactory"); // not Connector/J
+        assertThat(info).doesNotContainKey("password");
+    }
+
+    @Test
+    void connectorJUsesSocketFactory() throws SQLException {
+        delegate = mock(com.mysql.cj.jdbc.Driver.class);
+        final Properties info = new Properties();
+        info.setProperty("user", "iamuser");
+        driver.connect(URL, info);
+        final ArgumentCaptor<Properties> properties = ArgumentCaptor.forClass(Properties.class);
+        verify(delegate).connect(any(), properties.capture());
+        assertThat(properties.getValue()).containsEntry("socketFactory", "com.carepay.jdbc.mysql.RdsIamSocketFactory");
+    }
+
+    @Test
+    void connectMariaDb() throws SQLException {
+        driver.connect("jdbc:rds-iam:mariadb://mydb.random.eu-west-1.rds.amazonaws.com/database?user=iamuser", new Properties());
+        final ArgumentCaptor<Properties> properties = ArgumentCaptor.forClass(Properties.class);
+        verify(delegate).connect(eq("jdbc:mariadb://mydb.random.eu-west-1.rds.amazonaws.com/database?user=iamuser"), properties.capture());
+        assertThat(properties.getValue())
+                .containsEntry("user", "iamuser")
+                .containsEntry("useSsl", "true")
+                .containsEntry("serverSslCert", "classpath:/rds-combined-ca-bundle.pem")
+                .doesNotContainKey("trustCertificateKeyStoreUrl");
+    }
+
+    @Test
+    void tokenSignedOnceAndRefreshedInBackground() throws SQLException {
+        final Properties info = new Properties();
+        info.setProperty("user", "iamuser");
+        driver.connect(URL, info);
+        driver.connect(URL, info);
+        assertThat(driver.getTokenMetrics().getSignCount()).isEqualTo(1L);
+        final ArgumentCaptor<Runnable> refresh = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduledExecutorService, times(1)).schedule(refresh.capture(), eq(TimeUnit.MINUTES.toMillis(10L)), eq(TimeUnit.MILLISECONDS));
+        when(clock.instant()).thenReturn(Instant.parse("2018-09-19T16:12:42.00Z"));
+        refresh.getValue().run();
+        assertThat(driver.getTokenMetrics().getSignCount()).isEqualTo(2L);
+        verify(scheduledExecutorService, times(2)).schedule(refresh.getValue(), TimeUnit.MINUTES.toMillis(10L), TimeUnit.MILLISECONDS);
+        driver.connect(URL, info);
+        assertThat(driver.getTokenMetrics().getSignCount()).isEqualTo(2L);
+    }
+
+    @Test
+    void idleTokenIsNoLongerRefreshed() throws SQLException {
+        final Properties info = new Properties();
+        info.setProperty("user", "iamuser");
+        driver.connect(URL, info);
+        assertThat(driver.getRefreshCount()).isEqualTo(1);
+        final ArgumentCaptor<Runnable> refresh = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduledExecutorService).schedule(refresh.capture(), anyLong(), eq(TimeUnit.MILLISECONDS));
+        when(clock.instant()).thenReturn(Instant.parse("2018-09-19T16:42:43.00Z"));
+        refresh.getValue().run();
+        assertThat(driver.getRefreshCount()).isZero();
+        assertThat(driver.getTokenMetrics().getSignCount()).isEqualTo(1L);
+        verify(scheduledExecutorService, times(1)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        driver.connect(URL, info);
+        assertThat(driver.getRefreshCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shortLivedTokenIsRefreshedBeforeExpiry() throws SQLException {
+        final Properties info = new Properties();
+        info.setProperty("user", "iamuser");
+        driver.connect(URL + "?tokenLifetimeSeconds=60&tokenRefreshLeadSeconds=20", info);
+        verify(scheduledExecutorService).schedule(any(Runnable.class), eq(TimeUnit.SECONDS.toMillis(40L)), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void connectWithTokenPolicy() throws SQLException {
+        final Properties info = new Properties();
+        info.setProperty("user", "iamuser");
+        info.setProperty("tokenRefreshJitterSeconds", "60");
+        driver.connect(URL + "?tokenLifetimeSeconds=600", info);
+        final ArgumentCaptor<Properties> properties = ArgumentCaptor.forClass(Properties.class);
+        verify(delegate).connect(any(String.class), properties.capture());
+        assertThat(properties.getValue().getProperty("password")).contains("X-Amz-Expires=600&");
+        assertThat(properties.getValue()).doesNotContainKey("tokenRefreshJitterSeconds");
+        info.setProperty("tokenRefreshLeadSeconds", "900");
+        assertThatThrownBy(() -> driver.connect(URL, info)).isInstanceOf(SQLException.class);
+    }
+
+    @Test
+    void connectWithRateLimit() throws SQLException {
+        final Properties info = new Properties();
+        info.setProperty("user", "iamuser");
+        info.setProperty("connectionRateBurst", "1");
+        info.setProperty("connectionRateTimeoutMillis", "0");
+        driver.connect(URL + "?connectionRateLimit=0.001", info);
+        final ArgumentCaptor<Properties> properties = ArgumentCaptor.forClass(Properties.class);
+        verify(delegate).connect(any(String.class), properties.capture());
+        assertThat(properties.getValue())
+                .doesNotContainKey("connectionRateBurst")
+                .doesNotContainKey("connectionRateTimeoutMillis");
+        final long signCount = driver.getTokenMetrics().getSignCount();
+        info.setProperty("user", "otheruser");
+        assertThatThrownBy(() -> driver.connect(URL + "?connectionRateLimit=0.001", info))
+                .isInstanceOf(SQLException.class)
+                .hasMessageContaining("rate limit");
+        assertThat(driver.getTokenMetrics().getSignCount()).isEqualTo(signCount); // rejected before signing
+    }
+
+    @Test
+    void connectWithoutUser() {
+        assertThatThrownBy(() -> driver.connect(URL, new Properties()))
+                .isInstanceOf(SQLException.class);
+    }
+
+    @Test
+    void connectOtherURL() throws SQLException {
+        assertThat(driver.connect("jdbc:h2:mem:test", new Properties())).isNull();
+        assertThat(driver.getPropertyInfo("jdbc:h2:mem:test", new Properties())).isEmpty();
+    }
+
+    @Test
+    void connectsToDelegate() throws SQLException {
+        final RdsIamDriver h2Driver = new RdsIamDriver(new RdsAWS4Signer(() -> new Credentials("IAMKEYINSTANCE", "asdfqwertypolly", null), () -> "eu-west-1", clock),
+                new TokenCache(), scheduledExecutorService) {
+            @Override
+            protected Driver getDriver(final String targetUrl) {
+                return new H2Driver();
+            }
+        };
+        final Properties info = new Properties();
+        info.setProperty("user", "iamuser");
+        try (Connection connection = h2Driver.connect(URL, info)) {
+            assertThat(connection.isValid(1)).isTrue();
+        }
+    }
+
+    @Test
+    void registeredWithDriverManager() throws SQLException {
+        assertThat(DriverManager.getDriver(URL)).isInstanceOf(RdsIamDriver.class);
+    }
+}
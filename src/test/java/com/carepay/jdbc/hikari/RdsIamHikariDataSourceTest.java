@@ -1,18 +1,40 @@
 package com.carepay.jdbc.hikari;
 
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.time.Clock;
 import java.time.Instant;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 
 import com.carepay.aws.auth.Credentials;
 import com.carepay.jdbc.H2Driver;
 import com.carepay.jdbc.RdsAWS4Signer;
+import com.carepay.jdbc.aurora.AuroraStandIn;
+import com.carepay.jdbc.aurora.FailoverDataSource;
+import com.carepay.jdbc.token.TokenCache;
+import com.carepay.jdbc.token.TokenPolicy;
+import com.carepay.jdbc.util.HostAndPort;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.stubbing.Answer;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class RdsIamHikariDataSourceTest {
@@ -21,6 +43,10 @@ class RdsIamHikariDataSourceTest {
     private Clock brokenClock;
     private Credentials credentials;
     private RdsAWS4Signer tokenGenerator;
+    private ScheduledExecutorService scheduledExecutorService;
+    private ArgumentCaptor<Runnable> runnableArgumentCaptor;
+    private ArgumentCaptor<Long> delayCaptor;
+    private ScheduledFuture<?> refreshFuture;
 
     @BeforeEach
     void setUp() {
@@ -28,7 +54,12 @@ void setUp() {
         when(brokenClock.instant()).thenReturn(Instant.parse("2018-09-19T16:02:42.00Z"));
         credentials = new Credentials("IAMKEYINSTANCE", "asdfqwertypolly", "ZYX12345");
         tokenGenerator = new RdsAWS4Signer(() -> credentials, () -> "eu-west-1", brokenClock);
-        rdsIamHikariDataSource = new RdsIamHikariDataSource(tokenGenerator, brokenClock);
+        scheduledExecutorService = mock(ScheduledExecutorService.class);
+        runnableArgumentCaptor = ArgumentCaptor.forClass(Runnable.class);
+        refreshFuture = mock(ScheduledFuture.class);
+        delayCaptor = ArgumentCaptor.forClass(Long.class);
+        when(scheduledExecutorService.schedule(runnableArgumentCaptor.capture(), delayCaptor.capture(), any(TimeUnit.class))).thenAnswer((Answer<ScheduledFuture<?>>) invocation -> refreshFuture);
+        rdsIamHikariDataSource = new RdsIamHikariDataSource(tokenGenerator, new TokenCache(), scheduledExecutorService);
         rdsIamHikariDataSource.setDriverClassName(H2Driver.class.getName());
         rdsIamHikariDataSource.setJdbcUrl("jdbc:mysql://mydb.random.eu-west-1.rds.amazonaws.com/database");
         rdsIamHikariDataSource.setUsername("iamuser");
@@ -55,6 +86,79 @@ void getPasswordIsEqual() {
         assertThat(password).isEqualTo(password2);
     }
 
+    @Test
+    @SuppressWarnings("deprecation")
+    void deprecatedConstructorUsesClockOfSigner() {
+        try (RdsIamHikariDataSource dataSource = new RdsIamHikariDataSource(tokenGenerator, Clock.systemUTC())) {
+            dataSource.setJdbcUrl("jdbc:mysql://deprecated.random.eu-west-1.rds.amazonaws.com/database");
+            dataSource.setUsername("iamuser");
+            assertThat(dataSource.getPassword()).contains("X-Amz-Date=20180919T160242Z");
+        }
+    }
+
+    @Test
+    void warmUp() throws Exception {
+        rdsIamHikariDataSource.setWarmUp(true);
+        rdsIamHikariDataSource.setMinimumIdle(3);
+        rdsIamHikariDataSource.setMaximumPoolSize(5);
+        rdsIamHikariDataSource.getReadiness().get(10L, TimeUnit.SECONDS);
+        assertThat(rdsIamHikariDataSource.getHikariPoolMXBean().getTotalConnections()).isGreaterThanOrEqualTo(3);
+        assertThat(rdsIamHikariDataSource.getHikariPoolMXBean().getActiveConnections()).isZero();
+    }
+
+    @Test
+    void readyWithoutWarmUp() {
+        assertThat(rdsIamHikariDataSource.getReadiness()).isCompleted();
+    }
+
+    @Test
+    void tokenMetrics() throws SQLException {
+        rdsIamHikariDataSource.setRegisterMbeans(true);
+        rdsIamHikariDataSource.setPoolName("metrics-test");
+        try (Connection ignored = rdsIamHikariDataSource.getConnection()) {
+            assertThat(rdsIamHikariDataSource.getTokenMetrics().getSignCount()).isEqualTo(1L);
+            assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(
+                    new ObjectName("com.carepay.jdbc:type=TokenMetrics,name=\"metrics-test\""))).isTrue();
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    void connectionMetrics() throws SQLException {
+        final MetricsTrackerFactory delegate = mock(MetricsTrackerFactory.class);
+        final IMetricsTracker delegateTracker = mock(IMetricsTracker.class);
+        when(delegate.create(any(), any())).thenReturn(delegateTracker);
+        rdsIamHikariDataSource.setMetricsTrackerFactory(delegate);
+        rdsIamHikariDataSource.setMinimumIdle(0);
+        try (Connection ignored = rdsIamHikariDataSource.getConnection()) {
+            assertThat(rdsIamHikariDataSource.getMetricsTrackerFactory()).isInstanceOf(TokenMetricsTrackerFactory.class);
+            assertThat(rdsIamHikariDataSource.getTokenMetrics().getAcquireCount()).isEqualTo(1L);
+            assertThat(rdsIamHikariDataSource.getTokenMetrics().getConnectCount()).isEqualTo(1L);
+            verify(delegateTracker).recordConnectionAcquiredNanos(anyLong());
+        }
+    }
+
+    @Test
+    void connectionMetricsWithoutTrackerFactory() throws SQLException {
+        rdsIamHikariDataSource.setMinimumIdle(0);
+        try (Connection ignored = rdsIamHikariDataSource.getConnection()) {
+            assertThat(rdsIamHikariDataSource.getTokenMetrics().getAcquireTime().snapshot().getCount()).isEqualTo(1L);
+        }
+    }
+
+    @Test
+    void tokenPolicy() {
+        rdsIamHikariDataSource.setTokenLifetimeSeconds(600);
+        rdsIamHikariDataSource.setTokenRefreshJitterSeconds(30);
+        assertThat(rdsIamHikariDataSource.getTokenPolicy()).isEqualTo(new TokenPolicy(600, 200, 30));
+        assertThat(rdsIamHikariDataSource.getPassword()).contains("X-Amz-Expires=600&");
+        rdsIamHikariDataSource.setTokenStaleWhileRevalidate(true);
+        assertThat(rdsIamHikariDataSource.getTokenPolicy()).isEqualTo(new TokenPolicy(600, 200, 30, true));
+        rdsIamHikariDataSource.setTokenRefreshLeadSeconds(600);
+        assertThatThrownBy(() -> rdsIamHikariDataSource.getTokenPolicy()).isInstanceOf(IllegalArgumentException.class);
+    }
+
     @Test
     void getPasswordIsDifferentWhenExpired() {
         String password = rdsIamHikariDataSource.getPassword();
@@ -64,6 +168,50 @@ void getPasswordIsDifferentWhenExpired() {
         assertThat(password).isNotEqualTo(password2);
     }
 
+    @Test
+    void backgroundTokenRefreshPushesToken() throws SQLException {
+        rdsIamHikariDataSource.setBackgroundTokenRefresh(true);
+        assertThat(rdsIamHikariDataSource.isBackgroundTokenRefresh()).isTrue();
+        try (Connection c = rdsIamHikariDataSource.getConnection()) {
+            final String password = rdsIamHikariDataSource.getPassword();
+            assertThat(password).contains("X-Amz");
+            assertThat(delayCaptor.getValue()).isEqualTo(TimeUnit.MINUTES.toMillis(10L));
+            reset(brokenClock);
+            when(brokenClock.instant()).thenReturn(Instant.parse("2018-09-19T16:12:42.00Z"));
+            assertThat(rdsIamHikariDataSource.getPassword()).isEqualTo(password); // pushed token
+            runnableArgumentCaptor.getValue().run();
+            assertThat(rdsIamHikariDataSource.getPassword()).isNotEqualTo(password);
+            assertThat(delayCaptor.getValue()).isEqualTo(TimeUnit.MINUTES.toMillis(10L));
+        }
+        rdsIamHikariDataSource.close();
+        verify(refreshFuture).cancel(false);
+    }
+
+    @Test
+    void backgroundTokenRefreshKeepsTokenOnFailure() throws SQLException {
+        rdsIamHikariDataSource.setBackgroundTokenRefresh(true);
+        try (Connection c = rdsIamHikariDataSource.getConnection()) {
+            final String password = rdsIamHikariDataSource.getPassword();
+            credentials = null; // NOSONAR
+            runnableArgumentCaptor.getValue().run();
+            assertThat(rdsIamHikariDataSource.getPassword()).isEqualTo(password);
+        }
+    }
+
+    @Test
+    void backgroundTokenRefreshFollowsShortTokenLifetime() throws SQLException {
+        rdsIamHikariDataSource.setBackgroundTokenRefresh(true);
+        rdsIamHikariDataSource.setTokenLifetimeSeconds(6);
+        try (Connection c = rdsIamHikariDataSource.getConnection()) {
+            assertThat(delayCaptor.getValue()).isEqualTo(4_000L); // renewed 1/3 of the lifetime before expiry
+            reset(brokenClock);
+            when(brokenClock.instant()).thenReturn(Instant.parse("2018-09-19T16:02:46.00Z"));
+            credentials = null; // NOSONAR
+            runnableArgumentCaptor.getValue().run();
+            assertThat(delayCaptor.getValue()).isEqualTo(1_000L); // retried before the pushed token expires
+        }
+    }
+
     @Test
     void testExtractHostFromUrl() {
         rdsIamHikariDataSource.setJdbcUrl("jdbc:mysql://mydb.random.eu-west-1.rds.amazonaws.com/schema");
@@ -92,4 +240,75 @@ void testExtractHostFromOracleUrl() {
         assertThat(rdsIamHikariDataSource.host).isEqualTo("dbhostname.domain-name.com");
         assertThat(rdsIamHikariDataSource.port).isEqualTo(1521);
     }
+
+    @Test
+    void testMultiHostUrlPresignsAllHosts() {
+        final TokenCache tokenCache = new TokenCache();
+        final RdsIamHikariDataSource dataSource = new RdsIamHikariDataSource(tokenGenerator, tokenCache, scheduledExecutorService);
+        dataSource.setJdbcUrl("jdbc:mysql://writer.random.eu-west-1.rds.amazonaws.com,[::1]:3307/schema");
+        dataSource.setUsername("iamuser");
+        dataSource.extractHostFromUrl();
+        assertThat(dataSource.host).isEqualTo("writer.random.eu-west-1.rds.amazonaws.com");
+        final ArgumentCaptor<Runnable> presign = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduledExecutorService).execute(presign.capture());
+        presign.getValue().run();
+        verify(scheduledExecutorService).schedule(any(Runnable.class), eq(TimeUnit.MINUTES.toMillis(10L)), eq(TimeUnit.MILLISECONDS)); // renewed
+        assertThat(dataSource.getTokenMetrics().getCacheMisses()).isEqualTo(1L);
+        assertThat(tokenCache.getToken(tokenGenerator, "::1", 3307, "iamuser", dataSource.getTokenMetrics())).contains("X-Amz");
+        assertThat(dataSource.getTokenMetrics().getCacheHits()).isEqualTo(1L);
+    }
+
+    @Test
+    void createInstanceDataSource() {
+        rdsIamHikariDataSource.setPoolName("cluster");
+        rdsIamHikariDataSource.setMaximumPoolSize(7);
+        rdsIamHikariDataSource.setBackgroundTokenRefresh(true);
+        try (RdsIamHikariDataSource instance = rdsIamHikariDataSource.createInstanceDataSource("reader1",
+                new HostAndPort("reader1.random.eu-west-1.rds.amazonaws.com", 3306))) {
+            assertThat(instance.getJdbcUrl()).isEqualTo("jdbc:mysql://reader1.random.eu-west-1.rds.amazonaws.com:3306/database");
+            assertThat(instance.getPoolName()).isEqualTo("cluster-reader1");
+            assertThat(instance.getMaximumPoolSize()).isEqualTo(7);
+            assertThat(instance.isBackgroundTokenRefresh()).isTrue();
+            assertThat(instance.getPassword()).startsWith("reader1.random.eu-west-1.rds.amazonaws.com:3306/");
+        }
+    }
+
+    @Test
+    void presignTokenDoesNotWaitForConnectionRateLimit() {
+        rdsIamHikariDataSource.setJdbcUrl("jdbc:mysql://presign.random.eu-west-1.rds.amazonaws.com/database");
+        rdsIamHikariDataSource.setConnectionRateLimit(0.01);
+        rdsIamHikariDataSource.setConnectionRateBurst(1);
+        rdsIamHikariDataSource.presignToken();
+        rdsIamHikariDataSource.presignToken();
+        assertThat(rdsIamHikariDataSource.getTokenMetrics().getSignCount()).isEqualTo(1L);
+        assertThat(rdsIamHikariDataSource.getPassword()).startsWith("presign.random.eu-west-1.rds.amazonaws.com:3306/"); // the only slot
+        assertThatThrownBy(rdsIamHikariDataSource::getPassword).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void failover() throws SQLException {
+        AuroraStandIn.reset();
+        rdsIamHikariDataSource.setDriverClassName(AuroraStandIn.class.getName());
+        rdsIamHikariDataSource.setJdbcUrl(AuroraStandIn.CLUSTER_URL);
+        rdsIamHikariDataSource.setFailover(true);
+        rdsIamHikariDataSource.setTopologyQuery(AuroraStandIn.topologyQuery());
+        assertThat(rdsIamHikariDataSource.isFailover()).isTrue();
+        try (Connection c = rdsIamHikariDataSource.getConnection()) {
+            assertThat(AuroraStandIn.getConnected()).containsOnly(AuroraStandIn.CLUSTER_HOST);
+        }
+        final long signCount = rdsIamHikariDataSource.getTokenMetrics().getSignCount();
+        assertThat(rdsIamHikariDataSource.getPassword()).isNull(); // signed by the failover datasource
+        assertThat(rdsIamHikariDataSource.getTokenMetrics().getSignCount()).isEqualTo(signCount);
+        final FailoverDataSource failoverDataSource = rdsIamHikariDataSource.getFailoverDataSource();
+        failoverDataSource.refreshTopology();
+        AuroraStandIn.failover("instance-2", true);
+        rdsIamHikariDataSource.getHikariPoolMXBean().softEvictConnections();
+        try (Connection c = rdsIamHikariDataSource.getConnection()) {
+            assertThat(AuroraStandIn.getConnected()).endsWith(AuroraStandIn.host("instance-2"));
+        }
+        try (RdsIamHikariDataSource instance = rdsIamHikariDataSource.createInstanceDataSource("instance-3",
+                new HostAndPort(AuroraStandIn.host("instance-3"), 3306))) {
+            assertThat(instance.getDataSource()).isNull();
+        }
+    }
 }
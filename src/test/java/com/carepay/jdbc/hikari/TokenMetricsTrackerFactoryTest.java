@@ -0,0 +1,48 @@
+package com.carepay.jdbc.hikari;
+
+import com.carepay.jdbc.metrics.TokenMetrics;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TokenMetricsTrackerFactoryTest {
+    @Test
+    void recordsAndDelegates() {
+        final TokenMetrics metrics = new TokenMetrics();
+        final MetricsTrackerFactory delegate = mock(MetricsTrackerFactory.class);
+        final IMetricsTracker delegateTracker = mock(IMetricsTracker.class);
+        when(delegate.create(eq("pool"), any())).thenReturn(delegateTracker);
+
+        final IMetricsTracker tracker = new TokenMetricsTrackerFactory(metrics, delegate).create("pool", null);
+        tracker.recordConnectionCreatedMillis(42L);
+        tracker.recordConnectionAcquiredNanos(1000L);
+        tracker.recordConnectionUsageMillis(5L);
+        tracker.recordConnectionTimeout();
+        tracker.close();
+
+        assertThat(metrics.getConnectTime().getMax()).isEqualTo(42L);
+        assertThat(metrics.getAcquireTime().getMax()).isEqualTo(1000L);
+        assertThat(metrics.getConnectionTimeouts()).isEqualTo(1L);
+        verify(delegateTracker).recordConnectionCreatedMillis(42L);
+        verify(delegateTracker).recordConnectionAcquiredNanos(1000L);
+        verify(delegateTracker).recordConnectionUsageMillis(5L);
+        verify(delegateTracker).recordConnectionTimeout();
+        verify(delegateTracker).close();
+    }
+
+    @Test
+    void withoutDelegate() {
+        final TokenMetrics metrics = new TokenMetrics();
+        final IMetricsTracker tracker = new TokenMetricsTrackerFactory(metrics).create("pool", null);
+        tracker.recordConnectionCreatedMillis(7L);
+        tracker.close();
+        assertThat(metrics.getConnectTime().getCount()).isEqualTo(1L);
+    }
+}
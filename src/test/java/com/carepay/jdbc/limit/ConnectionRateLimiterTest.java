@@ -0,0 +1,140 @@
+package com.carepay.jdbc.limit;
+
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.carepay.jdbc.util.HostAndPort;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConnectionRateLimiterTest {
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+    private AtomicLong ticker;
+    private ExecutorService executorService;
+
+    @BeforeEach
+    void setUp() {
+        ticker = new AtomicLong(1_000_000_000L);
+        executorService = Executors.newFixedThreadPool(40);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void burstThenRate() {
+        final ConnectionRateLimiter limiter = new ConnectionRateLimiter(10.0, 3, ticker::get);
+        assertThat(limiter.reserve(0L)).isZero();
+        assertThat(limiter.reserve(0L)).isZero();
+        assertThat(limiter.reserve(0L)).isZero();
+        assertThat(limiter.reserve(Long.MAX_VALUE)).isEqualTo(100 * MILLIS);
+        assertThat(limiter.reserve(Long.MAX_VALUE)).isEqualTo(200 * MILLIS);
+    }
+
+    @Test
+    void refillsUpToBurst() {
+        final ConnectionRateLimiter limiter = new ConnectionRateLimiter(10.0, 2, ticker::get);
+        limiter.reserve(0L);
+        limiter.reserve(0L);
+        ticker.addAndGet(TimeUnit.SECONDS.toNanos(10L));
+        assertThat(limiter.reserve(0L)).isZero();
+        assertThat(limiter.reserve(0L)).isZero();
+        assertThat(limiter.reserve(0L)).isEqualTo(-1L);
+    }
+
+    @Test
+    void rejectedCallerDoesNotReserve() {
+        final ConnectionRateLimiter limiter = new ConnectionRateLimiter(10.0, 1, ticker::get);
+        assertThat(limiter.reserve(0L)).isZero();
+        assertThat(limiter.reserve(50 * MILLIS)).isEqualTo(-1L);
+        assertThat(limiter.reserve(100 * MILLIS)).isEqualTo(100 * MILLIS);
+        ticker.addAndGet(150 * MILLIS);
+        assertThat(limiter.reserve(100 * MILLIS)).isEqualTo(50 * MILLIS);
+    }
+
+    @Test
+    void acquireRejectsAtDeadline() throws SQLTransientConnectionException {
+        final ConnectionRateLimiter limiter = new ConnectionRateLimiter(1.0, 1);
+        limiter.acquire(0L, TimeUnit.MILLISECONDS);
+        final long start = System.nanoTime();
+        assertThatThrownBy(() -> limiter.acquire(10L, TimeUnit.MILLISECONDS))
+                .isInstanceOf(SQLTransientConnectionException.class)
+                .hasMessageContaining("rate limit");
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(500L));
+        assertThat(limiter.getAdmittedCount()).isEqualTo(1L);
+        assertThat(limiter.getRejectedCount()).isEqualTo(1L);
+    }
+
+    /**
+     * A storm of 40 new connections against a simulated connection factory: 5 are opened at once, the
+     * others queue and are opened at 100 per second.
+     */
+    @Test
+    void connectionStormIsQueued() throws Exception {
+        final ConnectionRateLimiter limiter = new ConnectionRateLimiter(100.0, 5);
+        final AtomicInteger opened = new AtomicInteger();
+        final Callable<Long> connectionFactory = () -> {
+            limiter.acquire(5L, TimeUnit.SECONDS);
+            opened.incrementAndGet();
+            return System.nanoTime();
+        };
+        final long start = System.nanoTime();
+        final List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            futures.add(executorService.submit(connectionFactory));
+        }
+        long last = start;
+        for (Future<Long> future : futures) {
+            last = Math.max(last, future.get(10L, TimeUnit.SECONDS));
+        }
+        assertThat(opened).hasValue(40);
+        assertThat(last - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(300L));
+        assertThat(limiter.getRejectedCount()).isZero();
+        assertThat(limiter.getMaxQueueDepth()).isGreaterThan(1L);
+        assertThat(limiter.getQueueDepth()).isZero();
+        assertThat(limiter.getWaitTimeMaxMillis()).isGreaterThanOrEqualTo(300L);
+    }
+
+    @Test
+    void forEndpoint() {
+        final HostAndPort endpoint = new HostAndPort("limiter-test.random.eu-west-1.rds.amazonaws.com", 3306);
+        final ConnectionRateLimiter limiter = ConnectionRateLimiter.forEndpoint(endpoint, 2.5, 0);
+        assertThat(limiter.getBurst()).isEqualTo(3);
+        assertThat(ConnectionRateLimiter.forEndpoint(endpoint, "2.5", null)).isSameAs(limiter);
+        assertThat(ConnectionRateLimiter.forEndpoint(endpoint, 2.5, 3)).isSameAs(limiter);
+        assertThatThrownBy(() -> ConnectionRateLimiter.forEndpoint(endpoint, 2.5, 1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("limited to 2.5/s");
+        assertThatThrownBy(() -> ConnectionRateLimiter.forEndpoint(endpoint, "5", null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(ConnectionRateLimiter.forEndpoint(endpoint, null, "5")).isNull();
+        assertThat(ConnectionRateLimiter.forEndpoint(endpoint, "0", null)).isNull();
+        assertThatThrownBy(() -> ConnectionRateLimiter.forEndpoint(endpoint, "fast", null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ConnectionRateLimiter(-1.0, 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void parseTimeout() {
+        assertThat(ConnectionRateLimiter.parseTimeout(null)).isEqualTo(30_000L);
+        assertThat(ConnectionRateLimiter.parseTimeout("500")).isEqualTo(500L);
+        assertThatThrownBy(() -> ConnectionRateLimiter.parseTimeout("soon"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,87 @@
+package com.carepay.jdbc.mariadb;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.sql.SQLException;
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import com.carepay.jdbc.ssl.SslContextCache;
+import com.carepay.jdbc.ssl.TlsTestServer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mariadb.jdbc.tls.TlsSocketPluginLoader;
+import org.mariadb.jdbc.util.Options;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RdsIamTlsSocketPluginTest {
+    private RdsIamTlsSocketPlugin plugin;
+    private Options options;
+
+    @BeforeEach
+    void setUp() {
+        plugin = new RdsIamTlsSocketPlugin(new SslContextCache());
+        options = new Options();
+    }
+
+    @Test
+    void loadedByMariaDB() throws SQLException {
+        assertThat(TlsSocketPluginLoader.get("AWS4RDS")).isInstanceOf(RdsIamTlsSocketPlugin.class);
+        assertThat(plugin.name()).isNotEmpty();
+    }
+
+    @Test
+    void handshakeUsingServerSslCert() throws Exception {
+        options.serverSslCert = TlsTestServer.TRUST_STORE_URL;
+        try (TlsTestServer server = new TlsTestServer("TLSv1.2")) {
+            final byte[] first = handshake(server);
+            final byte[] second = handshake(server);
+            assertThat(second).isEqualTo(first);
+        }
+    }
+
+    @Test
+    void untrustedCertificate() throws Exception {
+        try (TlsTestServer server = new TlsTestServer()) {
+            assertThatThrownBy(() -> handshake(server)).isInstanceOf(SSLHandshakeException.class);
+        }
+    }
+
+    @Test
+    void invalidServerSslCert() {
+        options.serverSslCert = "/does/not/exist.pem";
+        assertThatThrownBy(() -> plugin.getSocketFactory(options)).isInstanceOf(SQLException.class);
+    }
+
+    @Test
+    void usesHostOfUrlWithoutReverseLookup() throws Exception {
+        options.serverSslCert = TlsTestServer.TRUST_STORE_URL;
+        try (TlsTestServer server = new TlsTestServer("TLSv1.2")) {
+            assertThat(peerHost(new InetSocketAddress("localhost", server.getPort()))).isEqualTo("localhost");
+            assertThat(peerHost(new InetSocketAddress("127.0.0.1", server.getPort()))).isEqualTo("127.0.0.1");
+        }
+    }
+
+    private String peerHost(final InetSocketAddress address) throws Exception {
+        try (Socket raw = new Socket()) {
+            raw.connect(address);
+            final SSLSocket socket = plugin.createSocket(raw, plugin.getSocketFactory(options));
+            socket.startHandshake();
+            return socket.getSession().getPeerHost();
+        }
+    }
+
+    private byte[] handshake(final TlsTestServer server) throws Exception {
+        final SSLSocketFactory factory = plugin.getSocketFactory(options);
+        try (Socket raw = new Socket()) {
+            raw.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+            final SSLSocket socket = plugin.createSocket(raw, factory);
+            socket.startHandshake();
+            return socket.getSession().getId();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.carepay.jdbc.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HistogramTest {
+    @Test
+    void empty() {
+        final Histogram histogram = new Histogram();
+        assertThat(histogram.getCount()).isZero();
+        assertThat(histogram.getMean()).isZero();
+        assertThat(histogram.getPercentile(99.0)).isZero();
+    }
+
+    @Test
+    void bucketBounds() {
+        for (long v : new long[]{0L, 1L, 7L, 8L, 9L, 15L, 16L, 17L, 1000L, 123_456_789L, Long.MAX_VALUE}) {
+            final int index = Histogram.index(v);
+            assertThat(Histogram.upperBound(index)).isGreaterThanOrEqualTo(v);
+            if (index > 0) {
+                assertThat(Histogram.upperBound(index - 1)).isLessThan(v);
+            }
+        }
+    }
+
+    @Test
+    void percentiles() {
+        final Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertThat(histogram.getCount()).isEqualTo(1000L);
+        assertThat(histogram.getMean()).isEqualTo(500.5);
+        assertThat(histogram.getMax()).isEqualTo(1000L);
+        assertThat(histogram.getPercentile(50.0)).isBetween(500L, 563L);
+        assertThat(histogram.getPercentile(99.0)).isBetween(990L, 1000L);
+        assertThat(histogram.getPercentile(100.0)).isEqualTo(1000L);
+    }
+
+    @Test
+    void snapshot() {
+        final Histogram histogram = new Histogram();
+        assertThat(histogram.snapshot().getCount()).isZero();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        final Histogram.Snapshot snapshot = histogram.snapshot();
+        histogram.record(1_000_000L);
+        assertThat(snapshot.getCount()).isEqualTo(1000L);
+        assertThat(snapshot.getMean()).isEqualTo(500.5);
+        assertThat(snapshot.getP50()).isEqualTo(histogram.getPercentile(50.0));
+        assertThat(snapshot.getP90()).isBetween(900L, 1000L);
+        assertThat(snapshot.getP99()).isBetween(990L, 1000L);
+        assertThat(snapshot.getP999()).isEqualTo(1000L);
+        assertThat(snapshot.getMax()).isEqualTo(1000L);
+    }
+
+    @Test
+    void negativeValues() {
+        final Histogram histogram = new Histogram();
+        histogram.record(-5L);
+        assertThat(histogram.getMax()).isZero();
+        assertThat(histogram.getPercentile(50.0)).isZero();
+    }
+
+    @Test
+    void concurrentRecording() throws Exception {
+        final Histogram histogram = new Histogram();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i);
+                }
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertThat(histogram.getCount()).isEqualTo(80_000L);
+        assertThat(histogram.getMax()).isEqualTo(9_999L);
+    }
+}
@@ -0,0 +1,62 @@
+package com.carepay.jdbc.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenMetricsTest {
+    @Test
+    void registerAsMBean() throws Exception {
+        final TokenMetrics metrics = new TokenMetrics();
+        metrics.onSigned(2_000_000L);
+        metrics.onCacheHit();
+        metrics.onFailure(new IllegalStateException("expired"));
+        assertThat(metrics.register("test-pool")).isTrue();
+        assertThat(new TokenMetrics().register("test-pool")).isFalse();
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName("com.carepay.jdbc:type=TokenMetrics,name=\"test-pool\"");
+        assertThat(server.getAttribute(name, "SignCount")).isEqualTo(1L);
+        assertThat(server.getAttribute(name, "SignTimeMaxMicros")).isEqualTo(2_000L);
+        assertThat(server.getAttribute(name, "CacheHits")).isEqualTo(1L);
+        assertThat(server.getAttribute(name, "FailureCount")).isEqualTo(1L);
+        assertThat((String) server.getAttribute(name, "LastFailure")).contains("expired");
+
+        metrics.unregister();
+        assertThat(server.isRegistered(name)).isFalse();
+    }
+
+    @Test
+    void sharedMetrics() {
+        assertThat(TokenMetrics.getShared("shared-test")).isSameAs(TokenMetrics.getShared("shared-test"));
+    }
+
+    @Test
+    void compositeListener() {
+        final List<String> events = new ArrayList<>();
+        final TokenListener first = new TokenListener() {
+            @Override
+            public void onCacheMiss() {
+                events.add("first");
+            }
+        };
+        final TokenListener second = new TokenListener() {
+            @Override
+            public void onCacheMiss() {
+                events.add("second");
+            }
+        };
+        final TokenListener listener = TokenListeners.of(Arrays.asList(first, second));
+        listener.onCacheMiss();
+        listener.onCacheHit();
+        assertThat(events).containsExactly("first", "second");
+        assertThat(TokenListeners.withGlobal(first)).isSameAs(first);
+    }
+}
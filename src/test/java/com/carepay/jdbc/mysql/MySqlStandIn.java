@@ -0,0 +1,636 @@
+package com.carepay.jdbc.mysql;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+
+import com.carepay.jdbc.ssl.TlsTestServer;
+
+/**
+ * Local stand-in for an RDS MySQL server with IAM authentication. It speaks enough of the MySQL
+ * client/server protocol for Connector/J and the MariaDB driver to connect: the server greeting, the
+ * TLS upgrade (with the certificate of {@link TlsTestServer}), the <code>mysql_clear_password</code>
+ * exchange (including an auth switch), and simple queries and pings. The password must be an IAM
+ * token for the user and port which is not expired; the signature itself is not verified.
+ */
+public class MySqlStandIn implements AutoCloseable {
+    public static final String HOST = "127.0.0.1";
+    public static final String TRUST_STORE_URL = TlsTestServer.TRUST_STORE_URL;
+    private static final String SERVER_VERSION = "5.7.12-standin";
+    private static final String CLEAR_PASSWORD = "mysql_clear_password";
+    private static final long CLOCK_SKEW_MILLIS = TimeUnit.MINUTES.toMillis(5L);
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+    private static final Pattern TOKEN = Pattern.compile("([^:/?]+):(\\d+)/\\?(.*)");
+    private static final Pattern CREDENTIAL = Pattern.compile("[A-Z0-9]+/(\\d{8})/[a-z0-9-]+/rds-db/aws4_request");
+    private static final Pattern SIGNATURE = Pattern.compile("[0-9a-f]{64}");
+    private static final Pattern VARIABLE = Pattern.compile("@@(?:session\\.|global\\.|local\\.)?(\\w+)(?:\\s+AS\\s+(\\w+))?",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final int CLIENT_LONG_PASSWORD = 0x1;
+    private static final int CLIENT_FOUND_ROWS = 0x2;
+    private static final int CLIENT_LONG_FLAG = 0x4;
+    private static final int CLIENT_CONNECT_WITH_DB = 0x8;
+    private static final int CLIENT_PROTOCOL_41 = 0x200;
+    private static final int CLIENT_SSL = 0x800;
+    private static final int CLIENT_TRANSACTIONS = 0x2000;
+    private static final int CLIENT_SECURE_CONNECTION = 0x8000;
+    private static final int CLIENT_MULTI_RESULTS = 0x20000;
+    private static final int CLIENT_PLUGIN_AUTH = 0x80000;
+    private static final int CLIENT_PLUGIN_AUTH_LENENC_CLIENT_DATA = 0x200000;
+    private static final int CAPABILITIES = CLIENT_LONG_PASSWORD | CLIENT_FOUND_ROWS | CLIENT_LONG_FLAG | CLIENT_CONNECT_WITH_DB
+            | CLIENT_PROTOCOL_41 | CLIENT_SSL | CLIENT_TRANSACTIONS | CLIENT_SECURE_CONNECTION | CLIENT_MULTI_RESULTS
+            | CLIENT_PLUGIN_AUTH | CLIENT_PLUGIN_AUTH_LENENC_CLIENT_DATA;
+    private static final int SERVER_STATUS_AUTOCOMMIT = 0x2;
+    private static final int UTF8_GENERAL_CI = 33;
+    private static final int COM_QUIT = 0x01;
+    private static final int COM_INIT_DB = 0x02;
+    private static final int COM_QUERY = 0x03;
+    private static final int COM_PING = 0x0e;
+    private static final int COM_SET_OPTION = 0x1b;
+    private static final int COM_RESET_CONNECTION = 0x1f;
+    private static final int TYPE_VAR_STRING = 0xfd;
+
+    private static final Map<String, String> VARIABLES = new HashMap<>();
+
+    static {
+        VARIABLES.put("auto_increment_increment", "1");
+        VARIABLES.put("character_set_client", "utf8");
+        VARIABLES.put("character_set_connection", "utf8");
+        VARIABLES.put("character_set_results", "utf8");
+        VARIABLES.put("character_set_server", "utf8");
+        VARIABLES.put("collation_server", "utf8_general_ci");
+        VARIABLES.put("collation_connection", "utf8_general_ci");
+        VARIABLES.put("init_connect", "");
+        VARIABLES.put("interactive_timeout", "28800");
+        VARIABLES.put("license", "GPL");
+        VARIABLES.put("lower_case_table_names", "0");
+        VARIABLES.put("max_allowed_packet", "67108864");
+        VARIABLES.put("net_buffer_length", "16384");
+        VARIABLES.put("net_write_timeout", "60");
+        VARIABLES.put("performance_schema", "0");
+        VARIABLES.put("query_cache_size", "0");
+        VARIABLES.put("query_cache_type", "OFF");
+        VARIABLES.put("sql_mode", "STRICT_TRANS_TABLES");
+        VARIABLES.put("system_time_zone", "UTC");
+        VARIABLES.put("time_zone", "SYSTEM");
+        VARIABLES.put("tx_isolation", "REPEATABLE-READ");
+        VARIABLES.put("transaction_isolation", "REPEATABLE-READ");
+        VARIABLES.put("tx_read_only", "0");
+        VARIABLES.put("transaction_read_only", "0");
+        VARIABLES.put("version", SERVER_VERSION);
+        VARIABLES.put("version_comment", "MySQL stand-in");
+        VARIABLES.put("wait_timeout", "28800");
+    }
+
+    private final ServerSocket serverSocket;
+    private final SSLContext sslContext;
+    private final LongSupplier currentTimeMillis;
+    private final AtomicInteger connectionIds = new AtomicInteger();
+    private final AtomicInteger authenticated = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+    private final AtomicInteger authSwitches = new AtomicInteger();
+    private volatile String lastToken;
+    private volatile String lastRejection;
+
+    /**
+     * Checks the token expiry against the system clock.
+     */
+    public MySqlStandIn() throws Exception {
+        this(System::currentTimeMillis);
+    }
+
+    /**
+     * @param currentTimeMillis the clock used to check the token expiry
+     */
+    public MySqlStandIn(final LongSupplier currentTimeMillis) throws Exception {
+        this.currentTimeMillis = currentTimeMillis;
+        this.sslContext = TlsTestServer.createServerContext();
+        this.serverSocket = new ServerSocket(0, 200, InetAddress.getByName(HOST));
+        final Thread acceptor = new Thread(this::accept, "mysql-stand-in");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @param subProtocol <code>mysql</code> or <code>mariadb</code>
+     * @return the URL of the <code>database</code> schema
+     */
+    public String getJdbcUrl(final String subProtocol) {
+        return "jdbc:" + subProtocol + "://" + HOST + ":" + getPort() + "/database";
+    }
+
+    /**
+     * @return the number of connections which authenticated with a valid token
+     */
+    public int getAuthenticatedCount() {
+        return authenticated.get();
+    }
+
+    /**
+     * @return the number of connections which were refused
+     */
+    public int getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return the number of clients which sent their password after an auth switch request
+     */
+    public int getAuthSwitchCount() {
+        return authSwitches.get();
+    }
+
+    /**
+     * @return the last password received
+     */
+    public String getLastToken() {
+        return lastToken;
+    }
+
+    /**
+     * @return why the last connection was refused, or null
+     */
+    public String getLastRejection() {
+        return lastRejection;
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                final Thread worker = new Thread(() -> serve(socket), "mysql-stand-in-" + socket.getPort());
+                worker.setDaemon(true);
+                worker.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(final Socket socket) {
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            Packets packets = new Packets(s.getInputStream(), s.getOutputStream());
+            final byte[] scramble = scramble();
+            packets.write(greeting(connectionIds.incrementAndGet(), scramble));
+            packets.flush();
+            byte[] response = packets.read();
+            if (response.length != 32 || (readInt(response, 0, 4) & CLIENT_SSL) == 0) {
+                reject(packets, 1045, "28000", "Access denied, IAM authentication requires SSL", "no TLS");
+                return;
+            }
+            final SSLSocket ssl = (SSLSocket) sslContext.getSocketFactory().createSocket(s, s.getInetAddress().getHostAddress(), s.getPort(), true);
+            ssl.setUseClientMode(false);
+            ssl.startHandshake();
+            packets = new Packets(new BufferedInputStream(ssl.getInputStream()), new BufferedOutputStream(ssl.getOutputStream()), packets.sequence);
+            response = packets.read();
+            if (authenticate(packets, response, scramble)) {
+                commands(packets);
+            }
+        } catch (IOException e) {
+            // client went away
+        }
+    }
+
+    private boolean authenticate(final Packets packets, final byte[] response, final byte[] scramble) throws IOException {
+        final Reader reader = new Reader(response);
+        final int capabilities = reader.int4();
+        reader.skip(4 + 1 + 23); // max packet size, character set, filler
+        final String user = reader.nulString();
+        final byte[] authData;
+        if ((capabilities & CLIENT_PLUGIN_AUTH_LENENC_CLIENT_DATA) != 0) {
+            authData = reader.bytes((int) reader.lenenc());
+        } else if ((capabilities & CLIENT_SECURE_CONNECTION) != 0) {
+            authData = reader.bytes(reader.int1());
+        } else {
+            authData = reader.nulString().getBytes(StandardCharsets.UTF_8);
+        }
+        if ((capabilities & CLIENT_CONNECT_WITH_DB) != 0 && reader.remaining() > 0) {
+            reader.nulString();
+        }
+        final String plugin = (capabilities & CLIENT_PLUGIN_AUTH) != 0 && reader.remaining() > 0 ? reader.nulString() : null;
+        String token = CLEAR_PASSWORD.equals(plugin) ? password(authData) : "";
+        if (token.isEmpty()) {
+            final Buffer authSwitch = new Buffer().int1(0xfe).nulString(CLEAR_PASSWORD).bytes(scramble).int1(0);
+            packets.write(authSwitch.toByteArray());
+            packets.flush();
+            token = password(packets.read());
+            authSwitches.incrementAndGet();
+        }
+        lastToken = token;
+        final String error = validateToken(token, user, getPort(), currentTimeMillis.getAsLong());
+        if (error != null) {
+            reject(packets, 1045, "28000", "Access denied for user '" + user + "'@'localhost' (using password: YES)", error);
+            return false;
+        }
+        authenticated.incrementAndGet();
+        packets.write(ok());
+        packets.flush();
+        return true;
+    }
+
+    private void reject(final Packets packets, final int code, final String sqlState, final String message, final String reason) throws IOException {
+        lastRejection = reason;
+        rejected.incrementAndGet();
+        packets.write(error(code, sqlState, message));
+        packets.flush();
+    }
+
+    /**
+     * Checks the shape and expiry of a presigned RDS IAM token.
+     *
+     * @param token the password
+     * @param user  the database user
+     * @param port  the port of the server
+     * @param now   current time in epoch milliseconds
+     * @return why the token is invalid, or null when it is valid
+     */
+    static String validateToken(final String token, final String user, final int port, final long now) {
+        final Matcher matcher = TOKEN.matcher(token);
+        if (!matcher.matches()) {
+            return "not a presigned URL: " + token;
+        }
+        if (Integer.parseInt(matcher.group(2)) != port) {
+            return "signed for port " + matcher.group(2);
+        }
+        final Map<String, String> params = new LinkedHashMap<>();
+        for (String param : matcher.group(3).split("&")) {
+            final int eq = param.indexOf('=');
+            params.put(eq > 0 ? param.substring(0, eq) : param, eq > 0 ? decode(param.substring(eq + 1)) : "");
+        }
+        if (!"connect".equals(params.get("Action"))) {
+            return "Action must be connect";
+        }
+        if (!user.equals(params.get("DBUser"))) {
+            return "signed for user " + params.get("DBUser");
+        }
+        if (!"AWS4-HMAC-SHA256".equals(params.get("X-Amz-Algorithm"))) {
+            return "unsupported algorithm " + params.get("X-Amz-Algorithm");
+        }
+        final Matcher credential = CREDENTIAL.matcher(String.valueOf(params.get("X-Amz-Credential")));
+        if (!credential.matches()) {
+            return "invalid credential scope " + params.get("X-Amz-Credential");
+        }
+        final long signedAt;
+        try {
+            signedAt = LocalDateTime.parse(String.valueOf(params.get("X-Amz-Date")), AMZ_DATE).toEpochSecond(ZoneOffset.UTC) * 1000L;
+        } catch (RuntimeException e) {
+            return "invalid date " + params.get("X-Amz-Date");
+        }
+        if (!params.get("X-Amz-Date").startsWith(credential.group(1))) {
+            return "date does not match the credential scope";
+        }
+        final int expires;
+        try {
+            expires = Integer.parseInt(String.valueOf(params.get("X-Amz-Expires")));
+        } catch (NumberFormatException e) {
+            return "invalid expiry " + params.get("X-Amz-Expires");
+        }
+        if (expires <= 0 || expires > 900) {
+            return "expiry must be between 1 and 900 seconds";
+        }
+        if (now < signedAt - CLOCK_SKEW_MILLIS) {
+            return "signed in the future";
+        }
+        if (now >= signedAt + TimeUnit.SECONDS.toMillis(expires)) {
+            return "expired";
+        }
+        if (!"host".equals(params.get("X-Amz-SignedHeaders"))) {
+            return "signed headers must be host";
+        }
+        if (!SIGNATURE.matcher(String.valueOf(params.get("X-Amz-Signature"))).matches()) {
+            return "invalid signature";
+        }
+        return null;
+    }
+
+    private void commands(final Packets packets) throws IOException {
+        while (true) {
+            packets.sequence = 0;
+            final byte[] command = packets.read();
+            switch (command[0] & 0xff) {
+                case COM_QUIT:
+                    return;
+                case COM_QUERY:
+                    query(packets, new String(command, 1, command.length - 1, StandardCharsets.UTF_8));
+                    break;
+                case COM_INIT_DB:
+                case COM_PING:
+                case COM_SET_OPTION:
+                case COM_RESET_CONNECTION:
+                    packets.write(ok());
+                    break;
+                default:
+                    packets.write(error(1047, "08S01", "Unknown command"));
+                    break;
+            }
+            packets.flush();
+        }
+    }
+
+    private void query(final Packets packets, final String sql) throws IOException {
+        final String query = sql.replaceAll("(?s)/\\*.*?\\*/", "").trim();
+        final String upper = query.toUpperCase(Locale.ROOT);
+        if (upper.startsWith("SELECT") && upper.contains("@@")) {
+            final List<String> columns = new ArrayList<>();
+            final List<String> values = new ArrayList<>();
+            for (String item : query.substring(6).split(",")) {
+                final Matcher matcher = VARIABLE.matcher(item.trim());
+                if (matcher.find()) {
+                    columns.add(matcher.group(2) != null ? matcher.group(2) : item.trim());
+                    values.add(VARIABLES.get(matcher.group(1).toLowerCase(Locale.ROOT)));
+                }
+            }
+            resultSet(packets, columns, Collections.singletonList(values));
+        } else if (upper.startsWith("SELECT")) {
+            final String expression = query.substring(6).trim();
+            resultSet(packets, Collections.singletonList(expression), Collections.singletonList(Collections.singletonList(expression)));
+        } else if (upper.startsWith("SHOW VARIABLES")) {
+            final List<List<String>> rows = new ArrayList<>();
+            VARIABLES.forEach((name, value) -> rows.add(Arrays.asList(name, value)));
+            resultSet(packets, Arrays.asList("Variable_name", "Value"), rows);
+        } else if (upper.startsWith("SHOW WARNINGS")) {
+            resultSet(packets, Arrays.asList("Level", "Code", "Message"), Collections.emptyList());
+        } else {
+            packets.write(ok());
+        }
+    }
+
+    private static void resultSet(final Packets packets, final List<String> columns, final List<List<String>> rows) throws IOException {
+        packets.write(new Buffer().lenenc(columns.size()).toByteArray());
+        for (String column : columns) {
+            packets.write(new Buffer()
+                    .lenencString("def").lenencString("").lenencString("").lenencString("")
+                    .lenencString(column).lenencString(column)
+                    .lenenc(0x0c).int2(UTF8_GENERAL_CI).int4(1024).int1(TYPE_VAR_STRING).int2(0).int1(0).int2(0)
+                    .toByteArray());
+        }
+        packets.write(eof());
+        for (List<String> row : rows) {
+            final Buffer buffer = new Buffer();
+            for (String value : row) {
+                if (value == null) {
+                    buffer.int1(0xfb);
+                } else {
+                    buffer.lenencString(value);
+                }
+            }
+            packets.write(buffer.toByteArray());
+        }
+        packets.write(eof());
+    }
+
+    private static byte[] greeting(final int connectionId, final byte[] scramble) {
+        return new Buffer()
+                .int1(10)
+                .nulString(SERVER_VERSION)
+                .int4(connectionId)
+                .bytes(Arrays.copyOfRange(scramble, 0, 8)).int1(0)
+                .int2(CAPABILITIES & 0xffff)
+                .int1(UTF8_GENERAL_CI)
+                .int2(SERVER_STATUS_AUTOCOMMIT)
+                .int2(CAPABILITIES >>> 16)
+                .int1(scramble.length + 1)
+                .bytes(new byte[10])
+                .bytes(Arrays.copyOfRange(scramble, 8, scramble.length)).int1(0)
+                .nulString(CLEAR_PASSWORD)
+                .toByteArray();
+    }
+
+    private static byte[] ok() {
+        return new Buffer().int1(0).lenenc(0).lenenc(0).int2(SERVER_STATUS_AUTOCOMMIT).int2(0).toByteArray();
+    }
+
+    private static byte[] eof() {
+        return new Buffer().int1(0xfe).int2(0).int2(SERVER_STATUS_AUTOCOMMIT).toByteArray();
+    }
+
+    private static byte[] error(final int code, final String sqlState, final String message) {
+        return new Buffer().int1(0xff).int2(code).bytes("#".getBytes(StandardCharsets.US_ASCII))
+                .bytes(sqlState.getBytes(StandardCharsets.US_ASCII)).bytes(message.getBytes(StandardCharsets.UTF_8)).toByteArray();
+    }
+
+    private static byte[] scramble() {
+        final byte[] scramble = new byte[20];
+        for (int i = 0; i < scramble.length; i++) {
+            scramble[i] = (byte) ('a' + (i * 7) % 26);
+        }
+        return scramble;
+    }
+
+    /**
+     * The clear password is sent NUL terminated.
+     */
+    private static String password(final byte[] data) {
+        int length = data.length;
+        while (length > 0 && data[length - 1] == 0) {
+            length--;
+        }
+        return new String(data, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static String decode(final String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int readInt(final byte[] data, final int offset, final int length) {
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            value |= (data[offset + i] & 0xff) << (8 * i);
+        }
+        return value;
+    }
+
+    /**
+     * Reads and writes packets: a 3 byte length, a sequence number and the payload.
+     */
+    private static final class Packets {
+        private final InputStream in;
+        private final OutputStream out;
+        private int sequence;
+
+        Packets(final InputStream in, final OutputStream out) {
+            this(in, out, 0);
+        }
+
+        Packets(final InputStream in, final OutputStream out, final int sequence) {
+            this.in = in;
+            this.out = out;
+            this.sequence = sequence;
+        }
+
+        byte[] read() throws IOException {
+            final byte[] header = readFully(4);
+            sequence = (header[3] + 1) & 0xff;
+            return readFully(readInt(header, 0, 3));
+        }
+
+        private byte[] readFully(final int length) throws IOException {
+            final byte[] data = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                final int n = in.read(data, offset, length - offset);
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                offset += n;
+            }
+            return data;
+        }
+
+        void write(final byte[] payload) throws IOException {
+            out.write(new byte[]{(byte) payload.length, (byte) (payload.length >>> 8), (byte) (payload.length >>> 16), (byte) sequence});
+            out.write(payload);
+            sequence = (sequence + 1) & 0xff;
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    private static final class Buffer {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Buffer int1(final int value) {
+            out.write(value);
+            return this;
+        }
+
+        Buffer int2(final int value) {
+            return int1(value).int1(value >>> 8);
+        }
+
+        Buffer int4(final int value) {
+            return int2(value).int2(value >>> 16);
+        }
+
+        Buffer lenenc(final long value) {
+            if (value < 251) {
+                return int1((int) value);
+            }
+            if (value < 0x10000) {
+                return int1(0xfc).int2((int) value);
+            }
+            if (value < 0x1000000) {
+                return int1(0xfd).int2((int) value).int1((int) (value >>> 16));
+            }
+            return int1(0xfe).int4((int) value).int4((int) (value >>> 32));
+        }
+
+        Buffer bytes(final byte[] data) {
+            out.write(data, 0, data.length);
+            return this;
+        }
+
+        Buffer nulString(final String value) {
+            return bytes(value.getBytes(StandardCharsets.UTF_8)).int1(0);
+        }
+
+        Buffer lenencString(final String value) {
+            final byte[] data = value.getBytes(StandardCharsets.UTF_8);
+            return lenenc(data.length).bytes(data);
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] data;
+        private int position;
+
+        Reader(final byte[] data) {
+            this.data = data;
+        }
+
+        int int1() {
+            return data[position++] & 0xff;
+        }
+
+        int int4() {
+            final int value = readInt(data, position, 4);
+            position += 4;
+            return value;
+        }
+
+        long lenenc() {
+            final int first = int1();
+            if (first < 251) {
+                return first;
+            }
+            final int length = first == 0xfc ? 2 : first == 0xfd ? 3 : 8;
+            long value = 0L;
+            for (int i = 0; i < length; i++) {
+                value |= (long) int1() << (8 * i);
+            }
+            return value;
+        }
+
+        void skip(final int n) {
+            position += n;
+        }
+
+        byte[] bytes(final int n) {
+            final byte[] value = Arrays.copyOfRange(data, position, position + n);
+            position += n;
+            return value;
+        }
+
+        String nulString() {
+            int end = position;
+            while (end < data.length && data[end] != 0) {
+                end++;
+            }
+            final String value = new String(data, position, end - position, StandardCharsets.UTF_8);
+            position = Math.min(end + 1, data.length);
+            return value;
+        }
+
+        int remaining() {
+            return data.length - position;
+        }
+    }
+}
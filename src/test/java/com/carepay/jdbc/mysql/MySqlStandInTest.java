@@ -0,0 +1,165 @@
+package com.carepay.jdbc.mysql;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Properties;
+
+import com.carepay.aws.auth.Credentials;
+import com.carepay.jdbc.RdsAWS4Signer;
+import com.carepay.jdbc.RdsIamConstants;
+import com.carepay.jdbc.hikari.RdsIamHikariDataSource;
+import com.carepay.jdbc.token.TokenCache;
+import com.carepay.jdbc.tomcat.RdsIamTomcatDataSource;
+import com.carepay.jdbc.util.RefreshScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Connects through the real MySQL and MariaDB drivers to the {@link MySqlStandIn}, covering the TLS
+ * upgrade and the <code>mysql_clear_password</code> exchange of the IAM plugins.
+ */
+class MySqlStandInTest {
+    private static final String ACCESS_KEY_ID = "AKIDEXAMPLE";
+    private static final String SECRET_KEY = "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY";
+    private static final String CONNECTOR_J = "com.mysql.cj.jdbc.Driver";
+
+    private MySqlStandIn server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MySqlStandIn();
+        TokenCache.getInstance().clear();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    void connectorJWithPasswordPlugin() throws SQLException {
+        final String url = server.getJdbcUrl("mysql") + "?authenticationPlugins=" + StaticCredentialsPlugin.class.getName()
+                + "&socketFactory=" + RdsIamSocketFactory.class.getName()
+                + "&trustCertificateKeyStoreUrl=" + MySqlStandIn.TRUST_STORE_URL + "&trustCertificateKeyStoreType=PEM&sslMode=VERIFY_CA";
+        final Properties info = new Properties();
+        info.setProperty("user", "iamuser");
+        try (Connection connection = connectorJ(url, info);
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT 1")) {
+            assertThat(resultSet.next()).isTrue();
+            assertThat(resultSet.getInt(1)).isEqualTo(1);
+            assertThat(connection.isValid(1)).isTrue();
+        }
+        assertThat(server.getAuthenticatedCount()).isEqualTo(1);
+        assertThat(server.getLastToken()).startsWith(MySqlStandIn.HOST + ":" + server.getPort() + "/?Action=connect&DBUser=iamuser&");
+    }
+
+    @Test
+    void mariaDbWithCredentialPlugin() throws SQLException {
+        final String url = server.getJdbcUrl("mariadb") + "?credentialType=AWS4RDS&useSsl=true&serverSslCert=" + MySqlStandIn.TRUST_STORE_URL
+                + "&awsAccessKeyId=" + ACCESS_KEY_ID + "&awsSecretKey=" + SECRET_KEY + "&region=eu-west-1";
+        final Properties info = new Properties();
+        info.setProperty("user", "iamuser");
+        try (Connection connection = DriverManager.getConnection(url, info)) {
+            assertThat(connection.isValid(1)).isTrue();
+        }
+        assertThat(server.getAuthenticatedCount()).isEqualTo(1);
+        assertThat(server.getLastToken()).contains("X-Amz-Credential=" + ACCESS_KEY_ID + "%2F");
+    }
+
+    @Test
+    void hikariDataSource() throws SQLException {
+        try (RdsIamHikariDataSource dataSource = new RdsIamHikariDataSource(signer())) {
+            dataSource.setDriverClassName(CONNECTOR_J);
+            dataSource.setJdbcUrl(server.getJdbcUrl("mysql"));
+            dataSource.setUsername("iamuser");
+            dataSource.addDataSourceProperty(RdsIamConstants.TRUST_CERTIFICATE_KEY_STORE_URL, MySqlStandIn.TRUST_STORE_URL);
+            try (Connection connection = dataSource.getConnection()) {
+                assertThat(connection.isValid(1)).isTrue();
+            }
+            assertThat(dataSource.getDataSourceProperties()).containsEntry("socketFactory", RdsIamSocketFactory.class.getName());
+        }
+        assertThat(server.getAuthenticatedCount()).isPositive();
+        assertThat(server.getRejectedCount()).isZero();
+    }
+
+    @Test
+    void tomcatDataSource() throws SQLException {
+        final RdsIamTomcatDataSource dataSource = new RdsIamTomcatDataSource(signer(), RefreshScheduler.getInstance());
+        try {
+            dataSource.setDriverClassName(CONNECTOR_J);
+            dataSource.setUrl(server.getJdbcUrl("mysql"));
+            dataSource.setUsername("iamuser");
+            dataSource.setConnectionProperties(RdsIamConstants.TRUST_CERTIFICATE_KEY_STORE_URL + "=" + MySqlStandIn.TRUST_STORE_URL);
+            try (Connection connection = dataSource.getConnection()) {
+                assertThat(connection.isValid(1)).isTrue();
+            }
+            assertThat(dataSource.getDbProperties()).containsEntry("socketFactory", RdsIamSocketFactory.class.getName());
+        } finally {
+            dataSource.close();
+        }
+        assertThat(server.getAuthenticatedCount()).isEqualTo(1);
+        assertThat(server.getRejectedCount()).isZero();
+    }
+
+    @Test
+    void expiredTokenIsRejected() throws Exception {
+        try (MySqlStandIn future = new MySqlStandIn(() -> System.currentTimeMillis() + 3_600_000L)) {
+            final String url = future.getJdbcUrl("mysql") + "?authenticationPlugins=" + StaticCredentialsPlugin.class.getName()
+                    + "&socketFactory=" + RdsIamSocketFactory.class.getName()
+                    + "&trustCertificateKeyStoreUrl=" + MySqlStandIn.TRUST_STORE_URL + "&trustCertificateKeyStoreType=PEM&sslMode=VERIFY_CA";
+            final Properties info = new Properties();
+            info.setProperty("user", "iamuser");
+            assertThatThrownBy(() -> connectorJ(url, info))
+                    .isInstanceOf(SQLException.class)
+                    .hasMessageContaining("Access denied");
+            assertThat(future.getRejectedCount()).isEqualTo(1);
+            assertThat(future.getLastRejection()).isEqualTo("expired");
+        }
+    }
+
+    @Test
+    void validateToken() {
+        final Clock clock = Clock.fixed(Instant.parse("2018-09-19T16:02:42.00Z"), ZoneOffset.UTC);
+        final RdsAWS4Signer signer = new RdsAWS4Signer(() -> new Credentials(ACCESS_KEY_ID, SECRET_KEY, null), () -> "eu-west-1", clock);
+        final String token = signer.generateToken(MySqlStandIn.HOST, 3306, "iamuser");
+        final long signedAt = clock.millis();
+        assertThat(MySqlStandIn.validateToken(token, "iamuser", 3306, signedAt)).isNull();
+        assertThat(MySqlStandIn.validateToken(token, "iamuser", 3306, signedAt + 899_999L)).isNull();
+        assertThat(MySqlStandIn.validateToken(token, "iamuser", 3306, signedAt + 900_000L)).isEqualTo("expired");
+        assertThat(MySqlStandIn.validateToken(token, "iamuser", 3306, signedAt - 600_000L)).isEqualTo("signed in the future");
+        assertThat(MySqlStandIn.validateToken(token, "otheruser", 3306, signedAt)).isEqualTo("signed for user iamuser");
+        assertThat(MySqlStandIn.validateToken(token, "iamuser", 3307, signedAt)).isEqualTo("signed for port 3306");
+        assertThat(MySqlStandIn.validateToken("secret", "iamuser", 3306, signedAt)).startsWith("not a presigned URL");
+        assertThat(MySqlStandIn.validateToken(token.replace("X-Amz-Expires=900", "X-Amz-Expires=3600"), "iamuser", 3306, signedAt))
+                .isEqualTo("expiry must be between 1 and 900 seconds");
+    }
+
+    private static RdsAWS4Signer signer() {
+        return new RdsAWS4Signer(() -> new Credentials(ACCESS_KEY_ID, SECRET_KEY, null), () -> "eu-west-1", Clock.systemUTC());
+    }
+
+    // the MariaDB driver accepts jdbc:mysql: URLs too, so don't leave the choice to the DriverManager
+    private static Connection connectorJ(final String url, final Properties info) throws SQLException {
+        return new com.mysql.cj.jdbc.Driver().connect(url, info);
+    }
+
+    /**
+     * Loaded by Connector/J through <code>authenticationPlugins</code>, signs with static credentials.
+     */
+    public static class StaticCredentialsPlugin extends RdsIamPasswordPlugin {
+        public StaticCredentialsPlugin() {
+            super(() -> new Credentials(ACCESS_KEY_ID, SECRET_KEY, null), () -> "eu-west-1", Clock.systemUTC());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.carepay.jdbc.mysql;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.sql.SQLTransientConnectionException;
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+import com.carepay.jdbc.limit.ConnectionRateLimiter;
+import com.carepay.jdbc.pem.PemKeyStoreProvider;
+import com.carepay.jdbc.ssl.SslContextCache;
+import com.carepay.jdbc.ssl.TlsTestServer;
+import com.mysql.cj.conf.DefaultPropertySet;
+import com.mysql.cj.conf.PropertyDefinitions;
+import com.mysql.cj.conf.PropertyKey;
+import com.mysql.cj.conf.RuntimeProperty;
+import com.mysql.cj.exceptions.CJException;
+import com.mysql.cj.protocol.SocketConnection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class RdsIamSocketFactoryTest {
+  private TlsTestServer server;
+  private SslContextCache sslContextCache;
+  private DefaultPropertySet propertySet;
+  private SocketConnection socketConnection;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    PemKeyStoreProvider.register(); // classpath: URLs for the default handshake
+    server = new TlsTestServer("TLSv1.2");
+    sslContextCache = new SslContextCache();
+    propertySet = new DefaultPropertySet();
+    propertySet.getStringProperty(PropertyKey.trustCertificateKeyStoreUrl).setValue(TlsTestServer.TRUST_STORE_URL);
+    propertySet.getStringProperty(PropertyKey.trustCertificateKeyStoreType).setValue("PEM");
+    propertySet
+        .<PropertyDefinitions.SslMode>getEnumProperty(PropertyKey.sslMode)
+        .setValue(PropertyDefinitions.SslMode.VERIFY_CA);
+    socketConnection = mock(SocketConnection.class);
+    when(socketConnection.getPropertySet()).thenReturn(propertySet);
+    when(socketConnection.getHost()).thenReturn("localhost");
+    when(socketConnection.getPort()).thenReturn(server.getPort());
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    server.close();
+  }
+
+  private SSLSession handshake() throws IOException {
+    final RdsIamSocketFactory factory = new RdsIamSocketFactory(sslContextCache);
+    final Socket raw = factory.connect("localhost", server.getPort(), propertySet, 0);
+    try {
+      factory.beforeHandshake();
+      final SSLSocket socket = factory.performTlsHandshake(socketConnection, null);
+      factory.afterHandshake();
+      return socket.getSession();
+    } finally {
+      raw.close();
+    }
+  }
+
+  @Test
+  void reconnectResumesSession() throws IOException {
+    final SSLSession first = handshake();
+    final SSLSession second = handshake();
+    assertThat(first.getProtocol()).isEqualTo("TLSv1.2");
+    assertThat(second.getId()).isEqualTo(first.getId());
+  }
+
+  @Test
+  void verifyIdentity() throws IOException {
+    propertySet
+        .<PropertyDefinitions.SslMode>getEnumProperty(PropertyKey.sslMode)
+        .setValue(PropertyDefinitions.SslMode.VERIFY_IDENTITY);
+    assertThat(handshake().isValid()).isTrue();
+    when(socketConnection.getHost()).thenReturn("127.0.0.2");
+    assertThatThrownBy(this::handshake).isInstanceOf(SSLHandshakeException.class);
+  }
+
+  @Test
+  void untrustedCertificate() {
+    propertySet.getStringProperty(PropertyKey.trustCertificateKeyStoreUrl).setValue("classpath:/rds-combined-ca-bundle.pem");
+    assertThatThrownBy(this::handshake).isInstanceOf(SSLHandshakeException.class);
+  }
+
+  @Test
+  void enabledProtocols() {
+    propertySet.getStringProperty(PropertyKey.enabledTLSProtocols).setValue("TLSv1.3");
+    assertThatThrownBy(this::handshake).isInstanceOf(IOException.class);
+  }
+
+  @Test
+  void requiredUsesDefaultHandshake() throws IOException {
+    propertySet.getStringProperty(PropertyKey.trustCertificateKeyStoreUrl).setValue("classpath:/rds-combined-ca-bundle.pem");
+    propertySet
+        .<PropertyDefinitions.SslMode>getEnumProperty(PropertyKey.sslMode)
+        .setValue(PropertyDefinitions.SslMode.REQUIRED);
+    sslContextCache = mock(SslContextCache.class);
+    assertThat(handshake().isValid()).isTrue(); // encrypted, the certificate is not verified
+    verifyNoInteractions(sslContextCache);
+  }
+
+  @Test
+  void otherTrustStoreTypeUsesDefaultHandshake() throws IOException {
+    propertySet.getStringProperty(PropertyKey.trustCertificateKeyStoreUrl).setValue("classpath:/ssl/server.p12");
+    propertySet.getStringProperty(PropertyKey.trustCertificateKeyStoreType).setValue("PKCS12");
+    propertySet.getStringProperty(PropertyKey.trustCertificateKeyStorePassword).setValue("changeit");
+    sslContextCache = mock(SslContextCache.class);
+    assertThat(handshake().isValid()).isTrue();
+    verifyNoInteractions(sslContextCache);
+  }
+
+  @Test
+  void connectWaitsForConnectionRateLimit() throws IOException {
+    final RateLimitedPropertySet limited = new RateLimitedPropertySet();
+    final RdsIamSocketFactory factory = new RdsIamSocketFactory(sslContextCache);
+    try (Socket socket = factory.connect("localhost", server.getPort(), limited, 0)) {
+      assertThat(socket.isConnected()).isTrue();
+    }
+    assertThatThrownBy(() -> factory.connect("localhost", server.getPort(), limited, 0))
+        .isInstanceOf(CJException.class)
+        .hasCauseInstanceOf(SQLTransientConnectionException.class);
+  }
+
+  /**
+   * Connector/J only keeps its own properties, so the custom rate limit properties are added here.
+   */
+  static class RateLimitedPropertySet extends DefaultPropertySet {
+    @Override
+    public RuntimeProperty<String> getStringProperty(final String name) {
+      switch (name) {
+        case ConnectionRateLimiter.CONNECTION_RATE_LIMIT:
+          return value("0.01");
+        case ConnectionRateLimiter.CONNECTION_RATE_BURST:
+        case ConnectionRateLimiter.CONNECTION_RATE_TIMEOUT_MILLIS:
+          return value("1");
+        default:
+          return super.getStringProperty(name);
+      }
+    }
+
+    private static RuntimeProperty<String> value(final String value) {
+      @SuppressWarnings("unchecked")
+      final RuntimeProperty<String> property = mock(RuntimeProperty.class);
+      when(property.getValue()).thenReturn(value);
+      return property;
+    }
+  }
+}
@@ -0,0 +1,224 @@
+package com.carepay.jdbc.pem;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.carepay.aws.net.URLOpener;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CertificateBundleCacheTest {
+    private static final String URL = "https://s3.amazonaws.com/rds-downloads/rds-combined-ca-bundle.pem";
+    private static final String CUSTOM_URL = "https://ca.example.com/custom-ca.pem";
+    private static final String DOWNLOADED = readResource("/ssl/server.pem");
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2021-10-12T12:13:14Z"), ZoneId.of("UTC"));
+
+    @TempDir
+    Path cacheDir;
+
+    private List<Runnable> tasks;
+    private HttpURLConnection uc;
+    private URLOpener opener;
+
+    @BeforeEach
+    void setUp() {
+        tasks = new ArrayList<>();
+        uc = mock(HttpURLConnection.class);
+        opener = u -> uc;
+    }
+
+    private static String readResource(final String path) {
+        try {
+            return CertificateBundleCache.read(CertificateBundleCacheTest.class.getResourceAsStream(path));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private CertificateBundleCache newCache(final Clock clock) {
+        return new CertificateBundleCache(cacheDir, tasks::add, clock);
+    }
+
+    private void runTasks() {
+        final List<Runnable> pending = new ArrayList<>(tasks);
+        tasks.clear();
+        pending.forEach(Runnable::run);
+    }
+
+    private void respond(final String etag) throws IOException {
+        when(uc.getResponseCode()).thenReturn(200);
+        when(uc.getInputStream()).thenReturn(new ByteArrayInputStream(DOWNLOADED.getBytes(StandardCharsets.UTF_8)));
+        when(uc.getHeaderField("ETag")).thenReturn(etag);
+        when(uc.getHeaderField("Last-Modified")).thenReturn("Tue, 12 Oct 2021 10:00:00 GMT");
+    }
+
+    @Test
+    void servesClasspathBundleWhileDownloading() throws IOException {
+        respond("\"v1\"");
+        final CertificateBundleCache cache = newCache(CLOCK);
+        assertThat(cache.getBundle(URL, opener)).contains("-----BEGIN CERTIFICATE-----").isNotEqualTo(DOWNLOADED);
+        assertThat(tasks).hasSize(1);
+        assertThat(cache.getBundle(URL, opener)).isNotEqualTo(DOWNLOADED);
+        assertThat(tasks).hasSize(1); // only one download in flight
+        runTasks();
+        assertThat(cache.getBundle(URL, opener)).isEqualTo(DOWNLOADED);
+        assertThat(tasks).isEmpty();
+    }
+
+    @Test
+    void loadsFromDiskCache() throws IOException {
+        respond("\"v1\"");
+        final CertificateBundleCache cache = newCache(CLOCK);
+        cache.getBundle(URL, opener);
+        runTasks();
+        final CertificateBundleCache otherCache = newCache(CLOCK);
+        assertThat(otherCache.getBundle(URL, opener)).isEqualTo(DOWNLOADED);
+        assertThat(tasks).isEmpty();
+    }
+
+    @Test
+    void revalidatesUsingETag() throws IOException {
+        respond("\"v1\"");
+        newCache(CLOCK).getBundle(URL, opener);
+        runTasks();
+        final HttpURLConnection notModified = mock(HttpURLConnection.class);
+        when(notModified.getResponseCode()).thenReturn(304);
+        final CertificateBundleCache cache = newCache(Clock.offset(CLOCK, Duration.ofDays(2L)));
+        assertThat(cache.getBundle(URL, u -> notModified)).isEqualTo(DOWNLOADED);
+        runTasks();
+        verify(notModified).setRequestProperty("If-None-Match", "\"v1\"");
+        verify(notModified).setRequestProperty("If-Modified-Since", "Tue, 12 Oct 2021 10:00:00 GMT");
+        verify(notModified, never()).getInputStream();
+        assertThat(cache.getBundle(URL, u -> notModified)).isEqualTo(DOWNLOADED);
+        assertThat(tasks).isEmpty();
+    }
+
+    @Test
+    void keepsBundleWhenDownloadFails() throws IOException {
+        when(uc.getResponseCode()).thenThrow(new IOException("unreachable"));
+        final CertificateBundleCache cache = newCache(CLOCK);
+        final String bundle = cache.getBundle(URL, opener);
+        runTasks();
+        assertThat(cache.getBundle(URL, opener)).isEqualTo(bundle);
+        assertThat(tasks).isEmpty(); // retried later
+    }
+
+    @Test
+    void rejectsContentWithoutCertificates() throws IOException {
+        when(uc.getResponseCode()).thenReturn(200);
+        when(uc.getInputStream()).thenReturn(new ByteArrayInputStream("<html>Access Denied</html>".getBytes(StandardCharsets.UTF_8)));
+        final CertificateBundleCache cache = newCache(CLOCK);
+        final String bundle = cache.getBundle(URL, opener);
+        runTasks();
+        assertThat(cache.getBundle(URL, opener)).isEqualTo(bundle).contains("-----BEGIN CERTIFICATE-----");
+    }
+
+    @Test
+    void createsCacheDirectoryForOwnerOnly() throws IOException {
+        assumeTrue(cacheDir.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        respond("\"v1\"");
+        final Path dir = cacheDir.resolve("user").resolve("cache");
+        new CertificateBundleCache(dir, tasks::add, CLOCK).getBundle(URL, opener);
+        runTasks();
+        assertThat(permissions(dir)).isEqualTo("rwx------");
+        try (Stream<Path> files = Files.list(dir)) {
+            assertThat(files).hasSize(2).allSatisfy(f -> assertThat(permissions(f)).isEqualTo("rw-------"));
+        }
+    }
+
+    @Test
+    void ignoresDiskCacheWritableByOthers() throws IOException {
+        assumeTrue(cacheDir.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        respond("\"v1\"");
+        newCache(CLOCK).getBundle(URL, opener);
+        runTasks();
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            files.filter(f -> f.toString().endsWith(".pem")).forEach(f -> setPermissions(f, "rw-rw-rw-"));
+        }
+        final CertificateBundleCache cache = newCache(CLOCK);
+        assertThat(cache.getBundle(URL, opener)).isNotEqualTo(DOWNLOADED);
+        assertThat(tasks).hasSize(1); // downloaded again
+    }
+
+    @Test
+    void ignoresDiskCacheWithoutCertificates() throws IOException {
+        respond("\"v1\"");
+        newCache(CLOCK).getBundle(URL, opener);
+        runTasks();
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            files.filter(f -> f.toString().endsWith(".pem")).forEach(f -> write(f, "-----BEGIN CERTIFICATE-----\nMIIPlanted\n-----END CERTIFICATE-----\n"));
+        }
+        final CertificateBundleCache cache = newCache(CLOCK);
+        assertThat(cache.getBundle(URL, opener)).isNotEqualTo(DOWNLOADED).doesNotContain("MIIPlanted");
+        assertThat(tasks).hasSize(1);
+    }
+
+    @Test
+    void downloadsCustomBundleOnFirstUse() throws IOException {
+        respond("\"v1\"");
+        final CertificateBundleCache cache = newCache(CLOCK);
+        assertThat(cache.getBundle(CUSTOM_URL, opener)).isEqualTo(DOWNLOADED);
+        assertThat(tasks).isEmpty();
+        assertThat(newCache(CLOCK).getBundle(CUSTOM_URL, u -> {
+            throw new IOException("not downloaded again");
+        })).isEqualTo(DOWNLOADED);
+    }
+
+    @Test
+    void failsWhenCustomBundleCannotBeDownloaded() throws IOException {
+        when(uc.getResponseCode()).thenThrow(new IOException("unreachable"));
+        final CertificateBundleCache cache = newCache(CLOCK);
+        assertThatThrownBy(() -> cache.getBundle(CUSTOM_URL, opener))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining(CUSTOM_URL);
+        reset(uc);
+        respond("\"v1\"");
+        assertThat(cache.getBundle(CUSTOM_URL, opener)).isEqualTo(DOWNLOADED); // not cached, retried
+    }
+
+    private static String permissions(final Path file) {
+        try {
+            return PosixFilePermissions.toString(Files.getPosixFilePermissions(file));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void setPermissions(final Path file, final String permissions) {
+        try {
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString(permissions));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void write(final Path file, final String content) {
+        try {
+            Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
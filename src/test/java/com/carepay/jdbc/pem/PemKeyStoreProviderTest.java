@@ -0,0 +1,30 @@
+package com.carepay.jdbc.pem;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.security.KeyStore;
+import java.security.Provider;
+import java.security.Security;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import static com.carepay.jdbc.RdsIamConstants.CA_BUNDLE_URL;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PemKeyStoreProviderTest {
+
+    @Test
+    void registerIsIdempotent() throws Exception {
+        PemKeyStoreProvider.register();
+        final Provider provider = Security.getProvider("PEM");
+        PemKeyStoreProvider.register();
+        PemKeyStoreProvider.register();
+        assertThat(Security.getProvider("PEM")).isSameAs(provider);
+        assertThat(Arrays.stream(Security.getProviders()).filter(p -> "PEM".equals(p.getName()))).hasSize(1);
+        assertThat(KeyStore.getInstance("PEM").getProvider()).isSameAs(provider);
+        try (InputStream in = new URL(CA_BUNDLE_URL).openStream()) {
+            assertThat(in.read()).isNotNegative();
+        }
+    }
+}
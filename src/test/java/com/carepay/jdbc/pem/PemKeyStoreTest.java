@@ -49,6 +49,29 @@ void testEngineGetCertificate() {
         assertThat(pemKeyStore.engineGetCertificateAlias(null)).isNull();
     }
 
+    @Test
+    void testEngineGetCertificateAliasForAllEntries() {
+        for (String alias : Collections.list(pemKeyStore.engineAliases())) {
+            assertThat(pemKeyStore.engineGetCertificateAlias(pemKeyStore.engineGetCertificate(alias))).isEqualTo(alias);
+        }
+    }
+
+    @Test
+    void testEntriesSharedBetweenKeyStores() throws IOException, CertificateException {
+        final PemKeyStore other = new PemKeyStore();
+        other.engineLoad(getClass().getResourceAsStream("/rds-combined-ca-bundle.pem"), null);
+        assertThat(other.entries).isSameAs(pemKeyStore.entries);
+    }
+
+    @Test
+    void testUnknownAlias() {
+        assertThat(pemKeyStore.engineGetCertificate("other")).isNull();
+        assertThat(pemKeyStore.engineGetCertificateChain("other")).isNull();
+        assertThat(pemKeyStore.engineIsCertificateEntry("other")).isFalse();
+        assertThat(pemKeyStore.engineIsKeyEntry("other")).isFalse();
+        assertThat(new PemKeyStore().engineGetCertificateAlias(pemKeyStore.engineGetCertificate(PEM_KEY))).isNull();
+    }
+
     @Test
     void testEngineIsKeyEntry() {
         assertThat(pemKeyStore.engineIsKeyEntry("pem66")).isFalse();
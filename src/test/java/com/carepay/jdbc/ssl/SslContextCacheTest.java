@@ -0,0 +1,100 @@
+package com.carepay.jdbc.ssl;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Scanner;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SslContextCacheTest {
+    @TempDir
+    Path tempDir;
+
+    private SslContextCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new SslContextCache();
+    }
+
+    private static String serverPem() {
+        try (InputStream is = SslContextCacheTest.class.getResourceAsStream("/ssl/server.pem");
+             Scanner scanner = new Scanner(is, "US-ASCII")) {
+            return scanner.useDelimiter("\\A").next();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    void defaultContextIsShared() throws Exception {
+        final SSLContext context = cache.getDefault();
+        assertThat(cache.getDefault()).isSameAs(context);
+        assertThat(cache.getContext((String) null)).isSameAs(context);
+        assertThat(cache.getContext("classpath:/rds-combined-ca-bundle.pem")).isSameAs(context);
+    }
+
+    @Test
+    void contextIsSharedBetweenLocations() throws Exception {
+        final Path file = Files.write(tempDir.resolve("server.pem"), serverPem().getBytes(StandardCharsets.US_ASCII));
+        final SSLContext context = cache.getContext(TlsTestServer.TRUST_STORE_URL);
+        assertThat(cache.getContext(serverPem())).isSameAs(context);
+        assertThat(cache.getContext(file.toString())).isSameAs(context);
+        assertThat(cache.getContext("file:" + file)).isSameAs(context);
+        assertThat(cache.getDefault()).isNotSameAs(context);
+    }
+
+    @Test
+    void modifiedFileIsReloaded() throws Exception {
+        final Path file = Files.write(tempDir.resolve("bundle.pem"), serverPem().getBytes(StandardCharsets.US_ASCII));
+        final SSLContext context = cache.getContext(file);
+        assertThat(cache.getContext(file)).isSameAs(context);
+
+        try (InputStream is = getClass().getResourceAsStream("/rds-combined-ca-bundle.pem")) {
+            Files.copy(is, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000L));
+        assertThat(cache.getContext(file)).isSameAs(cache.getDefault()).isNotSameAs(context);
+    }
+
+    @Test
+    void missingResource() {
+        assertThatThrownBy(() -> cache.getContext("classpath:/ssl/missing.pem")).hasMessageContaining("Resource not found");
+    }
+
+    @Test
+    void clearRemovesContexts() {
+        final SSLContext context = cache.getDefault();
+        cache.clear();
+        assertThat(cache.getDefault()).isNotSameAs(context);
+    }
+
+    @Test
+    void reconnectResumesSession() throws Exception {
+        try (TlsTestServer server = new TlsTestServer("TLSv1.2")) {
+            final SSLSession first = handshake(server);
+            final SSLSession second = handshake(server);
+            assertThat(second.getId()).isEqualTo(first.getId());
+        }
+    }
+
+    private SSLSession handshake(final TlsTestServer server) throws Exception {
+        try (SSLSocket socket = (SSLSocket) cache.getContext(TlsTestServer.TRUST_STORE_URL).getSocketFactory()
+                .createSocket("localhost", server.getPort())) {
+            socket.startHandshake();
+            return socket.getSession();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.carepay.jdbc.ssl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.KeyStore;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Local TLS server using the self-signed certificate from <code>/ssl/server.p12</code>, which is
+ * trusted through <code>classpath:/ssl/server.pem</code>.
+ */
+public class TlsTestServer implements AutoCloseable {
+    public static final String TRUST_STORE_URL = "classpath:/ssl/server.pem";
+
+    private final SSLServerSocket serverSocket;
+
+    public TlsTestServer(final String... protocols) throws Exception {
+        serverSocket = (SSLServerSocket) createServerContext().getServerSocketFactory().createServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        if (protocols.length > 0) {
+            serverSocket.setEnabledProtocols(protocols);
+        }
+        final Thread acceptor = new Thread(this::accept, "tls-test-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @return server context with the self-signed certificate for <code>localhost</code> and <code>127.0.0.1</code>
+     */
+    public static SSLContext createServerContext() throws Exception {
+        final char[] password = "changeit".toCharArray();
+        final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream is = TlsTestServer.class.getResourceAsStream("/ssl/server.p12")) {
+            keyStore.load(is, password);
+        }
+        final KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, password);
+        final SSLContext context = SSLContext.getInstance("TLS");
+        context.init(kmf.getKeyManagers(), null, null);
+        return context;
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final SSLSocket socket = (SSLSocket) serverSocket.accept();
+                final Thread worker = new Thread(() -> serve(socket));
+                worker.setDaemon(true);
+                worker.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(final SSLSocket socket) {
+        try (Socket s = socket) {
+            socket.startHandshake();
+            // echo until the client closes the connection
+            final byte[] buffer = new byte[256];
+            int n;
+            while ((n = s.getInputStream().read(buffer)) > 0) {
+                s.getOutputStream().write(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            // client went away
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+}
@@ -0,0 +1,184 @@
+package com.carepay.jdbc.token;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.carepay.aws.auth.Credentials;
+import com.carepay.jdbc.RdsAWS4Signer;
+import com.carepay.jdbc.metrics.TokenMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TokenCacheTest {
+    private static final String HOST = "mydb.random.eu-west-1.rds.amazonaws.com";
+
+    private TokenCache tokenCache;
+    private Clock clock;
+    private RdsAWS4Signer signer;
+
+    @BeforeEach
+    void setUp() {
+        tokenCache = new TokenCache();
+        clock = mock(Clock.class);
+        when(clock.instant()).thenReturn(Instant.parse("2018-09-19T16:02:42.00Z"));
+        signer = spy(new RdsAWS4Signer(() -> new Credentials("IAMKEYINSTANCE", "asdfqwertypolly", "ZYX12345"), () -> "eu-west-1", clock));
+    }
+
+    @Test
+    void signsOncePerKey() {
+        final String token = tokenCache.getToken(signer, HOST, 3306, "iamuser");
+        assertThat(tokenCache.getToken(signer, HOST, 3306, "iamuser")).isEqualTo(token);
+        verify(signer, times(1)).generateToken(anyString(), anyInt(), anyString(), anyInt());
+    }
+
+    @Test
+    void sharedBetweenSigners() {
+        final RdsAWS4Signer otherSigner = new RdsAWS4Signer(() -> new Credentials("IAMKEYINSTANCE", "asdfqwertypolly", "ZYX12345"), () -> "eu-west-1", clock);
+        final String token = tokenCache.getToken(otherSigner, HOST, 3306, "iamuser");
+        assertThat(tokenCache.getToken(signer, HOST, 3306, "iamuser")).isEqualTo(token);
+        verify(signer, times(0)).generateToken(anyString(), anyInt(), anyString(), anyInt());
+    }
+
+    @Test
+    void differentKeys() {
+        final String token = tokenCache.getToken(signer, HOST, 3306, "iamuser");
+        assertThat(tokenCache.getToken(signer, HOST, 3307, "iamuser")).isNotEqualTo(token);
+        assertThat(tokenCache.getToken(signer, HOST, 3306, "otheruser")).isNotEqualTo(token);
+        final RdsAWS4Signer otherCredentials = new RdsAWS4Signer(() -> new Credentials("OTHERKEY", "asdfqwertypolly", null), () -> "eu-west-1", clock);
+        assertThat(tokenCache.getToken(otherCredentials, HOST, 3306, "iamuser")).isNotEqualTo(token);
+    }
+
+    @Test
+    void renewedAfterTenMinutes() {
+        final String token = tokenCache.getToken(signer, HOST, 3306, "iamuser");
+        when(clock.instant()).thenReturn(Instant.parse("2018-09-19T16:12:41.00Z"));
+        assertThat(tokenCache.getToken(signer, HOST, 3306, "iamuser")).isEqualTo(token);
+        when(clock.instant()).thenReturn(Instant.parse("2018-09-19T16:12:42.00Z"));
+        assertThat(tokenCache.getToken(signer, HOST, 3306, "iamuser")).isNotEqualTo(token);
+    }
+
+    @Test
+    void renewedWhenClockMovesBack() {
+        final String token = tokenCache.getToken(signer, HOST, 3306, "iamuser");
+        when(clock.instant()).thenReturn(Instant.parse("2018-09-19T15:02:42.00Z"));
+        assertThat(tokenCache.getToken(signer, HOST, 3306, "iamuser")).isNotEqualTo(token);
+    }
+
+    @Test
+    void clear() {
+        tokenCache.getToken(signer, HOST, 3306, "iamuser");
+        tokenCache.clear();
+        tokenCache.getToken(signer, HOST, 3306, "iamuser");
+        verify(signer, times(2)).generateToken(anyString(), anyInt(), anyString(), anyInt());
+    }
+
+    @Test
+    void reportsToListener() {
+        final TokenMetrics metrics = new TokenMetrics();
+        tokenCache.getToken(signer, HOST, 3306, "iamuser", metrics);
+        tokenCache.getToken(signer, HOST, 3306, "iamuser", metrics);
+        assertThat(metrics.getCacheMisses()).isEqualTo(1L);
+        assertThat(metrics.getCacheHits()).isEqualTo(1L);
+        assertThat(metrics.getSignCount()).isEqualTo(1L);
+        assertThat(metrics.getCredentialsTime().getCount()).isEqualTo(2L);
+        assertThat(metrics.getRefreshCount()).isZero();
+
+        when(clock.instant()).thenReturn(Instant.parse("2018-09-19T16:13:42.00Z"));
+        tokenCache.getToken(signer, HOST, 3306, "iamuser", metrics);
+        assertThat(metrics.getSignCount()).isEqualTo(2L);
+        assertThat(metrics.getRefreshCount()).isEqualTo(1L);
+        assertThat(metrics.getRefreshLagMaxMillis()).isEqualTo(60_000L);
+    }
+
+    @Test
+    void reportsFailures() {
+        final TokenMetrics metrics = new TokenMetrics();
+        doThrow(new IllegalStateException("no credentials")).when(signer).generateToken(anyString(), anyInt(), anyString(), anyInt());
+        assertThatThrownBy(() -> tokenCache.getToken(signer, HOST, 3306, "iamuser", metrics)).isInstanceOf(IllegalStateException.class);
+        assertThat(metrics.getFailureCount()).isEqualTo(1L);
+        assertThat(metrics.getLastFailure()).contains("no credentials");
+    }
+
+    @Test
+    void policy() {
+        final TokenPolicy policy = new TokenPolicy(300, 60, 0);
+        final String token = tokenCache.getToken(signer, HOST, 3306, "iamuser", new TokenMetrics(), policy);
+        assertThat(token).contains("X-Amz-Expires=300&");
+        assertThat(tokenCache.getToken(signer, HOST, 3306, "iamuser")).isNotEqualTo(token);
+        when(clock.instant()).thenReturn(Instant.parse("2018-09-19T16:06:41.00Z"));
+        assertThat(tokenCache.getToken(signer, HOST, 3306, "iamuser", new TokenMetrics(), policy)).isEqualTo(token);
+        when(clock.instant()).thenReturn(Instant.parse("2018-09-19T16:06:42.00Z"));
+        assertThat(tokenCache.get(signer, HOST, 3306, "iamuser", new TokenMetrics(), policy).getExpiresAt())
+                .isEqualTo(Instant.parse("2018-09-19T16:11:42.00Z").toEpochMilli());
+    }
+
+    @Test
+    void staleWhileRevalidate() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final TokenCache cache = new TokenCache(tasks::add);
+        final TokenPolicy policy = TokenPolicy.DEFAULT.withStaleWhileRevalidate(true);
+        final TokenMetrics metrics = new TokenMetrics();
+        final String token = cache.getToken(signer, HOST, 3306, "iamuser", metrics, policy);
+        when(clock.instant()).thenReturn(Instant.parse("2018-09-19T16:13:42.00Z"));
+        assertThat(cache.getToken(signer, HOST, 3306, "iamuser", metrics, policy)).isEqualTo(token);
+        assertThat(metrics.isServingStaleToken()).isTrue();
+        assertThat(metrics.getStaleCount()).isEqualTo(1L);
+        assertThat(metrics.getStaleOverdueMaxMillis()).isEqualTo(60_000L);
+        assertThat(tasks).hasSize(1);
+        tasks.get(0).run();
+        assertThat(metrics.isServingStaleToken()).isFalse();
+        assertThat(metrics.getRefreshCount()).isEqualTo(1L);
+        assertThat(cache.getToken(signer, HOST, 3306, "iamuser", metrics, policy)).isNotEqualTo(token);
+        verify(signer, times(2)).generateToken(anyString(), anyInt(), anyString(), anyInt());
+    }
+
+    @Test
+    void staleTokenServedWhenCredentialsFail() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final TokenCache cache = new TokenCache(tasks::add);
+        final TokenPolicy policy = TokenPolicy.DEFAULT.withStaleWhileRevalidate(true);
+        final TokenMetrics metrics = new TokenMetrics();
+        final String token = cache.getToken(signer, HOST, 3306, "iamuser", metrics, policy);
+        doThrow(new IllegalStateException("metadata not available")).when(signer).getCredentials();
+        when(clock.instant()).thenReturn(Instant.parse("2018-09-19T16:16:42.00Z"));
+        assertThat(cache.getToken(signer, HOST, 3306, "iamuser", metrics, policy)).isEqualTo(token);
+        assertThat(metrics.isServingStaleToken()).isTrue();
+        assertThat(tasks).hasSize(1);
+        tasks.get(0).run(); // credentials are resolved in the background
+        assertThat(metrics.getFailureCount()).isEqualTo(1L);
+        assertThat(cache.getToken(signer, HOST, 3306, "iamuser", metrics, policy)).isEqualTo(token);
+        when(clock.instant()).thenReturn(Instant.parse("2018-09-19T16:17:42.00Z"));
+        assertThatThrownBy(() -> cache.getToken(signer, HOST, 3306, "iamuser", metrics, policy))
+                .hasMessage("metadata not available"); // expired
+        assertThatThrownBy(() -> tokenCache.getToken(signer, HOST, 3306, "iamuser", metrics))
+                .hasMessage("metadata not available"); // without stale-while-revalidate
+    }
+
+    @Test
+    void validTokenServedWithoutResolvingCredentials() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final TokenCache cache = new TokenCache(tasks::add);
+        final TokenPolicy policy = TokenPolicy.DEFAULT.withStaleWhileRevalidate(true);
+        final String token = cache.getToken(signer, HOST, 3306, "iamuser", new TokenMetrics(), policy);
+        verify(signer, times(1)).getCredentials();
+        assertThat(cache.getToken(signer, HOST, 3306, "iamuser", new TokenMetrics(), policy)).isEqualTo(token); // fresh
+        when(clock.instant()).thenReturn(Instant.parse("2018-09-19T16:13:42.00Z"));
+        assertThat(cache.getToken(signer, HOST, 3306, "iamuser", new TokenMetrics(), policy)).isEqualTo(token); // stale
+        verify(signer, times(1)).getCredentials(); // e.g. a slow instance metadata lookup doesn't block
+        tasks.forEach(Runnable::run);
+        verify(signer, times(2)).getCredentials();
+    }
+}
@@ -0,0 +1,175 @@
+package com.carepay.jdbc.token;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TokenHolderTest {
+    private TokenHolder holder;
+    private AtomicInteger signCount;
+    private ExecutorService executorService;
+
+    @BeforeEach
+    void setUp() {
+        holder = new TokenHolder();
+        signCount = new AtomicInteger();
+        executorService = Executors.newFixedThreadPool(16);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    private Token sign(final long now) {
+        return new Token("token" + signCount.incrementAndGet(), now, now + 600L, now + 900L);
+    }
+
+    @Test
+    void freshTokenIsReused() {
+        final Token token = holder.get(1000L, () -> sign(1000L));
+        assertThat(holder.get(1500L, () -> sign(1500L))).isSameAs(token);
+        assertThat(holder.peek()).isSameAs(token);
+        assertThat(signCount).hasValue(1);
+    }
+
+    @Test
+    void expiredTokenIsRenewed() {
+        holder.get(1000L, () -> sign(1000L));
+        assertThat(holder.get(1600L, () -> sign(1600L)).getValue()).isEqualTo("token2");
+        assertThat(holder.get(3000L, () -> sign(3000L)).getValue()).isEqualTo("token3");
+    }
+
+    @Test
+    void tokenFromTheFutureIsRenewed() {
+        holder.get(1000L, () -> sign(1000L));
+        assertThat(holder.get(500L, () -> sign(500L)).getValue()).isEqualTo("token2");
+    }
+
+    @Test
+    void failureIsPropagated() {
+        assertThatThrownBy(() -> holder.get(1000L, () -> {
+            throw new IllegalStateException("no credentials");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(holder.get(1000L, () -> sign(1000L)).getValue()).isEqualTo("token1");
+    }
+
+    @Test
+    void singleFlightWhileSigning() throws Exception {
+        holder.get(1000L, () -> sign(1000L));
+        final CountDownLatch signing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Future<Token> renewal = executorService.submit(() -> holder.get(1700L, () -> {
+            signing.countDown();
+            await(release);
+            return sign(1700L);
+        }));
+        assertThat(signing.await(5, TimeUnit.SECONDS)).isTrue();
+        final List<Future<Token>> others = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            others.add(executorService.submit(() -> holder.get(1700L, () -> sign(1700L))));
+        }
+        for (Future<Token> other : others) {
+            assertThat(other.get(5, TimeUnit.SECONDS).getValue()).isEqualTo("token1"); // previous token is still valid
+        }
+        release.countDown();
+        assertThat(renewal.get(5, TimeUnit.SECONDS).getValue()).isEqualTo("token2");
+        assertThat(signCount).hasValue(2);
+    }
+
+    @Test
+    void othersWaitWhenNoValidToken() throws Exception {
+        final CountDownLatch signing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Future<Token> first = executorService.submit(() -> holder.get(1000L, () -> {
+            signing.countDown();
+            await(release);
+            return sign(1000L);
+        }));
+        assertThat(signing.await(5, TimeUnit.SECONDS)).isTrue();
+        final List<Future<Token>> others = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            others.add(executorService.submit(() -> holder.get(1000L, () -> sign(1000L))));
+        }
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS).getValue()).isEqualTo("token1");
+        for (Future<Token> other : others) {
+            assertThat(other.get(5, TimeUnit.SECONDS).getValue()).isEqualTo("token1");
+        }
+        assertThat(signCount).hasValue(1);
+    }
+
+    @Test
+    void staleTokenServedWhileRenewedInBackground() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final Token token = holder.get(1000L, () -> sign(1000L), tasks::add);
+        assertThat(tasks).isEmpty(); // first token is signed by the caller
+        assertThat(holder.get(1700L, () -> sign(1700L), tasks::add)).isSameAs(token);
+        assertThat(holder.get(1700L, () -> sign(1700L), tasks::add)).isSameAs(token);
+        assertThat(tasks).hasSize(1); // single renewal
+        tasks.get(0).run();
+        assertThat(holder.get(1700L, () -> sign(1700L), tasks::add).getValue()).isEqualTo("token2");
+        assertThat(signCount).hasValue(2);
+    }
+
+    @Test
+    void failedRenewalIsRetriedAfterBackoff() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final Token token = holder.get(1000L, () -> sign(1000L), tasks::add);
+        final AtomicInteger attempts = new AtomicInteger();
+        final Supplier<Token> failing = () -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("metadata not available");
+        };
+        assertThat(holder.get(1700L, failing, tasks::add)).isSameAs(token);
+        tasks.remove(0).run();
+        assertThat(holder.get(1800L, failing, tasks::add)).isSameAs(token);
+        assertThat(tasks).isEmpty(); // within the backoff
+        assertThat(holder.getCircuitBreaker().isOpen(1800L)).isTrue();
+        assertThatThrownBy(() -> holder.get(1950L, failing, tasks::add))
+                .hasMessageContaining("metadata not available"); // expired, fails fast
+        assertThat(attempts).hasValue(1);
+        assertThat(holder.get(2700L, () -> sign(2700L), tasks::add).getValue()).isEqualTo("token2");
+        assertThat(holder.getCircuitBreaker().getFailureCount()).isZero();
+    }
+
+    @Test
+    void staleWhileRevalidateDoesNotBlock() throws Exception {
+        holder.get(1000L, () -> sign(1000L), executorService);
+        final CountDownLatch release = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            assertThat(holder.get(1700L, () -> {
+                await(release);
+                return sign(1700L);
+            }, executorService).getValue()).isEqualTo("token1");
+        }
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(2L));
+        release.countDown();
+        executorService.shutdown();
+        assertThat(executorService.awaitTermination(5L, TimeUnit.SECONDS)).isTrue();
+        assertThat(holder.peek().getValue()).isEqualTo("token2");
+        assertThat(signCount).hasValue(2);
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
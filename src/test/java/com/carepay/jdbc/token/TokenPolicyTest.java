@@ -0,0 +1,74 @@
+package com.carepay.jdbc.token;
+
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TokenPolicyTest {
+    private static final String TOKEN = "mydb:3306/?Action=connect&DBUser=iamuser&X-Amz-Date=20180919T160242Z&X-Amz-Expires=600&X-Amz-SignedHeaders=host";
+    private static final long SIGNED_AT = Instant.parse("2018-09-19T16:02:42.00Z").toEpochMilli();
+
+    @Test
+    void deadlinesFromToken() {
+        final Token token = TokenPolicy.DEFAULT.createToken(TOKEN, SIGNED_AT + 500L);
+        assertThat(token.getSignedAt()).isEqualTo(SIGNED_AT);
+        assertThat(token.getExpiresAt()).isEqualTo(SIGNED_AT + 600_000L);
+        assertThat(token.getRefreshAt()).isEqualTo(SIGNED_AT + 300_000L);
+    }
+
+    @Test
+    void deadlinesWithoutDate() {
+        final Token token = TokenPolicy.DEFAULT.createToken("mydb:3306/?Action=connect", SIGNED_AT);
+        assertThat(token.getExpiresAt()).isEqualTo(SIGNED_AT + 900_000L);
+        assertThat(token.getRefreshAt()).isEqualTo(SIGNED_AT + 600_000L);
+    }
+
+    @Test
+    void jitter() {
+        final TokenPolicy policy = new TokenPolicy(600, 120, 60);
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            final long refreshAt = policy.createToken(TOKEN, SIGNED_AT).getRefreshAt();
+            min = Math.min(min, refreshAt);
+            max = Math.max(max, refreshAt);
+        }
+        assertThat(min).isGreaterThanOrEqualTo(SIGNED_AT + 420_000L);
+        assertThat(max).isLessThanOrEqualTo(SIGNED_AT + 480_000L);
+        assertThat(max).isGreaterThan(min);
+    }
+
+    @Test
+    void of() {
+        assertThat(TokenPolicy.of((String) null, null, null)).isSameAs(TokenPolicy.DEFAULT);
+        assertThat(TokenPolicy.of("300", null, null)).isEqualTo(new TokenPolicy(300, 100, 0));
+        assertThat(TokenPolicy.of(null, "120", " 30 ")).isEqualTo(new TokenPolicy(900, 120, 30));
+        assertThat(TokenPolicy.of(600, 60, null)).isEqualTo(new TokenPolicy(600, 60, 0));
+    }
+
+    @Test
+    void staleWhileRevalidate() {
+        assertThat(TokenPolicy.DEFAULT.isStaleWhileRevalidate()).isFalse();
+        assertThat(TokenPolicy.DEFAULT.withStaleWhileRevalidate((String) null)).isSameAs(TokenPolicy.DEFAULT);
+        final TokenPolicy policy = TokenPolicy.DEFAULT.withStaleWhileRevalidate(" true ");
+        assertThat(policy.isStaleWhileRevalidate()).isTrue();
+        assertThat(policy).isNotEqualTo(TokenPolicy.DEFAULT).isEqualTo(new TokenPolicy(900, 300, 0, true));
+        assertThat(policy.getRefreshLeadSeconds()).isEqualTo(300);
+        assertThat(policy).hasToString("900s lifetime, 300s lead, 0s jitter, stale-while-revalidate");
+    }
+
+    @Test
+    void invalid() {
+        assertThatThrownBy(() -> new TokenPolicy(901, 300, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new TokenPolicy(0, 0, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new TokenPolicy(300, 200, 100))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("tokenRefreshLeadSeconds");
+        assertThatThrownBy(() -> TokenPolicy.of("ten", null, null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("tokenLifetimeSeconds");
+    }
+}
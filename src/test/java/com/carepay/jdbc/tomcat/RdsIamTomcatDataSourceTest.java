@@ -4,6 +4,7 @@
 import java.sql.SQLException;
 import java.time.Clock;
 import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -11,8 +12,12 @@
 import com.carepay.aws.auth.Credentials;
 import com.carepay.jdbc.H2Driver;
 import com.carepay.jdbc.RdsAWS4Signer;
+import com.carepay.jdbc.aurora.AuroraStandIn;
+import com.carepay.jdbc.util.HostAndPort;
 import org.apache.tomcat.jdbc.pool.ConnectionPool;
 import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.apache.tomcat.jdbc.pool.PoolUtilities;
+import org.apache.tomcat.jdbc.pool.PooledConnection;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -20,10 +25,13 @@
 import org.mockito.stubbing.Answer;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class RdsIamTomcatDataSourceTest {
@@ -33,6 +41,7 @@ public class RdsIamTomcatDataSourceTest {
     private RdsAWS4Signer tokenGenerator;
     private ScheduledExecutorService scheduledExecutorService;
     private ArgumentCaptor<Runnable> runnableArgumentCaptor;
+    private ArgumentCaptor<Long> delayCaptor;
     private ScheduledFuture<?> backgroundFuture;
     private PoolProperties poolProperties;
 
@@ -51,7 +60,8 @@ public void setUp() {
         scheduledExecutorService = mock(ScheduledExecutorService.class);
         runnableArgumentCaptor = ArgumentCaptor.forClass(Runnable.class);
         backgroundFuture = mock(ScheduledFuture.class);
-        when(scheduledExecutorService.scheduleWithFixedDelay(runnableArgumentCaptor.capture(), anyLong(), anyLong(), any(TimeUnit.class))).thenAnswer((Answer<ScheduledFuture<?>>) invocation -> backgroundFuture);
+        delayCaptor = ArgumentCaptor.forClass(Long.class);
+        when(scheduledExecutorService.schedule(runnableArgumentCaptor.capture(), delayCaptor.capture(), any(TimeUnit.class))).thenAnswer((Answer<ScheduledFuture<?>>) invocation -> backgroundFuture);
         rdsIamTomcatDataSource = new RdsIamTomcatDataSource(tokenGenerator, scheduledExecutorService, poolProperties);
         init();
     }
@@ -80,6 +90,134 @@ public void testBackgroundThreadCreatesNewPassword() throws SQLException {
         }
     }
 
+    @Test
+    public void testRefreshScheduledFromTokenExpiry() throws SQLException {
+        try (Connection c = rdsIamTomcatDataSource.getConnection()) {
+            assertThat(delayCaptor.getValue()).isZero();
+            runnableArgumentCaptor.getValue().run();
+            assertThat(delayCaptor.getValue()).isEqualTo(TimeUnit.MINUTES.toMillis(10L));
+            reset(brokenClock);
+            when(brokenClock.instant()).thenReturn(Instant.parse("2018-09-19T16:12:43.00Z"));
+            runnableArgumentCaptor.getValue().run();
+            assertThat(delayCaptor.getValue()).isEqualTo(TimeUnit.MINUTES.toMillis(10L));
+        }
+    }
+
+    @Test
+    public void testStaleTokenRefreshIsNotRescheduledImmediately() throws SQLException {
+        rdsIamTomcatDataSource.setTokenStaleWhileRevalidate(true);
+        try (Connection c = rdsIamTomcatDataSource.getConnection()) {
+            runnableArgumentCaptor.getValue().run();
+            assertThat(delayCaptor.getValue()).isEqualTo(TimeUnit.MINUTES.toMillis(10L));
+            reset(brokenClock);
+            when(brokenClock.instant()).thenReturn(Instant.parse("2018-09-19T16:12:43.00Z"));
+            runnableArgumentCaptor.getValue().run();
+            assertThat(delayCaptor.getValue()).isEqualTo(TimeUnit.SECONDS.toMillis(30L));
+        }
+    }
+
+    @Test
+    public void testReconnectUsesCurrentToken() throws SQLException {
+        try (Connection c = rdsIamTomcatDataSource.getConnection()) {
+            final PooledConnection pooledConnection = c.unwrap(PooledConnection.class);
+            assertThat(pooledConnection).isInstanceOf(RdsIamPooledConnection.class);
+            final String password = (String) pooledConnection.getAttributes().get(PoolUtilities.PROP_PASSWORD);
+            assertThat(password).contains("X-Amz-Date=20180919T160242Z");
+            reset(brokenClock);
+            when(brokenClock.instant()).thenReturn(Instant.parse("2019-10-20T16:02:42.00Z"));
+            pooledConnection.reconnect();
+            assertThat((String) pooledConnection.getAttributes().get(PoolUtilities.PROP_PASSWORD)).contains("X-Amz-Date=20191020T160242Z");
+        }
+    }
+
+    @Test
+    public void testCreateIncrementsSizeOnlyWhenAsked() throws SQLException {
+        rdsIamTomcatDataSource.getConnection().close();
+        final RdsIamAuthConnectionPool pool = (RdsIamAuthConnectionPool) rdsIamTomcatDataSource.getPool();
+        final int size = pool.getSize();
+        assertThat(pool.create(false)).isInstanceOf(RdsIamPooledConnection.class);
+        assertThat(pool.getSize()).isEqualTo(size);
+        assertThat(pool.create(true)).isInstanceOf(RdsIamPooledConnection.class);
+        assertThat(pool.getSize()).isEqualTo(size + 1);
+    }
+
+    @Test
+    public void testReleasedConnectionIsReplacedForWaitingThread() throws Exception {
+        rdsIamTomcatDataSource.setMaxActive(1);
+        rdsIamTomcatDataSource.setInitialSize(0);
+        rdsIamTomcatDataSource.setMinIdle(0);
+        rdsIamTomcatDataSource.setMaxWait(5000);
+        rdsIamTomcatDataSource.setTestOnReturn(true);
+        rdsIamTomcatDataSource.setValidationInterval(0L);
+        rdsIamTomcatDataSource.setValidationQuery("SELECT * FROM no_such_table"); // released on return
+        final Connection first = rdsIamTomcatDataSource.getConnection();
+        final ConnectionPool pool = rdsIamTomcatDataSource.getPool();
+        final CompletableFuture<Connection> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return rdsIamTomcatDataSource.getConnection();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (pool.getWaitCount() == 0) {
+            Thread.sleep(1L);
+        }
+        first.close(); // released, and replaced by the pool for the waiting thread
+        try (Connection second = waiting.get(5L, TimeUnit.SECONDS)) {
+            assertThat(second.unwrap(PooledConnection.class)).isInstanceOf(RdsIamPooledConnection.class);
+            assertThat(pool.getSize()).isEqualTo(1);
+            assertThat(pool.getActive()).isEqualTo(1);
+        }
+        assertThat(pool.getSize()).isZero();
+        assertThat(pool.getIdle()).isZero();
+    }
+
+    @Test
+    void connectionMetrics() throws SQLException {
+        assertThat(rdsIamTomcatDataSource.getTokenMetrics()).isNull();
+        try (Connection ignored = rdsIamTomcatDataSource.getConnection()) {
+            assertThat(rdsIamTomcatDataSource.getTokenMetrics().getAcquireCount()).isEqualTo(1L);
+            assertThat(rdsIamTomcatDataSource.getTokenMetrics().getConnectCount()).isEqualTo(1L);
+        }
+        try (Connection ignored = rdsIamTomcatDataSource.getConnection()) {
+            assertThat(rdsIamTomcatDataSource.getTokenMetrics().getAcquireTime().snapshot().getCount()).isEqualTo(2L);
+            assertThat(rdsIamTomcatDataSource.getTokenMetrics().getConnectCount()).isEqualTo(1L); // reused
+        }
+    }
+
+    @Test
+    public void testRefreshPresignsAllHosts() throws SQLException {
+        rdsIamTomcatDataSource.setDriverClassName("com.mysql.cj.jdbc.Driver");
+        rdsIamTomcatDataSource.setUrl("jdbc:mysql://writer.random.eu-west-1.rds.amazonaws.com,reader.random.eu-west-1.rds.amazonaws.com:3307/database");
+        rdsIamTomcatDataSource.createPool();
+        runnableArgumentCaptor.getValue().run();
+        final RdsIamAuthConnectionPool pool = (RdsIamAuthConnectionPool) rdsIamTomcatDataSource.getPool();
+        assertThat(pool.getTokenMetrics().getSignCount()).isEqualTo(2L);
+        assertThat(rdsIamTomcatDataSource.getPoolProperties().getPassword()).contains("writer.random");
+        assertThat(rdsIamTomcatDataSource.getPoolProperties().getDbProperties())
+                .containsEntry("authenticationPlugins", "com.carepay.jdbc.mysql.RdsIamPasswordPlugin");
+    }
+
+    @Test
+    public void testMultiHostUrlWithoutPasswordPluginIsRejected() {
+        rdsIamTomcatDataSource.setUrl("jdbc:mysql://writer.random.eu-west-1.rds.amazonaws.com,reader.random.eu-west-1.rds.amazonaws.com:3307/database");
+        assertThatThrownBy(rdsIamTomcatDataSource::createPool).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        rdsIamTomcatDataSource.setWarmUp(true);
+        rdsIamTomcatDataSource.setMinIdle(3);
+        rdsIamTomcatDataSource.getReadiness().get(10L, TimeUnit.SECONDS);
+        assertThat(rdsIamTomcatDataSource.getIdle()).isEqualTo(3);
+        assertThat(rdsIamTomcatDataSource.getActive()).isZero();
+    }
+
+    @Test
+    public void testReadyWithoutWarmUp() {
+        assertThat(rdsIamTomcatDataSource.getReadiness()).isCompleted();
+    }
+
     @Test
     public void testCreatePoolImplOnce() throws SQLException {
         final ConnectionPool pool1 = rdsIamTomcatDataSource.createPool();
@@ -87,6 +225,48 @@ public void testCreatePoolImplOnce() throws SQLException {
         assertThat(pool1 == pool2).isTrue(); //NOSONAR
     }
 
+    @Test
+    public void testCreateInstanceDataSource() throws SQLException {
+        rdsIamTomcatDataSource.setName("cluster");
+        rdsIamTomcatDataSource.setMaxActive(7);
+        rdsIamTomcatDataSource.setWarmUp(true);
+        final RdsIamTomcatDataSource instance = rdsIamTomcatDataSource.createInstanceDataSource("reader1",
+                new HostAndPort("reader1.random.eu-west-1.rds.amazonaws.com", 3306));
+        try (Connection c = instance.getConnection()) {
+            assertThat(instance.getUrl()).isEqualTo("jdbc:mysql://reader1.random.eu-west-1.rds.amazonaws.com:3306/database");
+            assertThat(instance.getName()).isEqualTo("cluster-reader1");
+            assertThat(instance.getMaxActive()).isEqualTo(7);
+            assertThat(instance.getUsername()).isEqualTo("iamuser");
+            assertThat(instance.isWarmUp()).isTrue();
+            assertThat(instance.getPoolProperties()).isNotSameAs(rdsIamTomcatDataSource.getPoolProperties());
+        } finally {
+            instance.close();
+        }
+    }
+
+    @Test
+    public void testFailover() throws SQLException {
+        AuroraStandIn.reset();
+        rdsIamTomcatDataSource.setDriverClassName(AuroraStandIn.class.getName());
+        rdsIamTomcatDataSource.setUrl(AuroraStandIn.CLUSTER_URL);
+        rdsIamTomcatDataSource.setFailover(true);
+        rdsIamTomcatDataSource.setTopologyQuery(AuroraStandIn.topologyQuery());
+        assertThat(rdsIamTomcatDataSource.isFailover()).isTrue();
+        try (Connection c = rdsIamTomcatDataSource.getConnection()) {
+            assertThat(AuroraStandIn.getConnected()).containsOnly(AuroraStandIn.CLUSTER_HOST);
+        }
+        rdsIamTomcatDataSource.getFailoverDataSource().refreshTopology();
+        AuroraStandIn.failover("instance-2", true);
+        rdsIamTomcatDataSource.purge();
+        try (Connection c = rdsIamTomcatDataSource.getConnection()) {
+            assertThat(AuroraStandIn.getConnected()).endsWith(AuroraStandIn.host("instance-2"));
+        }
+        // the failover datasource signs the tokens, the pool signs and renews none
+        verify(scheduledExecutorService, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        assertThat(rdsIamTomcatDataSource.getPool().getPoolProperties().getPassword()).isNull();
+        assertThat(((RdsIamAuthConnectionPool) rdsIamTomcatDataSource.getPool()).getTokenMetrics().getSignCount()).isPositive();
+    }
+
     @Test
     public void testConstructor() {
         assertThat(new RdsIamTomcatDataSource(tokenGenerator, scheduledExecutorService)).isNotNull();
@@ -0,0 +1,54 @@
+package com.carepay.jdbc.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CircuitBreakerTest {
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(1000L, 5000L);
+
+    @Test
+    void closedByDefault() {
+        assertThat(circuitBreaker.tryAcquire(0L)).isTrue();
+        assertThat(circuitBreaker.tryAcquire(0L)).isTrue();
+        assertThat(circuitBreaker.isOpen(0L)).isFalse();
+        assertThat(circuitBreaker.getFailureCount()).isZero();
+    }
+
+    @Test
+    void backoffDoublesUpToMax() {
+        circuitBreaker.onFailure(0L, new IllegalStateException("down"));
+        assertThat(circuitBreaker.getRetryAt()).isEqualTo(1000L);
+        circuitBreaker.onFailure(1000L, new IllegalStateException("down"));
+        assertThat(circuitBreaker.getRetryAt()).isEqualTo(3000L);
+        circuitBreaker.onFailure(3000L, new IllegalStateException("down"));
+        assertThat(circuitBreaker.getRetryAt()).isEqualTo(7000L);
+        circuitBreaker.onFailure(7000L, new IllegalStateException("down"));
+        assertThat(circuitBreaker.getRetryAt()).isEqualTo(12000L);
+        assertThat(circuitBreaker.getFailureCount()).isEqualTo(4);
+    }
+
+    @Test
+    void halfOpenLetsOneCallerThrough() {
+        circuitBreaker.onFailure(0L, new IllegalStateException("down"));
+        assertThat(circuitBreaker.isOpen(500L)).isTrue();
+        assertThat(circuitBreaker.tryAcquire(500L)).isFalse();
+        assertThat(circuitBreaker.tryAcquire(1000L)).isTrue();
+        assertThat(circuitBreaker.tryAcquire(1000L)).isFalse();
+        circuitBreaker.onSuccess();
+        assertThat(circuitBreaker.tryAcquire(1000L)).isTrue();
+        assertThat(circuitBreaker.getLastFailure()).isNull();
+    }
+
+    @Test
+    void acquireThrowsWithLastFailure() {
+        final IllegalStateException failure = new IllegalStateException("metadata not available");
+        circuitBreaker.onFailure(0L, failure);
+        assertThatThrownBy(() -> circuitBreaker.acquire(400L))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Not retried for 600ms after 1 failure(s): metadata not available")
+                .hasCause(failure);
+        circuitBreaker.acquire(1000L);
+    }
+}
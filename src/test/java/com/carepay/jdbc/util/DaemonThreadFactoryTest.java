@@ -1,5 +1,7 @@
 package com.carepay.jdbc.util;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.junit.jupiter.api.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -10,4 +12,15 @@ public class DaemonThreadFactoryTest {
     public void newThread() {
         assertThat(new DaemonThreadFactory().newThread(() -> {})).isNotNull();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void newThreadRunsTask() throws InterruptedException {
+        final AtomicBoolean ran = new AtomicBoolean();
+        final Thread thread = new DaemonThreadFactory("test-").newThread(() -> ran.set(true));
+        assertThat(thread.isDaemon()).isTrue();
+        assertThat(thread.getName()).isEqualTo("test-1");
+        thread.start();
+        thread.join();
+        assertThat(ran).isTrue();
+    }
+}
@@ -0,0 +1,54 @@
+package com.carepay.jdbc.util;
+
+import java.util.Properties;
+
+import com.carepay.jdbc.token.TokenPolicy;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PasswordPluginsTest {
+    private static final String CONNECTOR_J = "com.mysql.cj.jdbc.Driver";
+    private static final String MULTI_HOST_URL = "jdbc:mysql://writer.random.eu-west-1.rds.amazonaws.com,reader.random.eu-west-1.rds.amazonaws.com/db";
+
+    @Test
+    void singleHostNeedsNoPlugin() {
+        final Properties properties = new Properties();
+        assertThat(PasswordPlugins.addForMultiHost("org.h2.Driver", "jdbc:mysql://writer.random.eu-west-1.rds.amazonaws.com/db",
+                properties, TokenPolicy.DEFAULT)).isFalse();
+        assertThat(properties).isEmpty();
+    }
+
+    @Test
+    void connectorJ() {
+        final Properties properties = new Properties();
+        assertThat(PasswordPlugins.addForMultiHost(CONNECTOR_J, MULTI_HOST_URL, properties, TokenPolicy.DEFAULT)).isTrue();
+        assertThat(properties).containsOnlyKeys("authenticationPlugins")
+                .containsEntry("authenticationPlugins", "com.carepay.jdbc.mysql.RdsIamPasswordPlugin");
+        properties.setProperty("authenticationPlugins", "com.example.OtherPlugin");
+        PasswordPlugins.addForMultiHost(CONNECTOR_J, MULTI_HOST_URL, properties, TokenPolicy.DEFAULT);
+        PasswordPlugins.addForMultiHost(CONNECTOR_J, MULTI_HOST_URL, properties, TokenPolicy.DEFAULT);
+        assertThat(properties).containsEntry("authenticationPlugins", "com.example.OtherPlugin,com.carepay.jdbc.mysql.RdsIamPasswordPlugin");
+    }
+
+    @Test
+    void mariaDbWithTokenPolicy() {
+        final Properties properties = new Properties();
+        assertThat(PasswordPlugins.addForMultiHost(null, "jdbc:mariadb:aurora://writer,reader/db", properties,
+                TokenPolicy.of(600, 120, 30).withStaleWhileRevalidate(true))).isTrue();
+        assertThat(properties)
+                .containsEntry("credentialType", "AWS4RDS")
+                .containsEntry("tokenLifetimeSeconds", "600")
+                .containsEntry("tokenRefreshLeadSeconds", "120")
+                .containsEntry("tokenRefreshJitterSeconds", "30")
+                .containsEntry("tokenStaleWhileRevalidate", "true");
+    }
+
+    @Test
+    void otherDriverIsRejected() {
+        assertThatThrownBy(() -> PasswordPlugins.addForMultiHost("org.h2.Driver", MULTI_HOST_URL, new Properties(), TokenPolicy.DEFAULT))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("password plugin");
+    }
+}
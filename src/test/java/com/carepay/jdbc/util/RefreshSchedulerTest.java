@@ -0,0 +1,57 @@
+package com.carepay.jdbc.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class RefreshSchedulerTest {
+
+    @Test
+    void sharedInstance() {
+        assertThat(RefreshScheduler.getInstance()).isSameAs(RefreshScheduler.getInstance());
+        assertThat(RefreshScheduler.getInstance().getCorePoolSize()).isEqualTo(RefreshScheduler.WORKER_THREADS);
+        assertThat(RefreshScheduler.getInstance().allowsCoreThreadTimeOut()).isTrue();
+    }
+
+    @Test
+    void runsScheduledTasks() throws Exception {
+        final CompletableFuture<Thread> thread = new CompletableFuture<>();
+        RefreshScheduler.getInstance().schedule(() -> thread.complete(Thread.currentThread()), 10L, TimeUnit.MILLISECONDS);
+        final Thread worker = thread.get(5L, TimeUnit.SECONDS);
+        assertThat(worker.isDaemon()).isTrue();
+        assertThat(worker.getName()).startsWith("rds-iam-refresh-");
+    }
+
+    @Test
+    void usesVirtualThreadsWhenAvailable() throws Exception {
+        final boolean virtualThreadsSupported = featureVersion() >= 21;
+        final Thread thread = RefreshScheduler.createThreadFactory().newThread(() -> {
+        });
+        assertThat(isVirtual(thread)).isEqualTo(virtualThreadsSupported);
+        assumeTrue(virtualThreadsSupported);
+        assertThat(thread.getName()).startsWith("rds-iam-refresh-");
+    }
+
+    private static int featureVersion() {
+        final String version = System.getProperty("java.specification.version");
+        return version.startsWith("1.") ? Integer.parseInt(version.substring(2)) : Integer.parseInt(version);
+    }
+
+    private static boolean hasMethod(final Class<?> type, final String name) {
+        for (Method m : type.getMethods()) {
+            if (m.getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isVirtual(final Thread thread) throws Exception {
+        return hasMethod(Thread.class, "isVirtual") && (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    }
+}
@@ -0,0 +1,69 @@
+package com.carepay.jdbc.util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class WarmUpTest {
+
+    @Test
+    void opensConnectionsInParallel() throws Exception {
+        final List<String> events = new CopyOnWriteArrayList<>();
+        final List<Connection> connections = new CopyOnWriteArrayList<>();
+        final CountDownLatch allOpening = new CountDownLatch(3);
+        WarmUp.openConnections(() -> events.add("prepare"), () -> {
+            events.add("open");
+            allOpening.countDown();
+            // only completes when 3 connections are opened at the same time
+            assertThat(allOpening.await(5L, TimeUnit.SECONDS)).isTrue();
+            final Connection connection = mock(Connection.class);
+            connections.add(connection);
+            return connection;
+        }, 6, 3).get(10L, TimeUnit.SECONDS);
+
+        assertThat(events).hasSize(7).startsWith("prepare");
+        assertThat(connections).hasSize(6);
+        for (Connection c : connections) {
+            verify(c).close();
+        }
+    }
+
+    @Test
+    void failureCompletesExceptionally() throws Exception {
+        final AtomicInteger opened = new AtomicInteger();
+        final Connection connection = mock(Connection.class);
+        assertThatThrownBy(() -> WarmUp.openConnections(() -> {
+        }, () -> {
+            if (opened.incrementAndGet() == 2) {
+                throw new SQLException("Access denied");
+            }
+            return connection;
+        }, 3, 1).get(10L, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasRootCauseInstanceOf(SQLException.class);
+        verify(connection, times(2)).close();
+    }
+
+    @Test
+    void completeUnwrapsFailure() {
+        final CompletableFuture<Void> readiness = new CompletableFuture<>();
+        final SQLException failure = new SQLException("Access denied");
+        WarmUp.complete(readiness, new CompletionException(failure));
+        assertThatThrownBy(readiness::join).hasCause(failure);
+    }
+}